@@ -39,6 +39,7 @@
 #include <MissionEnded.h>
 
 // STL:
+#include <algorithm>
 #include <exception>
 #include <sstream>
 
@@ -50,6 +51,7 @@ namespace malmo
         , video_policy(LATEST_FRAME_ONLY)
         , rewards_policy(SUM_REWARDS)
         , observations_policy(LATEST_OBSERVATION_ONLY)
+        , use_shared_memory(false)
         , current_role( 0 )
     {
         this->addOptionalFlag("help,h", "show description of allowed options");
@@ -64,6 +66,7 @@ namespace malmo
 
     AgentHost::~AgentHost()
     {
+        this->shared_memory_server.reset();
         this->work = boost::none;
         this->io_service.stop();
         for( auto& t : this->background_threads )
@@ -88,6 +91,13 @@ namespace malmo
             if( mission.getVideoHeight( role ) % 2 )
                 throw std::runtime_error("Video height must be divisible by 2.");
         }
+        for( int stream = 1; stream <= mission.getNumberOfAdditionalVideoStreams( role ); stream++ )
+        {
+            if( mission.getAdditionalVideoWidth( role, stream ) % 4 )
+                throw std::runtime_error("Video width must be divisible by 4.");
+            if( mission.getAdditionalVideoHeight( role, stream ) % 2 )
+                throw std::runtime_error("Video height must be divisible by 2.");
+        }
         
         boost::lock_guard<boost::mutex> scope_guard(this->world_state_mutex);
 
@@ -128,13 +138,29 @@ namespace malmo
         listenForMissionControlMessages(this->current_mission_init->getAgentMissionControlPort());
         if (mission.isVideoRequested(this->current_role))
         {
-            listenForVideo(this->current_mission_init->getAgentVideoPort(),
+            listenForVideo(this->video_server, 0,
+                this->current_mission_init->getAgentVideoPort(),
                 mission.getVideoWidth(this->current_role),
                 mission.getVideoHeight(this->current_role),
-                mission.getVideoChannels(this->current_role));
+                mission.getVideoChannels(this->current_role),
+                mission.getVideoCodec(this->current_role),
+                mission.isVideoFrameHeaderRequested(this->current_role),
+                mission.getVideoDepthPlaneBytes(this->current_role));
+        }
+        this->additional_video_servers.resize(mission.getNumberOfAdditionalVideoStreams(this->current_role));
+        for (int stream = 1; stream <= static_cast<int>(this->additional_video_servers.size()); stream++)
+        {
+            listenForVideo(this->additional_video_servers[stream - 1], stream,
+                this->current_mission_init->getAgentAdditionalVideoPort(stream),
+                mission.getAdditionalVideoWidth(this->current_role, stream),
+                mission.getAdditionalVideoHeight(this->current_role, stream),
+                mission.getAdditionalVideoChannels(this->current_role, stream),
+                mission.getAdditionalVideoCodec(this->current_role, stream),
+                mission.isAdditionalVideoFrameHeaderRequested(this->current_role, stream),
+                mission.getAdditionalVideoDepthPlaneBytes(this->current_role, stream));
         }
         listenForRewards(this->current_mission_init->getAgentRewardsPort());
-        listenForObservations(this->current_mission_init->getAgentObservationsPort());
+        listenForObservations(this->current_mission_init->getAgentObservationsPort(), mission.getObservationEncoding(this->current_role));
 
         if (this->commands_stream.is_open()){
             this->commands_stream.close();
@@ -150,7 +176,38 @@ namespace malmo
         if (this->video_server) {
             this->current_mission_init->setAgentVideoPort(this->video_server->getPort());
         }
+        for (size_t i = 0; i < this->additional_video_servers.size(); i++) {
+            this->current_mission_init->setAgentAdditionalVideoPort(static_cast<int>(i) + 1, this->additional_video_servers[i]->getPort());
+        }
         this->current_mission_init->setAgentRewardsPort(this->rewards_server->getPort());
+
+        if (this->use_shared_memory)
+        {
+            // Offer the Mod a faster route for the per-tick data; it falls back to the ports above if it can't use it.
+            if (!this->shared_memory_server)
+                this->shared_memory_server = boost::make_shared<SharedMemoryServer>();
+            // Ring 0 carries the VideoProducer, if there is one; the rest carry the AdditionalVideoProducers in order.
+            std::vector<size_t> video_message_sizes;
+            std::vector<SharedMemoryServer::Handler> video_handlers;
+            std::vector<boost::shared_ptr<VideoServer>> servers(1, mission.isVideoRequested(this->current_role) ? this->video_server : boost::shared_ptr<VideoServer>());
+            servers.insert(servers.end(), this->additional_video_servers.begin(), this->additional_video_servers.end());
+            for (const auto& server : servers)
+            {
+                if (server) {
+                    video_message_sizes.push_back(server->getMaxMessageSize());
+                    video_handlers.push_back(boost::bind(&VideoServer::handleMessage, server, _1));
+                }
+                else {
+                    video_message_sizes.push_back(0);
+                    video_handlers.push_back(SharedMemoryServer::Handler());
+                }
+            }
+            const std::string path = this->shared_memory_server->open(video_message_sizes
+                , video_handlers
+                , boost::bind(&StringServer::handleMessage, this->observations_server, _1)
+                , boost::bind(&StringServer::handleMessage, this->rewards_server, _1));
+            this->current_mission_init->setAgentSharedMemoryPath(path);
+        }
     }
     
     std::string AgentHost::generateMissionInit()
@@ -261,6 +318,11 @@ namespace malmo
     {
         this->observations_policy = observationsPolicy;
     }
+
+    void AgentHost::setSharedMemoryTransport(bool useSharedMemory)
+    {
+        this->use_shared_memory = useSharedMemory;
+    }
     
     void AgentHost::listenForMissionControlMessages( int port )
     {
@@ -273,31 +335,37 @@ namespace malmo
         this->mission_control_server->start();
     }
     
-    void AgentHost::listenForVideo( int port, short width, short height, short channels )
+    void AgentHost::listenForVideo( boost::shared_ptr<VideoServer>& video_server, int stream, int port, short width, short height, short channels, const std::string& codec, bool frame_header, int depth_plane_bytes )
     {
-        if( !this->video_server || 
-            (port != 0 && this->video_server->getPort() != port ) ||
-            this->video_server->getWidth() != width || 
-            this->video_server->getHeight() != height ||
-            this->video_server->getChannels() != channels )
+        // only the main stream is recorded to the MP4 file
+        const bool record_mp4 = stream == 0 && this->current_mission_record->isRecordingMP4();
+
+        if( !video_server || 
+            (port != 0 && video_server->getPort() != port ) ||
+            video_server->getWidth() != width || 
+            video_server->getHeight() != height ||
+            video_server->getChannels() != channels )
         {
-            this->video_server = boost::make_shared<VideoServer>( this->io_service, port, width, height, channels, boost::bind(&AgentHost::onVideo, this, _1));
+            video_server = boost::make_shared<VideoServer>( this->io_service, port, width, height, channels, boost::bind(&AgentHost::onVideo, this, _1, stream));
 
-            if (this->current_mission_record->isRecordingMP4()){
-                this->video_server->recordMP4(this->current_mission_record->getMP4Path(), this->current_mission_record->getMP4FramesPerSecond(), this->current_mission_record->getMP4BitRate());
+            if (record_mp4){
+                video_server->recordMP4(this->current_mission_record->getMP4Path(), this->current_mission_record->getMP4FramesPerSecond(), this->current_mission_record->getMP4BitRate());
             }
             
-            this->video_server->start();
+            video_server->start();
         } 
         else {
             // re-use the existing video_server
             // but now we need to re-create the file writers with the new file names
-            if (this->current_mission_record->isRecordingMP4()){
-                this->video_server->recordMP4(this->current_mission_record->getMP4Path(), this->current_mission_record->getMP4FramesPerSecond(), this->current_mission_record->getMP4BitRate());
+            if (record_mp4){
+                video_server->recordMP4(this->current_mission_record->getMP4Path(), this->current_mission_record->getMP4FramesPerSecond(), this->current_mission_record->getMP4BitRate());
             }
         }
         
-        this->video_server->startRecording();
+        video_server->setDepthPlane(depth_plane_bytes);
+        video_server->setCodec(codec);
+        video_server->setFrameHeader(frame_header);
+        video_server->startRecording();
     }
     
     void AgentHost::listenForRewards( int port )
@@ -313,13 +381,15 @@ namespace malmo
         }
     }
     
-    void AgentHost::listenForObservations( int port )
+    void AgentHost::listenForObservations( int port, const std::string& encoding )
     {
         if( !this->observations_server || ( port != 0 && this->observations_server->getPort() != port ) ) 
         {
             this->observations_server = boost::make_shared<StringServer>(this->io_service, port, boost::bind(&AgentHost::onObservation, this, _1));
             this->observations_server->start();
         }
+        this->observations_server->decodeObservationDeltas(encoding == "delta");
+        this->observations_server->expectBinaryObservations(encoding == "binary");
 
         if (this->current_mission_record->isRecordingObservations()){
             this->observations_server->record(this->current_mission_record->getObservationsPath());
@@ -448,6 +518,9 @@ namespace malmo
         if (this->video_server) {
             this->video_server->stopRecording();
         }
+        for (const auto& server : this->additional_video_servers) {
+            server->stopRecording();
+        }
 
         if (this->observations_server){
             this->observations_server->stopRecording();
@@ -466,14 +539,18 @@ namespace malmo
         }
     }
 
-    void AgentHost::onVideo(TimestampedVideoFrame message)
+    void AgentHost::onVideo(TimestampedVideoFrame message, int stream)
     {
         boost::lock_guard<boost::mutex> scope_guard(this->world_state_mutex);
 
+        message.stream = stream;
         switch( this->video_policy )
         {
             case VideoPolicy::LATEST_FRAME_ONLY:
-                this->world_state.video_frames.clear();
+                // keep the latest frame from each stream
+                this->world_state.video_frames.erase( std::remove_if( this->world_state.video_frames.begin(), this->world_state.video_frames.end(),
+                    [stream]( const boost::shared_ptr<TimestampedVideoFrame>& frame ) { return frame->stream == stream; } ),
+                    this->world_state.video_frames.end() );
                 this->world_state.video_frames.push_back( boost::make_shared<TimestampedVideoFrame>( message ) );
                 break;
             case VideoPolicy::KEEP_ALL_FRAMES:
@@ -499,6 +576,11 @@ namespace malmo
             error_message.text = oss.str();
             this->world_state.errors.push_back(boost::make_shared<TimestampedString>(error_message));
         }
+        catch( const std::runtime_error& e ) {
+            TimestampedString error_message(message);
+            error_message.text = std::string("Error parsing Reward message: ") + e.what();
+            this->world_state.errors.push_back(boost::make_shared<TimestampedString>(error_message));
+        }
     }
         
     void AgentHost::processReceivedReward( TimestampedReward reward )
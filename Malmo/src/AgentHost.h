@@ -27,6 +27,7 @@
 #include "MissionInitSpec.h"
 #include "MissionRecord.h"
 #include "MissionSpec.h"
+#include "SharedMemoryServer.h"
 #include "StringServer.h"
 #include "VideoServer.h"
 #include "WorldState.h"
@@ -101,6 +102,11 @@ namespace malmo
             //! Specifies how you want to deal with multiple observations.
             //! \param observationsPolicy How you want to deal with multiple observations coming in asynchronously.
             void setObservationsPolicy(ObservationsPolicy observationsPolicy);
+
+            //! Specifies whether to offer the Mod shared memory for video, observations and rewards, instead of TCP.
+            //! Only helps if the Mod is on the same machine; otherwise it will carry on using TCP. Takes effect from the next mission.
+            //! \param useSharedMemory True to offer shared memory.
+            void setSharedMemoryTransport(bool useSharedMemory);
             
             //! Sends a command to the game client.
             //! See the mission handlers documentation for the permitted commands for your chosen command handler.
@@ -121,12 +127,12 @@ namespace malmo
             void searchThroughClientPool( const ClientPool& client_pool, bool looking_for_server );
         
             void listenForMissionControlMessages( int port );
-            void listenForVideo( int port, short width, short height, short channels );
+            void listenForVideo( boost::shared_ptr<VideoServer>& video_server, int stream, int port, short width, short height, short channels, const std::string& codec, bool frame_header, int depth_plane_bytes );
             void listenForRewards( int port );
-            void listenForObservations( int port );
+            void listenForObservations( int port, const std::string& encoding );
             
             void onMissionControlMessage(TimestampedString message);
-            void onVideo(TimestampedVideoFrame message);
+            void onVideo(TimestampedVideoFrame message, int stream);
             void onReward(TimestampedString message);
             void onObservation(TimestampedString message);
             
@@ -139,8 +145,10 @@ namespace malmo
             boost::asio::io_service io_service;
             boost::shared_ptr<StringServer>   mission_control_server;
             boost::shared_ptr<VideoServer>    video_server;
+            std::vector<boost::shared_ptr<VideoServer>> additional_video_servers;
             boost::shared_ptr<StringServer>   rewards_server;
             boost::shared_ptr<StringServer>   observations_server;
+            boost::shared_ptr<SharedMemoryServer> shared_memory_server;
             boost::optional<boost::asio::io_service::work> work;
             std::vector<boost::shared_ptr<boost::thread>> background_threads;
 
@@ -150,6 +158,7 @@ namespace malmo
             VideoPolicy        video_policy;
             RewardsPolicy      rewards_policy;
             ObservationsPolicy observations_policy;
+            bool               use_shared_memory;
             
             WorldState world_state;
             mutable boost::mutex world_state_mutex;
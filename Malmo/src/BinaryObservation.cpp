@@ -0,0 +1,431 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Local:
+#include "BinaryObservation.h"
+
+// STL:
+#include <cmath>
+#include <cstdint>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <sstream>
+#include <stdexcept>
+
+namespace
+{
+    // These must match the Mod's BinaryObservationEncoder:
+    const unsigned char MAGIC[] = { 'M', 'B', 'O', 1 };
+    enum Type {
+        TYPE_NULL = 0
+        , TYPE_BOOLEAN = 1
+        , TYPE_INT32 = 2
+        , TYPE_INT64 = 3
+        , TYPE_FLOAT32 = 4
+        , TYPE_FLOAT64 = 5
+        , TYPE_STRING = 6
+        , TYPE_OBJECT = 7
+        , TYPE_INT32_ARRAY = 8
+        , TYPE_FLOAT64_ARRAY = 9
+        , TYPE_STRING_ARRAY = 10
+        , TYPE_JSON = 11
+    };
+
+    void checkSize(const std::vector<unsigned char>& data, size_t offset, size_t bytes)
+    {
+        if (offset > data.size() || data.size() - offset < bytes)
+            throw std::runtime_error("Malformed binary observation.");
+    }
+
+    uint64_t readLittleEndian(const std::vector<unsigned char>& data, size_t offset, size_t bytes)
+    {
+        checkSize(data, offset, bytes);
+        uint64_t value = 0;
+        for (size_t i = 0; i < bytes; i++)
+            value |= static_cast<uint64_t>(data[offset + i]) << (8 * i);
+        return value;
+    }
+
+    int32_t readInt32(const std::vector<unsigned char>& data, size_t offset)
+    {
+        return static_cast<int32_t>(static_cast<uint32_t>(readLittleEndian(data, offset, 4)));
+    }
+
+    int64_t readInt64(const std::vector<unsigned char>& data, size_t offset)
+    {
+        return static_cast<int64_t>(readLittleEndian(data, offset, 8));
+    }
+
+    float readFloat32(const std::vector<unsigned char>& data, size_t offset)
+    {
+        uint32_t bits = static_cast<uint32_t>(readLittleEndian(data, offset, 4));
+        float value;
+        std::memcpy(&value, &bits, sizeof(value));
+        return value;
+    }
+
+    double readFloat64(const std::vector<unsigned char>& data, size_t offset)
+    {
+        uint64_t bits = readLittleEndian(data, offset, 8);
+        double value;
+        std::memcpy(&value, &bits, sizeof(value));
+        return value;
+    }
+
+    size_t readLength(const std::vector<unsigned char>& data, size_t offset)
+    {
+        int32_t length = readInt32(data, offset);
+        if (length < 0)
+            throw std::runtime_error("Malformed binary observation.");
+        return static_cast<size_t>(length);
+    }
+
+    std::string readString(const std::vector<unsigned char>& data, size_t offset)
+    {
+        size_t length = readLength(data, offset);
+        checkSize(data, offset + 4, length);
+        return std::string(data.begin() + offset + 4, data.begin() + offset + 4 + length);
+    }
+
+    void writeJsonString(std::ostream& os, const std::string& text)
+    {
+        os << '"';
+        for (std::string::const_iterator it = text.begin(); it != text.end(); ++it)
+        {
+            const unsigned char c = static_cast<unsigned char>(*it);
+            if (c == '"' || c == '\\')
+                os << '\\' << *it;
+            else if (c < 0x20)
+            {
+                char escaped[8];
+                std::sprintf(escaped, "\\u%04x", c);
+                os << escaped;
+            }
+            else
+                os << *it;
+        }
+        os << '"';
+    }
+
+    //! Writes a number with as few digits as will read back as the same value.
+    void writeJsonNumber(std::ostream& os, double value, bool single_precision)
+    {
+        if (!std::isfinite(value))
+        {
+            os << "null";
+            return;
+        }
+        char text[32];
+        for (int precision = single_precision ? 6 : 15; precision <= 17; precision++)
+        {
+            std::sprintf(text, "%.*g", precision, value);
+            const double parsed = std::strtod(text, 0);
+            if (single_precision ? static_cast<float>(parsed) == static_cast<float>(value) : parsed == value)
+                break;
+        }
+        os << text;
+    }
+}
+
+namespace malmo
+{
+    BinaryObservation::BinaryObservation(const TimestampedString& observation)
+        : data(observation.data)
+    {
+        index();
+    }
+
+    BinaryObservation::BinaryObservation(const std::vector<unsigned char>& data)
+        : data(data)
+    {
+        index();
+    }
+
+    void BinaryObservation::index()
+    {
+        checkSize(this->data, 0, sizeof(MAGIC));
+        if (std::memcmp(&this->data[0], MAGIC, sizeof(MAGIC)) != 0)
+            throw std::runtime_error("Not a binary observation - check that the observation_encoding of the AgentHandlers is \"binary\".");
+
+        size_t offset = sizeof(MAGIC);
+        const size_t count = readLength(this->data, offset);
+        offset += 4;
+        for (size_t i = 0; i < count; i++)
+        {
+            std::string key = readString(this->data, offset);
+            offset += 4 + key.size();
+            checkSize(this->data, offset, 1);
+            Value value;
+            value.type = this->data[offset];
+            value.offset = offset + 1;
+            offset = skipValue(value.type, value.offset);
+            if (this->values.find(key) == this->values.end())
+                this->ordered_keys.push_back(key);
+            this->values[key] = value;
+        }
+    }
+
+    size_t BinaryObservation::skipValue(unsigned char type, size_t offset) const
+    {
+        size_t end = offset;
+        switch (type)
+        {
+            case TYPE_NULL:         break;
+            case TYPE_BOOLEAN:      end += 1; break;
+            case TYPE_INT32:        end += 4; break;
+            case TYPE_INT64:        end += 8; break;
+            case TYPE_FLOAT32:      end += 4; break;
+            case TYPE_FLOAT64:      end += 8; break;
+            case TYPE_STRING:
+            case TYPE_JSON:         end += 4 + readLength(this->data, offset); break;
+            case TYPE_OBJECT:       return skipObject(offset);
+            case TYPE_INT32_ARRAY:  end += 4 + 4 * readLength(this->data, offset); break;
+            case TYPE_FLOAT64_ARRAY:end += 4 + 8 * readLength(this->data, offset); break;
+            case TYPE_STRING_ARRAY:
+            {
+                const size_t count = readLength(this->data, offset);
+                end += 4;
+                for (size_t i = 0; i < count; i++)
+                    end += 4 + readLength(this->data, end);
+                break;
+            }
+            default:
+                throw std::runtime_error("Malformed binary observation.");
+        }
+        checkSize(this->data, offset, end - offset);
+        return end;
+    }
+
+    size_t BinaryObservation::skipObject(size_t offset) const
+    {
+        const size_t count = readLength(this->data, offset);
+        offset += 4;
+        for (size_t i = 0; i < count; i++)
+        {
+            offset += 4 + readLength(this->data, offset);
+            checkSize(this->data, offset, 1);
+            offset = skipValue(this->data[offset], offset + 1);
+        }
+        return offset;
+    }
+
+    const BinaryObservation::Value& BinaryObservation::find(const std::string& key) const
+    {
+        std::map<std::string, Value>::const_iterator it = this->values.find(key);
+        if (it == this->values.end())
+            throw std::runtime_error("The observation has no value called " + key);
+        return it->second;
+    }
+
+    std::vector<std::string> BinaryObservation::keys() const
+    {
+        return this->ordered_keys;
+    }
+
+    bool BinaryObservation::has(const std::string& key) const
+    {
+        return this->values.find(key) != this->values.end();
+    }
+
+    std::string BinaryObservation::get(const std::string& key) const
+    {
+        const Value& value = find(key);
+        if (value.type == TYPE_STRING)
+            return readString(this->data, value.offset);
+        std::ostringstream oss;
+        writeJson(oss, value.type, value.offset);
+        return oss.str();
+    }
+
+    int BinaryObservation::getInt(const std::string& key) const
+    {
+        const Value& value = find(key);
+        switch (value.type)
+        {
+            case TYPE_INT32:    return readInt32(this->data, value.offset);
+            case TYPE_INT64:    return static_cast<int>(readInt64(this->data, value.offset));
+            default:            return static_cast<int>(getDouble(key));
+        }
+    }
+
+    double BinaryObservation::getDouble(const std::string& key) const
+    {
+        const Value& value = find(key);
+        switch (value.type)
+        {
+            case TYPE_INT32:    return readInt32(this->data, value.offset);
+            case TYPE_INT64:    return static_cast<double>(readInt64(this->data, value.offset));
+            case TYPE_FLOAT32:  return readFloat32(this->data, value.offset);
+            case TYPE_FLOAT64:  return readFloat64(this->data, value.offset);
+            default:            throw std::runtime_error("The observation " + key + " is not a number.");
+        }
+    }
+
+    bool BinaryObservation::getBool(const std::string& key) const
+    {
+        const Value& value = find(key);
+        if (value.type != TYPE_BOOLEAN)
+            throw std::runtime_error("The observation " + key + " is not a boolean.");
+        return this->data[value.offset] != 0;
+    }
+
+    std::vector<int> BinaryObservation::getInts(const std::string& key) const
+    {
+        const Value& value = find(key);
+        std::vector<int> result;
+        if (value.type == TYPE_INT32_ARRAY)
+        {
+            const size_t count = readLength(this->data, value.offset);
+            result.reserve(count);
+            for (size_t i = 0; i < count; i++)
+                result.push_back(readInt32(this->data, value.offset + 4 + 4 * i));
+        }
+        else
+        {
+            const std::vector<double> numbers = getDoubles(key);
+            result.assign(numbers.begin(), numbers.end());
+        }
+        return result;
+    }
+
+    std::vector<double> BinaryObservation::getDoubles(const std::string& key) const
+    {
+        const Value& value = find(key);
+        std::vector<double> result;
+        const bool is_array = value.type == TYPE_INT32_ARRAY || value.type == TYPE_FLOAT64_ARRAY || value.type == TYPE_STRING_ARRAY;
+        const size_t count = is_array ? readLength(this->data, value.offset) : 0;
+        if (value.type == TYPE_INT32_ARRAY)
+        {
+            result.reserve(count);
+            for (size_t i = 0; i < count; i++)
+                result.push_back(readInt32(this->data, value.offset + 4 + 4 * i));
+        }
+        else if (value.type == TYPE_FLOAT64_ARRAY)
+        {
+            result.reserve(count);
+            for (size_t i = 0; i < count; i++)
+                result.push_back(readFloat64(this->data, value.offset + 4 + 8 * i));
+        }
+        else if (!is_array || count != 0)
+        {
+            throw std::runtime_error("The observation " + key + " is not an array of numbers.");
+        }
+        return result;
+    }
+
+    std::vector<std::string> BinaryObservation::getStrings(const std::string& key) const
+    {
+        const Value& value = find(key);
+        std::vector<std::string> result;
+        if (value.type == TYPE_STRING_ARRAY)
+        {
+            const size_t count = readLength(this->data, value.offset);
+            result.reserve(count);
+            size_t offset = value.offset + 4;
+            for (size_t i = 0; i < count; i++)
+            {
+                result.push_back(readString(this->data, offset));
+                offset += 4 + result.back().size();
+            }
+        }
+        else if ((value.type != TYPE_INT32_ARRAY && value.type != TYPE_FLOAT64_ARRAY) || readLength(this->data, value.offset) != 0)
+        {
+            throw std::runtime_error("The observation " + key + " is not an array of strings.");
+        }
+        return result;
+    }
+
+    std::string BinaryObservation::toJson() const
+    {
+        std::ostringstream oss;
+        writeObjectJson(oss, sizeof(MAGIC));
+        return oss.str();
+    }
+
+    void BinaryObservation::writeObjectJson(std::ostream& os, size_t offset) const
+    {
+        const size_t count = readLength(this->data, offset);
+        offset += 4;
+        os << '{';
+        for (size_t i = 0; i < count; i++)
+        {
+            const std::string key = readString(this->data, offset);
+            offset += 4 + key.size();
+            checkSize(this->data, offset, 1);
+            const unsigned char type = this->data[offset];
+            if (i > 0)
+                os << ',';
+            writeJsonString(os, key);
+            os << ':';
+            writeJson(os, type, offset + 1);
+            offset = skipValue(type, offset + 1);
+        }
+        os << '}';
+    }
+
+    void BinaryObservation::writeJson(std::ostream& os, unsigned char type, size_t offset) const
+    {
+        switch (type)
+        {
+            case TYPE_NULL:     os << "null"; break;
+            case TYPE_BOOLEAN:  os << (this->data[offset] ? "true" : "false"); break;
+            case TYPE_INT32:    os << readInt32(this->data, offset); break;
+            case TYPE_INT64:    os << readInt64(this->data, offset); break;
+            case TYPE_FLOAT32:  writeJsonNumber(os, readFloat32(this->data, offset), true); break;
+            case TYPE_FLOAT64:  writeJsonNumber(os, readFloat64(this->data, offset), false); break;
+            case TYPE_STRING:   writeJsonString(os, readString(this->data, offset)); break;
+            case TYPE_JSON:     os << readString(this->data, offset); break;
+            case TYPE_OBJECT:   writeObjectJson(os, offset); break;
+            case TYPE_INT32_ARRAY:
+            case TYPE_FLOAT64_ARRAY:
+            case TYPE_STRING_ARRAY:
+            {
+                const size_t count = readLength(this->data, offset);
+                offset += 4;
+                os << '[';
+                for (size_t i = 0; i < count; i++)
+                {
+                    if (i > 0)
+                        os << ',';
+                    if (type == TYPE_INT32_ARRAY)
+                    {
+                        os << readInt32(this->data, offset);
+                        offset += 4;
+                    }
+                    else if (type == TYPE_FLOAT64_ARRAY)
+                    {
+                        writeJsonNumber(os, readFloat64(this->data, offset), false);
+                        offset += 8;
+                    }
+                    else
+                    {
+                        const std::string text = readString(this->data, offset);
+                        writeJsonString(os, text);
+                        offset += 4 + text.size();
+                    }
+                }
+                os << ']';
+                break;
+            }
+            default:
+                throw std::runtime_error("Malformed binary observation.");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+#ifndef _BINARYOBSERVATION_H_
+#define _BINARYOBSERVATION_H_
+
+// Local:
+#include "TimestampedString.h"
+
+// STL:
+#include <map>
+#include <string>
+#include <vector>
+
+namespace malmo
+{
+    //! An observation sent by the Mod with the "binary" observation encoding.
+    //! The values are read straight from the message, without any JSON parsing - only the keys are indexed.
+    //! Numbers are converted to the type asked for; values that aren't strings or numbers can be fetched as JSON text with get().
+    class BinaryObservation
+    {
+        public:
+
+            //! Constructs a binary observation from one of the observations in a WorldState.
+            //! \param observation The observation. Its data must hold the message from the Mod.
+            BinaryObservation(const TimestampedString& observation);
+
+            //! Constructs a binary observation from a message from the Mod.
+            //! \param data The message.
+            BinaryObservation(const std::vector<unsigned char>& data);
+
+            //! Gets the keys of the observation, in the order the Mod sent them.
+            //! \returns The keys as a list of strings.
+            std::vector<std::string> keys() const;
+
+            //! Checks whether the observation has a value for a key.
+            //! \param key The name of the value.
+            //! \returns True if the value is present.
+            bool has(const std::string& key) const;
+
+            //! Gets a value as a string.
+            //! \param key The name of the value.
+            //! \returns The string, if the value is one, or else the value as JSON text.
+            std::string get(const std::string& key) const;
+
+            //! Gets a number as an integer.
+            //! \param key The name of the value.
+            //! \returns The number, truncated if it isn't an integer.
+            int getInt(const std::string& key) const;
+
+            //! Gets a number as a double.
+            //! \param key The name of the value.
+            //! \returns The number.
+            double getDouble(const std::string& key) const;
+
+            //! Gets a boolean value.
+            //! \param key The name of the value.
+            //! \returns The value.
+            bool getBool(const std::string& key) const;
+
+            //! Gets an array of integers - eg a grid with the "palette" encoding.
+            //! \param key The name of the value.
+            //! \returns The integers.
+            std::vector<int> getInts(const std::string& key) const;
+
+            //! Gets an array of numbers.
+            //! \param key The name of the value.
+            //! \returns The numbers.
+            std::vector<double> getDoubles(const std::string& key) const;
+
+            //! Gets an array of strings - eg a grid from ObservationFromGrid.
+            //! \param key The name of the value.
+            //! \returns The strings.
+            std::vector<std::string> getStrings(const std::string& key) const;
+
+            //! Returns the whole observation as JSON text - as it would have been sent with the "full" observation encoding,
+            //! except in the formatting of some numbers.
+            std::string toJson() const;
+
+        private:
+
+            struct Value
+            {
+                unsigned char type;
+                size_t offset;  // of the value, after the type
+            };
+
+            void index();
+            size_t skipValue(unsigned char type, size_t offset) const;
+            size_t skipObject(size_t offset) const;
+            const Value& find(const std::string& key) const;
+            void writeJson(std::ostream& os, unsigned char type, size_t offset) const;
+            void writeObjectJson(std::ostream& os, size_t offset) const;
+
+            std::vector<unsigned char> data;
+            std::vector<std::string> ordered_keys;
+            std::map<std::string, Value> values;
+    };
+}
+
+#endif
@@ -21,6 +21,7 @@
 %{
   // Malmo:
   #include <AgentHost.h>
+  #include <BinaryObservation.h>
   #include <ClientPool.h>
   #include <MissionSpec.h>
   #include <ParameterSet.h>
@@ -57,6 +58,9 @@
 %template(TimestampedRewardVector)     std::vector< boost::shared_ptr< TimestampedReward > >;
 %template(TimestampedStringVector)     std::vector< boost::shared_ptr< TimestampedString > >;
 %template(ByteVector)                  std::vector<unsigned char>;
+%template(FloatVector)                 std::vector<float>;
+%template(IntVector)                   std::vector<int>;
+%template(DoubleVector)                std::vector<double>;
 
 namespace boost::posix_time
 {
@@ -218,6 +222,8 @@ public:
 
   void setObservationsPolicy(ObservationsPolicy observationsPolicy);
 
+  void setSharedMemoryTransport(bool useSharedMemory);
+
   void sendCommand(std::string command);
 };
 
@@ -361,6 +367,8 @@ public:
   
   void allowAllChatCommands();
   
+  void allowAllObservationCommands();
+  
   int getNumberOfAgents() const;
 
   bool isVideoRequested(int role) const;
@@ -370,6 +378,14 @@ public:
   int getVideoHeight(int role) const;
 
   int getVideoChannels(int role) const;
+
+  int getNumberOfAdditionalVideoStreams(int role) const;
+
+  int getAdditionalVideoWidth(int role, int stream) const;
+
+  int getAdditionalVideoHeight(int role, int stream) const;
+
+  int getAdditionalVideoChannels(int role, int stream) const;
 };
 
 struct TimestampedString {
@@ -382,6 +398,41 @@ public:
   const std::string text;
 };
 
+%exception {
+  try {
+    $action
+  } catch (const std::exception& e) {
+    SWIG_CSharpSetPendingException(SWIG_CSharpApplicationException, e.what());
+  }
+}
+
+class BinaryObservation {
+public:
+  BinaryObservation(const TimestampedString& observation);
+
+  std::vector<std::string> keys() const;
+
+  bool has(const std::string& key) const;
+
+  std::string get(const std::string& key) const;
+
+  int getInt(const std::string& key) const;
+
+  double getDouble(const std::string& key) const;
+
+  bool getBool(const std::string& key) const;
+
+  std::vector<int> getInts(const std::string& key) const;
+
+  std::vector<double> getDoubles(const std::string& key) const;
+
+  std::vector<std::string> getStrings(const std::string& key) const;
+
+  std::string toJson() const;
+};
+
+%noexception;
+
 %nodefaultctor TimestampedReward;
 struct TimestampedReward {
   const boost::posix_time::ptime timestamp;
@@ -413,7 +464,27 @@ public:
 
   const short channels;
 
+  const short stream;
+
+  const int64_t world_tick;
+
+  const int64_t frame_index;
+
+  const int64_t frame_timestamp_ns;
+
+  const double xPos;
+
+  const double yPos;
+
+  const double zPos;
+
+  const float yaw;
+
+  const float pitch;
+
   const std::vector<unsigned char> pixels;
+
+  const std::vector<float> depth;
 };
 
 struct ClientInfo {
@@ -0,0 +1,269 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Local:
+#include "DeltaObservationDecoder.h"
+
+// STL:
+#include <cctype>
+#include <cstdlib>
+
+namespace
+{
+    const std::string DELTA_PREFIX = "{\"ObservationDelta\":";
+
+    size_t skipWhitespace(const std::string& json, size_t i)
+    {
+        while (i < json.size() && std::isspace(static_cast<unsigned char>(json[i])))
+            i++;
+        return i;
+    }
+
+    //! Returns the index just past the JSON value starting at i, or std::string::npos if it doesn't end.
+    size_t skipValue(const std::string& json, size_t i)
+    {
+        int depth = 0;
+        while (i < json.size())
+        {
+            const char c = json[i];
+            if (c == '"')
+            {
+                i++;
+                while (i < json.size() && json[i] != '"')
+                    i += (json[i] == '\\') ? 2 : 1;
+                if (i >= json.size())
+                    return std::string::npos;
+            }
+            else if (c == '{' || c == '[')
+            {
+                depth++;
+            }
+            else if (c == '}' || c == ']')
+            {
+                if (depth == 0)
+                    return i;
+                depth--;
+            }
+            else if (depth == 0 && (c == ',' || c == ':' || std::isspace(static_cast<unsigned char>(c))))
+            {
+                return i;
+            }
+            i++;
+            if (depth == 0 && (c == '"' || c == '}' || c == ']'))
+                return i;
+        }
+        return depth == 0 ? i : std::string::npos;
+    }
+
+    //! Splits a JSON object (if keys is not null) or array into its top-level parts, as text. Keys keep their quotes.
+    bool split(const std::string& json, std::vector<std::string>* keys, std::vector<std::string>& values)
+    {
+        const char open = keys ? '{' : '[';
+        const char close = keys ? '}' : ']';
+        size_t i = skipWhitespace(json, 0);
+        if (i >= json.size() || json[i] != open)
+            return false;
+        i = skipWhitespace(json, i + 1);
+        if (i < json.size() && json[i] == close)
+            return true;
+        while (i < json.size())
+        {
+            if (keys)
+            {
+                const size_t key_end = skipValue(json, i);
+                if (key_end == std::string::npos || json[i] != '"')
+                    return false;
+                keys->push_back(json.substr(i, key_end - i));
+                i = skipWhitespace(json, key_end);
+                if (i >= json.size() || json[i] != ':')
+                    return false;
+                i = skipWhitespace(json, i + 1);
+            }
+            const size_t end = skipValue(json, i);
+            if (end == std::string::npos || end <= i)
+                return false;
+            values.push_back(json.substr(i, end - i));
+            i = skipWhitespace(json, end);
+            if (i >= json.size())
+                return false;
+            if (json[i] == close)
+                return true;
+            if (json[i] != ',')
+                return false;
+            i = skipWhitespace(json, i + 1);
+        }
+        return false;
+    }
+}
+
+namespace malmo
+{
+    DeltaObservationDecoder::DeltaObservationDecoder()
+        : enabled(false)
+        , have_observation(false)
+    {
+    }
+
+    void DeltaObservationDecoder::setEnabled(bool enabled)
+    {
+        this->enabled = enabled;
+        this->have_observation = false;
+        this->members.clear();
+        this->index.clear();
+    }
+
+    bool DeltaObservationDecoder::decode(std::string& text)
+    {
+        if (!this->enabled)
+            return true;
+
+        if (text.compare(0, DELTA_PREFIX.size(), DELTA_PREFIX) != 0)
+        {
+            // A full observation - remember it for the deltas that follow, and pass it on as it is.
+            std::vector<std::string> keys, values;
+            this->have_observation = split(text, &keys, values);
+            this->members.clear();
+            this->index.clear();
+            for (size_t i = 0; this->have_observation && i < keys.size(); i++)
+            {
+                this->index[keys[i]] = this->members.size();
+                this->members.push_back(std::make_pair(keys[i], values[i]));
+            }
+            return true;
+        }
+
+        if (!this->have_observation)
+            return false;
+
+        std::vector<std::string> keys, values;
+        if (!split(text, &keys, values) || values.size() != 1 || !applyDelta(values[0]))
+        {
+            // Can't trust what we have any more - wait for the next full observation.
+            this->have_observation = false;
+            return false;
+        }
+        rebuild(text);
+        return true;
+    }
+
+    bool DeltaObservationDecoder::applyDelta(const std::string& delta)
+    {
+        std::vector<std::string> parts, contents;
+        if (!split(delta, &parts, contents))
+            return false;
+
+        for (size_t p = 0; p < parts.size(); p++)
+        {
+            if (parts[p] == "\"set\"")
+            {
+                std::vector<std::string> keys, values;
+                if (!split(contents[p], &keys, values))
+                    return false;
+                for (size_t i = 0; i < keys.size(); i++)
+                {
+                    std::map<std::string, size_t>::const_iterator it = this->index.find(keys[i]);
+                    if (it != this->index.end())
+                    {
+                        this->members[it->second].second = values[i];
+                    }
+                    else
+                    {
+                        this->index[keys[i]] = this->members.size();
+                        this->members.push_back(std::make_pair(keys[i], values[i]));
+                    }
+                }
+            }
+            else if (parts[p] == "\"cells\"")
+            {
+                std::vector<std::string> keys, values;
+                if (!split(contents[p], &keys, values))
+                    return false;
+                for (size_t i = 0; i < keys.size(); i++)
+                {
+                    if (!applyCells(keys[i], values[i]))
+                        return false;
+                }
+            }
+            else if (parts[p] == "\"removed\"")
+            {
+                std::vector<std::string> keys;
+                if (!split(contents[p], 0, keys))
+                    return false;
+                for (size_t i = 0; i < keys.size(); i++)
+                {
+                    std::map<std::string, size_t>::iterator it = this->index.find(keys[i]);
+                    if (it == this->index.end())
+                        continue;
+                    const size_t position = it->second;
+                    this->members.erase(this->members.begin() + position);
+                    this->index.erase(it);
+                    for (std::map<std::string, size_t>::iterator later = this->index.begin(); later != this->index.end(); ++later)
+                    {
+                        if (later->second > position)
+                            later->second--;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    bool DeltaObservationDecoder::applyCells(const std::string& key, const std::string& changes)
+    {
+        std::map<std::string, size_t>::const_iterator it = this->index.find(key);
+        if (it == this->index.end())
+            return false;
+        std::string& array = this->members[it->second].second;
+
+        std::vector<std::string> cells, pairs;
+        if (!split(array, 0, cells) || !split(changes, 0, pairs) || pairs.size() % 2 != 0)
+            return false;
+        for (size_t i = 0; i < pairs.size(); i += 2)
+        {
+            const size_t cell = static_cast<size_t>(std::strtoul(pairs[i].c_str(), 0, 10));
+            if (cell >= cells.size())
+                return false;
+            cells[cell] = pairs[i + 1];
+        }
+
+        array = "[";
+        for (size_t i = 0; i < cells.size(); i++)
+        {
+            if (i > 0)
+                array += ',';
+            array += cells[i];
+        }
+        array += ']';
+        return true;
+    }
+
+    void DeltaObservationDecoder::rebuild(std::string& text) const
+    {
+        text = "{";
+        for (size_t i = 0; i < this->members.size(); i++)
+        {
+            if (i > 0)
+                text += ',';
+            text += this->members[i].first;
+            text += ':';
+            text += this->members[i].second;
+        }
+        text += '}';
+    }
+}
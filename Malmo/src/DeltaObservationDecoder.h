@@ -0,0 +1,65 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+#ifndef _DELTAOBSERVATIONDECODER_H_
+#define _DELTAOBSERVATIONDECODER_H_
+
+// STL:
+#include <map>
+#include <string>
+#include <utility>
+#include <vector>
+
+namespace malmo
+{
+    //! Rebuilds complete observations from those sent by the Mod with the "delta" observation encoding.
+    //! Full observations are passed through unchanged; deltas are applied to the previous observation.
+    //! Observations are only split into their top-level elements, and arrays into their entries - nothing is parsed into a JSON tree.
+    class DeltaObservationDecoder
+    {
+        public:
+
+            //! Constructs a decoder, which will do nothing unless enabled.
+            DeltaObservationDecoder();
+
+            //! Turns decoding on or off, and forgets the previous observation.
+            //! \param enabled True if the Mod will send deltas - ie the observation_encoding of the AgentHandlers is "delta".
+            void setEnabled(bool enabled);
+
+            //! Decodes a message from the Mod, in place.
+            //! \param text The message; replaced by the complete observation.
+            //! \returns False if the message couldn't be decoded - eg a delta with no full observation before it.
+            bool decode(std::string& text);
+
+        private:
+
+            typedef std::vector< std::pair<std::string, std::string> > Members;
+
+            bool applyDelta(const std::string& delta);
+            bool applyCells(const std::string& key, const std::string& changes);
+            void rebuild(std::string& text) const;
+
+            bool enabled;
+            bool have_observation;
+            Members members;                            // the previous observation, in order
+            std::map<std::string, size_t> index;        // where each key is in members
+    };
+}
+
+#endif
@@ -21,6 +21,7 @@
 %{
   // Malmo:
   #include <AgentHost.h>
+  #include <BinaryObservation.h>
   #include <ClientPool.h>
   #include <MissionSpec.h>
   #include <ParameterSet.h>
@@ -56,6 +57,9 @@
 %template(TimestampedRewardVector)     std::vector< boost::shared_ptr< TimestampedReward > >;
 %template(TimestampedStringVector)     std::vector< boost::shared_ptr< TimestampedString > >;
 %template(ByteVector)                  std::vector<unsigned char>;
+%template(FloatVector)                 std::vector<float>;
+%template(IntVector)                   std::vector<int>;
+%template(DoubleVector)                std::vector<double>;
 
 %rename("%(camelcase)s", %$isvariable) "";   // send all exposed variables to CamelCase to match Java standards
 
@@ -201,6 +205,8 @@ public:
 
   void setObservationsPolicy(ObservationsPolicy observationsPolicy);
 
+  void setSharedMemoryTransport(bool useSharedMemory);
+
   void sendCommand(std::string command);
 };
 
@@ -346,6 +352,8 @@ public:
   void allowInventoryCommand(const std::string& verb);
     
   void allowAllChatCommands();
+    
+  void allowAllObservationCommands();
   
   int getNumberOfAgents() const;
 
@@ -356,6 +364,14 @@ public:
   int getVideoHeight(int role) const;
 
   int getVideoChannels(int role) const;
+
+  int getNumberOfAdditionalVideoStreams(int role) const;
+
+  int getAdditionalVideoWidth(int role, int stream) const;
+
+  int getAdditionalVideoHeight(int role, int stream) const;
+
+  int getAdditionalVideoChannels(int role, int stream) const;
 };
 
 struct TimestampedString {
@@ -368,6 +384,42 @@ public:
   const std::string text;
 };
 
+%javaexception("java.lang.Exception") {
+  try {
+    $action
+  } catch (const std::exception& e) {
+    jclass clazz = jenv->FindClass("java/lang/Exception");
+    jenv->ThrowNew(clazz, e.what());
+  }
+}
+
+class BinaryObservation {
+public:
+  BinaryObservation(const TimestampedString& observation);
+
+  std::vector<std::string> keys() const;
+
+  bool has(const std::string& key) const;
+
+  std::string get(const std::string& key) const;
+
+  int getInt(const std::string& key) const;
+
+  double getDouble(const std::string& key) const;
+
+  bool getBool(const std::string& key) const;
+
+  std::vector<int> getInts(const std::string& key) const;
+
+  std::vector<double> getDoubles(const std::string& key) const;
+
+  std::vector<std::string> getStrings(const std::string& key) const;
+
+  std::string toJson() const;
+};
+
+%nojavaexception;
+
 %nodefaultctor TimestampedReward;
 struct TimestampedReward {
   const boost::posix_time::ptime timestamp;
@@ -399,7 +451,27 @@ public:
 
   const short channels;
 
+  const short stream;
+
+  const int64_t world_tick;
+
+  const int64_t frame_index;
+
+  const int64_t frame_timestamp_ns;
+
+  const double xPos;
+
+  const double yPos;
+
+  const double zPos;
+
+  const float yaw;
+
+  const float pitch;
+
   const std::vector<unsigned char> pixels;
+
+  const std::vector<float> depth;
 };
 
 struct ClientInfo {
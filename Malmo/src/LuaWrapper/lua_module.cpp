@@ -23,6 +23,7 @@
 #endif
 
 #include <AgentHost.h>
+#include <BinaryObservation.h>
 #include <ClientPool.h>
 #include <MissionSpec.h>
 #include <ParameterSet.h>
@@ -87,6 +88,24 @@ template<typename T> long getPosixTimeAsLong(T* obj)
     return dur.total_milliseconds();
 }
 
+// Lua numbers are doubles, so 64-bit fields are returned as those - frame_timestamp_ns is only accurate to a microsecond or so:
+double getWorldTick(TimestampedVideoFrame* frame) { return static_cast<double>(frame->world_tick); }
+double getFrameIndex(TimestampedVideoFrame* frame) { return static_cast<double>(frame->frame_index); }
+double getFrameTimestampNs(TimestampedVideoFrame* frame) { return static_cast<double>(frame->frame_timestamp_ns); }
+
+// The arrays from a BinaryObservation are returned as Lua tables:
+template<typename T> luabind::object vectorToTable(lua_State* L, const std::vector<T>& values)
+{
+    luabind::object table = luabind::newtable(L);
+    for (size_t i = 0; i < values.size(); i++)
+        table[i + 1] = values[i];
+    return table;
+}
+luabind::object getObservationKeys(const BinaryObservation& obs, lua_State* L) { return vectorToTable(L, obs.keys()); }
+luabind::object getObservationInts(const BinaryObservation& obs, const std::string& key, lua_State* L) { return vectorToTable(L, obs.getInts(key)); }
+luabind::object getObservationDoubles(const BinaryObservation& obs, const std::string& key, lua_State* L) { return vectorToTable(L, obs.getDoubles(key)); }
+luabind::object getObservationStrings(const BinaryObservation& obs, const std::string& key, lua_State* L) { return vectorToTable(L, obs.getStrings(key)); }
+
 void (AgentHost::*startMissionSimple)(const MissionSpec&, const MissionRecordSpec&) = &AgentHost::startMission;
 void (AgentHost::*startMissionComplex)(const MissionSpec&, const ClientPool&, const MissionRecordSpec&, int, std::string) = &AgentHost::startMission;
 
@@ -158,6 +177,7 @@ MODULE_EXPORT int luaopen_libMalmoLua(lua_State* L)
             .def("setVideoPolicy",        &AgentHost::setVideoPolicy)
             .def("setRewardsPolicy",      &AgentHost::setRewardsPolicy)
             .def("setObservationsPolicy", &AgentHost::setObservationsPolicy)
+            .def("setSharedMemoryTransport", &AgentHost::setSharedMemoryTransport)
             .def("sendCommand",           &AgentHost::sendCommand)
             .def(tostring(const_self))
         ,
@@ -229,11 +249,16 @@ MODULE_EXPORT int luaopen_libMalmoLua(lua_State* L)
             .def("allowAllInventoryCommands", &MissionSpec::allowAllInventoryCommands)
             .def("allowInventoryCommand",     &MissionSpec::allowInventoryCommand)
             .def("allowAllChatCommands",      &MissionSpec::allowAllChatCommands)
+            .def("allowAllObservationCommands", &MissionSpec::allowAllObservationCommands)
             .def("getNumberOfAgents",         &MissionSpec::getNumberOfAgents)
             .def("isVideoRequested",          &MissionSpec::isVideoRequested)
             .def("getVideoWidth",             &MissionSpec::getVideoWidth)
             .def("getVideoHeight",            &MissionSpec::getVideoHeight)
             .def("getVideoChannels",          &MissionSpec::getVideoChannels)
+            .def("getNumberOfAdditionalVideoStreams", &MissionSpec::getNumberOfAdditionalVideoStreams)
+            .def("getAdditionalVideoWidth",   &MissionSpec::getAdditionalVideoWidth)
+            .def("getAdditionalVideoHeight",  &MissionSpec::getAdditionalVideoHeight)
+            .def("getAdditionalVideoChannels", &MissionSpec::getAdditionalVideoChannels)
             .def(tostring(const_self))
         ,
         class_< MissionRecordSpec >("MissionRecordSpec")
@@ -277,6 +302,19 @@ MODULE_EXPORT int luaopen_libMalmoLua(lua_State* L)
             .def_readonly("text",         &TimestampedString::text)
             .def(tostring(const_self))
         ,
+        class_< BinaryObservation >("BinaryObservation")
+            .def(constructor< const TimestampedString& >())
+            .def("keys",                  &getObservationKeys)
+            .def("has",                   &BinaryObservation::has)
+            .def("get",                   &BinaryObservation::get)
+            .def("getInt",                &BinaryObservation::getInt)
+            .def("getDouble",             &BinaryObservation::getDouble)
+            .def("getBool",               &BinaryObservation::getBool)
+            .def("getInts",               &getObservationInts)
+            .def("getDoubles",            &getObservationDoubles)
+            .def("getStrings",            &getObservationStrings)
+            .def("toJson",                &BinaryObservation::toJson)
+        ,
         class_< TimestampedReward, boost::shared_ptr< TimestampedReward > >("TimestampedReward")
             .def("timestamp",             &getPosixTimeAsLong<TimestampedReward>)
             .def("hasValueOnDimension",   &TimestampedReward::hasValueOnDimension)
@@ -289,7 +327,17 @@ MODULE_EXPORT int luaopen_libMalmoLua(lua_State* L)
             .def_readonly("width",        &TimestampedVideoFrame::width)
             .def_readonly("height",       &TimestampedVideoFrame::height)
             .def_readonly("channels",     &TimestampedVideoFrame::channels)
+            .def_readonly("stream",       &TimestampedVideoFrame::stream)
+            .def("world_tick",            &getWorldTick)
+            .def("frame_index",           &getFrameIndex)
+            .def("frame_timestamp_ns",    &getFrameTimestampNs)
+            .def_readonly("xPos",         &TimestampedVideoFrame::xPos)
+            .def_readonly("yPos",         &TimestampedVideoFrame::yPos)
+            .def_readonly("zPos",         &TimestampedVideoFrame::zPos)
+            .def_readonly("yaw",          &TimestampedVideoFrame::yaw)
+            .def_readonly("pitch",        &TimestampedVideoFrame::pitch)
             .def_readonly("pixels",       &TimestampedVideoFrame::pixels,               return_stl_iterator )
+            .def_readonly("depth",        &TimestampedVideoFrame::depth,                return_stl_iterator )
             .def(tostring(const_self))
       #ifdef TORCH
         ,
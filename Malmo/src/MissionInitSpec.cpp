@@ -170,6 +170,34 @@ namespace malmo
     {
         this->mission_init->ClientAgentConnection().AgentRewardsPort() = port;
     }
+
+    int MissionInitSpec::getAgentAdditionalVideoPort(int stream) const
+    {
+        const auto& ports = this->mission_init->ClientAgentConnection().AgentAdditionalVideoPort();
+        return (stream >= 1 && stream <= static_cast<int>(ports.size())) ? ports[stream - 1] : 0;
+    }
+
+    void MissionInitSpec::setAgentAdditionalVideoPort(int stream, int port)
+    {
+        auto& ports = this->mission_init->ClientAgentConnection().AgentAdditionalVideoPort();
+        while (static_cast<int>(ports.size()) < stream)
+            ports.push_back(0);
+        ports[stream - 1] = port;
+    }
+
+    std::string MissionInitSpec::getAgentSharedMemoryPath() const
+    {
+        const auto& path = this->mission_init->ClientAgentConnection().AgentSharedMemoryPath();
+        return path.present() ? std::string(path.get()) : std::string();
+    }
+
+    void MissionInitSpec::setAgentSharedMemoryPath(const std::string& path)
+    {
+        if (path.empty())
+            this->mission_init->ClientAgentConnection().AgentSharedMemoryPath().reset();
+        else
+            this->mission_init->ClientAgentConnection().AgentSharedMemoryPath() = path;
+    }
     
     bool MissionInitSpec::hasMinecraftServerInformation() const
     {
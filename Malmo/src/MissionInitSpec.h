@@ -121,6 +121,24 @@ namespace malmo
             //! \param port The port that the agent listens to rewards on.
             void setAgentRewardsPort(int port);
 
+            //! Gets the port the agent listens to one of its additional video streams on.
+            //! \param stream The stream number, from 1.
+            //! \returns The port, or zero if none has been set.
+            int getAgentAdditionalVideoPort(int stream) const;
+
+            //! Sets the port the agent listens to one of its additional video streams on.
+            //! \param stream The stream number, from 1.
+            //! \param port The port.
+            void setAgentAdditionalVideoPort(int stream, int port);
+
+            //! Gets the directory of the shared memory ring buffers offered to the client.
+            //! \returns The directory, or an empty string if the client should use TCP.
+            std::string getAgentSharedMemoryPath() const;
+
+            //! Offers the client shared memory ring buffers instead of the video, observations and rewards ports.
+            //! \param path The directory containing the ring buffers, or an empty string to use TCP.
+            void setAgentSharedMemoryPath(const std::string& path);
+
             //! Gets whether the Minecraft server port is known.
             //! \returns True if the Minecraft server port is known.
             bool hasMinecraftServerInformation() const;
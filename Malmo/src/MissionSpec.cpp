@@ -37,6 +37,40 @@ namespace malmo
 {
     const int MillisecondsInOneSecond = 1000;
 
+    // The size of the frames a VideoProducer sends, after any cropping and downsampling:
+    static int getOutputWidth(const VideoProducer& vp)
+    {
+        const int width = vp.Crop().present() ? vp.Crop()->width() : vp.Width();
+        return std::max(1, width / vp.downsample());
+    }
+
+    static int getOutputHeight(const VideoProducer& vp)
+    {
+        const int height = vp.Crop().present() ? vp.Crop()->height() : vp.Height();
+        return std::max(1, height / vp.downsample());
+    }
+
+    static int getOutputChannels(const VideoProducer& vp)
+    {
+        return (vp.format() == VideoFormat::luminance ? 1 : 3) + (vp.want_depth() && vp.depth_format() == DepthFormat::scaled ? 1 : 0);
+    }
+
+    // The float depth formats send depth as a separate plane after the pixels:
+    static int getDepthPlaneBytes(const VideoProducer& vp)
+    {
+        if (!vp.want_depth())
+            return 0;
+        switch (vp.depth_format())
+        {
+        case DepthFormat::float16:
+            return 2;
+        case DepthFormat::float32:
+            return 4;
+        default:
+            return 0;
+        }
+    }
+
     MissionSpec::MissionSpec()
     {
         // construct a default mission
@@ -357,6 +391,7 @@ namespace malmo
         this->mission->AgentSection().front().AgentHandlers().AbsoluteMovementCommands().reset();
         this->mission->AgentSection().front().AgentHandlers().InventoryCommands().reset();
         this->mission->AgentSection().front().AgentHandlers().ChatCommands().reset();
+        this->mission->AgentSection().front().AgentHandlers().ObservationCommands().reset();
     }
 
     void MissionSpec::allowAllContinuousMovementCommands()
@@ -433,6 +468,12 @@ namespace malmo
         this->mission->AgentSection().front().AgentHandlers().ChatCommands( cc );
     }
 
+    void MissionSpec::allowAllObservationCommands()
+    {
+        ObservationCommands oc;
+        this->mission->AgentSection().front().AgentHandlers().ObservationCommands( oc );
+    }
+
     // ------------------------------- information ---------------------------------------------------
     
     int MissionSpec::getNumberOfAgents() const
@@ -450,7 +491,7 @@ namespace malmo
         AgentHandlers::VideoProducer_optional& vps = this->mission->AgentSection()[role].AgentHandlers().VideoProducer();
         if( !vps.present() )
             throw runtime_error("MissionInitSpec::getVideoWidth : video has not been requested for this role");
-        return vps->Width();
+        return getOutputWidth(*vps);
     }
     
     int MissionSpec::getVideoHeight(int role) const
@@ -458,7 +499,7 @@ namespace malmo
         AgentHandlers::VideoProducer_optional& vps = this->mission->AgentSection()[role].AgentHandlers().VideoProducer();
         if( !vps.present() )
             throw runtime_error("MissionInitSpec::getVideoHeight : video has not been requested for this role");
-        return vps->Height();
+        return getOutputHeight(*vps);
     }
     
     int MissionSpec::getVideoChannels(int role) const
@@ -466,10 +507,82 @@ namespace malmo
         AgentHandlers::VideoProducer_optional& vps = this->mission->AgentSection()[role].AgentHandlers().VideoProducer();
         if( !vps.present() )
             throw runtime_error("MissionInitSpec::getVideoChannels : video has not been requested for this role");
-        return vps->want_depth() ? 4 : 3;
+        return getOutputChannels(*vps);
     }
     
+    std::string MissionSpec::getVideoCodec(int role) const
+    {
+        AgentHandlers::VideoProducer_optional& vps = this->mission->AgentSection()[role].AgentHandlers().VideoProducer();
+        if( !vps.present() )
+            throw runtime_error("MissionInitSpec::getVideoCodec : video has not been requested for this role");
+        return vps->codec();
+    }
+
+    bool MissionSpec::isVideoFrameHeaderRequested(int role) const
+    {
+        AgentHandlers::VideoProducer_optional& vps = this->mission->AgentSection()[role].AgentHandlers().VideoProducer();
+        if( !vps.present() )
+            throw runtime_error("MissionInitSpec::isVideoFrameHeaderRequested : video has not been requested for this role");
+        return vps->want_frame_header();
+    }
+
+    int MissionSpec::getVideoDepthPlaneBytes(int role) const
+    {
+        AgentHandlers::VideoProducer_optional& vps = this->mission->AgentSection()[role].AgentHandlers().VideoProducer();
+        if( !vps.present() )
+            throw runtime_error("MissionInitSpec::getVideoDepthPlaneBytes : video has not been requested for this role");
+        return getDepthPlaneBytes(*vps);
+    }
+    
+    int MissionSpec::getNumberOfAdditionalVideoStreams(int role) const
+    {
+        const AgentHandlers::AdditionalVideoProducers_optional& avps = this->mission->AgentSection()[role].AgentHandlers().AdditionalVideoProducers();
+        return avps.present() ? static_cast<int>(avps->VideoProducer().size()) : 0;
+    }
+
+    int MissionSpec::getAdditionalVideoWidth(int role, int stream) const
+    {
+        return getOutputWidth(getAdditionalVideoProducer(role, stream));
+    }
+
+    int MissionSpec::getAdditionalVideoHeight(int role, int stream) const
+    {
+        return getOutputHeight(getAdditionalVideoProducer(role, stream));
+    }
+
+    int MissionSpec::getAdditionalVideoChannels(int role, int stream) const
+    {
+        return getOutputChannels(getAdditionalVideoProducer(role, stream));
+    }
+
+    std::string MissionSpec::getAdditionalVideoCodec(int role, int stream) const
+    {
+        return getAdditionalVideoProducer(role, stream).codec();
+    }
+
+    bool MissionSpec::isAdditionalVideoFrameHeaderRequested(int role, int stream) const
+    {
+        return getAdditionalVideoProducer(role, stream).want_frame_header();
+    }
+
+    int MissionSpec::getAdditionalVideoDepthPlaneBytes(int role, int stream) const
+    {
+        return getDepthPlaneBytes(getAdditionalVideoProducer(role, stream));
+    }
+
+    std::string MissionSpec::getObservationEncoding(int role) const
+    {
+        return this->mission->AgentSection()[role].AgentHandlers().observation_encoding();
+    }
+
     // ---------------------------- private functions -----------------------------------------------
+
+    const VideoProducer& MissionSpec::getAdditionalVideoProducer(int role, int stream) const
+    {
+        if (stream < 1 || stream > getNumberOfAdditionalVideoStreams(role))
+            throw runtime_error("MissionSpec::getAdditionalVideoProducer : no such additional video stream for this role");
+        return this->mission->AgentSection()[role].AgentHandlers().AdditionalVideoProducers()->VideoProducer()[stream - 1];
+    }
     
     void MissionSpec::putVerbOnList( ::xsd::cxx::tree::optional< ModifierList >& mlo
                                    , const std::string& verb
@@ -260,6 +260,11 @@ namespace malmo
             //! Adds a chat command handler if none present, with neither an allow-list or a deny-list, thus allowing any command to be sent.
             //! Only applies to the first agent in the mission. For multi-agent missions, specify the command handlers for each in the XML.
             void allowAllChatCommands();
+
+            //! Adds an observation command handler if none present, with neither an allow-list or a deny-list, thus allowing any command to be sent.
+            //! The agent can then turn its observation producers off and on with e.g. "observe ObservationFromGrid 0".
+            //! Only applies to the first agent in the mission. For multi-agent missions, specify the command handlers for each in the XML.
+            void allowAllObservationCommands();
             
             // ------------------------- information --------------------------------------
             
@@ -274,21 +279,86 @@ namespace malmo
             
             //! Returns the width of the requested video for one of the agents involved in this mission.
             //! \param role The agent index. Zero based.
-            //! \returns The width of the video in pixels.
+            //! \returns The width of the video in pixels, after any cropping and downsampling.
             int getVideoWidth(int role) const;
             
             //! Returns the height of the requested video for one of the agents involved in this mission.
             //! \param role The agent index. Zero based.
-            //! \returns The height of the video in pixels.
+            //! \returns The height of the video in pixels, after any cropping and downsampling.
             int getVideoHeight(int role) const;
             
             //! Returns the number of channels in the requested video for one of the agents involved in this mission.
             //! \param role The agent index. Zero based.
-            //! \returns The number of channels in the requested video: 3 for RGB, 4 for RGBD.
+            //! \returns The number of channels in the requested video: 3 for RGB, 4 for RGBD, 1 for luminance, 2 for luminance and depth.
+            //! Depth in one of the float formats doesn't count as a channel.
             int getVideoChannels(int role) const;
 
+            //! Returns the codec the Mod will use to send video for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \returns The codec attribute of the VideoProducer: "raw", "delta" or "jpeg".
+            std::string getVideoCodec(int role) const;
+
+            //! Gets whether the Mod will send a header with the world tick and camera pose in front of each video frame, for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \returns The want_frame_header attribute of the VideoProducer.
+            bool isVideoFrameHeaderRequested(int role) const;
+
+            //! Returns the size of the depth plane the Mod will send after the pixels of each frame, for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \returns The number of bytes per pixel in the depth plane: 2 for float16, 4 for float32, or 0 if depth isn't sent as a plane.
+            int getVideoDepthPlaneBytes(int role) const;
+
+            //! Returns the number of additional video streams requested for one of the agents involved in this mission, through AdditionalVideoProducers.
+            //! \param role The agent index. Zero based.
+            //! \returns The number of additional streams, which will be numbered from 1.
+            int getNumberOfAdditionalVideoStreams(int role) const;
+
+            //! Returns the width of one of the additional video streams for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \param stream The stream number, from 1.
+            //! \returns The width of the video in pixels, after any cropping and downsampling.
+            int getAdditionalVideoWidth(int role, int stream) const;
+
+            //! Returns the height of one of the additional video streams for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \param stream The stream number, from 1.
+            //! \returns The height of the video in pixels, after any cropping and downsampling.
+            int getAdditionalVideoHeight(int role, int stream) const;
+
+            //! Returns the number of channels in one of the additional video streams for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \param stream The stream number, from 1.
+            //! \returns The number of channels in the video: 3 for RGB, 4 for RGBD, 1 for luminance, 2 for luminance and depth.
+            //! Depth in one of the float formats doesn't count as a channel.
+            int getAdditionalVideoChannels(int role, int stream) const;
+
+            //! Returns the codec the Mod will use for one of the additional video streams for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \param stream The stream number, from 1.
+            //! \returns The codec attribute of the VideoProducer: "raw", "delta" or "jpeg".
+            std::string getAdditionalVideoCodec(int role, int stream) const;
+
+            //! Gets whether the Mod will send a header with the world tick and camera pose in front of each frame of one of the additional video streams.
+            //! \param role The agent index. Zero based.
+            //! \param stream The stream number, from 1.
+            //! \returns The want_frame_header attribute of the VideoProducer.
+            bool isAdditionalVideoFrameHeaderRequested(int role, int stream) const;
+
+            //! Returns the size of the depth plane the Mod will send after the pixels of each frame of one of the additional video streams.
+            //! \param role The agent index. Zero based.
+            //! \param stream The stream number, from 1.
+            //! \returns The number of bytes per pixel in the depth plane: 2 for float16, 4 for float32, or 0 if depth isn't sent as a plane.
+            int getAdditionalVideoDepthPlaneBytes(int role, int stream) const;
+
+            //! Returns how the Mod will send the observations for one of the agents involved in this mission.
+            //! \param role The agent index. Zero based.
+            //! \returns The observation_encoding attribute of the AgentHandlers: "full" or "delta".
+            std::string getObservationEncoding(int role) const;
+
             friend std::ostream& operator<<(std::ostream& os, const MissionSpec& ms);
         private:
+
+            const malmo::schemas::VideoProducer& getAdditionalVideoProducer(int role, int stream) const;
         
             void putVerbOnList( ::xsd::cxx::tree::optional< malmo::schemas::ModifierList >& mlo
                               , const std::string& verb
@@ -29,6 +29,7 @@
 #ifdef WRAP_ALE
     #include <ALEAgentHost.h>
 #endif
+#include <BinaryObservation.h>
 #include <ClientPool.h>
 #include <MissionSpec.h>
 #include <ParameterSet.h>
@@ -141,6 +142,7 @@ BOOST_PYTHON_MODULE(MalmoPython)
         .def( "setVideoPolicy",            &AgentHost::setVideoPolicy )
         .def( "setRewardsPolicy",          &AgentHost::setRewardsPolicy )
         .def( "setObservationsPolicy",     &AgentHost::setObservationsPolicy )
+        .def( "setSharedMemoryTransport",  &AgentHost::setSharedMemoryTransport )
         .def( "sendCommand",               &AgentHost::sendCommand )
         .def(self_ns::str(self_ns::self))
     ;
@@ -194,11 +196,16 @@ BOOST_PYTHON_MODULE(MalmoPython)
         .def("allowAllInventoryCommands", &MissionSpec::allowAllInventoryCommands)
         .def("allowInventoryCommand",     &MissionSpec::allowInventoryCommand)
         .def("allowAllChatCommands",      &MissionSpec::allowAllChatCommands)
+        .def("allowAllObservationCommands", &MissionSpec::allowAllObservationCommands)
         .def("getNumberOfAgents",         &MissionSpec::getNumberOfAgents)
         .def("isVideoRequested",          &MissionSpec::isVideoRequested)
         .def("getVideoWidth",             &MissionSpec::getVideoWidth)
         .def("getVideoHeight",            &MissionSpec::getVideoHeight)
         .def("getVideoChannels",          &MissionSpec::getVideoChannels)
+        .def("getNumberOfAdditionalVideoStreams", &MissionSpec::getNumberOfAdditionalVideoStreams)
+        .def("getAdditionalVideoWidth",   &MissionSpec::getAdditionalVideoWidth)
+        .def("getAdditionalVideoHeight",  &MissionSpec::getAdditionalVideoHeight)
+        .def("getAdditionalVideoChannels", &MissionSpec::getAdditionalVideoChannels)
         .def(self_ns::str(self_ns::self))
     ;
     class_< MissionRecordSpec >("MissionRecordSpec", init<>())
@@ -239,6 +246,18 @@ BOOST_PYTHON_MODULE(MalmoPython)
         .def_readonly( "text",        &TimestampedString::text )
         .def(self_ns::str(self_ns::self))
     ;
+    class_< BinaryObservation >( "BinaryObservation", init< const TimestampedString& >() )
+        .def("keys",                    &BinaryObservation::keys)
+        .def("has",                     &BinaryObservation::has)
+        .def("get",                     &BinaryObservation::get)
+        .def("getInt",                  &BinaryObservation::getInt)
+        .def("getDouble",               &BinaryObservation::getDouble)
+        .def("getBool",                 &BinaryObservation::getBool)
+        .def("getInts",                 &BinaryObservation::getInts)
+        .def("getDoubles",              &BinaryObservation::getDoubles)
+        .def("getStrings",              &BinaryObservation::getStrings)
+        .def("toJson",                  &BinaryObservation::toJson)
+    ;
     register_ptr_to_python< boost::shared_ptr< TimestampedReward > >();
     class_< TimestampedReward >( "TimestampedReward", no_init )
         .add_property( "timestamp",   make_getter(&TimestampedString::timestamp, return_value_policy<return_by_value>()))
@@ -253,7 +272,17 @@ BOOST_PYTHON_MODULE(MalmoPython)
         .def_readonly( "width",       &TimestampedVideoFrame::width )
         .def_readonly( "height",      &TimestampedVideoFrame::height )
         .def_readonly( "channels",    &TimestampedVideoFrame::channels )
+        .def_readonly( "stream",      &TimestampedVideoFrame::stream )
+        .def_readonly( "world_tick",  &TimestampedVideoFrame::world_tick )
+        .def_readonly( "frame_index", &TimestampedVideoFrame::frame_index )
+        .def_readonly( "frame_timestamp_ns", &TimestampedVideoFrame::frame_timestamp_ns )
+        .def_readonly( "xPos",        &TimestampedVideoFrame::xPos )
+        .def_readonly( "yPos",        &TimestampedVideoFrame::yPos )
+        .def_readonly( "zPos",        &TimestampedVideoFrame::zPos )
+        .def_readonly( "yaw",         &TimestampedVideoFrame::yaw )
+        .def_readonly( "pitch",       &TimestampedVideoFrame::pitch )
         .def_readonly( "pixels",      &TimestampedVideoFrame::pixels )
+        .def_readonly( "depth",       &TimestampedVideoFrame::depth )
         .def(self_ns::str(self_ns::self))
     ;
     class_< std::vector< boost::shared_ptr< TimestampedString > > >( "TimestampedStringVector" )
@@ -268,5 +297,17 @@ BOOST_PYTHON_MODULE(MalmoPython)
     class_< std::vector< unsigned char > >( "UnsignedCharVector")
         .def( vector_indexing_suite< std::vector< unsigned char > >() )
     ;
+    class_< std::vector< float > >( "FloatVector")
+        .def( vector_indexing_suite< std::vector< float > >() )
+    ;
+    class_< std::vector< int > >( "IntVector")
+        .def( vector_indexing_suite< std::vector< int > >() )
+    ;
+    class_< std::vector< double > >( "DoubleVector")
+        .def( vector_indexing_suite< std::vector< double > >() )
+    ;
+    class_< std::vector< std::string > >( "StringVector")
+        .def( vector_indexing_suite< std::vector< std::string > >() )
+    ;
     register_exception_translator<xml_schema::exception>(&translateXMLSchemaException);
 }
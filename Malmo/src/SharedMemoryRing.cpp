@@ -0,0 +1,99 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Local:
+#include "SharedMemoryRing.h"
+
+// Boost:
+#include <boost/filesystem.hpp>
+
+// STL:
+#include <cstring>
+#include <fstream>
+#include <new>
+#include <stdexcept>
+
+namespace malmo
+{
+    SharedMemoryRing::SharedMemoryRing(const std::string& path, size_t capacity)
+        : path(path)
+        , capacity((capacity + 7) & ~static_cast<size_t>(7))
+        , mapping(createFile(path, DATA_OFFSET + ((capacity + 7) & ~static_cast<size_t>(7))).c_str(), boost::interprocess::read_write)
+        , region(mapping, boost::interprocess::read_write)
+    {
+        unsigned char* base = static_cast<unsigned char*>(this->region.get_address());
+        this->data = base + DATA_OFFSET;
+        this->write_seq = new (base + WRITE_SEQ_OFFSET) std::atomic<int64_t>(0);
+        this->read_seq = new (base + READ_SEQ_OFFSET) std::atomic<int64_t>(0);
+
+        // The Mod checks the header before using the ring, so write it last:
+        const int32_t magic = MAGIC, version = VERSION;
+        std::memcpy(base + 8, &this->capacity, sizeof(this->capacity));
+        std::memcpy(base + 4, &version, sizeof(version));
+        std::atomic_thread_fence(std::memory_order_release);
+        std::memcpy(base, &magic, sizeof(magic));
+        this->region.flush();
+    }
+
+    SharedMemoryRing::~SharedMemoryRing()
+    {
+        boost::system::error_code ec;
+        boost::filesystem::remove(this->path, ec); // the mapping stays valid until we've finished with it
+    }
+
+    std::string SharedMemoryRing::createFile(const std::string& path, size_t size)
+    {
+        std::ofstream file(path, std::ios::binary | std::ios::trunc);
+        if (!file)
+            throw std::runtime_error("Failed to create shared memory file " + path);
+        file.seekp(size - 1);
+        file.put(0);
+        if (!file)
+            throw std::runtime_error("Failed to size shared memory file " + path);
+        return path;
+    }
+
+    bool SharedMemoryRing::read(std::vector<unsigned char>& data)
+    {
+        int64_t read = this->read_seq->load(std::memory_order_relaxed);
+        for (;;)
+        {
+            const int64_t written = this->write_seq->load(std::memory_order_acquire);
+            if (read == written)
+                return false;
+
+            const int64_t offset = read % this->capacity;
+            int32_t length;
+            std::memcpy(&length, this->data + offset, sizeof(length));
+            if (length == WRAP_MARKER)
+            {
+                // The message didn't fit before the end, so it starts again at the beginning:
+                read += this->capacity - offset;
+                this->read_seq->store(read, std::memory_order_release);
+                continue;
+            }
+
+            const unsigned char* payload = this->data + offset + sizeof(length);
+            data.assign(payload, payload + length);
+            read += (sizeof(length) + length + 7) & ~static_cast<int64_t>(7);
+            this->read_seq->store(read, std::memory_order_release);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+#ifndef _SHAREDMEMORYRING_H_
+#define _SHAREDMEMORYRING_H_
+
+// Boost:
+#include <boost/interprocess/file_mapping.hpp>
+#include <boost/interprocess/mapped_region.hpp>
+
+// STL:
+#include <atomic>
+#include <cstdint>
+#include <string>
+#include <vector>
+
+namespace malmo
+{
+    //! The reading end of a single-producer, single-consumer ring buffer in a memory-mapped file.
+    //! We create the file; the Mod maps it and writes messages into it, and we take them out again.
+    //! The layout must match com.microsoft.Malmo.Utils.SharedMemoryRing in the Mod:
+    //! a header (magic, version, capacity), the write sequence at offset 64, the read sequence at offset 128,
+    //! then the data area at offset 192. Each message is an int32 length then the payload, padded to 8 bytes.
+    class SharedMemoryRing
+    {
+        public:
+
+            static const int32_t MAGIC = 0x4D4C4D52; // "MLMR"
+            static const int32_t VERSION = 1;
+            static const int32_t WRAP_MARKER = -1;
+
+            //! Creates the ring buffer file, replacing any existing file.
+            //! \param path The path of the file to create.
+            //! \param capacity The number of bytes of messages the ring can hold. Rounded up to a multiple of 8.
+            SharedMemoryRing(const std::string& path, size_t capacity);
+
+            //! Removes the file.
+            ~SharedMemoryRing();
+
+            //! Takes the next message out of the ring, if there is one.
+            //! \param data Replaced by the message.
+            //! \returns True if a message was read, false if the ring was empty.
+            bool read(std::vector<unsigned char>& data);
+
+        private:
+
+            static const size_t WRITE_SEQ_OFFSET = 64;
+            static const size_t READ_SEQ_OFFSET = 128;
+            static const size_t DATA_OFFSET = 192;
+
+            static std::string createFile(const std::string& path, size_t size);
+
+            std::string path;
+            int64_t capacity;
+            boost::interprocess::file_mapping mapping;
+            boost::interprocess::mapped_region region;
+            unsigned char* data;
+            std::atomic<int64_t>* write_seq;
+            std::atomic<int64_t>* read_seq;
+    };
+}
+
+#endif
@@ -0,0 +1,134 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Local:
+#include "SharedMemoryServer.h"
+
+// Boost:
+#include <boost/bind.hpp>
+#include <boost/date_time/posix_time/posix_time.hpp>
+#include <boost/filesystem.hpp>
+
+namespace malmo
+{
+    // Room for this many frames (or bytes of strings) in flight before the Mod has to start dropping them:
+    const size_t VIDEO_RING_FRAMES = 4;
+    const size_t STRING_RING_CAPACITY = 4 * 1024 * 1024;
+
+    // Where each ring lives in the list of channels:
+    const size_t OBSERVATIONS_CHANNEL = 0;
+    const size_t REWARDS_CHANNEL = 1;
+    const size_t FIRST_VIDEO_CHANNEL = 2;
+
+    SharedMemoryServer::SharedMemoryServer()
+        : keep_running(true)
+    {
+        this->thread = boost::thread(boost::bind(&SharedMemoryServer::run, this));
+    }
+
+    SharedMemoryServer::~SharedMemoryServer()
+    {
+        this->keep_running = false;
+        this->thread.join();
+        removeRings();
+    }
+
+    std::string SharedMemoryServer::open(const std::vector<size_t>& video_message_sizes, const std::vector<Handler>& handle_video, Handler handle_observation, Handler handle_reward)
+    {
+        boost::lock_guard<boost::mutex> scope_guard(this->rings_mutex);
+
+        removeRings();
+
+        const boost::filesystem::path dir = boost::filesystem::temp_directory_path() / boost::filesystem::unique_path("malmo-%%%%-%%%%-%%%%-%%%%");
+        boost::filesystem::create_directories(dir);
+        this->path = dir.string();
+
+        // The Mod looks for "video.ring" for its VideoProducer, then "video1.ring" onwards for any AdditionalVideoProducers.
+        this->channels.resize(FIRST_VIDEO_CHANNEL + video_message_sizes.size());
+        for (size_t i = 0; i < video_message_sizes.size(); i++)
+        {
+            if (video_message_sizes[i] > 0)
+            {
+                Channel& video = this->channels[FIRST_VIDEO_CHANNEL + i];
+                const std::string name = (i == 0) ? std::string("video.ring") : "video" + std::to_string(i) + ".ring";
+                // Each message is a length and the payload, padded to 8 bytes - and one more message's worth may be skipped
+                // when the Mod wraps round to the start of the ring:
+                const size_t record_size = (4 + video_message_sizes[i] + 7) & ~static_cast<size_t>(7);
+                video.ring.reset(new SharedMemoryRing((dir / name).string(), (VIDEO_RING_FRAMES + 1) * record_size));
+                video.handler = handle_video[i];
+            }
+        }
+        this->channels[OBSERVATIONS_CHANNEL].ring.reset(new SharedMemoryRing((dir / "observations.ring").string(), STRING_RING_CAPACITY));
+        this->channels[REWARDS_CHANNEL].ring.reset(new SharedMemoryRing((dir / "rewards.ring").string(), STRING_RING_CAPACITY));
+        this->channels[OBSERVATIONS_CHANNEL].handler = handle_observation;
+        this->channels[REWARDS_CHANNEL].handler = handle_reward;
+
+        return this->path;
+    }
+
+    void SharedMemoryServer::removeRings()
+    {
+        this->channels.clear();
+        if (!this->path.empty())
+        {
+            boost::system::error_code ec;
+            boost::filesystem::remove_all(this->path, ec);
+            this->path.clear();
+        }
+    }
+
+    void SharedMemoryServer::run()
+    {
+        while (this->keep_running)
+        {
+            size_t count;
+            {
+                boost::lock_guard<boost::mutex> scope_guard(this->rings_mutex);
+                count = this->channels.size();
+            }
+            bool busy = false;
+            for (size_t i = 0; i < count; i++)
+                busy |= poll(i);
+            if (!busy)
+            {
+                // Nothing waiting - back off briefly rather than spinning. This is far below a Minecraft tick.
+                boost::this_thread::sleep_for(boost::chrono::microseconds(200));
+            }
+        }
+    }
+
+    bool SharedMemoryServer::poll(size_t index)
+    {
+        Handler handler;
+        {
+            // Only hold the lock while reading - the handlers take the AgentHost's lock, which may be held while open() is called.
+            // The channels may also have been replaced since run() counted them.
+            boost::lock_guard<boost::mutex> scope_guard(this->rings_mutex);
+            if (index >= this->channels.size())
+                return false;
+            const Channel& channel = this->channels[index];
+            if (!channel.ring || !channel.ring->read(this->buffer))
+                return false;
+            handler = channel.handler;
+        }
+        if (handler)
+            handler(TimestampedUnsignedCharVector(boost::posix_time::microsec_clock::universal_time(), this->buffer));
+        return true;
+    }
+}
@@ -0,0 +1,84 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+#ifndef _SHAREDMEMORYSERVER_H_
+#define _SHAREDMEMORYSERVER_H_
+
+// Local:
+#include "SharedMemoryRing.h"
+#include "TimestampedUnsignedCharVector.h"
+
+// Boost:
+#include <boost/function.hpp>
+#include <boost/thread.hpp>
+
+// STL:
+#include <atomic>
+#include <memory>
+#include <string>
+#include <vector>
+
+namespace malmo
+{
+    //! Receives video frames, observations and rewards from a Mod on the same machine through memory-mapped ring buffers,
+    //! instead of through the TCP servers. The ring buffers live in a temporary directory, which is sent to the Mod in the
+    //! MissionInit; if the Mod can't open them it carries on using TCP, so the TCP servers must still be running.
+    class SharedMemoryServer
+    {
+        public:
+
+            typedef boost::function<void(const TimestampedUnsignedCharVector message)> Handler;
+
+            //! Starts a thread to poll the ring buffers. There are none until open() is called.
+            SharedMemoryServer();
+
+            //! Stops the polling thread and removes the ring buffers.
+            ~SharedMemoryServer();
+
+            //! Replaces any existing ring buffers with a fresh set, for a new mission.
+            //! \param video_message_sizes The size in bytes of the largest message the Mod can send for a frame, for each video stream,
+            //! including any frame header and codec overhead - or zero if a stream isn't in use.
+            //! \param handle_video Called for each video frame, one handler per stream.
+            //! \param handle_observation Called for each observation.
+            //! \param handle_reward Called for each reward.
+            //! \returns The directory containing the ring buffers, for the MissionInit.
+            std::string open(const std::vector<size_t>& video_message_sizes, const std::vector<Handler>& handle_video, Handler handle_observation, Handler handle_reward);
+
+        private:
+
+            struct Channel
+            {
+                std::unique_ptr<SharedMemoryRing> ring;
+                Handler handler;
+            };
+
+            void run();
+            bool poll(size_t index);
+            void removeRings();
+
+            std::string path;
+            std::vector<Channel> channels;     // observations, rewards, then one per video stream
+            boost::mutex rings_mutex;
+            std::vector<unsigned char> buffer;
+            std::atomic<bool> keep_running;
+            boost::thread thread;
+    };
+}
+
+#endif
@@ -18,6 +18,7 @@
 // --------------------------------------------------------------------------------------------------
 
 // Local:
+#include "BinaryObservation.h"
 #include "StringServer.h"
 
 // Boost:
@@ -28,6 +29,7 @@ namespace malmo {
     StringServer::StringServer(boost::asio::io_service& io_service, int port, const boost::function<void(const TimestampedString string_message)> handle_string)
         : handle_string(handle_string)
         , server(io_service, port, boost::bind(&StringServer::handleMessage, this, _1))
+        , binary(false)
     {
     }
 
@@ -59,10 +61,37 @@ namespace malmo {
         return *this;
     }
 
+    StringServer& StringServer::decodeObservationDeltas(bool decode_deltas)
+    {
+        this->decoder.setEnabled(decode_deltas);
+        return *this;
+    }
+
+    StringServer& StringServer::expectBinaryObservations(bool binary)
+    {
+        this->binary = binary;
+        return *this;
+    }
+
     void StringServer::handleMessage(const TimestampedUnsignedCharVector message)
     {
+        if (this->binary)
+        {
+            TimestampedString binary_message(message.timestamp, "");
+            binary_message.data = message.data;
+            this->handle_string(binary_message);
+            this->recordMessage(binary_message);
+            return;
+        }
+
         TimestampedString string_message(message);
 
+        if (!this->decoder.decode(string_message.text))
+        {
+            // A delta we can't apply - most likely from a previous mission, or one whose full observation we never saw.
+            return;
+        }
+
         this->handle_string(string_message);
 
         this->recordMessage(string_message);
@@ -89,7 +118,19 @@ namespace malmo {
         {
             boost::lock_guard<boost::mutex> scope_guard(this->write_mutex);
 
-            this->writer << boost::posix_time::to_iso_string(string_message.timestamp) << " " << string_message.text << std::endl;
+            std::string text = string_message.text;
+            if (!string_message.data.empty())
+            {
+                try
+                {
+                    text = BinaryObservation(string_message).toJson();
+                }
+                catch (const std::exception&)
+                {
+                    return;     // Not something we can record.
+                }
+            }
+            this->writer << boost::posix_time::to_iso_string(string_message.timestamp) << " " << text << std::endl;
         }
     }
 }
@@ -21,6 +21,7 @@
 #define _STRINGSERVER_H_
 
 // Local:
+#include "DeltaObservationDecoder.h"
 #include "TCPServer.h"
 #include "TimestampedString.h"
 
@@ -48,6 +49,14 @@ namespace malmo
             
             StringServer& expectSizeHeader(bool expect_size_header);
 
+            //! Rebuilds complete observations from the deltas sent with the "delta" observation encoding, before they are handled or recorded.
+            //! Call before each mission.
+            StringServer& decodeObservationDeltas(bool decode_deltas);
+
+            //! Passes on the messages as binary data rather than text, for the "binary" observation encoding. They are recorded as JSON.
+            //! Call before each mission.
+            StringServer& expectBinaryObservations(bool binary);
+
             int getPort() const;
 
             //! Stop recording the data being received by the server.
@@ -58,12 +67,15 @@ namespace malmo
             //! Starts the string server.
             void start();
 
-        private:
-
+            //! Handles a message as if it had arrived over TCP - eg one received through shared memory.
             void handleMessage(const TimestampedUnsignedCharVector message);
 
+        private:
+
             boost::function<void(const TimestampedString string_message)> handle_string;
             TCPServer server;
+            DeltaObservationDecoder decoder;
+            bool binary;
             std::ofstream writer;
             boost::mutex write_mutex;
     };
@@ -28,12 +28,21 @@
 #include <boost/date_time/posix_time/posix_time_io.hpp>
 
 // STL:
+#include <cstdlib>
 #include <sstream>
+#include <stdexcept>
 
 namespace malmo
 {
     TimestampedReward::TimestampedReward(boost::posix_time::ptime timestamp,std::string xml_string)
+        : timestamp(timestamp)
     {
+        size_t start = xml_string.find_first_not_of(" \t\r\n");
+        if( start == std::string::npos || xml_string[start] != '<' ) {
+            setValuesFromCompactString(xml_string);
+            return;
+        }
+
         const bool validate = true;
         
         xml_schema::properties props;
@@ -62,6 +71,25 @@ namespace malmo
         }
     }
     
+    void TimestampedReward::setValuesFromCompactString(const std::string& compact)
+    {
+        this->values.clear();
+        const char* p = compact.c_str();
+        const char* end = p + compact.size();
+        while( p < end ) {
+            char* next;
+            long dimension = std::strtol(p, &next, 10);
+            if( next == p || *next != ':' )
+                throw std::runtime_error("Malformed reward: " + compact);
+            p = next + 1;
+            double value = std::strtod(p, &next);
+            if( next == p || ( next < end && ( *next != ',' || next + 1 == end ) ) )
+                throw std::runtime_error("Malformed reward: " + compact);
+            this->values[ static_cast<int>( dimension ) ] += value;
+            p = ( next < end ) ? next + 1 : end;
+        }
+    }
+    
     schemas::Reward TimestampedReward::getAsRewardStructure() const
     {
         schemas::Reward reward;
@@ -28,6 +28,7 @@
 
 // STL:
 #include <map>
+#include <string>
 
 namespace malmo
 {
@@ -36,7 +37,9 @@ namespace malmo
     {
         public:
 
-            //! Constructs from an XML string.
+            //! Constructs from a string sent by the Mod - either a Reward XML element, or comma-separated dimension:value pairs if the
+            //! mission asked for the "compact" reward_encoding.
+            //! Throws std::runtime_error if a compact string is malformed.
             TimestampedReward(boost::posix_time::ptime timestamp,std::string xml_string);
         
             //! Constructs from an XML node element.
@@ -45,6 +48,9 @@ namespace malmo
             //! Sets the values stored in this reward to be those from the specified XML structure.
             void setValuesFromRewardStructure(const schemas::Reward& reward);
             
+            //! Sets the values stored in this reward from a string of comma-separated dimension:value pairs, eg "0:1.5,2:-10".
+            void setValuesFromCompactString(const std::string& compact);
+            
             //! Formats as an XML string.
             //! \param prettyPrint If true, add indentation and newlines to the XML to make it more readable.
             //! \returns The reward as an XML string.
@@ -38,12 +38,14 @@ namespace malmo
     
     bool TimestampedString::operator==(const TimestampedString& other) const
     {
-        return this->text == other.text && this->timestamp == other.timestamp;
+        return this->text == other.text && this->data == other.data && this->timestamp == other.timestamp;
     }
 
     std::ostream& operator<<(std::ostream& os, const TimestampedString& tss)
     {
         os << "TimestampedString: " << to_simple_string(tss.timestamp) << ", " << tss.text;
+        if (!tss.data.empty())
+            os << "(" << tss.data.size() << " bytes of binary data)";
         return os;
     }
 }
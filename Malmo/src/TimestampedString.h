@@ -28,6 +28,7 @@
 
 // STL:
 #include <string>
+#include <vector>
 
 namespace malmo
 {
@@ -40,6 +41,10 @@ namespace malmo
         //! The string.
         std::string text;
 
+        //! The raw message, for observations sent with the "binary" observation encoding - read it with a BinaryObservation.
+        //! Empty otherwise. When this is used, text is empty.
+        std::vector<unsigned char> data;
+
         TimestampedString(const TimestampedUnsignedCharVector& message);
         TimestampedString(const boost::posix_time::ptime& timestamp, const std::string& text);
         
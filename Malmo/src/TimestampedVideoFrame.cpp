@@ -22,12 +22,27 @@
 #include <boost/date_time/posix_time/posix_time.hpp>
 #include <boost/date_time/posix_time/posix_time_io.hpp>
 
+// STL:
+#include <cmath>
+#include <cstring>
+#include <limits>
+#include <stdexcept>
+
 namespace malmo
 {
     TimestampedVideoFrame::TimestampedVideoFrame()
         : width(0)
         , height(0)
-        , channels(0)        
+        , channels(0)
+        , stream(0)
+        , world_tick(0)
+        , frame_index(0)
+        , frame_timestamp_ns(0)
+        , xPos(0)
+        , yPos(0)
+        , zPos(0)
+        , yaw(0)
+        , pitch(0)
     {
 
     }
@@ -37,6 +52,15 @@ namespace malmo
         , width(width)
         , height(height)
         , channels(channels)
+        , stream(0)
+        , world_tick(0)
+        , frame_index(0)
+        , frame_timestamp_ns(0)
+        , xPos(0)
+        , yPos(0)
+        , zPos(0)
+        , yaw(0)
+        , pitch(0)
     {
         const int stride = width * channels;
         switch (transform){
@@ -58,9 +82,53 @@ namespace malmo
         }
     }
 
+    // Convert an IEEE 754 half-precision float to a float:
+    static float halfToFloat(uint16_t half)
+    {
+        const int exponent = (half >> 10) & 0x1f;
+        const int mantissa = half & 0x3ff;
+        float value;
+        if (exponent == 0)
+            value = std::ldexp(static_cast<float>(mantissa), -24);   // Zero or subnormal.
+        else if (exponent == 0x1f)
+            value = mantissa ? std::numeric_limits<float>::quiet_NaN() : std::numeric_limits<float>::infinity();
+        else
+            value = std::ldexp(static_cast<float>(mantissa | 0x400), exponent - 25);
+        return (half & 0x8000) ? -value : value;
+    }
+
+    void TimestampedVideoFrame::setDepth(const std::vector<unsigned char>& plane, int bytes_per_pixel, Transform transform)
+    {
+        if (bytes_per_pixel != 2 && bytes_per_pixel != 4)
+            throw std::invalid_argument("Depth planes must have 2 or 4 bytes per pixel");
+        const size_t num_pixels = static_cast<size_t>(this->width) * this->height;
+        if (plane.size() != num_pixels * bytes_per_pixel)
+            throw std::invalid_argument("Depth plane is the wrong size for the frame");
+
+        this->depth.resize(num_pixels);
+        for (int row = 0; row < this->height; row++)
+        {
+            const int source_row = (transform == REVERSE_SCANLINE) ? this->height - 1 - row : row;
+            const unsigned char* p = &plane[static_cast<size_t>(source_row) * this->width * bytes_per_pixel];
+            float* out = &this->depth[static_cast<size_t>(row) * this->width];
+            for (int x = 0; x < this->width; x++, p += bytes_per_pixel)
+            {
+                if (bytes_per_pixel == 2)
+                {
+                    out[x] = halfToFloat(static_cast<uint16_t>(p[0] | (p[1] << 8)));
+                }
+                else
+                {
+                    const uint32_t bits = static_cast<uint32_t>(p[0]) | (static_cast<uint32_t>(p[1]) << 8) | (static_cast<uint32_t>(p[2]) << 16) | (static_cast<uint32_t>(p[3]) << 24);
+                    std::memcpy(&out[x], &bits, sizeof(float));
+                }
+            }
+        }
+    }
+
     bool TimestampedVideoFrame::operator==(const TimestampedVideoFrame& other) const
     {
-        return this->width == other.width && this->height == other.height && this->channels == other.channels && this->timestamp == other.timestamp && this->pixels == other.pixels;
+        return this->width == other.width && this->height == other.height && this->channels == other.channels && this->stream == other.stream && this->timestamp == other.timestamp && this->pixels == other.pixels && this->depth == other.depth;
     }
 
     std::ostream& operator<<(std::ostream& os, const TimestampedVideoFrame& tsvidframe)
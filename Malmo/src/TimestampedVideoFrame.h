@@ -27,6 +27,7 @@
 #include <boost/date_time/posix_time/posix_time_types.hpp>
 
 // STL:
+#include <cstdint>
 #include <vector>
 
 namespace malmo 
@@ -51,11 +52,43 @@ namespace malmo
         //! The number of channels. e.g. 3 for RGB data, 4 for RGBD
         short channels;
         
-        //! The pixels, stored as channels then columns then rows. Length should be width*height*channels.
+        //! Which of the agent's video streams this frame is from: 0 for the VideoProducer, 1 onwards for AdditionalVideoProducers.
+        short stream;
+        
+        //! The world tick the frame was rendered in. Zero unless the VideoProducer sets want_frame_header, as are the fields below.
+        int64_t world_tick;
+
+        //! Counts the frames the Mod has rendered for this stream, including any that were dropped before being sent.
+        int64_t frame_index;
+
+        //! When the Mod rendered the frame, in nanoseconds since the Unix epoch, by the Mod's clock.
+        int64_t frame_timestamp_ns;
+
+        //! The position of the player's viewpoint when the frame was rendered.
+        double xPos;
+        double yPos;
+        double zPos;
+
+        //! The direction the player was facing when the frame was rendered, in degrees.
+        float yaw;
+        float pitch;
+
+        //! The pixels, stored as channels then columns then rows. Length should be width*height*channels,
+        //! unless the VideoProducer uses the "jpeg" codec, in which case this holds a complete JPEG file.
         std::vector<unsigned char> pixels;
 
+        //! The depth of each pixel, in the same order as the pixels, if the VideoProducer asked for one of the float depth formats. Empty otherwise.
+        //! Either raw depth buffer values from 0 to 1, or distances from the camera in blocks if the VideoProducer set linear_depth.
+        std::vector<float> depth;
+
         TimestampedVideoFrame();
         TimestampedVideoFrame(short width, short height, short channels, TimestampedUnsignedCharVector& message, Transform transform = IDENTITY);
+
+        //! Fills in the depth from a plane of little-endian floats, as sent by the Mod.
+        //! \param plane The depth plane - width * height * bytes_per_pixel bytes.
+        //! \param bytes_per_pixel 2 for 16-bit floats, 4 for 32-bit floats.
+        //! \param transform REVERSE_SCANLINE if the rows in the plane run from the bottom of the frame to the top.
+        void setDepth(const std::vector<unsigned char>& plane, int bytes_per_pixel, Transform transform = IDENTITY);
         
         bool operator==(const TimestampedVideoFrame& other) const;
         friend std::ostream& operator<<(std::ostream& os, const TimestampedVideoFrame& tsvidframe);
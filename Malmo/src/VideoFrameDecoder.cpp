@@ -0,0 +1,119 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Local:
+#include "VideoFrameDecoder.h"
+
+// Boost:
+#include <boost/iostreams/copy.hpp>
+#include <boost/iostreams/device/array.hpp>
+#include <boost/iostreams/device/back_inserter.hpp>
+#include <boost/iostreams/filter/zlib.hpp>
+#include <boost/iostreams/filtering_streambuf.hpp>
+
+namespace malmo
+{
+    VideoFrameDecoder::VideoFrameDecoder(const std::string& codec, size_t frame_size)
+        : delta(codec == "delta")
+        , jpeg(codec == "jpeg")
+        , frame_size(frame_size)
+    {
+    }
+
+    void VideoFrameDecoder::reset()
+    {
+        this->previous.clear();
+    }
+
+    bool VideoFrameDecoder::isCompressed() const
+    {
+        return this->jpeg;
+    }
+
+    size_t VideoFrameDecoder::getMaxEncodedSize() const
+    {
+        if (this->delta)
+            return 1 + this->frame_size + this->frame_size / 100 + 64;   // deflate barely expands incompressible data - the Mod allows this much
+        if (this->jpeg)
+            return 1 + 2 * this->frame_size + 1024;   // even a quality 100 JPEG of noise is well within twice the raw size, plus its headers
+        return this->frame_size;
+    }
+
+    bool VideoFrameDecoder::decode(std::vector<unsigned char>& data)
+    {
+        if (this->jpeg)
+        {
+            if (data.empty() || data[0] != FRAME_JPEG)
+                return false;
+            data.erase(data.begin()); // leave the JPEG itself for the agent to decode
+            return true;
+        }
+
+        if (!this->delta)
+            return true; // raw frames need no decoding
+
+        if (data.empty())
+            return false;
+
+        switch (data[0])
+        {
+        case FRAME_KEY:
+            if (!inflate(data, this->inflated))
+                return false;
+            this->previous.assign(this->inflated.begin(), this->inflated.end());
+            break;
+
+        case FRAME_DELTA:
+            if (this->previous.size() != this->frame_size || !inflate(data, this->inflated))
+                return false;
+            for (size_t i = 0; i < this->frame_size; i++)
+                this->previous[i] ^= static_cast<unsigned char>(this->inflated[i]);
+            break;
+
+        case FRAME_UNCHANGED:
+            if (this->previous.size() != this->frame_size)
+                return false;
+            break;
+
+        default:
+            return false;
+        }
+
+        data = this->previous;
+        return true;
+    }
+
+    bool VideoFrameDecoder::inflate(const std::vector<unsigned char>& data, std::vector<char>& out) const
+    {
+        out.clear();
+        out.reserve(this->frame_size);
+        try
+        {
+            boost::iostreams::filtering_streambuf<boost::iostreams::input> in;
+            in.push(boost::iostreams::zlib_decompressor());
+            in.push(boost::iostreams::array_source(reinterpret_cast<const char*>(data.data()) + 1, data.size() - 1));
+            boost::iostreams::copy(in, boost::iostreams::back_inserter(out));
+        }
+        catch (const boost::iostreams::zlib_error&)
+        {
+            return false;
+        }
+        return out.size() == this->frame_size;
+    }
+}
@@ -0,0 +1,75 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+#ifndef _VIDEOFRAMEDECODER_H_
+#define _VIDEOFRAMEDECODER_H_
+
+// STL:
+#include <string>
+#include <vector>
+
+namespace malmo
+{
+    //! Turns the frames sent by the Mod back into raw pixels, according to the codec requested in the VideoProducer.
+    //! The "delta" codec is stateful, so use one decoder per video stream.
+    //! "jpeg" frames are not decompressed - the decoder just strips the header, leaving a JPEG file for the agent.
+    class VideoFrameDecoder
+    {
+        public:
+
+            enum FrameType {
+                FRAME_KEY = 0           //!< zlib-compressed frame
+                , FRAME_DELTA = 1       //!< zlib-compressed XOR of the frame with the previous one
+                , FRAME_UNCHANGED = 2   //!< identical to the previous frame
+                , FRAME_JPEG = 3        //!< JPEG file, top row first, colour channels only
+            };
+
+            //! Constructs a decoder.
+            //! \param codec The codec attribute of the VideoProducer - "raw", "delta" or "jpeg".
+            //! \param frame_size The size in bytes of a decoded frame.
+            VideoFrameDecoder(const std::string& codec, size_t frame_size);
+
+            //! Decodes a message from the Mod, in place.
+            //! \param data The message; replaced by the decoded frame.
+            //! \returns False if the message couldn't be decoded - eg a delta frame with no keyframe before it.
+            bool decode(std::vector<unsigned char>& data);
+
+            //! Whether decoded frames are still compressed, rather than being width*height*channels raw pixels.
+            bool isCompressed() const;
+
+            //! The largest message the Mod can send for one frame with this codec - eg for sizing a buffer to receive it in.
+            //! \returns The size in bytes, including the type byte but not any VideoFrameHeader.
+            size_t getMaxEncodedSize() const;
+
+            //! Forgets the previous frame, so that decoding can only resume from a keyframe.
+            void reset();
+
+        private:
+
+            bool inflate(const std::vector<unsigned char>& data, std::vector<char>& out) const;
+
+            bool delta;
+            bool jpeg;
+            size_t frame_size;
+            std::vector<unsigned char> previous;
+            std::vector<char> inflated;
+    };
+}
+
+#endif
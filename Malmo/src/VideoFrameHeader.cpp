@@ -0,0 +1,94 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Local:
+#include "VideoFrameHeader.h"
+
+// STL:
+#include <cstring>
+
+namespace malmo
+{
+    static uint64_t readBigEndian(const unsigned char* p, int bytes)
+    {
+        uint64_t value = 0;
+        for (int i = 0; i < bytes; i++)
+            value = (value << 8) | p[i];
+        return value;
+    }
+
+    static double readDouble(const unsigned char* p)
+    {
+        const uint64_t bits = readBigEndian(p, 8);
+        double value;
+        std::memcpy(&value, &bits, sizeof(value));
+        return value;
+    }
+
+    static float readFloat(const unsigned char* p)
+    {
+        const uint32_t bits = static_cast<uint32_t>(readBigEndian(p, 4));
+        float value;
+        std::memcpy(&value, &bits, sizeof(value));
+        return value;
+    }
+
+    VideoFrameHeader::VideoFrameHeader()
+        : world_tick(0)
+        , frame_index(0)
+        , timestamp_ns(0)
+        , x(0)
+        , y(0)
+        , z(0)
+        , yaw(0)
+        , pitch(0)
+    {
+    }
+
+    bool VideoFrameHeader::read(std::vector<unsigned char>& data)
+    {
+        if (data.size() < SIZE)
+            return false;
+
+        const unsigned char* p = data.data();
+        this->world_tick = static_cast<int64_t>(readBigEndian(p, 8));
+        this->frame_index = static_cast<int64_t>(readBigEndian(p + 8, 8));
+        this->timestamp_ns = static_cast<int64_t>(readBigEndian(p + 16, 8));
+        this->x = readDouble(p + 24);
+        this->y = readDouble(p + 32);
+        this->z = readDouble(p + 40);
+        this->yaw = readFloat(p + 48);
+        this->pitch = readFloat(p + 52);
+
+        data.erase(data.begin(), data.begin() + SIZE);
+        return true;
+    }
+
+    void VideoFrameHeader::applyTo(TimestampedVideoFrame& frame) const
+    {
+        frame.world_tick = this->world_tick;
+        frame.frame_index = this->frame_index;
+        frame.frame_timestamp_ns = this->timestamp_ns;
+        frame.xPos = this->x;
+        frame.yPos = this->y;
+        frame.zPos = this->z;
+        frame.yaw = this->yaw;
+        frame.pitch = this->pitch;
+    }
+}
@@ -0,0 +1,61 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+#ifndef _VIDEOFRAMEHEADER_H_
+#define _VIDEOFRAMEHEADER_H_
+
+// Local:
+#include "TimestampedVideoFrame.h"
+
+// STL:
+#include <cstddef>
+#include <cstdint>
+#include <vector>
+
+namespace malmo
+{
+    //! The optional fixed-size header the Mod sends in front of each video frame, when the VideoProducer sets want_frame_header.
+    //! On the wire it is, in big-endian order: world tick (int64), frame index (int64), render time in nanoseconds since the
+    //! Unix epoch (int64), x, y and z (doubles), yaw and pitch (floats).
+    struct VideoFrameHeader
+    {
+        static const size_t SIZE = 56;
+
+        int64_t world_tick;
+        int64_t frame_index;
+        int64_t timestamp_ns;
+        double x;
+        double y;
+        double z;
+        float yaw;
+        float pitch;
+
+        VideoFrameHeader();
+
+        //! Reads the header from the front of a message from the Mod, and removes it, leaving the encoded frame.
+        //! \param data The message.
+        //! \returns False if the message is too short to hold a header.
+        bool read(std::vector<unsigned char>& data);
+
+        //! Copies the header fields into a frame, for the agent.
+        void applyTo(TimestampedVideoFrame& frame) const;
+    };
+}
+
+#endif
@@ -128,14 +128,15 @@ namespace malmo
                     break;
                 }
 
-                if (frame.channels == 4)
+                if (frame.channels == 4 || frame.channels == 2 || frame.channels == 1)
                 {
-                    // extract DDD from RGBD
+                    // extract DDD from RGBD or LD, or LLL from L
                     // TODO: support other options, output multiple videos
+                    const int c = frame.channels;
                     char *out_pixels = new char[frame.width * frame.height * 3];
                     for (int i = 0; i < frame.width*frame.height; i++)
                     {
-                        out_pixels[i*3] = out_pixels[i*3 + 1] = out_pixels[i*3 + 2] = frame.pixels[i*4 + 3];
+                        out_pixels[i*3] = out_pixels[i*3 + 1] = out_pixels[i*3 + 2] = frame.pixels[i*c + c - 1];
                     }
                     this->doWrite(out_pixels, frame.width, frame.height, count);
 
@@ -31,6 +31,9 @@ namespace malmo
         , width( width )
         , height( height )
         , channels( channels )
+        , depth_plane_bytes( 0 )
+        , decoder( "raw", width * height * channels )
+        , want_header( false )
         , server( io_service, port, boost::bind( &VideoServer::handleMessage, this, _1 ) )
     {
     }
@@ -64,15 +67,61 @@ namespace malmo
         return *this;
     }
     
+    void VideoServer::setCodec(const std::string& codec)
+    {
+        this->decoder = VideoFrameDecoder(codec, getFrameSize());
+    }
+
+    void VideoServer::setFrameHeader(bool want_header)
+    {
+        this->want_header = want_header;
+    }
+
+    void VideoServer::setDepthPlane(int bytes_per_pixel)
+    {
+        this->depth_plane_bytes = bytes_per_pixel;
+    }
+
     void VideoServer::handleMessage( TimestampedUnsignedCharVector message )
     {
-        if (message.data.size() != this->width * this->height * this->channels) 
+        VideoFrameHeader header;
+        if (this->want_header && !header.read(message.data))
+        {
+            return;
+        }
+        if (!this->decoder.decode(message.data))
+        {
+            // Can't make sense of this frame - most likely a delta from a previous mission, or one whose keyframe we never saw.
+            return;
+        }
+        if (this->decoder.isCompressed())
+        {
+            // JPEG frames are passed on as they are - they're already the right way up, and have no depth channel.
+            // We can't record them without decoding them, so the writers don't see them.
+            TimestampedVideoFrame frame(this->width, this->height, 3, message);
+            header.applyTo(frame);
+            this->handle_frame(frame);
+            return;
+        }
+        if (message.data.size() != getFrameSize()) 
         {
             // Have seen this happen during stress testing when a reward packet from (I think) a previous mission arrives during the next
             // one when the same port has been reassigned. Could throw here but chose to silently ignore since very rare.
             return;
         }
+        std::vector<unsigned char> depth_plane;
+        if (this->depth_plane_bytes != 0)
+        {
+            const auto plane_start = message.data.begin() + this->width * this->height * this->channels;
+            depth_plane.assign(plane_start, message.data.end());
+            message.data.erase(plane_start, message.data.end());
+        }
         TimestampedVideoFrame frame(this->width, this->height, this->channels, message, TimestampedVideoFrame::REVERSE_SCANLINE);
+        if (this->depth_plane_bytes != 0)
+        {
+            frame.setDepth(depth_plane, this->depth_plane_bytes, TimestampedVideoFrame::REVERSE_SCANLINE);
+        }
+        header.applyTo(frame);
         this->handle_frame(frame);
         
         for (const auto& writer : this->writers){
@@ -101,4 +150,19 @@ namespace malmo
     {
         return this->channels;
     }
+
+    int VideoServer::getDepthPlaneBytes() const
+    {
+        return this->depth_plane_bytes;
+    }
+
+    size_t VideoServer::getFrameSize() const
+    {
+        return static_cast<size_t>(this->width) * this->height * (this->channels + this->depth_plane_bytes);
+    }
+
+    size_t VideoServer::getMaxMessageSize() const
+    {
+        return (this->want_header ? VideoFrameHeader::SIZE : 0) + this->decoder.getMaxEncodedSize();
+    }
 }
@@ -23,6 +23,8 @@
 // Local:
 #include "TCPServer.h"
 #include "TimestampedVideoFrame.h"
+#include "VideoFrameDecoder.h"
+#include "VideoFrameHeader.h"
 #include "VideoFrameWriter.h"
 
 // Boost:
@@ -44,6 +46,18 @@ namespace malmo
             //! Request that the video is saved in an mp4 file. Call before either startInBackground() or startRecording().
             VideoServer& recordMP4(std::string path, int frames_per_second, int64_t bit_rate);
 
+            //! Sets how the incoming frames are encoded, and forgets any previous frame. Call before each mission.
+            //! \param codec The codec attribute of the VideoProducer - "raw", "delta" or "jpeg".
+            void setCodec(const std::string& codec);
+
+            //! Sets whether each incoming frame starts with a VideoFrameHeader. Call before each mission.
+            //! \param want_header The want_frame_header attribute of the VideoProducer.
+            void setFrameHeader(bool want_header);
+
+            //! Sets the size of the depth plane that follows the pixels of each incoming frame. Call before each mission, before setCodec().
+            //! \param bytes_per_pixel 2 or 4 for the float16 and float32 depth formats, or 0 if there is no depth plane.
+            void setDepthPlane(int bytes_per_pixel);
+
             //! Gets the port this server is listening on.
             //! \returns The port this server is listening on.
             int getPort() const;
@@ -60,6 +74,18 @@ namespace malmo
             //! \returns The number of channels in the video.
             short getChannels() const;
 
+            //! Gets the number of bytes per pixel in the depth plane that follows the pixels, if any.
+            //! \returns 2 or 4, or 0 if there is no depth plane.
+            int getDepthPlaneBytes() const;
+
+            //! Gets the size of each raw frame, before any encoding.
+            //! \returns The number of bytes in the pixels and the depth plane.
+            size_t getFrameSize() const;
+
+            //! Gets the largest message the Mod can send for one frame, given the codec and whether there is a frame header.
+            //! \returns The number of bytes.
+            size_t getMaxMessageSize() const;
+
             //! Stop recording the data being received by the server.
             void stopRecording();
 
@@ -69,14 +95,18 @@ namespace malmo
             //! Starts the video server.
             void start();
 
+            //! Handles a frame as if it had arrived over TCP - eg one received through shared memory.
+            void handleMessage( const TimestampedUnsignedCharVector message );
+
         private:
 
-            void handleMessage( const TimestampedUnsignedCharVector message );
-            
             boost::function<void(const TimestampedVideoFrame message)> handle_frame;
             short width;
             short height;
             short channels;
+            int depth_plane_bytes;
+            VideoFrameDecoder decoder;
+            bool want_header;
             TCPServer server;
             std::vector<std::unique_ptr<VideoFrameWriter>> writers;
     };
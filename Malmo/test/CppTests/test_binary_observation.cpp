@@ -0,0 +1,128 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Malmo:
+#include <BinaryObservation.h>
+using namespace malmo;
+
+// STL:
+#include <cstdlib>
+#include <iostream>
+#include <string>
+#include <vector>
+using namespace std;
+
+int main()
+{
+    // This is what the Mod's BinaryObservationEncoder sends for an observation, plus a fragment from the server:
+    const unsigned char message[] = {
+        0x4d,0x42,0x4f,0x01,0x0f,0x00,0x00,0x00,0x04,0x00,0x00,0x00,0x4c,0x69,0x66,0x65,
+        0x04,0x00,0x00,0xa0,0x41,0x04,0x00,0x00,0x00,0x58,0x50,0x6f,0x73,0x05,0x00,0x00,
+        0x00,0x00,0x00,0x00,0xf8,0x3f,0x09,0x00,0x00,0x00,0x54,0x6f,0x74,0x61,0x6c,0x54,
+        0x69,0x6d,0x65,0x03,0x35,0x1c,0xdc,0xdf,0x02,0x00,0x00,0x00,0x04,0x00,0x00,0x00,
+        0x4e,0x61,0x6d,0x65,0x06,0x08,0x00,0x00,0x00,0x42,0xc3,0xb6,0x62,0x20,0x22,0x78,
+        0x22,0x07,0x00,0x00,0x00,0x49,0x73,0x41,0x6c,0x69,0x76,0x65,0x01,0x01,0x05,0x00,
+        0x00,0x00,0x66,0x6c,0x6f,0x6f,0x72,0x0a,0x02,0x00,0x00,0x00,0x03,0x00,0x00,0x00,
+        0x61,0x69,0x72,0x05,0x00,0x00,0x00,0x73,0x74,0x6f,0x6e,0x65,0x07,0x00,0x00,0x00,
+        0x70,0x61,0x6c,0x65,0x74,0x74,0x65,0x08,0x03,0x00,0x00,0x00,0xff,0xff,0xff,0xff,
+        0x00,0x00,0x00,0x00,0x01,0x00,0x00,0x00,0x07,0x00,0x00,0x00,0x64,0x6f,0x75,0x62,
+        0x6c,0x65,0x73,0x09,0x02,0x00,0x00,0x00,0x00,0x00,0x00,0x00,0x00,0x00,0xe0,0x3f,
+        0x00,0x00,0x00,0x00,0x00,0x00,0x00,0x40,0x05,0x00,0x00,0x00,0x6d,0x69,0x78,0x65,
+        0x64,0x0b,0x07,0x00,0x00,0x00,0x5b,0x31,0x2c,0x22,0x61,0x22,0x5d,0x06,0x00,0x00,
+        0x00,0x6e,0x65,0x73,0x74,0x65,0x64,0x07,0x01,0x00,0x00,0x00,0x01,0x00,0x00,0x00,
+        0x61,0x02,0x01,0x00,0x00,0x00,0x07,0x00,0x00,0x00,0x6e,0x6f,0x74,0x68,0x69,0x6e,
+        0x67,0x00,0x05,0x00,0x00,0x00,0x65,0x6d,0x70,0x74,0x79,0x08,0x00,0x00,0x00,0x00,
+        0x05,0x00,0x00,0x00,0x53,0x74,0x61,0x74,0x73,0x07,0x01,0x00,0x00,0x00,0x01,0x00,
+        0x00,0x00,0x78,0x02,0x03,0x00,0x00,0x00,0x03,0x00,0x00,0x00,0x42,0x69,0x67,0x03,
+        0x00,0xf2,0x05,0x2a,0x01,0x00,0x00,0x00,0x01,0x00,0x00,0x00,0x46,0x05,0x00,0x00,
+        0x00,0x00,0x00,0x00,0xd0,0x3f,
+    };
+    const BinaryObservation observation(vector<unsigned char>(message, message + sizeof(message)));
+
+    const string expected = "{\"Life\":20,\"XPos\":1.5,\"TotalTime\":12345678901,\"Name\":\"B\xc3\xb6" "b \\\"x\\\"\",\"IsAlive\":true,"
+        "\"floor\":[\"air\",\"stone\"],\"palette\":[-1,0,1],\"doubles\":[0.5,2],\"mixed\":[1,\"a\"],\"nested\":{\"a\":1},"
+        "\"nothing\":null,\"empty\":[],\"Stats\":{\"x\":3},\"Big\":5000000000,\"F\":0.25}";
+    if (observation.toJson() != expected)
+    {
+        cout << "Expected " << expected << " but got " << observation.toJson() << endl;
+        return EXIT_FAILURE;
+    }
+
+    if (observation.keys().size() != 15 || observation.keys()[0] != "Life" || !observation.has("Big") || observation.has("Missing"))
+    {
+        cout << "Wrong keys." << endl;
+        return EXIT_FAILURE;
+    }
+
+    if (observation.getDouble("Life") != 20.0 || observation.getDouble("XPos") != 1.5 || observation.getInt("XPos") != 1
+        || observation.getDouble("TotalTime") != 12345678901.0 || observation.getInt("F") != 0 || !observation.getBool("IsAlive"))
+    {
+        cout << "Wrong numbers." << endl;
+        return EXIT_FAILURE;
+    }
+
+    if (observation.get("Name") != "B\xc3\xb6" "b \"x\"" || observation.get("nested") != "{\"a\":1}" || observation.get("Life") != "20")
+    {
+        cout << "Wrong strings." << endl;
+        return EXIT_FAILURE;
+    }
+
+    const vector<string> floor = observation.getStrings("floor");
+    const vector<int> palette = observation.getInts("palette");
+    const vector<double> doubles = observation.getDoubles("doubles");
+    if (floor.size() != 2 || floor[1] != "stone" || palette.size() != 3 || palette[0] != -1 || palette[2] != 1
+        || doubles.size() != 2 || doubles[0] != 0.5 || doubles[1] != 2.0 || !observation.getStrings("empty").empty())
+    {
+        cout << "Wrong arrays." << endl;
+        return EXIT_FAILURE;
+    }
+
+    // Asking for the wrong type, or a missing value, is an error:
+    try
+    {
+        observation.getStrings("palette");
+        cout << "Read numbers as strings." << endl;
+        return EXIT_FAILURE;
+    }
+    catch (const exception&)
+    {
+    }
+    try
+    {
+        observation.getDouble("Missing");
+        cout << "Read a missing value." << endl;
+        return EXIT_FAILURE;
+    }
+    catch (const exception&)
+    {
+    }
+
+    // As is a truncated message:
+    try
+    {
+        BinaryObservation truncated(vector<unsigned char>(message, message + sizeof(message) - 1));
+        cout << "Read a truncated message." << endl;
+        return EXIT_FAILURE;
+    }
+    catch (const exception&)
+    {
+    }
+
+    return EXIT_SUCCESS;
+}
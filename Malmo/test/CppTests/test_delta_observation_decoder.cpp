@@ -0,0 +1,94 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Malmo:
+#include <DeltaObservationDecoder.h>
+using namespace malmo;
+
+// STL:
+#include <cstdlib>
+#include <iostream>
+#include <string>
+using namespace std;
+
+bool check(DeltaObservationDecoder& decoder, string message, const string& expected)
+{
+    if (!decoder.decode(message) || message != expected)
+    {
+        cout << "Expected " << expected << " but got " << message << endl;
+        return false;
+    }
+    return true;
+}
+
+int main()
+{
+    DeltaObservationDecoder decoder;
+
+    // Without decoding enabled, everything passes straight through:
+    const string delta = "{\"ObservationDelta\":{\"set\":{\"Life\":19.0}}}";
+    if (!check(decoder, delta, delta))
+        return EXIT_FAILURE;
+
+    decoder.setEnabled(true);
+
+    // A delta with nothing to apply it to can't be decoded:
+    string message = delta;
+    if (decoder.decode(message))
+    {
+        cout << "Decoded a delta without a full observation." << endl;
+        return EXIT_FAILURE;
+    }
+
+    // These are the messages the Mod's DeltaObservationEncoder sends for a sequence of observations:
+    const string full = "{\"Life\":20.0,\"Cells\":[\"air\",\"stone\",\"air\",\"dirt\",\"a\",\"b\",\"c\"],\"Name\":\"x,\\\"}y\",\"O\":{\"a\":[1,2]}}";
+    if (!check(decoder, full, full))
+        return EXIT_FAILURE;
+
+    const string second = "{\"Life\":19.0,\"Cells\":[\"air\",\"stone\",\"air\",\"dirt\",\"a\",\"b\",\"d\"],\"Name\":\"x,\\\"}y\",\"O\":{\"a\":[1,2]}}";
+    if (!check(decoder, "{\"ObservationDelta\":{\"set\":{\"Life\":19.0},\"cells\":{\"Cells\":[6,\"d\"]}}}", second))
+        return EXIT_FAILURE;
+
+    if (!check(decoder, "{\"ObservationDelta\":{}}", second))
+        return EXIT_FAILURE;
+
+    const string fourth = "{\"Life\":19.0,\"Cells\":[\"x\",\"x\",\"x\",\"x\",\"a\",\"b\",\"d\"],\"New\":true}";
+    if (!check(decoder, "{\"ObservationDelta\":{\"set\":{\"New\":true},\"cells\":{\"Cells\":[0,\"x\",1,\"x\",2,\"x\",3,\"x\"]},\"removed\":[\"Name\",\"O\"]}}", fourth))
+        return EXIT_FAILURE;
+
+    // A cell beyond the end of the array means we've lost track, so nothing more can be decoded until the next full observation:
+    message = "{\"ObservationDelta\":{\"cells\":{\"Cells\":[7,\"x\"]}}}";
+    if (decoder.decode(message))
+    {
+        cout << "Decoded a delta for a cell that doesn't exist." << endl;
+        return EXIT_FAILURE;
+    }
+    message = delta;
+    if (decoder.decode(message))
+    {
+        cout << "Decoded a delta after losing track." << endl;
+        return EXIT_FAILURE;
+    }
+
+    const string snapshot = "{\"Life\":19.0}";
+    if (!check(decoder, snapshot, snapshot) || !check(decoder, delta, "{\"Life\":19.0}"))
+        return EXIT_FAILURE;
+
+    return EXIT_SUCCESS;
+}
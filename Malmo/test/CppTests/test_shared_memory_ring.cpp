@@ -0,0 +1,103 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Malmo:
+#include <SharedMemoryRing.h>
+using namespace malmo;
+
+// Boost:
+#include <boost/filesystem.hpp>
+#include <boost/interprocess/file_mapping.hpp>
+#include <boost/interprocess/mapped_region.hpp>
+
+// STL:
+#include <cstdlib>
+#include <cstring>
+#include <iostream>
+#include <string>
+#include <vector>
+using namespace std;
+
+const size_t capacity = 64;
+const size_t data_offset = 192;
+
+// Writes a message into the ring the way the Mod does, returning the new write sequence.
+int64_t produce(unsigned char* base, int64_t write_seq, const string& message)
+{
+    const int64_t record_size = (4 + message.size() + 7) & ~7;
+    int64_t offset = write_seq % capacity;
+    if (offset + record_size > static_cast<int64_t>(capacity))
+    {
+        const int32_t wrap = SharedMemoryRing::WRAP_MARKER;
+        memcpy(base + data_offset + offset, &wrap, sizeof(wrap));
+        write_seq += capacity - offset;
+        offset = 0;
+    }
+    const int32_t length = static_cast<int32_t>(message.size());
+    memcpy(base + data_offset + offset, &length, sizeof(length));
+    memcpy(base + data_offset + offset + 4, message.data(), message.size());
+    write_seq += record_size;
+    memcpy(base + 64, &write_seq, sizeof(write_seq));
+    return write_seq;
+}
+
+int main()
+{
+    const string path = (boost::filesystem::temp_directory_path() / boost::filesystem::unique_path("malmo-test-%%%%-%%%%.ring")).string();
+    SharedMemoryRing ring(path, capacity);
+
+    boost::interprocess::file_mapping mapping(path.c_str(), boost::interprocess::read_write);
+    boost::interprocess::mapped_region region(mapping, boost::interprocess::read_write);
+    unsigned char* base = static_cast<unsigned char*>(region.get_address());
+
+    int32_t magic;
+    memcpy(&magic, base, sizeof(magic));
+    if (magic != SharedMemoryRing::MAGIC)
+    {
+        cout << "Ring header not written." << endl;
+        return EXIT_FAILURE;
+    }
+
+    vector<unsigned char> data;
+    if (ring.read(data))
+    {
+        cout << "Read a message from an empty ring." << endl;
+        return EXIT_FAILURE;
+    }
+
+    // Enough messages to go round the ring several times, some of which have to wrap:
+    int64_t write_seq = 0;
+    for (int i = 0; i < 20; i++)
+    {
+        const string message = "observation " + to_string(i) + string(i % 7, '!');
+        write_seq = produce(base, write_seq, message);
+        if (!ring.read(data) || string(data.begin(), data.end()) != message)
+        {
+            cout << "Message " << i << " not read correctly." << endl;
+            return EXIT_FAILURE;
+        }
+        if (ring.read(data))
+        {
+            cout << "Read more messages than were written." << endl;
+            return EXIT_FAILURE;
+        }
+    }
+
+    return EXIT_SUCCESS;
+}
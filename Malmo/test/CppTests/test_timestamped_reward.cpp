@@ -0,0 +1,73 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Malmo:
+#include <TimestampedReward.h>
+using namespace malmo;
+
+// Boost:
+#include <boost/date_time/posix_time/posix_time.hpp>
+
+// STL:
+#include <cstdlib>
+#include <iostream>
+#include <string>
+using namespace std;
+
+int main()
+{
+    const boost::posix_time::ptime now = boost::posix_time::microsec_clock::universal_time();
+
+    // This is what the Mod's MultidimensionalReward sends for the "compact" reward_encoding:
+    const TimestampedReward reward(now, "-1:0.5,0:1.5,2:-10.0");
+    if (reward.timestamp != now)
+    {
+        cout << "Wrong timestamp." << endl;
+        return EXIT_FAILURE;
+    }
+    if (reward.getValue() != 1.5 || reward.getValueOnDimension(-1) != 0.5 || reward.getValueOnDimension(2) != -10.0
+        || reward.hasValueOnDimension(1))
+    {
+        cout << "Wrong values: " << reward << endl;
+        return EXIT_FAILURE;
+    }
+
+    const TimestampedReward exponent(now, "0:1.0E-5");
+    if (exponent.getValue() != 1.0E-5)
+    {
+        cout << "Wrong exponent value: " << exponent << endl;
+        return EXIT_FAILURE;
+    }
+
+    const string malformed[] = { "0", "0:", ":1", "0:1,", "0:1;1:2", "zero:1" };
+    for (const string& text : malformed)
+    {
+        try
+        {
+            TimestampedReward bad(now, text);
+            cout << "Read a malformed reward: " << text << endl;
+            return EXIT_FAILURE;
+        }
+        catch (const runtime_error&)
+        {
+        }
+    }
+
+    return EXIT_SUCCESS;
+}
@@ -0,0 +1,127 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Malmo:
+#include <VideoFrameDecoder.h>
+using namespace malmo;
+
+// Boost:
+#include <boost/iostreams/copy.hpp>
+#include <boost/iostreams/device/array.hpp>
+#include <boost/iostreams/device/back_inserter.hpp>
+#include <boost/iostreams/filter/zlib.hpp>
+#include <boost/iostreams/filtering_streambuf.hpp>
+
+// STL:
+#include <cstdlib>
+#include <iostream>
+#include <vector>
+using namespace std;
+
+const size_t frame_size = 84 * 84 * 3;
+
+// Encode a message the way the Mod's DeltaFrameEncoder does: a type byte followed by the zlib-compressed data.
+vector<unsigned char> encode(unsigned char type, const vector<unsigned char>& data)
+{
+    vector<char> compressed;
+    boost::iostreams::filtering_streambuf<boost::iostreams::input> in;
+    in.push(boost::iostreams::zlib_compressor());
+    in.push(boost::iostreams::array_source(reinterpret_cast<const char*>(data.data()), data.size()));
+    boost::iostreams::copy(in, boost::iostreams::back_inserter(compressed));
+
+    vector<unsigned char> message(1, type);
+    message.insert(message.end(), compressed.begin(), compressed.end());
+    return message;
+}
+
+int main()
+{
+    vector<unsigned char> frame1(frame_size), frame2(frame_size);
+    for (size_t i = 0; i < frame_size; i++)
+    {
+        frame1[i] = static_cast<unsigned char>(i % 251);
+        frame2[i] = (i % 1000 == 0) ? 7 : frame1[i];
+    }
+    vector<unsigned char> diff(frame_size);
+    for (size_t i = 0; i < frame_size; i++)
+        diff[i] = frame1[i] ^ frame2[i];
+
+    VideoFrameDecoder decoder("delta", frame_size);
+
+    // A delta with nothing to apply it to can't be decoded:
+    vector<unsigned char> message = encode(VideoFrameDecoder::FRAME_DELTA, diff);
+    if (decoder.decode(message))
+    {
+        cout << "Decoded a delta frame without a keyframe." << endl;
+        return EXIT_FAILURE;
+    }
+
+    message = encode(VideoFrameDecoder::FRAME_KEY, frame1);
+    if (!decoder.decode(message) || message != frame1)
+    {
+        cout << "Keyframe not decoded correctly." << endl;
+        return EXIT_FAILURE;
+    }
+
+    message = encode(VideoFrameDecoder::FRAME_DELTA, diff);
+    if (!decoder.decode(message) || message != frame2)
+    {
+        cout << "Delta frame not decoded correctly." << endl;
+        return EXIT_FAILURE;
+    }
+
+    message = vector<unsigned char>(1, VideoFrameDecoder::FRAME_UNCHANGED);
+    if (!decoder.decode(message) || message != frame2)
+    {
+        cout << "Unchanged frame not decoded correctly." << endl;
+        return EXIT_FAILURE;
+    }
+
+    // Raw frames should pass straight through:
+    VideoFrameDecoder raw("raw", frame_size);
+    message = frame1;
+    if (!raw.decode(message) || message != frame1)
+    {
+        cout << "Raw frame was altered." << endl;
+        return EXIT_FAILURE;
+    }
+
+    // JPEG frames just lose their header:
+    VideoFrameDecoder jpeg("jpeg", frame_size);
+    message = vector<unsigned char>(1, VideoFrameDecoder::FRAME_JPEG);
+    message.insert(message.end(), frame1.begin(), frame1.begin() + 100);
+    if (!jpeg.decode(message) || !jpeg.isCompressed() || message != vector<unsigned char>(frame1.begin(), frame1.begin() + 100))
+    {
+        cout << "JPEG frame not passed through correctly." << endl;
+        return EXIT_FAILURE;
+    }
+
+    // Even incompressible frames must fit in the space the decoder says a message can take:
+    vector<unsigned char> noise(frame_size);
+    srand(42);
+    for (size_t i = 0; i < frame_size; i++)
+        noise[i] = static_cast<unsigned char>(rand() & 0xff);
+    if (encode(VideoFrameDecoder::FRAME_KEY, noise).size() > decoder.getMaxEncodedSize() || raw.getMaxEncodedSize() != frame_size)
+    {
+        cout << "Maximum encoded size is too small." << endl;
+        return EXIT_FAILURE;
+    }
+
+    return EXIT_SUCCESS;
+}
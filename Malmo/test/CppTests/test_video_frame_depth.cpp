@@ -0,0 +1,83 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+// Malmo:
+#include <TimestampedVideoFrame.h>
+using namespace malmo;
+
+// STL:
+#include <cstdint>
+#include <cstdlib>
+#include <cstring>
+#include <iostream>
+#include <vector>
+using namespace std;
+
+// Append a value the way the Mod sends the depth plane - little-endian:
+template<typename T> void putLittleEndian(vector<unsigned char>& plane, T value)
+{
+    unsigned char bytes[sizeof(T)];
+    memcpy(bytes, &value, sizeof(T));
+    const int one = 1;
+    const bool little_endian = *reinterpret_cast<const char*>(&one) == 1;
+    for (size_t i = 0; i < sizeof(T); i++)
+        plane.push_back(bytes[little_endian ? i : sizeof(T) - 1 - i]);
+}
+
+int main()
+{
+    // A 2x2 frame - the plane's rows run bottom to top, like the pixels:
+    TimestampedUnsignedCharVector message;
+    message.data = vector<unsigned char>(2 * 2 * 3, 0);
+    TimestampedVideoFrame frame(2, 2, 3, message, TimestampedVideoFrame::REVERSE_SCANLINE);
+
+    vector<unsigned char> plane32;
+    const float values[] = { 0.25f, 0.5f, 0.75f, 1.0f };
+    for (float f : values)
+        putLittleEndian<float>(plane32, f);
+    frame.setDepth(plane32, 4, TimestampedVideoFrame::REVERSE_SCANLINE);
+    if (frame.depth.size() != 4 || frame.depth[0] != 0.75f || frame.depth[1] != 1.0f || frame.depth[2] != 0.25f || frame.depth[3] != 0.5f)
+    {
+        cout << "32-bit depth plane not decoded correctly." << endl;
+        return EXIT_FAILURE;
+    }
+
+    // Half-precision: 1.0, -2.0, a subnormal (2^-24) and 0.333 (nearest is 0x3555 = 0.33325195...):
+    vector<unsigned char> plane16;
+    const uint16_t halves[] = { 0x3c00, 0xc000, 0x0001, 0x3555 };
+    for (uint16_t h : halves)
+        putLittleEndian<uint16_t>(plane16, h);
+    frame.setDepth(plane16, 2);
+    if (frame.depth.size() != 4 || frame.depth[0] != 1.0f || frame.depth[1] != -2.0f || frame.depth[2] != 1.0f / (1 << 24) || frame.depth[3] != 0.33325195f)
+    {
+        cout << "16-bit depth plane not decoded correctly." << endl;
+        return EXIT_FAILURE;
+    }
+
+    try
+    {
+        frame.setDepth(vector<unsigned char>(7), 2);
+        cout << "Accepted a depth plane of the wrong size." << endl;
+        return EXIT_FAILURE;
+    }
+    catch (const std::invalid_argument&)
+    {
+    }
+
+    return EXIT_SUCCESS;
+}
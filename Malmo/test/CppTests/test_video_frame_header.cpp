@@ -0,0 +1,82 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+// Malmo:
+#include <VideoFrameHeader.h>
+using namespace malmo;
+
+// STL:
+#include <cstdlib>
+#include <cstring>
+#include <iostream>
+#include <vector>
+using namespace std;
+
+// Append a value the way Java's ByteBuffer writes it - big-endian:
+template<typename T> void putBigEndian(vector<unsigned char>& message, T value)
+{
+    unsigned char bytes[sizeof(T)];
+    memcpy(bytes, &value, sizeof(T));
+    const int one = 1;
+    const bool little_endian = *reinterpret_cast<const char*>(&one) == 1;
+    for (size_t i = 0; i < sizeof(T); i++)
+        message.push_back(bytes[little_endian ? sizeof(T) - 1 - i : i]);
+}
+
+int main()
+{
+    vector<unsigned char> message;
+    putBigEndian<int64_t>(message, 123456789012LL);
+    putBigEndian<int64_t>(message, 42);
+    putBigEndian<int64_t>(message, 1476789012345678901LL);
+    putBigEndian<double>(message, -12.5);
+    putBigEndian<double>(message, 64.0);
+    putBigEndian<double>(message, 1e6 + 0.25);
+    putBigEndian<float>(message, 90.5f);
+    putBigEndian<float>(message, -30.0f);
+    if (message.size() != VideoFrameHeader::SIZE)
+    {
+        cout << "Header is the wrong size." << endl;
+        return EXIT_FAILURE;
+    }
+    const vector<unsigned char> pixels(84 * 84 * 3, 7);
+    message.insert(message.end(), pixels.begin(), pixels.end());
+
+    VideoFrameHeader header;
+    if (!header.read(message) || message != pixels)
+    {
+        cout << "Header not removed from the frame." << endl;
+        return EXIT_FAILURE;
+    }
+    if (header.world_tick != 123456789012LL || header.frame_index != 42 || header.timestamp_ns != 1476789012345678901LL
+        || header.x != -12.5 || header.y != 64.0 || header.z != 1e6 + 0.25 || header.yaw != 90.5f || header.pitch != -30.0f)
+    {
+        cout << "Header fields not read correctly." << endl;
+        return EXIT_FAILURE;
+    }
+
+    vector<unsigned char> too_short(VideoFrameHeader::SIZE - 1);
+    if (header.read(too_short))
+    {
+        cout << "Read a header from a message that was too short." << endl;
+        return EXIT_FAILURE;
+    }
+
+    return EXIT_SUCCESS;
+}
@@ -0,0 +1,243 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Client;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+import com.microsoft.Malmo.Utils.ByteBufferWriter;
+
+/** Encoder for the "binary" observation encoding.<br>
+ * Each observation is sent as the bytes 'M', 'B', 'O', 1 followed by an object. All numbers are little-endian:
+ * <pre>
+ * object := int32 count, then count records
+ * record := int32 key length, key (UTF-8), uint8 type, value
+ * </pre>
+ * The value depends on the type:
+ * <ul>
+ * <li>TYPE_NULL - nothing.</li>
+ * <li>TYPE_BOOLEAN - uint8, 0 or 1.</li>
+ * <li>TYPE_INT32, TYPE_INT64, TYPE_FLOAT32, TYPE_FLOAT64 - the number.</li>
+ * <li>TYPE_STRING - int32 length, then the UTF-8 bytes.</li>
+ * <li>TYPE_OBJECT - a nested object, as above.</li>
+ * <li>TYPE_INT32_ARRAY, TYPE_FLOAT64_ARRAY - int32 count, then the numbers as one block. Empty arrays are sent as TYPE_INT32_ARRAY.</li>
+ * <li>TYPE_STRING_ARRAY - int32 count, then each string as for TYPE_STRING.</li>
+ * <li>TYPE_JSON - any other array: int32 length, then the array as JSON text.</li>
+ * </ul>
+ * Numbers keep the width the observation producer gave them, so a value's type doesn't change from one observation to the next.<br>
+ * The matching decoder is malmo::BinaryObservation in the AgentHost. Not thread-safe - use from the sending thread only.
+ */
+public class BinaryObservationEncoder
+{
+    public static final byte[] MAGIC = { 'M', 'B', 'O', 1 };
+
+    public static final byte TYPE_NULL = 0;
+    public static final byte TYPE_BOOLEAN = 1;
+    public static final byte TYPE_INT32 = 2;
+    public static final byte TYPE_INT64 = 3;
+    public static final byte TYPE_FLOAT32 = 4;
+    public static final byte TYPE_FLOAT64 = 5;
+    public static final byte TYPE_STRING = 6;
+    public static final byte TYPE_OBJECT = 7;
+    public static final byte TYPE_INT32_ARRAY = 8;
+    public static final byte TYPE_FLOAT64_ARRAY = 9;
+    public static final byte TYPE_STRING_ARRAY = 10;
+    public static final byte TYPE_JSON = 11;
+
+    private JsonParser parser = new JsonParser();
+    private Gson gson = new Gson();
+    private JsonWriter jsonWriter = null;
+
+    /** Encode an observation.
+     * @param json the observation.
+     * @param fragments any parts of the observation that have already been encoded as JSON objects - eg by ObservationFromServer.
+     * @param writer where to write the message. It isn't reset first.
+     * @return the number of records in the observation - if zero, there's no need to send it.
+     */
+    public int encode(JsonObject json, List<String> fragments, ByteBufferWriter writer)
+    {
+        for (byte b : MAGIC)
+            writer.putByte(b);
+        int countOffset = writer.length();
+        writer.putInt(0);
+        int count = putMembers(json, writer);
+        for (String fragment : fragments)
+        {
+            JsonElement element = this.parser.parse(fragment);
+            if (element.isJsonObject())
+                count += putMembers(element.getAsJsonObject(), writer);
+        }
+        writer.putInt(countOffset, count);
+        return count;
+    }
+
+    private int putMembers(JsonObject json, ByteBufferWriter writer)
+    {
+        int count = 0;
+        for (Map.Entry<String, JsonElement> entry : json.entrySet())
+        {
+            writer.putString(entry.getKey());
+            putValue(entry.getValue(), writer);
+            count++;
+        }
+        return count;
+    }
+
+    private void putValue(JsonElement value, ByteBufferWriter writer)
+    {
+        if (value == null || value.isJsonNull())
+        {
+            writer.putByte(TYPE_NULL);
+        }
+        else if (value.isJsonObject())
+        {
+            writer.putByte(TYPE_OBJECT);
+            int countOffset = writer.length();
+            writer.putInt(0);
+            writer.putInt(countOffset, putMembers(value.getAsJsonObject(), writer));
+        }
+        else if (value.isJsonArray())
+        {
+            putArray(value.getAsJsonArray(), writer);
+        }
+        else
+        {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean())
+            {
+                writer.putByte(TYPE_BOOLEAN);
+                writer.putByte(primitive.getAsBoolean() ? 1 : 0);
+            }
+            else if (primitive.isNumber())
+            {
+                Number number = primitive.getAsNumber();
+                byte type = numberType(number);
+                writer.putByte(type);
+                if (type == TYPE_INT32)
+                    writer.putInt(number.intValue());
+                else if (type == TYPE_INT64)
+                    writer.putLong(number.longValue());
+                else if (type == TYPE_FLOAT32)
+                    writer.putFloat(number.floatValue());
+                else
+                    writer.putDouble(number.doubleValue());
+            }
+            else
+            {
+                writer.putByte(TYPE_STRING);
+                writer.putString(primitive.getAsString());
+            }
+        }
+    }
+
+    private void putArray(JsonArray array, ByteBufferWriter writer)
+    {
+        boolean allInts = true;
+        boolean allNumbers = true;
+        boolean allStrings = true;
+        for (JsonElement element : array)
+        {
+            boolean isNumber = element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber();
+            boolean isString = element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+            allNumbers &= isNumber;
+            allInts &= isNumber && numberType(element.getAsNumber()) == TYPE_INT32;
+            allStrings &= isString;
+        }
+
+        if (allInts)
+        {
+            writer.putByte(TYPE_INT32_ARRAY);
+            writer.putInt(array.size());
+            for (JsonElement element : array)
+                writer.putInt(element.getAsInt());
+        }
+        else if (allNumbers)
+        {
+            writer.putByte(TYPE_FLOAT64_ARRAY);
+            writer.putInt(array.size());
+            for (JsonElement element : array)
+                writer.putDouble(element.getAsDouble());
+        }
+        else if (allStrings)
+        {
+            writer.putByte(TYPE_STRING_ARRAY);
+            writer.putInt(array.size());
+            for (JsonElement element : array)
+                writer.putString(element.getAsString());
+        }
+        else
+        {
+            // Mixed up - fall back to JSON:
+            writer.putByte(TYPE_JSON);
+            int lengthOffset = writer.length();
+            writer.putInt(0);
+            if (this.jsonWriter == null)
+            {
+                this.jsonWriter = new JsonWriter(writer);
+                this.jsonWriter.setLenient(true);   // So that it can be reused for one array after another.
+            }
+            try
+            {
+                this.gson.toJson(array, this.jsonWriter);
+                this.jsonWriter.flush();
+            }
+            catch (Exception e)
+            {
+                System.out.println("Failed to encode observation: " + e);
+            }
+            writer.putInt(lengthOffset, writer.length() - lengthOffset - 4);
+        }
+    }
+
+    /** Decide how to send a number - producers mostly add Integers, Longs, Floats and Doubles, whose widths we keep.
+     * Anything else (eg numbers parsed from a fragment) is sent as an int32 if it looks like one, and as a double otherwise.
+     */
+    static byte numberType(Number number)
+    {
+        if (number instanceof Integer || number instanceof Short || number instanceof Byte)
+            return TYPE_INT32;
+        if (number instanceof Long)
+            return TYPE_INT64;
+        if (number instanceof Float)
+            return TYPE_FLOAT32;
+        if (number instanceof Double)
+            return TYPE_FLOAT64;
+        String text = number.toString();
+        if (text.indexOf('.') == -1 && text.indexOf('e') == -1 && text.indexOf('E') == -1)
+        {
+            try
+            {
+                long value = Long.parseLong(text);
+                return (value == (int)value) ? TYPE_INT32 : TYPE_INT64;
+            }
+            catch (NumberFormatException e)
+            {
+            }
+        }
+        return TYPE_FLOAT64;
+    }
+}
@@ -20,9 +20,12 @@
 package com.microsoft.Malmo.Client;
 
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.lang.reflect.Field;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,7 +58,10 @@ import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 
 import org.xml.sax.SAXException;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.microsoft.Malmo.IState;
 import com.microsoft.Malmo.MalmoMod;
 import com.microsoft.Malmo.MalmoMod.IMalmoMessageListener;
@@ -63,9 +69,13 @@ import com.microsoft.Malmo.MalmoMod.MalmoMessageType;
 import com.microsoft.Malmo.StateEpisode;
 import com.microsoft.Malmo.StateMachine;
 import com.microsoft.Malmo.Client.MalmoModClient.InputType;
+import com.microsoft.Malmo.MissionHandlerInterfaces.IObservationFragmentProducer;
+import com.microsoft.Malmo.MissionHandlerInterfaces.IObservationProducer;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IWantToQuit;
 import com.microsoft.Malmo.MissionHandlers.MissionBehaviour;
 import com.microsoft.Malmo.MissionHandlers.MultidimensionalReward;
+import com.microsoft.Malmo.MissionHandlers.ObservationFromComposite;
+import com.microsoft.Malmo.MissionHandlers.ObservationFromServer;
 import com.microsoft.Malmo.Schemas.AgentHandlers;
 import com.microsoft.Malmo.Schemas.AgentSection;
 import com.microsoft.Malmo.Schemas.ClientAgentConnection;
@@ -75,11 +85,16 @@ import com.microsoft.Malmo.Schemas.MissionEnded;
 import com.microsoft.Malmo.Schemas.MissionInit;
 import com.microsoft.Malmo.Schemas.MissionResult;
 import com.microsoft.Malmo.Schemas.ModSettings;
+import com.microsoft.Malmo.Schemas.ObservationEncoding;
+import com.microsoft.Malmo.Schemas.RewardEncoding;
 import com.microsoft.Malmo.Utils.AddressHelper;
 import com.microsoft.Malmo.Utils.AuthenticationHelper;
+import com.microsoft.Malmo.Utils.ByteBufferWriter;
+import com.microsoft.Malmo.Utils.LockstepTimer;
 import com.microsoft.Malmo.Utils.SchemaHelper;
 import com.microsoft.Malmo.Utils.ScreenHelper;
 import com.microsoft.Malmo.Utils.ScreenHelper.TextCategory;
+import com.microsoft.Malmo.Utils.SharedMemoryRing;
 import com.microsoft.Malmo.Utils.TCPInputPoller;
 import com.microsoft.Malmo.Utils.TCPInputPoller.CommandAndIPAddress;
 import com.microsoft.Malmo.Utils.TCPSocketHelper;
@@ -1263,9 +1278,12 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
      * This state is ended by the death of the player or by the IWantToQuit
      * handler, or by the server declaring the mission is over.
      */
-    public class MissionRunningEpisode extends ConfigAwareStateEpisode
+    public class MissionRunningEpisode extends ConfigAwareStateEpisode implements LockstepTimer.StepRequester
     {
         public static final int FailedTCPSendCountTolerance = 3; // Number of TCP timeouts before we cancel the mission
+        public static final String SKIP_COMMAND = "skip";   // With lockstep stepping, "skip N" advances the world by N ticks.
+        public static final long SERVER_OBSERVATIONS_TIMEOUT_MS = 1000; // How long a lockstep step waits for the server's observations.
+        public static final long AGENT_CHECK_INTERVAL_MS = 1000;    // How often to check the agent is still there, while waiting for it to act.
 
         protected MissionRunningEpisode(ClientStateMachine machine)
         {
@@ -1281,14 +1299,41 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
         private boolean wantsToQuit = false; // We have decided our mission is at an end
         private VideoHook videoHook = new VideoHook();
         private String quitCode = "";
-        private TCPSocketHelper observationSocket = null;
+        private TCPSocketHelper.SocketChannelHelper observationSocket = null;
         private TCPSocketHelper rewardSocket = null;
+        private SharedMemoryRing observationRing = null;
+        private SharedMemoryRing rewardRing = null;
+        private List<String> observationFragments = new ArrayList<String>();
+        private DeltaObservationEncoder observationEncoder = null;
+        private BinaryObservationEncoder binaryObservationEncoder = null;
+        private MultidimensionalReward reward = new MultidimensionalReward();   // Reused from tick to tick.
+        private boolean rewardPending = false;  // The agent had no room in its ring for the last reward - send it with the next one.
+        private boolean compactRewards = false;
+        // The observations are encoded straight into this buffer, which is reused from tick to tick:
+        private ByteBufferWriter observationWriter = new ByteBufferWriter(64 * 1024);
+        private JsonWriter observationJsonWriter = null;
+        private Gson observationGson = new GsonBuilder().serializeNulls().disableHtmlEscaping().create();  // Same output as JsonObject.toString()
+        private int lockstepTicks = 0;
+        private LockstepTimer lockstepTimer = null;
+        private boolean lockstepStarted = false;
+        private List<String> lockstepCommands = new ArrayList<String>();
+        private List<ObservationFromServer> lockstepServerProducers = new ArrayList<ObservationFromServer>();
+        private boolean finishingStep = false;  // Waiting for the server's observations of the step's last tick.
+        private long stepFinishStartMs = 0;
+        private long lastAgentCheckMs = 0;
 
         protected void onMissionStarted()
         {
             // Open our communication channels:
             openSockets();
 
+            AgentHandlers handlers = currentMissionInit().getMission().getAgentSection().get(currentMissionInit().getClientRole()).getAgentHandlers();
+            if (handlers.getObservationEncoding() == ObservationEncoding.DELTA)
+                this.observationEncoder = new DeltaObservationEncoder(handlers.getObservationSnapshotInterval());
+            else if (handlers.getObservationEncoding() == ObservationEncoding.BINARY)
+                this.binaryObservationEncoder = new BinaryObservationEncoder();
+            this.compactRewards = (handlers.getRewardEncoding() == RewardEncoding.COMPACT);
+
             // Tell the server we have started:
             HashMap<String, String> map = new HashMap<String, String>();
             map.put("username", Minecraft.getMinecraft().thePlayer.getName());
@@ -1310,14 +1355,28 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
             if (currentMissionBehaviour().rewardProducer != null)
                 currentMissionBehaviour().rewardProducer.prepare(currentMissionInit());
 
-            this.videoHook.start(currentMissionInit(), currentMissionBehaviour().videoProducer);
+            // Headless rendering - must be decided before the video hook sizes the rendering:
+            ModSettings modsettings = currentMissionInit().getMission().getModSettings();
+            if (modsettings != null && modsettings.isHeadlessRendering() == Boolean.TRUE)
+                TimeHelper.headless = true;
+
+            this.videoHook.start(currentMissionInit(), currentMissionBehaviour().videoProducers);
+            TimeHelper.setFrameRequester(this.videoHook);  // Only render the world when it's going to be seen.
 
             // Make sure we have mouse control:
             ClientStateMachine.this.inputController.setInputType(InputType.AI);
             Minecraft.getMinecraft().inGameHasFocus = true; // Otherwise auto-repeat won't work for mouse clicks.
 
+            // Lockstep stepping - only possible if the server is running in this client, with no other agents for it to keep in step with:
+            if (modsettings != null && modsettings.getLockstepTicks() != null)
+            {
+                if (currentMissionInit().getMission().getAgentSection().size() == 1 && Minecraft.getMinecraft().isIntegratedServerRunning())
+                    this.lockstepTicks = modsettings.getLockstepTicks();
+                else
+                    System.out.println("Ignoring LockstepTicks - lockstep stepping is only available for single-agent missions.");
+            }
+
             // Overclocking:
-            ModSettings modsettings = currentMissionInit().getMission().getModSettings();
             if (modsettings != null && modsettings.getMsPerTick() != null)
                 TimeHelper.setMinecraftClientClockSpeed(1000 / modsettings.getMsPerTick());
             if (modsettings != null && modsettings.isPrioritiseOffscreenRendering() == Boolean.TRUE)
@@ -1344,12 +1403,20 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
 
             // Close our communication channels:
             closeSockets();
+            this.observationEncoder = null;
 
+            TimeHelper.setFrameRequester(null);
             this.videoHook.stop();
 
             // Return Minecraft speed to "normal":
+            if (this.lockstepTimer != null)
+            {
+                LockstepTimer.lockServer(false);
+                this.lockstepTimer = null;
+            }
             TimeHelper.setMinecraftClientClockSpeed(20);
             TimeHelper.displayGranularityMs = 0;
+            TimeHelper.headless = false;  // Minecraft will resize its rendering back to the window on the next display update.
 
             ClientStateMachine.this.missionQuitCode = this.quitCode;
             if (errorReport != null)
@@ -1402,6 +1469,21 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
             if (!this.serverHasFiredStartingPistol)
                 return;
 
+            if (this.lockstepTicks > 0 && this.lockstepTimer == null)
+            {
+                // The server is running the mission now - from here on, the world only moves when the agent acts:
+                this.lockstepTimer = new LockstepTimer(this);
+                LockstepTimer.lockServer(true);
+                TimeHelper.setMinecraftClientTimer(this.lockstepTimer);
+                this.videoHook.setLockstep(true);
+            }
+
+            if (event.phase == Phase.START && this.lockstepTimer != null && this.lockstepTimer.isFirstTickOfStep())
+            {
+                // Carry out the agent's commands before the tick they are meant to affect:
+                handleLockstepCommands();
+            }
+
             if (event.phase == Phase.END)
             {
                 // Check whether or not we want to quit:
@@ -1427,6 +1509,8 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
                     ClientAgentConnection cac = currentMissionInit().getClientAgentConnection();
                     if (currentMissionBehaviour() != null && currentMissionBehaviour().rewardProducer != null && cac != null)
                         currentMissionBehaviour().rewardProducer.getReward(currentMissionInit(), ClientStateMachine.this.finalReward);
+                    if (this.rewardPending)
+                        ClientStateMachine.this.finalReward.add(this.reward);   // The agent never had room for this.
 
                     // Now send a message to the server saying that we have finished our mission:
                     List<AgentSection> agents = currentMissionInit().getMission().getAgentSection();
@@ -1437,68 +1521,92 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
                     MalmoMod.network.sendToServer(new MalmoMod.MalmoMessage(MalmoMessageType.CLIENT_AGENTFINISHEDMISSION, 0, map));
                     onMissionEnded(ClientState.IDLING, null);
                 }
-                else
+                else if (this.lockstepTimer == null)
                 {
                     // Send off observation and reward data:
                     sendData();
                     // And see if we have any incoming commands to act upon:
                     checkForControlCommand();
                 }
+                // (With lockstep stepping, the data is sent by finishStep(), once the server has caught up.)
             }
         }
 
         private void openSockets()
         {
             ClientAgentConnection cac = currentMissionInit().getClientAgentConnection();
-            this.observationSocket = new TCPSocketHelper(cac.getAgentIPAddress(), cac.getAgentObservationsPort());
+            this.observationSocket = new TCPSocketHelper.SocketChannelHelper(cac.getAgentIPAddress(), cac.getAgentObservationsPort());
             this.rewardSocket = new TCPSocketHelper(cac.getAgentIPAddress(), cac.getAgentRewardsPort());
+            // If the agent is on this machine and has offered us shared memory, use that instead:
+            if (cac.getAgentSharedMemoryPath() != null)
+            {
+                this.observationRing = SharedMemoryRing.open(new File(cac.getAgentSharedMemoryPath(), "observations.ring"));
+                this.rewardRing = SharedMemoryRing.open(new File(cac.getAgentSharedMemoryPath(), "rewards.ring"));
+            }
         }
 
         private void closeSockets()
         {
             this.observationSocket.close();
             this.rewardSocket.close();
+            if (this.observationRing != null)
+                this.observationRing.close();
+            if (this.rewardRing != null)
+                this.rewardRing.close();
+            this.observationRing = null;
+            this.rewardRing = null;
         }
 
         private void sendData()
         {
-            // Create the observation data:
-            String data = "";
-            if (currentMissionBehaviour() != null && currentMissionBehaviour().observationProducer != null)
-            {
-                JsonObject json = new JsonObject();
-                currentMissionBehaviour().observationProducer.writeObservationsToJSON(json, currentMissionInit());
-                data = json.toString();
-            }
-
             ClientAgentConnection cac = currentMissionInit().getClientAgentConnection();
 
-            if (data != null && data.length() > 2 && cac != null) // An empty json string will be "{}" (length 2) - don't send these.
+            // Create the observation data:
+            ByteBuffer data = encodeObservations();
+            if (data != null && data.remaining() > 2 && cac != null) // An empty json string will be "{}" (length 2) - don't send these. (Empty binary observations come back as null.)
             {
-                // Bung the whole shebang off via TCP:
-                if (this.observationSocket.sendTCPString(data))
+                // Bung the whole shebang off via TCP (or shared memory, if we have it):
+                int length = data.remaining();
+                boolean sent = (this.observationRing != null) ? this.observationRing.sendBytes(data, length) : this.observationSocket.sendTCPBytes(data, length);
+                if (sent)
                 {
                     this.failedTCPObservationSendCount = 0;
                 }
                 else
                 {
-                    // Failed to send observation message.
-                    this.failedTCPObservationSendCount++;
-                    ClientStateMachine.this.getScreenHelper().addFragment("ERROR: Agent missed observation signal", TextCategory.TXT_CLIENT_WARNING, 5000);
+                    if (this.observationEncoder != null)
+                        this.observationEncoder.reset();    // The agent will need everything again.
+                    // A full ring only means the agent is behind - the next observation will do instead of this one.
+                    if (!agentIsBehind(this.observationRing))
+                    {
+                        // Failed to send observation message.
+                        this.failedTCPObservationSendCount++;
+                        ClientStateMachine.this.getScreenHelper().addFragment("ERROR: Agent missed observation signal", TextCategory.TXT_CLIENT_WARNING, 5000);
+                    }
                 }
             }
 
             // Now create the reward signal:
             if (currentMissionBehaviour() != null && currentMissionBehaviour().rewardProducer != null && cac != null)
             {
-                MultidimensionalReward reward = new MultidimensionalReward();
+                MultidimensionalReward reward = this.reward;
+                if (!this.rewardPending)
+                    reward.clear();     // (Otherwise this tick's reward is added to the one the agent hasn't had yet.)
                 currentMissionBehaviour().rewardProducer.getReward(currentMissionInit(), reward);
                 if (!reward.isEmpty())
                 {
-                    if (this.rewardSocket.sendTCPString(reward.getAsString()))
+                    String rewardString = this.compactRewards ? reward.getAsCompactString() : reward.getAsString();
+                    boolean sent = (this.rewardRing != null) ? this.rewardRing.sendString(rewardString) : this.rewardSocket.sendTCPString(rewardString);
+                    this.rewardPending = false;
+                    if (sent)
                     {
                         this.failedTCPRewardSendCount = 0; // Reset the count of consecutive TCP failures.
                     }
+                    else if (agentIsBehind(this.rewardRing))
+                    {
+                        // The agent hasn't made room for the reward yet - don't lose it, send it along with the next:
+                        this.rewardPending = true;
+                    }
                     else
                     {
                         // Failed to send TCP message - probably because the agent has quit under our feet.
@@ -1511,7 +1619,7 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
             }
 
             // Check that our messages are getting through:
-            int maxFailed = Math.max(this.failedTCPRewardSendCount, this.videoHook.failedTCPSendCount);
+            int maxFailed = Math.max(this.failedTCPRewardSendCount, this.videoHook.getFailedTCPSendCount());
             maxFailed = Math.max(maxFailed, this.failedTCPObservationSendCount);
             if (maxFailed > FailedTCPSendCountTolerance)
             {
@@ -1522,17 +1630,132 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
             }
         }
 
+        /** After a failed send, tell a full shared memory ring - where the agent is still there, just behind - from an agent that has gone.
+         * @param ring the ring the send was made through, or null if it was made through a socket.
+         */
+        private boolean agentIsBehind(SharedMemoryRing ring)
+        {
+            return ring != null && !this.observationSocket.isPeerClosed();
+        }
+
         /**
-         * Check to see if any control instructions have been received and act on them if so.
+         * With lockstep stepping, decide how far the world should move on next: a step of lockstepTicks ticks if the agent has sent
+         * any commands (which are carried out at the start of the step), or as many as it asked for with "skip".
          */
-        private void checkForControlCommand()
+        @Override
+        public int getTicksRequested()
+        {
+            if (!this.lockstepStarted)
+            {
+                this.lockstepStarted = true;
+                return 1;   // So that the agent has something to go on before it first acts.
+            }
+
+            int ticks = 0;
+            String command = ClientStateMachine.this.controlInputPoller.getCommand();
+            if (command == null || command.length() == 0)
+            {
+                // The world is standing still, so nothing else will notice if the mission should end - run a tick to end it:
+                if (inAbortState() || this.wantsToQuit || this.playerDied || quitProducerFired() || agentHasGone())
+                    return 1;
+                return 0;
+            }
+            while (command != null && command.length() > 0)
+            {
+                if (ticks == 0)
+                    ticks = this.lockstepTicks;
+                if (command.startsWith(SKIP_COMMAND + " "))
+                {
+                    try
+                    {
+                        ticks = Math.max(1, Integer.parseInt(command.substring(SKIP_COMMAND.length() + 1).trim()));
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        System.out.println("Bad " + SKIP_COMMAND + " command: " + command);
+                    }
+                }
+                else
+                {
+                    this.lockstepCommands.add(command);
+                }
+                command = ClientStateMachine.this.controlInputPoller.getCommand();
+            }
+            return ticks;
+        }
+
+        /**
+         * With lockstep stepping, called once the server has run the last tick of a step: ask the server for its observations of that tick,
+         * and once they have arrived, send the agent everything it needs to decide on the next step.
+         */
+        @Override
+        public boolean finishStep()
+        {
+            if (!this.finishingStep)
+            {
+                // Anything the server sent before now describes an earlier tick:
+                this.finishingStep = true;
+                this.stepFinishStartMs = System.currentTimeMillis();
+                this.lockstepServerProducers.clear();
+                IObservationProducer producer = (currentMissionBehaviour() != null) ? currentMissionBehaviour().observationProducer : null;
+                if (producer instanceof ObservationFromComposite)
+                {
+                    ((ObservationFromComposite)producer).requestServerDataNow(this.lockstepServerProducers);
+                }
+                else if (producer instanceof ObservationFromServer)
+                {
+                    ((ObservationFromServer)producer).requestDataNow();
+                    this.lockstepServerProducers.add((ObservationFromServer)producer);
+                }
+            }
+            for (ObservationFromServer producer : this.lockstepServerProducers)
+            {
+                if (!producer.hasReplyToLatestRequest())
+                {
+                    if (System.currentTimeMillis() - this.stepFinishStartMs < SERVER_OBSERVATIONS_TIMEOUT_MS)
+                        return false;
+                    System.out.println("WARNING: the server hasn't sent the observations for this step - sending the agent what we have.");
+                    break;
+                }
+            }
+            this.finishingStep = false;
+            sendData();
+            this.videoHook.requestFrame();
+            return true;
+        }
+
+        /** Is our quit producer ready to end the mission?*/
+        private boolean quitProducerFired()
         {
-            String command = "";
-            boolean quitHandlerFired = false;
             IWantToQuit quitHandler = (currentMissionBehaviour() != null) ? currentMissionBehaviour().quitProducer : null;
+            return quitHandler != null && quitHandler.doIWantToQuit(currentMissionInit());
+        }
 
-            command = ClientStateMachine.this.controlInputPoller.getCommand();
-            while (command != null && command.length() > 0 && !quitHandlerFired)
+        /**
+         * While a lockstep mission waits for the agent, nothing is sent to it, so nothing would notice if it had gone away.
+         * Every so often, check that it is still connected - and if it isn't, decide to quit.
+         */
+        private boolean agentHasGone()
+        {
+            long now = System.currentTimeMillis();
+            if (now - this.lastAgentCheckMs < AGENT_CHECK_INTERVAL_MS)
+                return false;
+            this.lastAgentCheckMs = now;
+            if (!this.observationSocket.isPeerClosed())
+                return false;
+            System.out.println("ERROR: Agent has closed its connection - quitting mission.");
+            this.wantsToQuit = true;
+            this.quitCode = MalmoMod.AGENT_UNRESPONSIVE_CODE;
+            return true;
+        }
+
+        /**
+         * Check to see if any control instructions have been received and act on them if so.
+         */
+        private void checkForControlCommand()
+        {
+            String command = ClientStateMachine.this.controlInputPoller.getCommand();
+            while (command != null && command.length() > 0)
             {
                 // Pass the command to our various control overrides:
                 boolean handled = handleCommand(command);
@@ -1540,9 +1763,85 @@ public class ClientStateMachine extends StateMachine implements IMalmoMessageLis
                 command = ClientStateMachine.this.controlInputPoller.getCommand();
                 // If there *is* another command (commands came in faster than one per client tick),
                 // then we should check our quit producer before deciding whether to execute it.
-                if (command != null && command.length() > 0 && handled)
-                    quitHandlerFired = (quitHandler != null && quitHandler.doIWantToQuit(currentMissionInit()));
+                if (command != null && command.length() > 0 && handled && quitProducerFired())
+                    break;
+            }
+        }
+
+        /**
+         * With lockstep stepping, act on the commands gathered by getTicksRequested(), in the same way as checkForControlCommand() -
+         * checking our quit producer between them.
+         */
+        private void handleLockstepCommands()
+        {
+            for (int i = 0; i < this.lockstepCommands.size(); i++)
+            {
+                boolean handled = handleCommand(this.lockstepCommands.get(i));
+                if (i + 1 < this.lockstepCommands.size() && handled && quitProducerFired())
+                    break;
+            }
+            this.lockstepCommands.clear();
+        }
+
+        /** Gather the observations and encode them, ready to send.
+         * @return the encoded observations, or null if there are no observation producers. Only valid until the next call.
+         */
+        private ByteBuffer encodeObservations()
+        {
+            if (currentMissionBehaviour() == null || currentMissionBehaviour().observationProducer == null)
+                return null;
+
+            IObservationProducer producer = currentMissionBehaviour().observationProducer;
+            JsonObject json = new JsonObject();
+            producer.writeObservationsToJSON(json, currentMissionInit());
+            this.observationFragments.clear();
+            if (producer instanceof IObservationFragmentProducer)
+                ((IObservationFragmentProducer)producer).getObservationFragments(this.observationFragments);
+            // However they're encoded, each name must only appear once:
+            ObservationFromServer.removeDuplicateMembers(json, this.observationFragments);
+
+            this.observationWriter.reset();
+            if (this.observationEncoder != null)
+            {
+                // The delta encoder works on the text of the whole observation:
+                String data = ObservationFromServer.appendFragments(json.toString(), this.observationFragments);
+                this.observationWriter.write(this.observationEncoder.encode(data));
+                return this.observationWriter.getMessage();
+            }
+            if (this.binaryObservationEncoder != null)
+            {
+                try
+                {
+                    if (this.binaryObservationEncoder.encode(json, this.observationFragments, this.observationWriter) == 0)
+                        return null;
+                }
+                catch (Exception e)
+                {
+                    System.out.println("Failed to encode observations: " + e);
+                    return null;
+                }
+                return this.observationWriter.getMessage();
+            }
+
+            // Otherwise write the JSON straight into our buffer, and add in anything that's already been encoded:
+            if (this.observationJsonWriter == null)
+            {
+                this.observationJsonWriter = new JsonWriter(this.observationWriter);
+                this.observationJsonWriter.setLenient(true); // So that it can be reused for one observation after another.
+            }
+            try
+            {
+                this.observationGson.toJson(json, this.observationJsonWriter);
+                this.observationJsonWriter.flush();
+            }
+            catch (Exception e)
+            {
+                System.out.println("Failed to encode observations: " + e);
+                return null;
             }
+            for (String fragment : this.observationFragments)
+                this.observationWriter.appendMembers(fragment);
+            return this.observationWriter.getMessage();
         }
 
         /**
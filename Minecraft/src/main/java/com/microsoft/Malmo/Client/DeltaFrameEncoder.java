@@ -0,0 +1,143 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Client;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/** Lossless encoder for the "delta" video codec.<br>
+ * Each encoded frame starts with a single type byte:
+ * <ul>
+ * <li>FRAME_KEY - followed by the zlib-compressed frame.</li>
+ * <li>FRAME_DELTA - followed by the zlib-compressed XOR of this frame with the previous one.</li>
+ * <li>FRAME_UNCHANGED - nothing follows; the frame is identical to the previous one.</li>
+ * </ul>
+ * Mostly-static scenes XOR to long runs of zeros, which compress to almost nothing.<br>
+ * The matching decoder is malmo::VideoFrameDecoder in the AgentHost. Not thread-safe - use from the sending thread only.
+ */
+public class DeltaFrameEncoder
+{
+    public static final byte FRAME_KEY = 0;
+    public static final byte FRAME_DELTA = 1;
+    public static final byte FRAME_UNCHANGED = 2;
+
+    private final int keyframeInterval;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] previous;
+    private byte[] current;
+    private byte[] delta;
+    private byte[] output;
+    private int framesSinceKeyframe = 0;
+    private boolean needKeyframe = true;
+
+    /**
+     * @param frameSize the size in bytes of the raw frames.
+     * @param keyframeInterval send a keyframe at least once every this many frames.
+     */
+    public DeltaFrameEncoder(int frameSize, int keyframeInterval)
+    {
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.previous = new byte[frameSize];
+        this.current = new byte[frameSize];
+        this.delta = new byte[frameSize];
+        // Deflate can expand incompressible data very slightly; leave room so we rarely need to grow.
+        this.output = new byte[1 + frameSize + frameSize / 100 + 64];
+    }
+
+    /** Force the next frame to be a keyframe - eg because the agent may have missed the last one.*/
+    public void reset()
+    {
+        this.needKeyframe = true;
+    }
+
+    /** Encode a frame.
+     * @param frame the raw frame, positioned ready for reading. Its position is left unchanged.
+     * @return a buffer containing the encoded frame, positioned ready for sending. Only valid until the next call.
+     */
+    public ByteBuffer encode(ByteBuffer frame)
+    {
+        int size = frame.remaining();
+        if (size != this.current.length)
+        {
+            // Shouldn't happen - but if it does, start again at the new size.
+            this.previous = new byte[size];
+            this.current = new byte[size];
+            this.delta = new byte[size];
+            this.output = new byte[1 + size + size / 100 + 64];
+            this.needKeyframe = true;
+        }
+        frame.duplicate().get(this.current);
+
+        boolean keyframe = this.needKeyframe || this.framesSinceKeyframe >= this.keyframeInterval;
+        int length;
+        if (!keyframe && Arrays.equals(this.current, this.previous))
+        {
+            this.output[0] = FRAME_UNCHANGED;
+            length = 1;
+        }
+        else if (keyframe)
+        {
+            this.output[0] = FRAME_KEY;
+            length = 1 + compress(this.current);
+        }
+        else
+        {
+            for (int i = 0; i < size; i++)
+                this.delta[i] = (byte)(this.current[i] ^ this.previous[i]);
+            this.output[0] = FRAME_DELTA;
+            length = 1 + compress(this.delta);
+        }
+
+        if (keyframe)
+        {
+            this.framesSinceKeyframe = 0;
+            this.needKeyframe = false;
+        }
+        else
+        {
+            this.framesSinceKeyframe++;
+        }
+
+        // This frame becomes the reference for the next one:
+        byte[] t = this.previous;
+        this.previous = this.current;
+        this.current = t;
+        return ByteBuffer.wrap(this.output, 0, length);
+    }
+
+    /** Deflate the data into our output buffer, after the type byte.
+     * @return the number of compressed bytes.
+     */
+    private int compress(byte[] data)
+    {
+        this.deflater.reset();
+        this.deflater.setInput(data);
+        this.deflater.finish();
+        int length = 0;
+        while (!this.deflater.finished())
+        {
+            if (1 + length == this.output.length)
+                this.output = Arrays.copyOf(this.output, this.output.length * 2);
+            length += this.deflater.deflate(this.output, 1 + length, this.output.length - 1 - length);
+        }
+        return length;
+    }
+}
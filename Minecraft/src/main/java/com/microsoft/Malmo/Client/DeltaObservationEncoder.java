@@ -0,0 +1,195 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.Malmo.Utils.JSONScanner;
+
+/** Encoder for the "delta" observation encoding.<br>
+ * Full observations are sent unchanged. Anything else is a delta from the previous observation, of the form:
+ * <pre>
+ * {"ObservationDelta":{"set":{...changed elements...},"cells":{"name":[index,value,index,value,...]},"removed":["name",...]}}
+ * </pre>
+ * "cells" holds the changed entries of arrays that have kept the same length, where that is shorter than sending the whole array.<br>
+ * The observations are only split into their top-level elements, and arrays into their entries - the values are compared as text,
+ * so nothing is parsed into a JSON tree.<br>
+ * The matching decoder is malmo::DeltaObservationDecoder in the AgentHost. Not thread-safe - use from the sending thread only.
+ */
+public class DeltaObservationEncoder
+{
+    public static final String DELTA_KEY = "ObservationDelta";
+
+    private final int snapshotInterval;
+    private Map<String, String> previous = new LinkedHashMap<String, String>();
+    private Map<String, String> current = new LinkedHashMap<String, String>();
+    private List<String> cells = new ArrayList<String>();
+    private List<String> previousCells = new ArrayList<String>();
+    private List<int[]> spans = new ArrayList<int[]>();
+    private int observationsSinceSnapshot = 0;
+    private boolean needSnapshot = true;
+
+    /**
+     * @param snapshotInterval send a full observation at least once every this many observations.
+     */
+    public DeltaObservationEncoder(int snapshotInterval)
+    {
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+    }
+
+    /** Force the next observation to be sent in full - eg because the last one failed to send.*/
+    public void reset()
+    {
+        this.needSnapshot = true;
+    }
+
+    /** Encode an observation.
+     * @param json the complete observation, a JSON object.
+     * @return the message to send in its place.
+     */
+    public String encode(String json)
+    {
+        this.current.clear();
+        if (!split(json, null, this.current))
+        {
+            // Not something we understand - send it as it is, and start afresh from the next one.
+            this.needSnapshot = true;
+            return json;
+        }
+
+        boolean snapshot = this.needSnapshot || this.observationsSinceSnapshot >= this.snapshotInterval;
+        String message = snapshot ? json : buildDelta();
+
+        if (snapshot)
+        {
+            this.observationsSinceSnapshot = 0;
+            this.needSnapshot = false;
+        }
+        else
+        {
+            this.observationsSinceSnapshot++;
+        }
+
+        // This observation becomes the reference for the next one:
+        Map<String, String> t = this.previous;
+        this.previous = this.current;
+        this.current = t;
+        return message;
+    }
+
+    private String buildDelta()
+    {
+        StringBuilder set = new StringBuilder();
+        StringBuilder cellChanges = new StringBuilder();
+        StringBuilder removed = new StringBuilder();
+        for (Map.Entry<String, String> entry : this.current.entrySet())
+        {
+            String value = entry.getValue();
+            String oldValue = this.previous.get(entry.getKey());
+            if (value.equals(oldValue))
+                continue;
+            if (oldValue != null && appendCellChanges(cellChanges, entry.getKey(), oldValue, value))
+                continue;
+            set.append(set.length() == 0 ? "" : ",").append(entry.getKey()).append(':').append(value);
+        }
+        Iterator<String> it = this.previous.keySet().iterator();
+        while (it.hasNext())
+        {
+            String key = it.next();
+            if (!this.current.containsKey(key))
+                removed.append(removed.length() == 0 ? "" : ",").append(key);
+        }
+
+        StringBuilder sb = new StringBuilder(set.length() + cellChanges.length() + removed.length() + 64);
+        sb.append("{\"").append(DELTA_KEY).append("\":{");
+        boolean first = true;
+        if (set.length() > 0)
+        {
+            sb.append("\"set\":{").append(set).append('}');
+            first = false;
+        }
+        if (cellChanges.length() > 0)
+        {
+            sb.append(first ? "" : ",").append("\"cells\":{").append(cellChanges).append('}');
+            first = false;
+        }
+        if (removed.length() > 0)
+        {
+            sb.append(first ? "" : ",").append("\"removed\":[").append(removed).append(']');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    /** If both values are arrays of the same length, and sending just the changed entries is shorter than sending the
+     * whole array, add the changes to sb.
+     * @return true if the changes were added.
+     */
+    private boolean appendCellChanges(StringBuilder sb, String key, String oldValue, String value)
+    {
+        if (!value.startsWith("[") || !oldValue.startsWith("["))
+            return false;
+        this.cells.clear();
+        this.previousCells.clear();
+        if (!split(value, this.cells, null) || !split(oldValue, this.previousCells, null))
+            return false;
+        if (this.cells.size() != this.previousCells.size())
+            return false;
+
+        StringBuilder changes = new StringBuilder();
+        for (int i = 0; i < this.cells.size(); i++)
+        {
+            String cell = this.cells.get(i);
+            if (!cell.equals(this.previousCells.get(i)))
+            {
+                changes.append(changes.length() == 0 ? "" : ",").append(i).append(',').append(cell);
+                if (changes.length() >= value.length())
+                    return false;   // Cheaper to send the lot.
+            }
+        }
+        sb.append(sb.length() == 0 ? "" : ",").append(key).append(":[").append(changes).append(']');
+        return true;
+    }
+
+    /** Split a JSON object or array into its top-level parts, as text - see JSONScanner for what counts as a part.
+     * @param json the JSON text.
+     * @param entries if not null, json should be an array, and this receives its entries.
+     * @param members if not null, json should be an object, and this receives its members - the keys include their quotes.
+     * @return false if the text isn't a well-formed object or array.
+     */
+    private boolean split(String json, List<String> entries, Map<String, String> members)
+    {
+        this.spans.clear();
+        if (members != null ? !JSONScanner.findMembers(json, null, this.spans) : !JSONScanner.findEntries(json, this.spans))
+            return false;
+        for (int[] span : this.spans)
+        {
+            if (members != null)
+                members.put(json.substring(span[JSONScanner.NAME_START], span[JSONScanner.NAME_END]), json.substring(span[JSONScanner.VALUE_START], span[JSONScanner.VALUE_END]));
+            else
+                entries.add(json.substring(span[0], span[1]));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Client;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/** Lossy encoder for the "jpeg" video codec.<br>
+ * Frames are compressed on a small pool of worker threads, so that several can be in progress at once; the caller
+ * is responsible for sending the results in the order the frames were submitted.<br>
+ * Each encoded frame is the FRAME_JPEG type byte followed by a complete JPEG file, the right way up. Only the colour
+ * channels are encoded - if the frame has a depth channel it is not sent. Luminance frames become greyscale JPEGs.<br>
+ * The AgentHost passes the JPEG data through to the agent untouched.
+ */
+public class JpegFrameEncoder
+{
+    public static final byte FRAME_JPEG = 3;
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final float quality;
+    private final int numThreads;
+    private final ExecutorService pool;
+
+    /** Per-thread scratch space, so that encoding a frame allocates nothing but its output.*/
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue()
+        {
+            return new Worker();
+        }
+    };
+
+    /**
+     * @param width the width of the frames in pixels.
+     * @param height the height of the frames in pixels.
+     * @param channels bytes per pixel in the raw frames - 3 for RGB, 4 for RGBD, 1 for luminance, 2 for luminance and depth.
+     * @param quality the JPEG quality, from 1 (smallest) to 100 (best).
+     * @param numThreads the number of frames that can be encoded at once.
+     */
+    public JpegFrameEncoder(int width, int height, int channels, int quality, int numThreads)
+    {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.quality = Math.max(1, Math.min(100, quality)) / 100.0f;
+        this.numThreads = Math.max(1, numThreads);
+        this.pool = Executors.newFixedThreadPool(this.numThreads, new ThreadFactory() {
+            private int count = 0;
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Malmo JPEG encoder " + (++this.count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /** The number of frames that can be encoded at once.*/
+    public int getThreadCount()
+    {
+        return this.numThreads;
+    }
+
+    /** Start encoding a frame.
+     * @param frame the raw frame, in reverse scanline order, positioned ready for reading. Must not be modified until the encoding is complete.
+     * @return the encoded frame, positioned ready for sending.
+     */
+    public Future<ByteBuffer> submit(final ByteBuffer frame)
+    {
+        return this.pool.submit(new Callable<ByteBuffer>() {
+            @Override
+            public ByteBuffer call() throws IOException
+            {
+                return JpegFrameEncoder.this.workers.get().encode(frame.duplicate());
+            }
+        });
+    }
+
+    /** Stop the worker threads - any frames still being encoded are abandoned.*/
+    public void shutdown()
+    {
+        this.pool.shutdownNow();
+    }
+
+    /** Scratch image and JPEG writer belonging to a single worker thread.*/
+    private class Worker
+    {
+        private final boolean grey = JpegFrameEncoder.this.channels < 3;
+        private final BufferedImage image = new BufferedImage(JpegFrameEncoder.this.width, JpegFrameEncoder.this.height, this.grey ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+        private final byte[] pixels = ((DataBufferByte)this.image.getRaster().getDataBuffer()).getData();
+        private final byte[] row = new byte[JpegFrameEncoder.this.width * JpegFrameEncoder.this.channels];
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+
+        Worker()
+        {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!writers.hasNext())
+                throw new IllegalStateException("No JPEG writer available");
+            this.writer = writers.next();
+            this.param = this.writer.getDefaultWriteParam();
+            this.param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            this.param.setCompressionQuality(JpegFrameEncoder.this.quality);
+        }
+
+        ByteBuffer encode(ByteBuffer frame) throws IOException
+        {
+            final int w = JpegFrameEncoder.this.width;
+            final int h = JpegFrameEncoder.this.height;
+            final int c = JpegFrameEncoder.this.channels;
+            // Flip the rows and swap RGB(D) for BGR as we copy into the image:
+            for (int y = h - 1; y >= 0; y--)
+            {
+                frame.get(this.row);
+                if (this.grey)
+                {
+                    int dst = y * w;
+                    for (int x = 0, src = 0; x < w; x++, src += c)
+                        this.pixels[dst++] = this.row[src];
+                    continue;
+                }
+                int dst = y * w * 3;
+                for (int x = 0, src = 0; x < w; x++, src += c)
+                {
+                    this.pixels[dst++] = this.row[src + 2];
+                    this.pixels[dst++] = this.row[src + 1];
+                    this.pixels[dst++] = this.row[src];
+                }
+            }
+
+            this.bytes.reset();
+            this.bytes.write(FRAME_JPEG);
+            MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(this.bytes);
+            try
+            {
+                this.writer.setOutput(out);
+                this.writer.write(null, new IIOImage(this.image, null, null), this.param);
+            }
+            finally
+            {
+                out.close();
+            }
+            return ByteBuffer.wrap(this.bytes.toByteArray());
+        }
+    }
+}
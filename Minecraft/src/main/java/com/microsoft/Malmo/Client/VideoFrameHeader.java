@@ -0,0 +1,74 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Client;
+
+import java.nio.ByteBuffer;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
+
+/** Optional fixed-size header sent in front of each video frame, so that agents can match frames to world ticks and
+ * poses without waiting for the observations.<br>
+ * Big-endian, like the length prefix:
+ * <ul>
+ * <li>long - the world tick the frame was rendered in.</li>
+ * <li>long - the index of the frame, counting every frame offered to the sender for this stream.</li>
+ * <li>long - when the frame was rendered, in nanoseconds since the Unix epoch.</li>
+ * <li>double x3 - the position of the viewpoint.</li>
+ * <li>float x2 - the yaw and pitch of the viewpoint, in degrees.</li>
+ * </ul>
+ * The header goes in front of the encoded frame, whichever codec is in use. The matching decoder is
+ * malmo::VideoFrameHeader in the AgentHost.
+ */
+public class VideoFrameHeader
+{
+    public static final int SIZE = 56;
+
+    /** System.nanoTime() has no fixed origin - this turns it into time since the epoch, at full resolution.*/
+    private static final long EPOCH_OFFSET_NS = System.currentTimeMillis() * 1000000L - System.nanoTime();
+
+    /** Fill in the header for the frame that has just been rendered. Called from the render thread.
+     * @param header a buffer of at least SIZE bytes - left positioned ready for sending.
+     * @param frameIndex the index of this frame.
+     * @param partialTicks how far the render is between ticks, so that the pose matches what was drawn.
+     */
+    public static void write(ByteBuffer header, long frameIndex, float partialTicks)
+    {
+        Minecraft mc = Minecraft.getMinecraft();
+        Entity viewer = mc.getRenderViewEntity();
+        header.clear();
+        header.putLong((mc.theWorld != null) ? mc.theWorld.getTotalWorldTime() : 0);
+        header.putLong(frameIndex);
+        header.putLong(EPOCH_OFFSET_NS + System.nanoTime());
+        if (viewer != null)
+        {
+            header.putDouble(viewer.prevPosX + (viewer.posX - viewer.prevPosX) * partialTicks);
+            header.putDouble(viewer.prevPosY + (viewer.posY - viewer.prevPosY) * partialTicks);
+            header.putDouble(viewer.prevPosZ + (viewer.posZ - viewer.prevPosZ) * partialTicks);
+            header.putFloat(viewer.prevRotationYaw + (viewer.rotationYaw - viewer.prevRotationYaw) * partialTicks);
+            header.putFloat(viewer.prevRotationPitch + (viewer.rotationPitch - viewer.prevRotationPitch) * partialTicks);
+        }
+        else
+        {
+            header.putDouble(0).putDouble(0).putDouble(0).putFloat(0).putFloat(0);
+        }
+        header.flip();
+    }
+}
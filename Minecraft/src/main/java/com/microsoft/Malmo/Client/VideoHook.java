@@ -19,46 +19,55 @@
 
 package com.microsoft.Malmo.Client;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.lwjgl.BufferUtils;
 import org.lwjgl.LWJGLException;
 import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.DisplayMode;
 
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.OpenGlHelper;
 import net.minecraft.launchwrapper.Launch;
 import net.minecraftforge.client.event.RenderWorldLastEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ClientTickEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
 import net.minecraftforge.fml.common.gameevent.TickEvent.RenderTickEvent;
 
 import com.microsoft.Malmo.MissionHandlerInterfaces.IVideoProducer;
+import com.microsoft.Malmo.MissionHandlers.MissionBehaviour;
+import com.microsoft.Malmo.MissionHandlers.VideoProducerImplementation;
+import com.microsoft.Malmo.Schemas.AgentHandlers;
 import com.microsoft.Malmo.Schemas.ClientAgentConnection;
 import com.microsoft.Malmo.Schemas.MissionInit;
+import com.microsoft.Malmo.Schemas.VideoCodec;
+import com.microsoft.Malmo.Schemas.VideoProducer;
+import com.microsoft.Malmo.Utils.SharedMemoryRing;
 import com.microsoft.Malmo.Utils.TCPSocketHelper;
+import com.microsoft.Malmo.Utils.TimeHelper;
 
 /**
  * Register this class on the MinecraftForge.EVENT_BUS to intercept video
  * frames.
  * <p>
- * We use this to send video frames over sockets.
+ * We use this to send video frames over sockets. The actual sending is done by a VideoSender
+ * thread for each stream, so the render thread only has to read the frames back.<br>
+ * An agent can ask for several streams (eg a small colour view and a larger depth view). Minecraft renders
+ * each frame once, at the largest size any of them needs, and each producer scales its own copy down from that.<br>
+ * As a TimeHelper.FrameRequester, it also tells the game loop whether the world needs rendering at all.
  */
-public class VideoHook {
+public class VideoHook implements TimeHelper.FrameRequester {
     /**
-     * If the sockets are not yet open we delay before retrying. Value is in
-     * nanoseconds.
+     * Number of frames that can be JPEG-compressed at once, if the jpeg codec is in use.
      */
-    private static final long RETRY_GAP_NS = 5000000000L;
-
-    /**
-     * The time in nanoseconds after which we should try sending again.
-     */
-    private long retry_time_ns = 0;
+    private static final int JPEG_ENCODER_THREADS = 2;
 
     /**
      * Calling stop() if we're not running is a no-op.
@@ -71,55 +80,185 @@ public class VideoHook {
     private MissionInit missionInit;
 
     /**
-     * Object that will provide the actual video frame on demand.
-     */
-    private IVideoProducer videoProducer;
-
-    /**
-     * Public count of consecutive TCP failures - used to terminate a mission if nothing is listening
+     * One per video producer - the main one first, then any additional ones.
      */
-    public int failedTCPSendCount = 0;
+    private List<VideoStream> streams = new ArrayList<VideoStream>();
 
-    /**
-     * Object which maintains our connection to the agent.
-     */
-    private TCPSocketHelper.SocketChannelHelper connection = null;
-    
     private int renderWidth;
     
     private int renderHeight;
 
-    ByteBuffer buffer = null;
+    /**
+     * Everything needed to send one stream of video to the agent.
+     */
+    private static class VideoStream
+    {
+        /**
+         * Object that will provide the actual video frame on demand.
+         */
+        IVideoProducer producer;
+
+        /**
+         * Object which maintains our connection to the agent.
+         */
+        TCPSocketHelper.SocketChannelHelper connection = null;
+
+        /**
+         * Shared memory to send the frames through instead, if the agent is on this machine and offered it.
+         */
+        SharedMemoryRing ring = null;
+
+        /**
+         * Thread which owns the frame buffers and sends them down the connection.
+         */
+        VideoSender sender = null;
+
+        /**
+         * Frame pacing - send a frame every frameSkip ticks (if non-zero), and no more often than frameIntervalNs.
+         */
+        int frameSkip = 0;
+        long frameIntervalNs = 0;
+        long nextFrameTimeNs = 0;
+        int ticksSinceFrame = 0;
+        boolean frameDue = true;
+        boolean lockstep = false;   // If true, only send frames when asked to - see requestFrame().
+
+        /**
+         * Number of frames offered to the sender so far, for the frame headers.
+         */
+        long frameIndex = 0;
+
+        VideoStream(IVideoProducer producer, VideoProducer params)
+        {
+            this.producer = producer;
+            this.frameSkip = (params != null) ? params.getFrameSkip() : 0;
+            this.frameIntervalNs = (params != null && params.getTargetFps() > 0) ? 1000000000L / params.getTargetFps() : 0;
+        }
+
+        /**
+         * Count world ticks, so that frame_skip can send frames in step with them.
+         */
+        void onTick()
+        {
+            if (this.frameSkip > 0 && !this.lockstep)
+            {
+                this.ticksSinceFrame++;
+                if (this.ticksSinceFrame >= this.frameSkip)
+                {
+                    this.frameDue = true;
+                    this.ticksSinceFrame = 0;
+                }
+            }
+        }
+
+        /**
+         * Would shouldSendFrame() send a frame rendered now? Unlike shouldSendFrame(), this doesn't alter the pacing state.
+         */
+        boolean isFrameWanted()
+        {
+            if (this.sender == null || ((this.frameSkip > 0 || this.lockstep) && !this.frameDue))
+                return false;
+            return this.lockstep || this.frameIntervalNs == 0 || System.nanoTime() >= this.nextFrameTimeNs;
+        }
+
+        /**
+         * Decide whether the frame that has just been rendered should be sent to the agent, according to frame_skip and target_fps.
+         */
+        boolean shouldSendFrame()
+        {
+            if ((this.frameSkip > 0 || this.lockstep) && !this.frameDue)
+                return false;
+            if (this.frameIntervalNs > 0 && !this.lockstep)
+            {
+                long now = System.nanoTime();
+                if (now < this.nextFrameTimeNs)
+                    return false;   // Still due (if frame skipping) - leave it for the next render.
+                // Keep to the schedule, unless we've fallen more than a frame behind it:
+                this.nextFrameTimeNs += this.frameIntervalNs;
+                if (this.nextFrameTimeNs < now)
+                    this.nextFrameTimeNs = now + this.frameIntervalNs;
+            }
+            this.frameDue = false;
+            return true;
+        }
+
+        void stop()
+        {
+            this.producer.cleanup();
+            // Stop the sender before closing the socket underneath it:
+            if (this.sender != null)
+            {
+                this.sender.stopSending();
+                System.out.println(String.format("Video frames: %d produced, %d sent, %d dropped", this.sender.getFramesProduced(), this.sender.getFramesSent(), this.sender.getFramesDropped()));
+            }
+            // Close our TCP socket:
+            if (this.connection != null)
+                this.connection.close();
+            if (this.ring != null)
+                this.ring.close();
+        }
+    }
 
     /**
      * Resize the rendering and start sending video over TCP.
+     * @param missionInit the MissionInit for the mission that is starting.
+     * @param videoProducers the producers for each stream, in the same order as MissionBehaviour.getVideoParams() returns their parameters.
      */
-    public void start(MissionInit missionInit, IVideoProducer videoProducer)
+    public void start(MissionInit missionInit, List<IVideoProducer> videoProducers)
     {
-        if (videoProducer == null)
+        if (videoProducers == null || videoProducers.isEmpty())
         {
             return; // Don't start up if there is nothing to provide the video.
         }
 
-        videoProducer.prepare(missionInit);
         this.missionInit = missionInit;
-        this.videoProducer = videoProducer;
-        this.buffer = BufferUtils.createByteBuffer(this.videoProducer.getRequiredBufferSize());
-        
-        this.renderWidth = videoProducer.getWidth(missionInit);
-        this.renderHeight = videoProducer.getHeight(missionInit);
+        this.streams = new ArrayList<VideoStream>();
+        AgentHandlers handlers = missionInit.getMission().getAgentSection().get(missionInit.getClientRole()).getAgentHandlers();
+        List<VideoProducer> params = MissionBehaviour.getVideoParams(handlers);
+
+        // Render at a size big enough for every stream:
+        this.renderWidth = 0;
+        this.renderHeight = 0;
+        for (int i = 0; i < videoProducers.size(); i++)
+        {
+            IVideoProducer producer = videoProducers.get(i);
+            producer.prepare(missionInit);
+            this.streams.add(new VideoStream(producer, (i < params.size()) ? params.get(i) : null));
+            this.renderWidth = Math.max(this.renderWidth, producer.getWidth(missionInit));
+            this.renderHeight = Math.max(this.renderHeight, producer.getHeight(missionInit));
+        }
         resizeIfNeeded();
         Display.setResizable(false); // prevent the user from resizing using the window borders
 
         ClientAgentConnection cac = missionInit.getClientAgentConnection();
         if (cac == null)
+        {
+            this.streams.clear();
             return;	// Don't start up if we don't have any connection details.
+        }
 
-        String agentIPAddress = cac.getAgentIPAddress();
-        int agentPort = cac.getAgentVideoPort();
-
-        this.connection = new TCPSocketHelper.SocketChannelHelper(agentIPAddress, agentPort);
-        this.failedTCPSendCount = 0;
+        for (int i = 0; i < this.streams.size(); i++)
+        {
+            VideoStream stream = this.streams.get(i);
+            int agentPort;
+            if (i == 0)
+                agentPort = cac.getAgentVideoPort();
+            else if (i - 1 < cac.getAgentAdditionalVideoPort().size())
+                agentPort = cac.getAgentAdditionalVideoPort().get(i - 1);
+            else
+            {
+                System.out.println("No agent port for additional video stream " + i + " - it won't be sent.");
+                continue;
+            }
+            stream.connection = new TCPSocketHelper.SocketChannelHelper(cac.getAgentIPAddress(), agentPort);
+            startSender(stream, (i < params.size()) ? params.get(i) : null);
+            if (cac.getAgentSharedMemoryPath() != null)
+            {
+                stream.ring = SharedMemoryRing.open(new File(cac.getAgentSharedMemoryPath(), (i == 0) ? "video.ring" : "video" + i + ".ring"));
+                stream.sender.setSharedMemoryRing(stream.ring);
+            }
+            stream.sender.start();
+        }
 
         try
         {
@@ -132,12 +271,48 @@ public class VideoHook {
         }
         this.isRunning = true;
     }
-    
+
+    /**
+     * Create the sender thread for a stream, configured from its VideoProducer parameters.
+     */
+    private static void startSender(VideoStream stream, VideoProducer videoParams)
+    {
+        VideoCodec codec = (videoParams != null) ? videoParams.getCodec() : VideoCodec.RAW;
+        int frameSize = stream.producer.getRequiredBufferSize();
+        int queueSize = (videoParams != null) ? videoParams.getFrameQueueSize() : 2;
+        if (codec == VideoCodec.JPEG)
+            queueSize += JPEG_ENCODER_THREADS;  // Frames being encoded still hold on to their buffers.
+        stream.sender = new VideoSender(stream.connection, frameSize, queueSize, (videoParams != null) ? videoParams.getBackpressure() : null);
+        if (codec == VideoCodec.DELTA)
+            stream.sender.setEncoder(new DeltaFrameEncoder(frameSize, videoParams.getKeyframeInterval()));
+        else if (codec == VideoCodec.JPEG)
+        {
+            int width = VideoProducerImplementation.getOutputWidth(videoParams);
+            int height = VideoProducerImplementation.getOutputHeight(videoParams);
+            stream.sender.setJpegEncoder(new JpegFrameEncoder(width, height, VideoProducerImplementation.getOutputChannels(videoParams), videoParams.getJpegQuality(), JPEG_ENCODER_THREADS));
+        }
+        if (videoParams != null && videoParams.isWantFrameHeader())
+            stream.sender.setFrameHeaders();
+    }
+
     /**
-     * Resizes the window and the Minecraft rendering if necessary. Set renderWidth and renderHeight first.
+     * Resizes the window and the Minecraft rendering if necessary. Set renderWidth and renderHeight first.<br>
+     * When rendering headless, only Minecraft's offscreen framebuffer is resized - the window is left alone.
      */
     private void resizeIfNeeded()
     {
+        if (TimeHelper.headless)
+        {
+            Minecraft mc = Minecraft.getMinecraft();
+            if (mc.displayWidth != this.renderWidth || mc.displayHeight != this.renderHeight)
+            {
+                if (!OpenGlHelper.isFramebufferEnabled())
+                    System.out.println("Framebuffers are disabled - headless rendering will be limited by the size of the window!");
+                forceResize(this.renderWidth, this.renderHeight);
+            }
+            return;
+        }
+
         // resize the window if we need to
         int oldRenderWidth = Display.getWidth(); 
         int oldRenderHeight = Display.getHeight();
@@ -163,8 +338,6 @@ public class VideoHook {
         {
             return;
         }
-        if (this.videoProducer != null)
-            this.videoProducer.cleanup();
 
         // stop sending video frames
         try
@@ -176,8 +349,9 @@ public class VideoHook {
         {
             System.out.println("Failed to unregister video hook: " + e);
         }
-        // Close our TCP socket:
-        this.connection.close();
+        for (VideoStream stream : this.streams)
+            stream.stop();
+        this.streams.clear();
         this.isRunning = false;
 
         // allow the user to resize the window again
@@ -200,6 +374,19 @@ public class VideoHook {
         }
     }
     
+    /**
+     * Count world ticks, so that frame_skip can send frames in step with them.
+     */
+    @SubscribeEvent
+    public void onClientTick(ClientTickEvent event)
+    {
+        if (event.phase == Phase.END)
+        {
+            for (VideoStream stream : this.streams)
+                stream.onTick();
+        }
+    }
+
     /**
      * Called when the world has been rendered but not yet the GUI or player hand.
      * 
@@ -209,43 +396,116 @@ public class VideoHook {
     @SubscribeEvent
     public void postRender(RenderWorldLastEvent event)
     {
-        long time_before_ns = System.nanoTime();
+        for (VideoStream stream : this.streams)
+        {
+            // Don't even read the frame back unless we're going to send it:
+            if (stream.sender == null || !stream.shouldSendFrame())
+                continue;
 
-        if (time_before_ns < retry_time_ns)
-            return;
+            // Get a free buffer from the sender - if there isn't one, the backpressure policy has decided to skip this frame:
+            ByteBuffer buffer = stream.sender.acquireBuffer();
+            long frameIndex = stream.frameIndex++;
+            if (buffer == null)
+                continue;
 
-        boolean success = false;
+            try
+            {
+                // Write the frame, and the header describing it if the agent asked for one:
+                if (!stream.producer.getFrame(this.missionInit, buffer))
+                {
+                    stream.sender.dropFrame(buffer);
+                    continue;
+                }
+                ByteBuffer header = stream.sender.getFrameHeader(buffer);
+                if (header != null)
+                    VideoFrameHeader.write(header, frameIndex, event.partialTicks);
+                // The buffer is now positioned ready for sending - hand it over to the sender thread:
+                stream.sender.submitFrame(buffer);
+            }
+            catch (Exception e)
+            {
+                System.out.format(e.getMessage());
+                stream.sender.releaseBuffer(buffer);
+            }
+        }
+    }
 
-        try
+    /**
+     * Does any stream want the next frame? If not, there's no need to render the world.
+     */
+    @Override
+    public boolean isFrameWanted()
+    {
+        if (!this.isRunning)
+            return false;
+        for (VideoStream stream : this.streams)
         {
-            int size = this.videoProducer.getRequiredBufferSize();
-            // Get buffer ready for writing to:
-            this.buffer.clear();
-            // Write the frame:
-            this.videoProducer.getFrame(this.missionInit, this.buffer);
-            long time_after_render_ns = System.nanoTime();
-            // The buffer gets flipped by getFrame(), so now we can simply write the frame to the socket:
-            success = this.connection.sendTCPBytes(this.buffer, size);
-
-            long time_after_ns = System.nanoTime();
-            float ms_send = (time_after_ns - time_after_render_ns) / 1000000.0f;
-            float ms_render = (time_after_render_ns - time_before_ns) / 1000000.0f;
-            if (success)
-                this.failedTCPSendCount = 0;    // Reset count of failed sends.
-            //            System.out.format("Total: %.2fms; collecting took %.2fms; sending %d bytes took %.2fms\n", ms_send + ms_render, ms_render, size, ms_send);
-            //            System.out.println("Collect: " + ms_render + "; Send: " + ms_send);
+            if (stream.isFrameWanted())
+                return true;
         }
-        catch (Exception e)
+        return false;
+    }
+
+    /**
+     * Switch lockstep stepping on or off. While it's on, frames are only sent when requestFrame() is called, regardless of frame_skip and target_fps.
+     */
+    public void setLockstep(boolean lockstep)
+    {
+        for (VideoStream stream : this.streams)
         {
-            System.out.format(e.getMessage());
+            stream.lockstep = lockstep;
+            stream.frameDue = !lockstep;
         }
-        
-        if (!success)
+    }
+
+    /**
+     * Send the agent the next frame that is rendered, on every stream - eg at the end of a lockstep step.
+     */
+    public void requestFrame()
+    {
+        for (VideoStream stream : this.streams)
+            stream.frameDue = true;
+    }
+
+    /**
+     * Count of consecutive TCP failures - used to terminate a mission if nothing is listening.
+     */
+    public int getFailedTCPSendCount()
+    {
+        int failed = 0;
+        for (VideoStream stream : this.streams)
         {
-            System.out.format("Failed to send frame - will retry in %d seconds\n", RETRY_GAP_NS / 1000000000L);
-            retry_time_ns = time_before_ns + RETRY_GAP_NS;
-            this.failedTCPSendCount++;
+            if (stream.sender != null)
+                failed = Math.max(failed, stream.sender.getFailedTCPSendCount());
         }
+        return failed;
+    }
+
+    /** Number of frames rendered while we were running (whether or not they were sent), over all streams.*/
+    public long getFramesProduced()
+    {
+        long frames = 0;
+        for (VideoStream stream : this.streams)
+            frames += (stream.sender != null) ? stream.sender.getFramesProduced() : 0;
+        return frames;
+    }
+
+    /** Number of frames successfully sent to the agent, over all streams.*/
+    public long getFramesSent()
+    {
+        long frames = 0;
+        for (VideoStream stream : this.streams)
+            frames += (stream.sender != null) ? stream.sender.getFramesSent() : 0;
+        return frames;
+    }
+
+    /** Number of frames discarded because the agent wasn't keeping up, or couldn't be reached, over all streams.*/
+    public long getFramesDropped()
+    {
+        long frames = 0;
+        for (VideoStream stream : this.streams)
+            frames += (stream.sender != null) ? stream.sender.getFramesDropped() : 0;
+        return frames;
     }
 
     /** Force Minecraft to resize its GUI
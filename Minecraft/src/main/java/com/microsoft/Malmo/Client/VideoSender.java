@@ -0,0 +1,323 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.BufferUtils;
+
+import com.microsoft.Malmo.Schemas.VideoBackpressure;
+import com.microsoft.Malmo.Utils.SharedMemoryRing;
+import com.microsoft.Malmo.Utils.TCPSocketHelper;
+
+/** Thread which sends video frames to the agent, so that the render thread never has to wait on the socket.<br>
+ * Frames live in a fixed set of preallocated direct buffers. The render thread acquires a free buffer, fills it,
+ * and submits it; this thread sends it and hands the buffer back. If the agent falls behind and every buffer is
+ * in use, the VideoBackpressure policy decides whether to drop the oldest queued frame, drop the new frame, or
+ * make the render thread wait.<br>
+ * With a JpegFrameEncoder, frames are handed to its worker pool as they arrive, and sent strictly in order as
+ * each one finishes; a buffer isn't returned to the render thread until its frame has been encoded.<br>
+ * If the agent asked for them, each buffer has a VideoFrameHeader of its own, which is sent in front of the encoded frame.
+ */
+public class VideoSender extends Thread
+{
+    /** How long the sending thread waits for a frame before checking whether it should stop.*/
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    /** Longest we will hold up the render thread under the "block" policy, before giving up on the frame.*/
+    private static final long BLOCK_TIMEOUT_MS = 1000;
+
+    /** If a send fails we discard frames for this long (in nanoseconds) before trying the socket again.*/
+    private static final long RETRY_GAP_NS = 5000000000L;
+
+    private final TCPSocketHelper.SocketChannelHelper connection;
+    private SharedMemoryRing ring = null;
+    private final VideoBackpressure policy;
+    private final ArrayBlockingQueue<ByteBuffer> freeBuffers;
+    private final ArrayBlockingQueue<ByteBuffer> queuedFrames;
+    private volatile boolean keepRunning = true;
+    private volatile long retryTimeNs = 0;
+    private volatile int failedTCPSendCount = 0;
+    private DeltaFrameEncoder encoder = null;
+    private JpegFrameEncoder jpegEncoder = null;
+
+    /** The VideoFrameHeader to send in front of each frame buffer, if the agent wants them.*/
+    private IdentityHashMap<ByteBuffer, ByteBuffer> headers = null;
+
+    /** Frames currently being JPEG-encoded, oldest first, paired with the buffers they came from.*/
+    private final ArrayDeque<Future<ByteBuffer>> encodingFrames = new ArrayDeque<Future<ByteBuffer>>();
+    private final ArrayDeque<ByteBuffer> encodingBuffers = new ArrayDeque<ByteBuffer>();
+
+    private final AtomicLong framesProduced = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+
+    /** Create a sender - call start() to begin sending.
+     * @param connection the socket to send the frames down.
+     * @param frameSize the size in bytes of the largest frame that will be sent.
+     * @param numBuffers the number of frames that can be queued or in flight at any one time.
+     * @param policy what to do when all the buffers are in use.
+     */
+    public VideoSender(TCPSocketHelper.SocketChannelHelper connection, int frameSize, int numBuffers, VideoBackpressure policy)
+    {
+        super("Malmo video sender");
+        setDaemon(true);
+        this.connection = connection;
+        this.policy = (policy != null) ? policy : VideoBackpressure.DROP_OLDEST;
+        numBuffers = Math.max(2, numBuffers);
+        this.freeBuffers = new ArrayBlockingQueue<ByteBuffer>(numBuffers);
+        this.queuedFrames = new ArrayBlockingQueue<ByteBuffer>(numBuffers);
+        for (int i = 0; i < numBuffers; i++)
+            this.freeBuffers.add(BufferUtils.createByteBuffer(frameSize));
+    }
+
+    /** Encode frames before sending them. Call before start().
+     * @param encoder the encoder to use, or null to send raw frames.
+     */
+    public void setEncoder(DeltaFrameEncoder encoder)
+    {
+        this.encoder = encoder;
+    }
+
+    /** Send frames through shared memory instead of the socket. Call before start().
+     * @param ring the ring buffer the agent is reading from, or null to use the socket.
+     */
+    public void setSharedMemoryRing(SharedMemoryRing ring)
+    {
+        this.ring = ring;
+    }
+
+    /** Compress frames to JPEG on a worker pool before sending them. Call before start().
+     * @param jpegEncoder the encoder to use, or null to send raw frames.
+     */
+    public void setJpegEncoder(JpegFrameEncoder jpegEncoder)
+    {
+        this.jpegEncoder = jpegEncoder;
+    }
+
+    /** Send a VideoFrameHeader in front of every frame. Call before start().*/
+    public void setFrameHeaders()
+    {
+        this.headers = new IdentityHashMap<ByteBuffer, ByteBuffer>();
+        for (ByteBuffer buffer : this.freeBuffers)
+            this.headers.put(buffer, ByteBuffer.allocate(VideoFrameHeader.SIZE));
+    }
+
+    /** Get the header to fill in for a frame. Called from the render thread.
+     * @param buffer a buffer obtained from acquireBuffer().
+     * @return the header that will be sent in front of it, or null if we aren't sending headers.
+     */
+    public ByteBuffer getFrameHeader(ByteBuffer buffer)
+    {
+        return (this.headers != null) ? this.headers.get(buffer) : null;
+    }
+
+    /** Get a buffer to render the next frame into. Called from the render thread.
+     * @return a cleared buffer, or null if the frame should be skipped altogether.
+     */
+    public ByteBuffer acquireBuffer()
+    {
+        this.framesProduced.incrementAndGet();
+        if (System.nanoTime() < this.retryTimeNs)
+        {
+            // No point reading back a frame we can't send.
+            this.framesDropped.incrementAndGet();
+            return null;
+        }
+
+        ByteBuffer buffer = this.freeBuffers.poll();
+        if (buffer == null)
+        {
+            try
+            {
+                switch (this.policy)
+                {
+                case DROP_NEWEST:
+                    break;
+                case BLOCK:
+                    buffer = this.freeBuffers.poll(BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    break;
+                case DROP_OLDEST:
+                default:
+                    // Reuse the oldest frame that hasn't been sent yet - if the sender has just grabbed it,
+                    // it will be handing another buffer back very shortly.
+                    buffer = this.queuedFrames.poll();
+                    if (buffer != null)
+                        this.framesDropped.incrementAndGet();
+                    else
+                        buffer = this.freeBuffers.poll(BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    break;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                buffer = null;
+            }
+            if (buffer == null)
+            {
+                this.framesDropped.incrementAndGet();
+                return null;
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /** Queue a filled buffer for sending. Called from the render thread.
+     * @param buffer a buffer obtained from acquireBuffer(), positioned ready for writing to the socket.
+     */
+    public void submitFrame(ByteBuffer buffer)
+    {
+        // There are only ever numBuffers buffers in existence, so this can't fail.
+        this.queuedFrames.offer(buffer);
+    }
+
+    /** Hand back a buffer without sending it - eg if the frame couldn't be produced.*/
+    public void releaseBuffer(ByteBuffer buffer)
+    {
+        this.freeBuffers.offer(buffer);
+    }
+
+    /** Hand back a buffer without sending it, and count the frame as dropped - eg if the producer couldn't read it back.*/
+    public void dropFrame(ByteBuffer buffer)
+    {
+        this.framesDropped.incrementAndGet();
+        releaseBuffer(buffer);
+    }
+
+    /** Stop sending - any frames still queued are discarded.*/
+    public void stopSending()
+    {
+        this.keepRunning = false;
+        this.interrupt();
+        try
+        {
+            this.join(BLOCK_TIMEOUT_MS);
+        }
+        catch (InterruptedException e)
+        {
+        }
+        if (this.jpegEncoder != null)
+            this.jpegEncoder.shutdown();
+        this.framesDropped.addAndGet(this.queuedFrames.size() + this.encodingFrames.size());
+        this.queuedFrames.clear();
+    }
+
+    @Override
+    public void run()
+    {
+        while (this.keepRunning)
+        {
+            ByteBuffer buffer = null;
+            try
+            {
+                buffer = this.queuedFrames.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                // Normal when stopping.
+            }
+            if (this.jpegEncoder != null)
+            {
+                if (buffer != null)
+                {
+                    this.encodingFrames.add(this.jpegEncoder.submit(buffer));
+                    this.encodingBuffers.add(buffer);
+                }
+                // Send whatever has finished, in order. If every worker is busy, or there's nothing new
+                // to give them, wait for the oldest frame rather than spinning.
+                while (!this.encodingFrames.isEmpty() && this.keepRunning)
+                {
+                    Future<ByteBuffer> oldest = this.encodingFrames.peek();
+                    if (!oldest.isDone() && buffer != null && this.encodingFrames.size() < this.jpegEncoder.getThreadCount())
+                        break;
+                    ByteBuffer payload = null;
+                    try
+                    {
+                        payload = oldest.get();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        break;  // Normal when stopping.
+                    }
+                    catch (ExecutionException e)
+                    {
+                        System.out.println("Failed to encode frame: " + e.getCause());
+                    }
+                    this.encodingFrames.poll();
+                    ByteBuffer frame = this.encodingBuffers.poll();
+                    if (payload != null)
+                        send(getFrameHeader(frame), payload);
+                    else
+                        this.framesDropped.incrementAndGet();
+                    this.freeBuffers.offer(frame);
+                }
+                continue;
+            }
+
+            if (buffer == null)
+                continue;
+
+            send(getFrameHeader(buffer), (this.encoder != null) ? this.encoder.encode(buffer) : buffer);
+            this.freeBuffers.offer(buffer);
+        }
+    }
+
+    /** Write a frame (and its header, if any) to the socket, and keep count of how that went.*/
+    private void send(ByteBuffer header, ByteBuffer payload)
+    {
+        boolean sent = (this.ring != null) ? this.ring.sendBytes(header, payload, payload.remaining()) : this.connection.sendTCPBytes(header, payload, payload.remaining());
+        if (sent)
+        {
+            this.framesSent.incrementAndGet();
+            this.failedTCPSendCount = 0;
+        }
+        else
+        {
+            this.framesDropped.incrementAndGet();
+            if (this.encoder != null)
+                this.encoder.reset();   // The agent can't rely on having seen the last frame.
+            if (this.ring != null && !this.connection.isPeerClosed())
+                return;     // The ring was full - the agent is still there, just behind, so this is backpressure rather than a failure.
+            this.failedTCPSendCount++;
+            this.retryTimeNs = System.nanoTime() + RETRY_GAP_NS;
+            System.out.format("Failed to send frame - will retry in %d seconds\n", RETRY_GAP_NS / 1000000000L);
+        }
+    }
+
+    /** Count of consecutive failed sends - used to terminate a mission if nothing is listening.*/
+    public int getFailedTCPSendCount() { return this.failedTCPSendCount; }
+
+    /** Number of frames the render thread has offered us.*/
+    public long getFramesProduced() { return this.framesProduced.get(); }
+
+    /** Number of frames that have been successfully written to the socket.*/
+    public long getFramesSent() { return this.framesSent.get(); }
+
+    /** Number of frames that were discarded, either because of backpressure or because the socket failed.*/
+    public long getFramesDropped() { return this.framesDropped.get(); }
+}
@@ -0,0 +1,35 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.MissionHandlerInterfaces;
+
+import java.util.List;
+
+/** Interface for observation producers whose observations arrive already encoded as JSON - eg from the server.<br>
+ * Rather than being parsed back into the JSON object, only to be encoded again, these are spliced straight into the string that is sent to the agent.
+ */
+public interface IObservationFragmentProducer
+{
+    /** Add the latest pre-encoded observations, if there are any, to the list.
+     * @param fragments the list to add to. Each fragment is a complete JSON object, whose members will be added to the observation.<br>
+     * If a name is produced more than once, the observation only contains the last value: fragments added later replace earlier ones,
+     * and fragments replace members written by writeObservationsToJSON (see ObservationFromServer.removeDuplicateMembers).
+     */
+    public void getObservationFragments(List<String> fragments);
+}
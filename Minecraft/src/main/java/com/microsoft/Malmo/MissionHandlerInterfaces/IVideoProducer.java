@@ -29,10 +29,11 @@ public interface IVideoProducer
 {
     /** Get a frame of video from Minecraft.
      * @param missionInit the MissionInit object for the currently running mission, which may contain parameters for the video requirements.
-     * @return an array of bytes representing this frame.<br>
+     * @param buffer the buffer to write the frame into.<br>
      * (The format is unspecified; it is up to the IVideoProducer implementation and the agent to agree on how the data is formatted.)
+     * @return false if no frame could be produced this time, in which case the buffer must not be sent.
      */
-    public void getFrame(MissionInit missionInit, ByteBuffer buffer);
+    public boolean getFrame(MissionInit missionInit, ByteBuffer buffer);
     
     /** Get the requested width of the video frames returned.*/
     public int getWidth(MissionInit missionInit);
@@ -26,7 +26,7 @@ import com.microsoft.Malmo.MissionHandlerInterfaces.IWantToQuit;
 import com.microsoft.Malmo.Schemas.AgentQuitFromReachingPosition;
 import com.microsoft.Malmo.Schemas.MissionInit;
 import com.microsoft.Malmo.Schemas.PointWithToleranceAndDescription;
-import com.microsoft.Malmo.Utils.PositionHelper;
+import com.microsoft.Malmo.Utils.PositionIndex;
 
 /** Simple IWantToQuit object that returns true when the player gets to within a certain tolerance of a goal position.<br>
  * The tolerance and target position are currently specified in the MissionInit's Mission's Goal object.
@@ -35,6 +35,7 @@ import com.microsoft.Malmo.Utils.PositionHelper;
 public class AgentQuitFromReachingPositionImplementation extends HandlerBase implements IWantToQuit
 {
 	AgentQuitFromReachingPosition qrpparams;
+	PositionIndex goals = new PositionIndex();
 	String quitCode = "";
 	
 	@Override
@@ -44,6 +45,8 @@ public class AgentQuitFromReachingPositionImplementation extends HandlerBase imp
 			return false;
 		
 		this.qrpparams = (AgentQuitFromReachingPosition)params;
+		for (PointWithToleranceAndDescription goal : this.qrpparams.getMarker())
+			this.goals.add(goal.getX().doubleValue(), goal.getY().doubleValue(), goal.getZ().doubleValue(), goal.getTolerance().floatValue());
 		return true;
 	}
 
@@ -54,16 +57,12 @@ public class AgentQuitFromReachingPositionImplementation extends HandlerBase imp
 			return false;
 
 		EntityPlayerSP player = Minecraft.getMinecraft().thePlayer;
-		for (PointWithToleranceAndDescription goal : this.qrpparams.getMarker())
-		{
-			float distance = PositionHelper.calcDistanceFromPlayerToPosition(player, goal);
-            if (distance <= goal.getTolerance().floatValue())
-            {
-            	this.quitCode = goal.getDescription();
-            	return true;
-            }
-		}
-		return false;
+		if (this.goals.findWithin(player.posX, player.posY, player.posZ) == 0)
+			return false;
+
+		// The results are in marker order, so the first is the one we would have found by testing each in turn:
+		this.quitCode = this.qrpparams.getMarker().get(this.goals.getResult(0)).getDescription();
+		return true;
 	}
 
 	@Override
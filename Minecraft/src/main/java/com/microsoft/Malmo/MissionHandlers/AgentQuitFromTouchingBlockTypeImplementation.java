@@ -22,8 +22,6 @@ package com.microsoft.Malmo.MissionHandlers;
 import java.util.ArrayList;
 import java.util.List;
 
-import net.minecraft.block.Block;
-import net.minecraft.block.properties.IProperty;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.entity.EntityPlayerSP;
@@ -32,17 +30,14 @@ import net.minecraft.util.BlockPos;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IWantToQuit;
 import com.microsoft.Malmo.Schemas.AgentQuitFromTouchingBlockType;
 import com.microsoft.Malmo.Schemas.BlockSpec;
-import com.microsoft.Malmo.Schemas.BlockSpecWithDescription;
-import com.microsoft.Malmo.Schemas.BlockType;
-import com.microsoft.Malmo.Schemas.BlockVariant;
-import com.microsoft.Malmo.Schemas.Colour;
 import com.microsoft.Malmo.Schemas.MissionInit;
+import com.microsoft.Malmo.Utils.BlockStateMatcher;
 import com.microsoft.Malmo.Utils.PositionHelper;
 
 public class AgentQuitFromTouchingBlockTypeImplementation extends HandlerBase implements IWantToQuit
 {
 	AgentQuitFromTouchingBlockType params;
-	List<String> blockTypeNames;
+	List<BlockStateMatcher> matchers;	// One for each of the params' block specs.
 	String quitCode = "";
 
 	@Override
@@ -52,16 +47,10 @@ public class AgentQuitFromTouchingBlockTypeImplementation extends HandlerBase im
 			return false;
 		
 		this.params = (AgentQuitFromTouchingBlockType)params;
-		// Flatten all the possible block type names for ease of matching later:
-		this.blockTypeNames = new ArrayList<String>();
+		// Compile the block specs, for ease of matching later:
+		this.matchers = new ArrayList<BlockStateMatcher>();
 		for (BlockSpec bs : this.params.getBlock())
-		{
-			for (BlockType bt : bs.getType())
-			{
-				Block b = Block.getBlockFromName(bt.value());
-				this.blockTypeNames.add(b.getUnlocalizedName().toLowerCase());
-			}
-		}
+			this.matchers.add(new BlockStateMatcher(bs));
 		return true;
 	}
 
@@ -74,16 +63,11 @@ public class AgentQuitFromTouchingBlockTypeImplementation extends HandlerBase im
         {
         	IBlockState bs = player.worldObj.getBlockState(pos);
         	// Does this block match our trigger specs?
-        	String blockname = bs.getBlock().getUnlocalizedName().toLowerCase();
-        	if (!this.blockTypeNames.contains(blockname))
-        		continue;
-        	
-    		// The type matches one of our block types, so now we need to perform additional checks.
-        	for (BlockSpecWithDescription blockspec : this.params.getBlock())
+        	for (int i = 0; i < this.matchers.size(); i++)
         	{
-        		if (findMatch(blockspec, bs))
+        		if (this.matchers.get(i).matches(bs))
         		{
-        			this.quitCode = blockspec.getDescription();
+        			this.quitCode = this.params.getBlock().get(i).getDescription();
         			return true;	// Yes, we want to quit!
         		}
         	}
@@ -91,76 +75,6 @@ public class AgentQuitFromTouchingBlockTypeImplementation extends HandlerBase im
         return false;	// Nothing matched, we can quit happily.
 	}
 	
-	private boolean findNameMatch(BlockSpec blockspec, String blockName)
-	{
-		for (BlockType bt : blockspec.getType())
-		{
-			Block b = Block.getBlockFromName(bt.value());
-			if (b.getUnlocalizedName().equalsIgnoreCase(blockName))
-				return true;
-		}
-		return false;
-	}
-	
-	private boolean findColourMatch(BlockSpec blockspec, String blockColour)
-	{
-		if (blockspec.getColour() == null || blockspec.getColour().isEmpty())
-			return true;	// If nothing to match against, we pass.
-		for (Colour c : blockspec.getColour())
-		{
-			if (c.value().equalsIgnoreCase(blockColour))
-				return true;
-		}
-		return false;
-	}
-	
-	private boolean findVariantMatch(BlockSpec blockspec, String blockVariant)
-	{
-		if (blockspec.getVariant() == null || blockspec.getVariant().isEmpty())
-			return true;	// If nothing to match against, we pass.
-		for (BlockVariant v : blockspec.getVariant())
-		{
-			if (v.value().equalsIgnoreCase(blockVariant))
-				return true;
-		}
-		return false;
-	}
-	
-	private boolean findMatch(BlockSpec blockspec, IBlockState blockstate)
-	{
-		// Firstly, do the block types match at all?
-    	String blockname = blockstate.getBlock().getUnlocalizedName().toLowerCase();
-    	if (!findNameMatch(blockspec, blockname))
-    		return false;	// Block name wasn't found in this block type.
-
-    	// Next, check for a colour match:
-		net.minecraft.item.EnumDyeColor blockColour = null;
-		for (IProperty prop : (java.util.Set<IProperty>)blockstate.getProperties().keySet())
-		{
-			if (prop.getName().equals("color") && prop.getValueClass() == net.minecraft.item.EnumDyeColor.class)
-			{
-				blockColour = (net.minecraft.item.EnumDyeColor)blockstate.getValue(prop);
-			}
-		}
-		if (blockColour != null && !findColourMatch(blockspec, blockColour.getName()))
-			return false;	// Colours didn't match.
-
-		// Now check for the variant match:
-		Object blockVariant = null;
-        for (IProperty prop : (java.util.Set<IProperty>)blockstate.getProperties().keySet())
-        {
-            if (prop.getName().equals("variant") && prop.getValueClass().isEnum())
-            {
-            	blockVariant = blockstate.getValue(prop);
-            }
-        }
-        if (blockVariant != null && !findVariantMatch(blockspec, blockVariant.toString()))
-        	return false;
-			
-		// If we've got here, then we have a total match.
-		return true;
-	}
-	
 	@Override
     public void prepare(MissionInit missionInit) {}
 
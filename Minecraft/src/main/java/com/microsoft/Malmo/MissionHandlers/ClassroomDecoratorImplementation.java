@@ -21,6 +21,7 @@ package com.microsoft.Malmo.MissionHandlers;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import net.minecraft.block.BlockDoor;
@@ -35,11 +36,13 @@ import com.microsoft.Malmo.Schemas.AgentHandlers;
 import com.microsoft.Malmo.Schemas.AgentSection;
 import com.microsoft.Malmo.Schemas.PaletteEnum;
 import com.microsoft.Malmo.Schemas.ClassroomDecorator;
+import com.microsoft.Malmo.Schemas.DistanceToGoalHandlers;
 import com.microsoft.Malmo.Schemas.Facing;
 import com.microsoft.Malmo.Schemas.MissionInit;
 import com.microsoft.Malmo.Schemas.PosAndDirection;
 import com.microsoft.Malmo.Utils.BlockDrawingHelper;
 import com.microsoft.Malmo.Utils.Discrete;
+import com.microsoft.Malmo.Utils.DistanceField;
 
 /**
  * This class provides a decorator that will generate a random building full of rooms, where moving
@@ -93,6 +96,9 @@ public class ClassroomDecoratorImplementation extends HandlerBase implements IWo
     
     private Palette palette;
     
+    private DistanceToGoalHandlers distanceToGoalParams;
+    private List<Object> distanceHandlers = new ArrayList<Object>();
+    
     @Override
     public void buildOnWorld(MissionInit missionInit) throws DecoratorException {
         if(this.buildingWidth == 0){
@@ -195,7 +201,14 @@ public class ClassroomDecoratorImplementation extends HandlerBase implements IWo
         }
         
         // place goal
-        world.setBlockState(new BlockPos(goalRoom.x+this.rand.nextInt(goalRoom.width-4) + 2, goalRoom.y, goalRoom.z + goalRoom.length - 2), this.palette.goal);
+        BlockPos goal = new BlockPos(goalRoom.x+this.rand.nextInt(goalRoom.width-4) + 2, goalRoom.y, goalRoom.z + goalRoom.length - 2);
+        world.setBlockState(goal, this.palette.goal);
+        
+        // work out how far the goal is from everywhere in the building, now that all the blocks are in place
+        if(this.distanceToGoalParams != null){
+            DistanceField field = DistanceField.fromWalkableBlocks(world, new BlockPos(START_X, START_Y, START_Z), new BlockPos(START_X + this.buildingWidth - 1, START_Y + this.buildingHeight, START_Z + this.buildingLength - 1), goal);
+            this.distanceHandlers = field.createHandlers(this.distanceToGoalParams);
+        }
         
         // set the agent positions
         PosAndDirection p2 = new PosAndDirection();
@@ -218,6 +231,7 @@ public class ClassroomDecoratorImplementation extends HandlerBase implements IWo
         if (params == null || !(params instanceof ClassroomDecorator))
             return false;
         ClassroomDecorator classroomParams = (ClassroomDecorator)params;
+        this.distanceToGoalParams = classroomParams.getAddDistanceToGoal();
         
         
         if(classroomParams.getSeed() == null){
@@ -1501,6 +1515,10 @@ public class ClassroomDecoratorImplementation extends HandlerBase implements IWo
     @Override
     public boolean getExtraAgentHandlers(AgentHandlers handlers)
     {
-        return false;
+        if(this.distanceHandlers.isEmpty()){
+            return false;
+        }
+        handlers.getAgentMissionHandlers().addAll(this.distanceHandlers);
+        return true;
     }
 }
@@ -32,6 +32,7 @@ import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
 import com.microsoft.Malmo.Schemas.ContinuousMovementCommand;
 import com.microsoft.Malmo.Schemas.ContinuousMovementCommands;
 import com.microsoft.Malmo.Schemas.MissionInit;
+import com.microsoft.Malmo.Utils.LockstepTimer;
 import com.microsoft.Malmo.Utils.TimeHelper;
 
 /** Class which overrides movement of the Minecraft player and exposes control of it to external agents.<br>
@@ -169,7 +170,8 @@ public class CommandForWheeledRobotNavigationImplementation extends CommandBase
     	this.lastAngularUpdateTime = timeNow;
     	
     	// Work out how much the yaw and pitch should have changed in that time:
-    	double overclockScale = 50.0 / (double)TimeHelper.serverTickLength;
+    	// (Under lockstep the tick length no longer says how fast the world runs against the clock, so don't scale by it.)
+    	double overclockScale = LockstepTimer.isServerLocked() ? 1.0 : 50.0 / (double)TimeHelper.serverTickLength;
     	double deltaYaw = this.yawScale * overclockScale * this.maxAngularVelocityDegreesPerSecond * (deltaTime / 1000.0);
     	double deltaPitch = this.pitchScale * overclockScale * this.maxAngularVelocityDegreesPerSecond * (deltaTime / 1000.0);
 
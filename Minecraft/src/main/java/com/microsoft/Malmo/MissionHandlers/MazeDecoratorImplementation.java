@@ -21,6 +21,7 @@ package com.microsoft.Malmo.MissionHandlers;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Random;
@@ -48,6 +49,7 @@ import com.microsoft.Malmo.Schemas.ObservationFromSubgoalPositionList;
 import com.microsoft.Malmo.Schemas.PointWithToleranceAndDescription;
 import com.microsoft.Malmo.Schemas.PosAndDirection;
 import com.microsoft.Malmo.Utils.BlockDrawingHelper;
+import com.microsoft.Malmo.Utils.DistanceField;
 import com.microsoft.Malmo.Utils.MinecraftTypeHelper;
 
 public class MazeDecoratorImplementation extends HandlerBase implements IWorldDecorator
@@ -77,6 +79,7 @@ public class MazeDecoratorImplementation extends HandlerBase implements IWorldDe
     private int gapHeight;
     private AgentQuitFromReachingPosition quitter = null;
     private ObservationFromSubgoalPositionList navigator = null;
+    private List<Object> distanceHandlers = new ArrayList<Object>();
 
     int width;
     int length;
@@ -555,6 +558,37 @@ public class MazeDecoratorImplementation extends HandlerBase implements IWorldDe
         }
     }
 
+    private void findDistancesToGoal(Cell[] grid, Cell end, boolean allowDiags)
+    {
+        // Search outwards from the end cell, to find how many steps each cell is from it:
+        int scale = this.mazeParams.getSizeAndPosition().getScale();
+        DistanceField field = new DistanceField(this.xOrg, this.yOrg, this.zOrg, this.width, 1, this.length, scale);
+        int[] dist = new int[this.width * this.length];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[this.width * this.length];
+        int head = 0;
+        int tail = 0;
+        dist[end.x + end.z * this.width] = 0;
+        queue[tail++] = end.x + end.z * this.width;
+        Cell[] neighbours = new Cell[8];
+        while (head < tail)
+        {
+            int home = queue[head++];
+            field.setDistance(home % this.width, 0, home / this.width, dist[home] * scale);
+            populateNeighbours(grid, neighbours, home % this.width, home / this.width, allowDiags);
+            for (int n = 0; n < 8; n++)
+            {
+                if (neighbours[n] != null && dist[neighbours[n].x + neighbours[n].z * this.width] == -1)
+                {
+                    int next = neighbours[n].x + neighbours[n].z * this.width;
+                    dist[next] = dist[home] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        this.distanceHandlers = field.createHandlers(this.mazeParams.getAddDistanceToGoal());
+    }
+
     private void placeBlocks(World world, Cell[] grid, Cell start, Cell end)
     {
         int scale = this.mazeParams.getSizeAndPosition().getScale();
@@ -684,6 +718,9 @@ public class MazeDecoratorImplementation extends HandlerBase implements IWorldDe
         // Now split into subgoals:
         findSubgoals(grid, start, end);
 
+        if (this.mazeParams.getAddDistanceToGoal() != null)
+            findDistancesToGoal(grid, end, allowDiags);
+
         // Now build the actual Minecraft world:
         World world = MinecraftServer.getServer().getEntityWorld();
         placeBlocks(world, grid, start, end);
@@ -774,6 +811,11 @@ public class MazeDecoratorImplementation extends HandlerBase implements IWorldDe
             handlers.getAgentMissionHandlers().add(this.navigator);
             added = true;
         }
+        if (!this.distanceHandlers.isEmpty())
+        {
+            handlers.getAgentMissionHandlers().addAll(this.distanceHandlers);
+            added = true;
+        }
         return added;
     }
 }
@@ -19,6 +19,10 @@
 
 package com.microsoft.Malmo.MissionHandlers;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
 import com.microsoft.Malmo.MissionHandlerInterfaces.IAudioProducer;
 import com.microsoft.Malmo.MissionHandlerInterfaces.ICommandHandler;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IObservationProducer;
@@ -27,15 +31,18 @@ import com.microsoft.Malmo.MissionHandlerInterfaces.IVideoProducer;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IWantToQuit;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IWorldDecorator;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IWorldGenerator;
+import com.microsoft.Malmo.Schemas.AdditionalVideoProducers;
 import com.microsoft.Malmo.Schemas.AgentHandlers;
 import com.microsoft.Malmo.Schemas.MissionInit;
 import com.microsoft.Malmo.Schemas.ServerHandlers;
+import com.microsoft.Malmo.Schemas.VideoProducer;
 
 /** Holder class for the various MissionHandler interfaces that together define the behaviour of the mission.<br>
  */
 public class MissionBehaviour
 {
-    public IVideoProducer videoProducer = null;
+    /** The VideoProducer (if any) followed by any AdditionalVideoProducers, in order.*/
+    public List<IVideoProducer> videoProducers = new ArrayList<IVideoProducer>();
     public IAudioProducer audioProducer = null;
     public ICommandHandler commandHandler = null;
     public IObservationProducer observationProducer = null;
@@ -82,7 +89,7 @@ public class MissionBehaviour
 
     private void reset()
     {
-        this.videoProducer = null;
+        this.videoProducers = new ArrayList<IVideoProducer>();
         this.audioProducer = null;
         this.commandHandler = null;
         this.observationProducer = null;
@@ -97,17 +104,54 @@ public class MissionBehaviour
         AgentHandlers handlerset = missionInit.getMission().getAgentSection().get(missionInit.getClientRole()).getAgentHandlers();
 
         // Instantiate the various handlers:
-        for (Object handler : handlerset.getAgentMissionHandlers())
-            createAndAddHandler(handler);
+        addAgentHandlers(handlerset);
     }
 
     public boolean addExtraHandlers(AgentHandlers handlers)
     {
-        for (Object handler : handlers.getAgentMissionHandlers())
-            createAndAddHandler(handler);
+        addAgentHandlers(handlers);
         return true;
     }
 
+    private void addAgentHandlers(AgentHandlers handlers)
+    {
+        for (Object handler : handlers.getAgentMissionHandlers())
+        {
+            if (!(handler instanceof AdditionalVideoProducers))
+                createAndAddHandler(handler);
+        }
+        // The additional video producers must come after the main one, to line up with the agent's AdditionalVideoPorts:
+        for (VideoProducer vp : getAdditionalVideoParams(handlers))
+            createAndAddHandler(vp);
+    }
+
+    /** Get the parameters for each of the video streams requested by an agent, in the same order as the videoProducers list.
+     * @param handlers the agent's handlers.
+     * @return the VideoProducer, if there is one, followed by the contents of AdditionalVideoProducers, if any.
+     */
+    public static List<VideoProducer> getVideoParams(AgentHandlers handlers)
+    {
+        List<VideoProducer> params = new ArrayList<VideoProducer>();
+        for (Object handler : handlers.getAgentMissionHandlers())
+        {
+            if (handler instanceof VideoProducer)
+                params.add((VideoProducer)handler);
+        }
+        params.addAll(getAdditionalVideoParams(handlers));
+        return params;
+    }
+
+    private static List<VideoProducer> getAdditionalVideoParams(AgentHandlers handlers)
+    {
+        List<VideoProducer> params = new ArrayList<VideoProducer>();
+        for (Object handler : handlers.getAgentMissionHandlers())
+        {
+            if (handler instanceof AdditionalVideoProducers)
+                params.addAll(((AdditionalVideoProducers)handler).getVideoProducer());
+        }
+        return params;
+    }
+
     private void initServer(MissionInit missionInit)
     {
         reset();
@@ -131,7 +175,10 @@ public class MissionBehaviour
         {
         	if (handler instanceof HandlerBase)
         		((HandlerBase)(handler)).setParentBehaviour(this);
-            addHandler(handler);
+            if (handler instanceof IObservationProducer)
+                addObservationProducer((IObservationProducer)handler, xmlObj);
+            else
+                addHandler(handler);
         }
     }
 
@@ -169,10 +216,7 @@ public class MissionBehaviour
     
     private void addVideoProducer(IVideoProducer handler)
     {
-        if (this.videoProducer != null)
-            this.failedHandlers += "Too many video producers specified - only one allowed at present.\n";
-        else
-            this.videoProducer = handler;
+        this.videoProducers.add(handler);
     }
     
     private void addAudioProducer(IAudioProducer handler)
@@ -240,6 +284,39 @@ public class MissionBehaviour
             ((ObservationFromComposite)this.observationProducer).addObservationProducer(handler);
         }
     }
+
+    /** Observation producers created from the XML always go into a composite, which takes care of their everyNTicks
+     * attribute and lets them be turned off and on by name (see ObservationCommands).
+     */
+    private void addObservationProducer(IObservationProducer handler, Object xmlHandler)
+    {
+        if (!(this.observationProducer instanceof ObservationFromComposite))
+        {
+            ObservationFromComposite group = new ObservationFromComposite();
+            if (this.observationProducer != null)
+                group.addObservationProducer(this.observationProducer);
+            this.observationProducer = group;
+        }
+        ((ObservationFromComposite)this.observationProducer).addObservationProducer(handler, xmlHandler.getClass().getSimpleName(), getEveryNTicks(xmlHandler));
+    }
+
+    /** Get the everyNTicks attribute shared by the observation producers.<br>
+     * The JAXB classes don't have a common base class for it, so we have to find the getter by name.
+     * @return the attribute's value, or 1 (every tick) if the handler doesn't have one.
+     */
+    private static int getEveryNTicks(Object xmlHandler)
+    {
+        try
+        {
+            Method getter = xmlHandler.getClass().getMethod("getEveryNTicks");
+            Object value = getter.invoke(xmlHandler);
+            return (value instanceof Integer) ? (Integer)value : 1;
+        }
+        catch (Exception e)
+        {
+            return 1;
+        }
+    }
  
     private void addWorldDecorator(IWorldDecorator handler)
     {
@@ -20,8 +20,7 @@
 package com.microsoft.Malmo.MissionHandlers;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import javax.xml.bind.JAXBException;
 
@@ -31,10 +30,14 @@ import com.microsoft.Malmo.Utils.SchemaHelper;
 
 /**
  * Stores a float reward on multiple dimensions. 
+ * The dimensions are kept in order in a pair of arrays - there are rarely more than a few, and this saves boxing on every add.
  */
 public class MultidimensionalReward {
 
-    private Map<Integer, Float> map = new HashMap<Integer, Float>();
+    private int[] dimensions = new int[4];
+    private float[] values = new float[4];
+    private int size = 0;
+    private StringBuilder compactString = new StringBuilder();
 
     /**
      * True if no rewards have been received.
@@ -42,7 +45,7 @@ public class MultidimensionalReward {
      * @return whether the reward is empty.
      */
     public boolean isEmpty() {
-        return this.map.isEmpty();
+        return this.size == 0;
     }
 
     /**
@@ -54,10 +57,22 @@ public class MultidimensionalReward {
      *            the value of the reward.
      */
     public void add(int dimension, float value) {
-        if(this.map.containsKey(dimension))
-            this.map.put(dimension, this.map.get(dimension) + value);
-        else
-            this.map.put(dimension, value);
+        int i = 0;
+        while (i < this.size && this.dimensions[i] < dimension)
+            i++;
+        if (i < this.size && this.dimensions[i] == dimension) {
+            this.values[i] += value;
+            return;
+        }
+        if (this.size == this.dimensions.length) {
+            this.dimensions = Arrays.copyOf(this.dimensions, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        System.arraycopy(this.dimensions, i, this.dimensions, i + 1, this.size - i);
+        System.arraycopy(this.values, i, this.values, i + 1, this.size - i);
+        this.dimensions[i] = dimension;
+        this.values[i] = value;
+        this.size++;
     }
 
     /**
@@ -67,11 +82,8 @@ public class MultidimensionalReward {
      *            the other multidimensional reward structure.
      */
     public void add(MultidimensionalReward other) {
-        for (Map.Entry<Integer, Float> entry : other.map.entrySet()) {
-            Integer dimension = entry.getKey();
-            Float reward_value = entry.getValue();
-            this.add(dimension.intValue(), reward_value.floatValue());
-        }
+        for (int i = 0; i < other.size; i++)
+            this.add(other.dimensions[i], other.values[i]);
     }
 
     /**
@@ -81,12 +93,10 @@ public class MultidimensionalReward {
      */
     public Reward getAsReward() {
         Reward reward = new Reward();
-        for (Map.Entry<Integer, Float> entry : this.map.entrySet()) {
-            Integer dimension = entry.getKey();
-            Float reward_value = entry.getValue();
+        for (int i = 0; i < this.size; i++) {
             Value reward_entry = new Value();
-            reward_entry.setDimension(dimension);
-            reward_entry.setValue(new BigDecimal(reward_value));
+            reward_entry.setDimension(this.dimensions[i]);
+            reward_entry.setValue(new BigDecimal(this.values[i]));
             reward.getValue().add(reward_entry);
         }
         return reward;
@@ -108,10 +118,25 @@ public class MultidimensionalReward {
         return rewardString;
     }
 
+    /**
+     * Gets the reward in the "compact" reward encoding - comma-separated dimension:value pairs, eg "0:1.5,2:-10.0".
+     * 
+     * @return the compact string.
+     */
+    public String getAsCompactString() {
+        this.compactString.setLength(0);
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0)
+                this.compactString.append(',');
+            this.compactString.append(this.dimensions[i]).append(':').append(this.values[i]);
+        }
+        return this.compactString.toString();
+    }
+
     /**
      * Resets the storage to empty.
      */
     public void clear() {
-        this.map.clear();
+        this.size = 0;
     }
 }
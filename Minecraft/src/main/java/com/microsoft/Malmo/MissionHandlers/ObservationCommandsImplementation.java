@@ -0,0 +1,90 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.MissionHandlers;
+
+import com.microsoft.Malmo.MissionHandlerInterfaces.ICommandHandler;
+import com.microsoft.Malmo.Schemas.MissionInit;
+import com.microsoft.Malmo.Schemas.ObservationCommand;
+import com.microsoft.Malmo.Schemas.ObservationCommands;
+
+/** Observation commands turn the agent's observation producers off and on, eg "observe ObservationFromGrid 0". */
+public class ObservationCommandsImplementation extends CommandBase implements ICommandHandler
+{
+    private boolean isOverriding;
+
+    @Override
+    protected boolean onExecute(String verb, String parameter, MissionInit missionInit)
+    {
+        if (!verb.equalsIgnoreCase(ObservationCommand.OBSERVE.value()))
+        {
+            return false;
+        }
+
+        String[] parms = parameter.trim().split("\\s+");
+        if (parms.length != 2 || parentBehaviour() == null || !(parentBehaviour().observationProducer instanceof ObservationFromComposite))
+        {
+            return false;
+        }
+
+        boolean enabled;
+        try
+        {
+            enabled = Double.parseDouble(parms[1]) != 0;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+        return ((ObservationFromComposite)parentBehaviour().observationProducer).setProducerEnabled(parms[0], enabled);
+    }
+
+    @Override
+    public boolean parseParameters(Object params)
+    {
+    	if (params == null || !(params instanceof ObservationCommands))
+    		return false;
+    	
+    	ObservationCommands oparams = (ObservationCommands)params;
+    	setUpAllowAndDenyLists(oparams.getModifierList());
+    	return true;
+    }
+
+    @Override
+    public void install(MissionInit missionInit)
+    {
+    }
+
+    @Override
+    public void deinstall(MissionInit missionInit)
+    {
+    }
+
+    @Override
+    public boolean isOverriding()
+    {
+        return this.isOverriding;
+    }
+
+    @Override
+    public void setOverriding(boolean b)
+    {
+        this.isOverriding = b;
+    }
+}
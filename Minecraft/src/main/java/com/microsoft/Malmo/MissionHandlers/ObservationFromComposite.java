@@ -20,27 +20,102 @@
 package com.microsoft.Malmo.MissionHandlers;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import com.google.gson.JsonObject;
+import com.microsoft.Malmo.MissionHandlerInterfaces.IObservationFragmentProducer;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IObservationProducer;
 import com.microsoft.Malmo.Schemas.MissionInit;
 
 /** Composite class that concatenates the results from multiple ObservationProducer objects.<br>
+ * Each producer can be asked for only every Nth observation, and can be turned off and on while the mission runs.
+ * Producers that aren't wanted for an observation aren't called at all - and those that get their data from the server
+ * stop asking for it.
  */
-public class ObservationFromComposite extends HandlerBase implements IObservationProducer
+public class ObservationFromComposite extends HandlerBase implements IObservationProducer, IObservationFragmentProducer
 {
-    private ArrayList<IObservationProducer> producers;
+    /** How many observations ahead to start asking the server for data - a request takes a round trip plus a server tick
+     * to be answered, so asking just before the observation that wants the data would usually be too late.*/
+    private static final int SERVER_REQUEST_LEAD = 3;
+
+    /** A producer, and when it is wanted.*/
+    private static class ScheduledProducer
+    {
+        IObservationProducer producer;
+        String name;
+        int everyNTicks;
+        boolean enabled = true;
+        boolean wantedNow = true;   // whether it is part of the observation being built
+
+        ScheduledProducer(IObservationProducer producer, String name, int everyNTicks)
+        {
+            this.producer = producer;
+            this.name = name;
+            this.everyNTicks = Math.max(1, everyNTicks);
+        }
+
+        boolean isWanted(long tick)
+        {
+            return this.enabled && tick % this.everyNTicks == 0;
+        }
+
+        /** Whether the producer is wanted for any of the observations from this one up to the lead after it.*/
+        boolean isWantedSoon(long tick, int lead)
+        {
+            if (!this.enabled)
+                return false;
+            long ticksToWait = (this.everyNTicks - tick % this.everyNTicks) % this.everyNTicks;
+            return ticksToWait <= lead;
+        }
+    }
+
+    private ArrayList<ScheduledProducer> producers;
+    private long tick = 0;
 	
 	/** Add another ObservationProducer object.<br>
 	 * @param producer the observation producing object to add to the mix.
 	 */
 	public void addObservationProducer(IObservationProducer producer)
+	{
+		addObservationProducer(producer, producer.getClass().getSimpleName(), 1);
+	}
+
+	/** Add another ObservationProducer object.<br>
+	 * @param producer the observation producing object to add to the mix.
+	 * @param name the name used to turn the producer off and on - eg "ObservationFromGrid".
+	 * @param everyNTicks only include the producer's observations in every Nth observation.
+	 */
+	public void addObservationProducer(IObservationProducer producer, String name, int everyNTicks)
 	{
 		if (this.producers == null)
 		{
-			this.producers = new ArrayList<IObservationProducer>();
+			this.producers = new ArrayList<ScheduledProducer>();
 		}
-		this.producers.add(producer);
+		this.producers.add(new ScheduledProducer(producer, name, everyNTicks));
+	}
+
+	/** Turn the named producer off or on.
+	 * @param name the producer's name, as given to addObservationProducer - case doesn't matter.
+	 * @param enabled true to turn it on.
+	 * @return false if there is no producer of that name.
+	 */
+	public boolean setProducerEnabled(String name, boolean enabled)
+	{
+		boolean found = false;
+		if (this.producers != null)
+		{
+			for (ScheduledProducer sp : this.producers)
+			{
+				if (sp.name.equalsIgnoreCase(name))
+				{
+					sp.enabled = enabled;
+					found = true;
+				}
+			}
+		}
+		if (found)
+			requestServerData();
+		return found;
 	}
 	
     @Override
@@ -49,27 +124,76 @@ public class ObservationFromComposite extends HandlerBase implements IObservatio
         if (this.producers == null)
             return;
         
-        for (IObservationProducer producer : this.producers)
+        for (ScheduledProducer sp : this.producers)
+        {
+            sp.wantedNow = sp.isWanted(this.tick);
+            if (sp.wantedNow)
+                sp.producer.writeObservationsToJSON(json, missionInit);
+        }
+        // Get ready for the next observation:
+        this.tick++;
+        requestServerData();
+    }
+
+    @Override
+    public void getObservationFragments(List<String> fragments)
+    {
+        if (this.producers == null)
+            return;
+
+        for (ScheduledProducer sp : this.producers)
+        {
+            if (sp.wantedNow && sp.producer instanceof IObservationFragmentProducer)
+                ((IObservationFragmentProducer)sp.producer).getObservationFragments(fragments);
+        }
+    }
+
+    /** Only ask the server for the data needed for the next few observations.*/
+    private void requestServerData()
+    {
+        for (ScheduledProducer sp : this.producers)
+        {
+            if (sp.producer instanceof ObservationFromServer)
+                ((ObservationFromServer)sp.producer).setRequestingData(sp.isWantedSoon(this.tick, SERVER_REQUEST_LEAD));
+        }
+    }
+
+    /** Ask the server, straight away, for the data wanted for the next observation - see ObservationFromServer.requestDataNow().
+     * @param requested the producers that have been asked are added to this list.
+     */
+    public void requestServerDataNow(List<ObservationFromServer> requested)
+    {
+        if (this.producers == null)
+            return;
+
+        for (ScheduledProducer sp : this.producers)
         {
-            producer.writeObservationsToJSON(json, missionInit);
+            if (sp.producer instanceof ObservationFromServer && sp.isWanted(this.tick))
+            {
+                ((ObservationFromServer)sp.producer).requestDataNow();
+                requested.add((ObservationFromServer)sp.producer);
+            }
         }
     }
 
 	@Override
 	public void prepare(MissionInit missionInit)
 	{
-        for (IObservationProducer producer : this.producers)
+		this.tick = 0;
+        for (ScheduledProducer sp : this.producers)
         {
-            producer.prepare(missionInit);
+            sp.enabled = true;
+            sp.producer.prepare(missionInit);
         }
+        requestServerData();
 	}
 
 	@Override
 	public void cleanup()
 	{
-        for (IObservationProducer producer : this.producers)
+        for (ScheduledProducer sp : this.producers)
         {
-            producer.cleanup();
+            sp.producer.cleanup();
         }
 	}
-}
\ No newline at end of file
+}
@@ -35,6 +35,11 @@ import com.microsoft.Malmo.Utils.PositionHelper;
 public class ObservationFromDistanceImplementation extends HandlerBase implements IObservationProducer
 {
 	private ObservationFromDistance odparams;
+	// The markers, converted once up front:
+	private String[] names;
+	private double[] xs;
+	private double[] ys;
+	private double[] zs;
 	
 	@Override
 	public boolean parseParameters(Object params)
@@ -43,16 +48,30 @@ public class ObservationFromDistanceImplementation extends HandlerBase implement
 			return false;
 		
 		this.odparams = (ObservationFromDistance)params;
+		int nMarkers = this.odparams.getMarker().size();
+		this.names = new String[nMarkers];
+		this.xs = new double[nMarkers];
+		this.ys = new double[nMarkers];
+		this.zs = new double[nMarkers];
+		for (int i = 0; i < nMarkers; i++)
+		{
+			NamedPoint marker = this.odparams.getMarker().get(i);
+			this.names[i] = "distanceFrom" + makeSafe(marker.getName());
+			this.xs[i] = marker.getX().doubleValue();
+			this.ys[i] = marker.getY().doubleValue();
+			this.zs[i] = marker.getZ().doubleValue();
+		}
 		return true;
 	}
 
 	@Override
 	public void writeObservationsToJSON(JsonObject json, MissionInit missionInit)
 	{
-		for (NamedPoint marker : odparams.getMarker())
+		// Every marker gets an observation, so there's nothing to gain from an index here - but at least we skip the BigDecimals.
+		EntityPlayerSP player = Minecraft.getMinecraft().thePlayer;
+		for (int i = 0; i < this.names.length; i++)
 		{
-			EntityPlayerSP player = Minecraft.getMinecraft().thePlayer;
-			json.addProperty("distanceFrom" + makeSafe(marker.getName()), PositionHelper.calcDistanceFromPlayerToPosition(player, marker));
+			json.addProperty(this.names[i], PositionHelper.calcDistanceFromPlayerToPosition(player, this.xs[i], this.ys[i], this.zs[i]));
     	}
 	}
 
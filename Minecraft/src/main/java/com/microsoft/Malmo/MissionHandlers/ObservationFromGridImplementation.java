@@ -22,9 +22,12 @@ package com.microsoft.Malmo.MissionHandlers;
 import io.netty.buffer.ByteBuf;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.util.BlockPos;
 import net.minecraftforge.fml.common.network.ByteBufUtils;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
@@ -32,8 +35,12 @@ import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 
 import com.google.gson.JsonObject;
 import com.microsoft.Malmo.Schemas.GridDefinition;
+import com.microsoft.Malmo.Schemas.GridEncoding;
+import com.microsoft.Malmo.Schemas.MissionInit;
 import com.microsoft.Malmo.Schemas.ObservationFromGrid;
+import com.microsoft.Malmo.Utils.BlockGridSampler;
 import com.microsoft.Malmo.Utils.JSONWorldDataHelper;
+import com.microsoft.Malmo.Utils.JSONWorldDataHelper.GridPalette;
 import com.microsoft.Malmo.Utils.JSONWorldDataHelper.ImmediateEnvironmentDimensions;
 
 /** IObservationProducer that spits out block types of the cell around the player.<br>
@@ -51,7 +58,8 @@ public class ObservationFromGridImplementation extends ObservationFromServer
 		int yMax;
 		int zMax;
 		String name;
-		SimpleGridDef(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax, String name)
+		boolean palette;
+		SimpleGridDef(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax, String name, boolean palette)
 		{
 			this.xMin = xmin;
 			this.yMin = ymin;
@@ -60,6 +68,7 @@ public class ObservationFromGridImplementation extends ObservationFromServer
 			this.yMax = ymax;
 			this.zMax = zmax;
 			this.name = name;
+			this.palette = palette;
 		}
 		ImmediateEnvironmentDimensions getEnvirons()
 		{
@@ -75,6 +84,7 @@ public class ObservationFromGridImplementation extends ObservationFromServer
 	}
 	
     private List<SimpleGridDef> environs = null;
+    private boolean resetPalettes = false;
 
 	@Override
 	public boolean parseParameters(Object params)
@@ -93,33 +103,44 @@ public class ObservationFromGridImplementation extends ObservationFromServer
 				gd.getMax().getX().intValue(),
 				gd.getMax().getY().intValue(),
 				gd.getMax().getZ().intValue(),
-				gd.getName());
+				gd.getName(),
+				gd.getEncoding() == GridEncoding.PALETTE);
         	this.environs.add(sgd);
         }
 		return true;
 	}
 
+	@Override
+	public void prepare(MissionInit missionInit)
+	{
+		super.prepare(missionInit);
+		this.resetPalettes = true;	// Each mission starts with empty palettes.
+	}
+
     public static class GridRequestMessage extends ObservationFromServer.ObservationRequestMessage
     {
         private List<SimpleGridDef> environs = null;
+        private boolean resetPalettes = false;
 
 	    public GridRequestMessage()	// Needed so FML can instantiate our class using reflection.
 	    {
 	    }
 
-	    public GridRequestMessage(List<SimpleGridDef> environs)
+	    public GridRequestMessage(List<SimpleGridDef> environs, boolean resetPalettes)
 	    {
 	    	this.environs = environs;
+	    	this.resetPalettes = resetPalettes;
 	    }
 	    
 	    @Override
 		void restoreState(ByteBuf buf)
 		{
+	    	this.resetPalettes = buf.readBoolean();
 	    	int numGrids = buf.readInt();
 	        this.environs = new ArrayList<SimpleGridDef>();
 	        for (int i = 0; i < numGrids; i++)
 	        {
-	        	SimpleGridDef sgd = new SimpleGridDef(buf.readInt(), buf.readInt(), buf.readInt(), buf.readInt(), buf.readInt(), buf.readInt(), ByteBufUtils.readUTF8String(buf));
+	        	SimpleGridDef sgd = new SimpleGridDef(buf.readInt(), buf.readInt(), buf.readInt(), buf.readInt(), buf.readInt(), buf.readInt(), ByteBufUtils.readUTF8String(buf), buf.readBoolean());
 	        	this.environs.add(sgd);
 	        }
 		}
@@ -127,6 +148,7 @@ public class ObservationFromGridImplementation extends ObservationFromServer
 		@Override
 		void persistState(ByteBuf buf)
 		{
+			buf.writeBoolean(this.resetPalettes);
 			buf.writeInt(this.environs.size());
 			for (SimpleGridDef sgd : this.environs)
 			{
@@ -137,25 +159,60 @@ public class ObservationFromGridImplementation extends ObservationFromServer
 				buf.writeInt(sgd.yMax);
 				buf.writeInt(sgd.zMax);
 				ByteBufUtils.writeUTF8String(buf, sgd.name);
+				buf.writeBoolean(sgd.palette);
 			}
 		}
 		
 		List<SimpleGridDef>getEnvirons() { return this.environs; }
+		boolean getResetPalettes() { return this.resetPalettes; }
     }
     
     public static class GridRequestMessageHandler extends ObservationFromServer.ObservationRequestMessageHandler implements IMessageHandler<GridRequestMessage, IMessage>
 	{
+		// Palettes for the grids that use the palette encoding, keyed by player and grid name.
+		// Only touched from the server thread, in buildJson.
+		private static Map<String, GridPalette> palettes = new HashMap<String, GridPalette>();
+		// Reused from tick to tick - one sample covers all the grids in the request.
+		private static BlockGridSampler sampler = new BlockGridSampler();
+
 		@Override
 		void buildJson(JsonObject json, EntityPlayerMP player, ObservationRequestMessage message, MessageContext ctx)
 		{
 			if (message instanceof GridRequestMessage)
 			{
-			    List<SimpleGridDef> environs = ((GridRequestMessage)message).getEnvirons();
-			    if (environs != null)
+			    GridRequestMessage gridMessage = (GridRequestMessage)message;
+			    List<SimpleGridDef> environs = gridMessage.getEnvirons();
+			    if (environs != null && !environs.isEmpty())
 			    {
+			    	ImmediateEnvironmentDimensions all = environs.get(0).getEnvirons();
+			    	for (SimpleGridDef sgd : environs)
+			    	{
+			    		all.xMin = Math.min(all.xMin, sgd.xMin);
+			    		all.yMin = Math.min(all.yMin, sgd.yMin);
+			    		all.zMin = Math.min(all.zMin, sgd.zMin);
+			    		all.xMax = Math.max(all.xMax, sgd.xMax);
+			    		all.yMax = Math.max(all.yMax, sgd.yMax);
+			    		all.zMax = Math.max(all.zMax, sgd.zMax);
+			    	}
+			    	BlockPos pos = player.getPosition();
+			    	sampler.sample(player.worldObj, pos, all);
 			    	for (SimpleGridDef sgd : environs)
 			    	{
-						JSONWorldDataHelper.buildGridData(json, sgd.getEnvirons(), player, sgd.name);
+			    		if (sgd.palette)
+			    		{
+			    			String key = player.getName() + "/" + sgd.name;
+			    			GridPalette palette = palettes.get(key);
+			    			if (palette == null || gridMessage.getResetPalettes())
+			    			{
+			    				palette = new GridPalette();
+			    				palettes.put(key, palette);
+			    			}
+			    			JSONWorldDataHelper.buildGridData(json, sgd.getEnvirons(), sampler, pos, sgd.name, palette);
+			    		}
+			    		else
+			    		{
+			    			JSONWorldDataHelper.buildGridData(json, sgd.getEnvirons(), sampler, pos, sgd.name);
+			    		}
 			    	}
 			    }
 			}
@@ -171,6 +228,8 @@ public class ObservationFromGridImplementation extends ObservationFromServer
 	@Override
 	public ObservationRequestMessage createObservationRequestMessage()
 	{
-		return new GridRequestMessage(this.environs);
+		GridRequestMessage message = new GridRequestMessage(this.environs, this.resetPalettes);
+		this.resetPalettes = false;
+		return message;
 	}
 }
@@ -21,7 +21,10 @@ package com.microsoft.Malmo.MissionHandlers;
 
 import io.netty.buffer.ByteBuf;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import net.minecraft.entity.player.EntityPlayerMP;
@@ -33,14 +36,15 @@ import net.minecraftforge.fml.common.gameevent.TickEvent;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.microsoft.Malmo.MalmoMod;
 import com.microsoft.Malmo.MalmoMod.MalmoMessageType;
 import com.microsoft.Malmo.MalmoMod.IMalmoMessageListener;
+import com.microsoft.Malmo.MissionHandlerInterfaces.IObservationFragmentProducer;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IObservationProducer;
 import com.microsoft.Malmo.Schemas.MissionInit;
+import com.microsoft.Malmo.Utils.JSONScanner;
+import com.microsoft.Malmo.Utils.LockstepTimer;
 
 /** Starting-point for observation producers that need to deal with extracting information from the server.<br>
  * It's hard to wrap this stuff cleanly, since the code which actually creates the JSON needs to be executed on the server, and may not
@@ -56,13 +60,22 @@ import com.microsoft.Malmo.Schemas.MissionInit;
  * d) Add a call to register the message in MalmoMod.preInit()
  *       eg: network.registerMessage(yourClass.yourMessageHandler.class, yourClass.yourMessage.class, 1, Side.SERVER);
  * e) Make sure prepare() and cleanup() call super.prepare() and super.cleanup()
+ *
+ * The JSON arrives from the server already encoded, and is passed on to the agent as it is (see IObservationFragmentProducer),
+ * rather than being parsed and encoded all over again.
  */
 
 
-public abstract class ObservationFromServer extends HandlerBase implements IMalmoMessageListener, IObservationProducer
+public abstract class ObservationFromServer extends HandlerBase implements IMalmoMessageListener, IObservationProducer, IObservationFragmentProducer
 {
+	private static final String REQUEST_NUMBER_KEY = "requestNumber";	// Where the reply says which request it answers.
+
+	private final Object statsLock = new Object();
 	private String latestJsonStats = "";
 	private boolean missionIsRunning = false;
+	private boolean requestingData = true;
+	private int requestsSent = 0;
+	private int latestReply = 0;	// The number of the latest request the server has answered - see ObservationRequestMessage.requestNumber.
 	
 	ObservationFromServer()
 	{
@@ -73,21 +86,62 @@ public abstract class ObservationFromServer extends HandlerBase implements IMalm
     @SubscribeEvent
     public void onClientTick(TickEvent.ClientTickEvent ev)
     {
-    	if (this.missionIsRunning)
-    	{
-	    	// Use the client tick to fire messages to the server to request up-to-date stats.
-	    	// We can then use those stats to fire back to the agent in writeObservationsToJSON.
-    		ObservationRequestMessage message = createObservationRequestMessage();
-    		// To make sure only the intended listener receives this message, set the id now:
-    		message.id = System.identityHashCode(this);
-	    	MalmoMod.network.sendToServer(message);
-    	}
+    	// Use the client tick to fire messages to the server to request up-to-date stats.
+    	// We can then pass those stats on to the agent in getObservationFragments.
+    	if (this.requestingData)
+    		requestDataNow();
     }
 
+	/** Ask the server for up-to-date stats straight away, rather than waiting for the next client tick - eg because the client
+	 * isn't ticking while a lockstep agent thinks, but the observations it is about to be sent need to describe the world as it is now.
+	 */
+	public void requestDataNow()
+	{
+		if (!this.missionIsRunning)
+			return;
+		ObservationRequestMessage message = createObservationRequestMessage();
+		// To make sure only the intended listener receives this message, set the id now:
+		message.id = System.identityHashCode(this);
+		synchronized (this.statsLock)
+		{
+			this.requestsSent++;
+			message.requestNumber = this.requestsSent;
+		}
+		MalmoMod.network.sendToServer(message);
+	}
+
+	/** Has the server answered the latest request we sent it? If so, getObservationFragments() has the latest stats we asked for.<br>
+	 * Each reply says which request it answers, so a reply that never arrives only holds up the request it belongs to - once we
+	 * have asked again, we wait for the answer to that instead.
+	 */
+	public boolean hasReplyToLatestRequest()
+	{
+		synchronized (this.statsLock)
+		{
+			return this.latestReply >= this.requestsSent;
+		}
+	}
+
+	/** Start or stop asking the server for data - eg because our observations won't be wanted for a while.<br>
+	 * Whatever we last heard from the server is kept until the next reply replaces it - so if the server is slow to answer,
+	 * the observations may be a little out of date, but they are never missing.
+	 * @param requestingData true to keep asking for data every tick.
+	 */
+	public void setRequestingData(boolean requestingData)
+	{
+		this.requestingData = requestingData;
+	}
+
 	@Override
 	public void prepare(MissionInit missionInit)
 	{
 		this.missionIsRunning = true;	// Will start us asking the server for stats.
+		this.requestingData = true;
+		synchronized (this.statsLock)
+		{
+			this.requestsSent = 0;
+			this.latestReply = 0;
+		}
 		MalmoMod.MalmoMessageHandler.registerForMessage(this, MalmoMessageType.SERVER_OBSERVATIONSREADY);
 	}
 
@@ -101,35 +155,115 @@ public abstract class ObservationFromServer extends HandlerBase implements IMalm
     @Override
 	public void writeObservationsToJSON(JsonObject json, MissionInit missionInit)
 	{
-    	String jsonstring = "";
-    	synchronized (this.latestJsonStats)
+    	// Nothing to do - our observations are already encoded; see getObservationFragments().
+	}
+
+    @Override
+    public void getObservationFragments(List<String> fragments)
+    {
+    	String jsonstring;
+    	synchronized (this.statsLock)
     	{
     		jsonstring = this.latestJsonStats;
-		}
+    	}
     	if (jsonstring.length() > 2)	// "{}" is the empty JSON string.
+    		fragments.add(jsonstring);
+    }
+
+    /** Add the members of each fragment to an encoded JSON object, without parsing any of them.
+     * @param json a JSON object, as encoded by JsonObject.toString().
+     * @param fragments JSON objects, as added by getObservationFragments() - and passed through removeDuplicateMembers().
+     * @return the combined JSON object.
+     */
+    public static String appendFragments(String json, List<String> fragments)
+    {
+    	if (fragments.isEmpty())
+    		return json;
+    	int length = json.length();
+    	for (String fragment : fragments)
+    		length += fragment.length();
+    	StringBuilder sb = new StringBuilder(length);
+    	sb.append(json, 0, json.length() - 1);	// Leave off the closing brace.
+    	boolean empty = json.length() <= 2;
+    	for (String fragment : fragments)
+    	{
+    		if (fragment.length() <= 2)
+    			continue;
+    		if (!empty)
+    			sb.append(',');
+    		sb.append(fragment, 1, fragment.length() - 1);	// Just the members.
+    		empty = false;
+    	}
+    	sb.append('}');
+    	return sb.toString();
+    }
+
+    /** Make sure that no name appears more than once in the observation, once the fragments have been added to the JSON object.<br>
+     * As if each fragment's members had been added to the JSON object in turn, the last fragment to produce a name wins,
+     * and fragments win over the JSON object's own members. Only the top level of each fragment is looked at - nothing is parsed.
+     * @param json the observation, without the fragments. Members that a fragment will replace are removed.
+     * @param fragments JSON objects, as added by getObservationFragments(). Any fragment with a member that a later fragment
+     * replaces is itself replaced by a copy without that member.
+     */
+    public static void removeDuplicateMembers(JsonObject json, List<String> fragments)
+    {
+    	if (fragments.isEmpty())
+    		return;
+    	HashSet<String> names = new HashSet<String>();
+    	List<String> fragmentNames = new ArrayList<String>();
+    	List<int[]> spans = new ArrayList<int[]>();
+    	// Work backwards, so that the names are already taken by the time we reach an earlier fragment that produces them too:
+    	for (int f = fragments.size() - 1; f >= 0; f--)
     	{
-    		// Parse the string into json:
-    		JsonParser parser = new JsonParser();
-    		JsonElement root = parser.parse(jsonstring);
-    		// Now copy the children of root into the provided json object:
-    		if (root.isJsonObject())
+    		String fragment = fragments.get(f);
+    		fragmentNames.clear();
+    		spans.clear();
+    		if (!JSONScanner.findMembers(fragment, fragmentNames, spans))
+    			continue;	// Not something we understand - leave it alone.
+    		StringBuilder kept = null;
+    		for (int i = 0; i < fragmentNames.size(); i++)
     		{
-    			JsonObject rootObj = root.getAsJsonObject();
-				for (Map.Entry<String, JsonElement> entry : rootObj.entrySet())
-				{
-					json.add(entry.getKey(), entry.getValue());
-				}
+    			if (names.add(fragmentNames.get(i)))
+    			{
+    				if (kept != null)
+    					appendMember(kept, fragment, spans.get(i));
+    			}
+    			else if (kept == null)
+    			{
+    				// First duplicate in this fragment - start again with just the members before it:
+    				kept = new StringBuilder(fragment.length());
+    				kept.append('{');
+    				for (int j = 0; j < i; j++)
+    					appendMember(kept, fragment, spans.get(j));
+    			}
     		}
+    		if (kept != null)
+    			fragments.set(f, kept.append('}').toString());
     	}
-	}
+    	for (String name : names)
+    		json.remove(name);
+    }
+
+    private static void appendMember(StringBuilder sb, String fragment, int[] span)
+    {
+    	if (sb.length() > 1)
+    		sb.append(',');
+    	sb.append(fragment, span[JSONScanner.NAME_START], span[JSONScanner.VALUE_END]);
+    }
 
     @Override
 	public void onMessage(MalmoMessageType messageType, Map<String, String> data)
 	{
     	if (data != null)
     	{
-	    	synchronized (this.latestJsonStats)
+	    	synchronized (this.statsLock)
 	    	{
+                // Replies can overtake each other (see processMessage()) - don't let an older one replace a newer one:
+                String requestNumber = data.get(REQUEST_NUMBER_KEY);
+                int replyTo = (requestNumber != null) ? Integer.parseInt(requestNumber) : this.latestReply;
+                if (replyTo < this.latestReply)
+                    return;
+                this.latestReply = replyTo;
 	    		this.latestJsonStats = data.get("json");
                 if (this.latestJsonStats == null)   // Shouldn't happen, but if it does
                     this.latestJsonStats = "";      // we don't want to allow a null value.
@@ -155,6 +289,8 @@ public abstract class ObservationFromServer extends HandlerBase implements IMalm
     {
     	/** Identifier of the listener that will be responding to this request.*/
     	private int id = 0;
+    	/** Which of the listener's requests this is - echoed back in the reply, so the listener knows which request was answered.*/
+    	private int requestNumber = 0;
 
     	public ObservationRequestMessage()
     	{
@@ -170,6 +306,7 @@ public abstract class ObservationFromServer extends HandlerBase implements IMalm
     	{
 
     		this.id = buf.readInt();
+    		this.requestNumber = buf.readInt();
     		restoreState(buf);
     	}
 
@@ -178,6 +315,7 @@ public abstract class ObservationFromServer extends HandlerBase implements IMalm
     	{
     		// Subclasses MUST call this
     		buf.writeInt(this.id);
+    		buf.writeInt(this.requestNumber);
     		persistState(buf);
     	}
     	
@@ -206,7 +344,7 @@ public abstract class ObservationFromServer extends HandlerBase implements IMalm
 		public IMessage processMessage(final ObservationRequestMessage message, final MessageContext ctx)
 		{
 			IThreadListener mainThread = (WorldServer)ctx.getServerHandler().playerEntity.worldObj;
-			mainThread.addScheduledTask(new Runnable() {
+			Runnable task = new Runnable() {
 				@Override
 				public void run() {
 					EntityPlayerMP player = ctx.getServerHandler().playerEntity;
@@ -216,9 +354,13 @@ public abstract class ObservationFromServer extends HandlerBase implements IMalm
 					Map<String, String> returnData = new HashMap<String, String>();
 					returnData.put("json", json.toString());
 					message.addReturnData(returnData);
+					returnData.put(REQUEST_NUMBER_KEY, String.valueOf(message.requestNumber));
 					MalmoMod.network.sendTo(new MalmoMod.MalmoMessage(MalmoMessageType.SERVER_OBSERVATIONSREADY, message.id, returnData), player);
 				}
-			});
+			};
+			// If the server is being held between lockstep ticks, answer now - rather than once the next tick has started:
+			if (!LockstepTimer.runOnHeldServer(task))
+				mainThread.addScheduledTask(task);
 			return null; // no response in this case
 		}
 		
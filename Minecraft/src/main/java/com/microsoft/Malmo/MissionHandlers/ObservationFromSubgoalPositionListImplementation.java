@@ -31,6 +31,10 @@ public class ObservationFromSubgoalPositionListImplementation extends HandlerBas
 {
     private int subgoalIndex = 0;
     private ObservationFromSubgoalPositionList positions;
+    // The subgoals, converted once up front:
+    private double[] xs;
+    private double[] zs;
+    private double[] tolerances;
 
     @Override
     public boolean parseParameters(Object params)
@@ -39,13 +43,23 @@ public class ObservationFromSubgoalPositionListImplementation extends HandlerBas
             return false;
 
         this.positions = (ObservationFromSubgoalPositionList)params;
+        int nTargets = this.positions.getPoint().size();
+        this.xs = new double[nTargets];
+        this.zs = new double[nTargets];
+        this.tolerances = new double[nTargets];
+        for (int i = 0; i < nTargets; i++)
+        {
+            this.xs[i] = this.positions.getPoint().get(i).getX().doubleValue();
+            this.zs[i] = this.positions.getPoint().get(i).getZ().doubleValue();
+            this.tolerances[i] = this.positions.getPoint().get(i).getTolerance().doubleValue();
+        }
         return true;
     }
 
     @Override
     public void writeObservationsToJSON(JsonObject json, MissionInit missionInit)
     {
-        int nTargets = this.positions.getPoint().size();
+        int nTargets = this.xs.length;
         boolean foundNextPoint = false;
         double targetx = 0;
         double targetz = 0;
@@ -58,9 +72,9 @@ public class ObservationFromSubgoalPositionListImplementation extends HandlerBas
 
         while (this.subgoalIndex < nTargets && !foundNextPoint)
         {
-            targetx = this.positions.getPoint().get(this.subgoalIndex).getX().doubleValue();
-            targetz = this.positions.getPoint().get(this.subgoalIndex).getZ().doubleValue();
-            double tol = this.positions.getPoint().get(this.subgoalIndex).getTolerance().doubleValue();
+            targetx = this.xs[this.subgoalIndex];
+            targetz = this.zs[this.subgoalIndex];
+            double tol = this.tolerances[this.subgoalIndex];
 
             if (Math.abs(targetx-sourcex) + Math.abs(targetz-sourcez) < tol)
                 this.subgoalIndex++;
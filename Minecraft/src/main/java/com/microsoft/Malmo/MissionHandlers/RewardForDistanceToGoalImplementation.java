@@ -0,0 +1,83 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+
+package com.microsoft.Malmo.MissionHandlers;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.EntityPlayerSP;
+
+import com.microsoft.Malmo.MissionHandlerInterfaces.IRewardProducer;
+import com.microsoft.Malmo.Schemas.AgentHandlers;
+import com.microsoft.Malmo.Schemas.MissionInit;
+import com.microsoft.Malmo.Schemas.RewardForDistanceToGoal;
+import com.microsoft.Malmo.Utils.DistanceField;
+
+/**
+ * IRewardProducer that rewards progress towards the goal, using the distance field worked out by the maze or classroom decorator.<br>
+ * Each tick is a single lookup, however big the world.
+ */
+public class RewardForDistanceToGoalImplementation extends HandlerBase implements IRewardProducer {
+    private RewardForDistanceToGoal params;
+    private DistanceField field;
+    private float rewardPerBlock;
+    private int lastDistance = DistanceField.UNREACHABLE;
+
+    @Override
+    public boolean parseParameters(Object params) {
+        if (params == null || !(params instanceof RewardForDistanceToGoal))
+            return false;
+
+        this.params = (RewardForDistanceToGoal) params;
+        // Without a field of our own, we share the observation's - but can only find that once we have the MissionInit:
+        this.field = (this.params.getField() != null) ? new DistanceField(this.params.getField()) : null;
+        this.rewardPerBlock = this.params.getRewardPerBlock().floatValue();
+        return true;
+    }
+
+    @Override
+    public void getReward(MissionInit missionInit, MultidimensionalReward reward) {
+        EntityPlayerSP player = Minecraft.getMinecraft().thePlayer;
+        if (player == null || this.field == null)
+            return;
+
+        int distance = this.field.getDistance(player.posX, player.posY, player.posZ);
+        if (distance == DistanceField.UNREACHABLE)
+            return; // Eg mid-fall - wait until we know where the player is.
+        if (this.lastDistance != DistanceField.UNREACHABLE && distance != this.lastDistance)
+            reward.add( this.params.getDimension(), this.rewardPerBlock * (this.lastDistance - distance) );
+        this.lastDistance = distance;
+    }
+
+    @Override
+    public void prepare(MissionInit missionInit) {
+        this.lastDistance = DistanceField.UNREACHABLE;
+        if (this.params.getField() == null) {
+            AgentHandlers handlers = missionInit.getMission().getAgentSection().get(missionInit.getClientRole()).getAgentHandlers();
+            if (handlers.getObservationFromDistanceToGoal() != null)
+                this.field = new DistanceField(handlers.getObservationFromDistanceToGoal().getField());
+            else
+                System.out.println("RewardForDistanceToGoal has no Field, and there is no ObservationFromDistanceToGoal to share one with - no rewards will be sent.");
+        }
+    }
+
+    @Override
+    public void cleanup() {
+    }
+}
@@ -19,29 +19,25 @@
 
 package com.microsoft.Malmo.MissionHandlers;
 
-import java.util.Iterator;
 import java.util.List;
 
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.EntityPlayerSP;
 
 import com.microsoft.Malmo.MissionHandlerInterfaces.IRewardProducer;
 import com.microsoft.Malmo.Schemas.MissionInit;
-import com.microsoft.Malmo.Schemas.Pos;
 import com.microsoft.Malmo.Schemas.RewardForReachingPosition;
 import com.microsoft.Malmo.Schemas.PointWithReward;
-import com.microsoft.Malmo.Utils.PositionHelper;
+import com.microsoft.Malmo.Utils.PositionIndex;
 
 /**
  * Simple IRewardProducer object that returns a large reward when the player
  * gets to within a certain tolerance of a goal position.<br>
  */
 public class RewardForReachingPositionImplementation extends HandlerBase implements IRewardProducer {
-    Pos targetPos;
-    float reward;
-    float tolerance;
-    boolean oneShot;
-    boolean fired = false;
-    List<PointWithReward> rewardPoints;
+    PositionIndex rewardPoints = new PositionIndex();
+    float[] rewards;
+    boolean[] oneShot;
     private RewardForReachingPosition params;
 
     @Override
@@ -50,32 +46,30 @@ public class RewardForReachingPositionImplementation extends HandlerBase impleme
             return false;
 
         this.params = (RewardForReachingPosition) params;
-        this.rewardPoints = this.params.getMarker();
+        // Convert the points up front, and index them so that each tick we only test the ones near the player:
+        List<PointWithReward> markers = this.params.getMarker();
+        this.rewards = new float[markers.size()];
+        this.oneShot = new boolean[markers.size()];
+        for (PointWithReward goal : markers) {
+            int i = this.rewardPoints.add(goal.getX().doubleValue(), goal.getY().doubleValue(), goal.getZ().doubleValue(), goal.getTolerance().floatValue());
+            this.rewards[i] = goal.getReward().floatValue();
+            this.oneShot[i] = goal.isOneshot();
+        }
         return true;
     }
 
     @Override
     public void getReward(MissionInit missionInit, MultidimensionalReward reward) {
-        if (missionInit == null || Minecraft.getMinecraft().thePlayer == null)
+        EntityPlayerSP player = Minecraft.getMinecraft().thePlayer;
+        if (missionInit == null || player == null)
             return;
 
-        if (this.rewardPoints != null) {
-            Iterator<PointWithReward> goalIterator = this.rewardPoints.iterator();
-            while (goalIterator.hasNext()) {
-                PointWithReward goal = goalIterator.next();
-                boolean oneShot = goal.isOneshot();
-                float reward_value = goal.getReward().floatValue();
-                float tolerance = goal.getTolerance().floatValue();
-
-                float distance = PositionHelper.calcDistanceFromPlayerToPosition(Minecraft.getMinecraft().thePlayer,
-                        goal);
-                if (distance <= tolerance) {
-                    reward.add( this.params.getDimension(), reward_value );
-                    if (oneShot)
-                        goalIterator.remove(); // Safe to do this via an
-                                               // iterator.
-                }
-            }
+        int found = this.rewardPoints.findWithin(player.posX, player.posY, player.posZ);
+        for (int i = 0; i < found; i++) {
+            int goal = this.rewardPoints.getResult(i);
+            reward.add( this.params.getDimension(), this.rewards[goal] );
+            if (this.oneShot[goal])
+                this.rewardPoints.remove(goal);
         }
     }
 
@@ -22,8 +22,6 @@ package com.microsoft.Malmo.MissionHandlers;
 import java.util.ArrayList;
 import java.util.List;
 
-import net.minecraft.block.Block;
-import net.minecraft.block.properties.IProperty;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.entity.EntityPlayerSP;
@@ -32,34 +30,23 @@ import net.minecraft.util.BlockPos;
 import com.microsoft.Malmo.MissionHandlerInterfaces.IRewardProducer;
 import com.microsoft.Malmo.Schemas.Behaviour;
 import com.microsoft.Malmo.Schemas.BlockSpecWithRewardAndBehaviour;
-import com.microsoft.Malmo.Schemas.BlockType;
-import com.microsoft.Malmo.Schemas.BlockVariant;
-import com.microsoft.Malmo.Schemas.Colour;
 import com.microsoft.Malmo.Schemas.MissionInit;
 import com.microsoft.Malmo.Schemas.RewardForTouchingBlockType;
+import com.microsoft.Malmo.Utils.BlockStateMatcher;
+import com.microsoft.Malmo.Utils.LongHashSet;
 import com.microsoft.Malmo.Utils.PositionHelper;
 
 public class RewardForTouchingBlockTypeImplementation extends HandlerBase implements IRewardProducer {
     private class BlockMatcher {
         boolean hasFired = false;
         BlockSpecWithRewardAndBehaviour spec;
-        ArrayList<String> allowedBlockNames;
-        ArrayList<BlockPos> firedBlocks = new ArrayList<BlockPos>();
+        BlockStateMatcher stateMatcher;
+        LongHashSet firedBlocks = new LongHashSet();
         long lastFired;
 
         BlockMatcher(BlockSpecWithRewardAndBehaviour spec) {
             this.spec = spec;
-
-            // Get the allowed blocks:
-            // (Convert from the enum name to the unlocalised name.)
-            this.allowedBlockNames = new ArrayList<String>();
-            List<BlockType> allowedTypes = spec.getType();
-            if (allowedTypes != null) {
-                for (BlockType bt : allowedTypes) {
-                    Block b = Block.getBlockFromName(bt.value());
-                    this.allowedBlockNames.add(b.getUnlocalizedName());
-                }
-            }
+            this.stateMatcher = new BlockStateMatcher(spec);
         }
 
         boolean applies(BlockPos bp) {
@@ -68,7 +55,7 @@ public class RewardForTouchingBlockTypeImplementation extends HandlerBase implem
                 return !this.hasFired;
 
             case ONCE_PER_BLOCK:
-                return !this.firedBlocks.contains(bp);
+                return !this.firedBlocks.contains(bp.toLong());
 
             case ONCE_PER_TIME_SPAN:
                 return this.spec.getCooldownInMs().floatValue() < System.currentTimeMillis() - this.lastFired;
@@ -80,53 +67,15 @@ public class RewardForTouchingBlockTypeImplementation extends HandlerBase implem
         }
 
         boolean matches(BlockPos bp, IBlockState bs) {
-            boolean match = false;
-
             // See whether the blockstate matches our specification:
-            for (String allowedbs : this.allowedBlockNames) {
-                if (allowedbs.equals(bs.getBlock().getUnlocalizedName()))
-                    match = true;
-            }
-
-            if (match && this.spec.getColour() != null && !this.spec.getColour().isEmpty()) {
-                // This type of block is a match, but does the colour match?
-                for (IProperty prop : (java.util.Set<IProperty>) bs.getProperties().keySet()) {
-                    if (prop.getName().equals("color")
-                            && prop.getValueClass() == net.minecraft.item.EnumDyeColor.class) {
-                        // The block in question has a colour, so check it is a
-                        // specified one:
-                        match = false; // Assume no match.
-                        net.minecraft.item.EnumDyeColor current = (net.minecraft.item.EnumDyeColor) bs.getValue(prop);
-                        for (Colour col : this.spec.getColour()) {
-                            if (current.getName().equalsIgnoreCase(col.name()))
-                                match = true;
-                        }
-                    }
-                }
-            }
-
-            if (match && this.spec.getVariant() != null && !this.spec.getVariant().isEmpty()) {
-                // Matches type and colour, but does the variant match?
-                for (IProperty prop : (java.util.Set<IProperty>) bs.getProperties().keySet()) {
-                    if (prop.getName().equals("variant") && prop.getValueClass().isEnum()) {
-                        Object current = bs.getValue(prop);
-                        if (current != null) {
-                            match = false; // Assume no match.
-                            for (BlockVariant var : this.spec.getVariant()) {
-                                if (var.name().equalsIgnoreCase(current.toString()))
-                                    match = true;
-                            }
-                        }
-                    }
-                }
-            }
+            boolean match = this.stateMatcher.matches(bs);
 
             if (match) {
                 // We're firing.
                 this.hasFired = true;
                 this.lastFired = System.currentTimeMillis();
                 if (this.spec.getBehaviour() == Behaviour.ONCE_PER_BLOCK)
-                    this.firedBlocks.add(bp);
+                    this.firedBlocks.add(bp.toLong());
             }
 
             return match;
@@ -27,62 +27,387 @@ import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
 import static org.lwjgl.opengl.GL11.glReadPixels;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.client.shader.Framebuffer;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL21;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GLContext;
 
 import com.microsoft.Malmo.MissionHandlerInterfaces.IVideoProducer;
+import com.microsoft.Malmo.Schemas.DepthFormat;
 import com.microsoft.Malmo.Schemas.MissionInit;
+import com.microsoft.Malmo.Schemas.ModSettings;
+import com.microsoft.Malmo.Schemas.VideoFormat;
 import com.microsoft.Malmo.Schemas.VideoProducer;
 
 public class VideoProducerImplementation extends HandlerBase implements IVideoProducer
 {
+    /** Number of pixel buffer objects in the readback ring.<br>
+     * glReadPixels into a PBO returns immediately; we only map (and therefore wait for) the PBO that was filled
+     * PBO_RING_SIZE - 1 frames ago, by which point the GPU has long since finished with it.
+     */
+    private static final int PBO_RING_SIZE = 2;
+
+    /** Passes the quad straight through - the positions are already in clip space.*/
+    private static final String QUAD_VERTEX_SHADER =
+            "void main() {\n" +
+            "    gl_Position = gl_Vertex;\n" +
+            "    gl_TexCoord[0] = gl_MultiTexCoord0;\n" +
+            "}\n";
+
+    /** Converts the frame to greyscale (Rec. 601 weights), so that we only need to read back the red channel.*/
+    private static final String LUMINANCE_FRAGMENT_SHADER =
+            "uniform sampler2D frame;\n" +
+            "void main() {\n" +
+            "    float y = dot(texture2D(frame, gl_TexCoord[0].st).rgb, vec3(0.299, 0.587, 0.114));\n" +
+            "    gl_FragColor = vec4(y, y, y, 1.0);\n" +
+            "}\n";
+
+    /** Converts depth buffer values back into distances from the camera, using the near and far planes of Minecraft's projection.*/
+    private static final String LINEAR_DEPTH_FRAGMENT_SHADER =
+            "uniform sampler2D depth;\n" +
+            "uniform float near;\n" +
+            "uniform float far;\n" +
+            "void main() {\n" +
+            "    float z = texture2D(depth, gl_TexCoord[0].st).r * 2.0 - 1.0;\n" +
+            "    gl_FragColor = vec4(2.0 * near * far / (far + near - z * (far - near)), 0.0, 0.0, 1.0);\n" +
+            "}\n";
+
+    /** The near plane distance EntityRenderer uses for the world.*/
+    private static final float NEAR_PLANE = 0.05f;
+
+    /** EntityRenderer puts the far plane this many times the render distance away.*/
+    private static final float FAR_PLANE_SCALE = (float)Math.sqrt(2.0);
+
 	private VideoProducer videoParams;
 	private Framebuffer fbo;
 	private FloatBuffer depthBuffer;
-	
+
+	// Output format - the frame after cropping, downsampling and conversion to luminance:
+	private int outputWidth;
+	private int outputHeight;
+	private boolean luminance;
+	private int colourFormat;	// What we read back from the colour buffer - GL_RED, GL_RG, GL_RGB or GL_RGBA
+	private int colourBytes;
+	private int luminanceProgram = 0;
+
+	// Depth as a separate plane of floats, after the colour:
+	private int depthPlaneBytes;	// Bytes per pixel - zero if depth is scaled into the last channel, or not wanted.
+	private boolean linearDepth;
+	private int linearDepthProgram = 0;
+	private int depthTexture = 0;	// Copy of the depth buffer, for the linearising shader to read.
+	private int linearDepthTexture = 0;
+	private int linearDepthFBO = 0;
+
+	// Asynchronous readback:
+	private boolean usePBOs = false;
+	private int[] colourPBOs;
+	private int[] depthPBOs;
+	private ByteBuffer[] mappedColour;
+	private ByteBuffer[] mappedDepth;
+	private int pboIndex = 0;
+	private int framesRead = 0;
+
     @Override
     public boolean parseParameters(Object params)
     {
         if (params == null || !(params instanceof VideoProducer))
             return false;
         this.videoParams = (VideoProducer)params;
+        VideoProducer.Crop crop = this.videoParams.getCrop();
+        if (crop != null && (crop.getX() + crop.getWidth() > this.videoParams.getWidth() || crop.getY() + crop.getHeight() > this.videoParams.getHeight()))
+        {
+            System.out.println("VideoProducer Crop rectangle must lie within the Width x Height frame.");
+            return false;
+        }
         return true;
     }
 
+    /** The width of the frames that will be sent, after cropping and downsampling.*/
+    public static int getOutputWidth(VideoProducer params)
+    {
+        int width = (params.getCrop() != null) ? params.getCrop().getWidth() : params.getWidth();
+        return Math.max(1, width / params.getDownsample());
+    }
+
+    /** The height of the frames that will be sent, after cropping and downsampling.*/
+    public static int getOutputHeight(VideoProducer params)
+    {
+        int height = (params.getCrop() != null) ? params.getCrop().getHeight() : params.getHeight();
+        return Math.max(1, height / params.getDownsample());
+    }
+
+    /** The number of bytes per pixel in the frames that will be sent - 3 for RGB, 1 for luminance, plus one for scaled depth.*/
+    public static int getOutputChannels(VideoProducer params)
+    {
+        return ((params.getFormat() == VideoFormat.LUMINANCE) ? 1 : 3) + ((params.isWantDepth() && params.getDepthFormat() == DepthFormat.SCALED) ? 1 : 0);
+    }
+
+    /** The number of bytes per pixel in the separate depth plane sent after the colour pixels - 0 if there isn't one.*/
+    public static int getDepthPlaneBytes(VideoProducer params)
+    {
+        if (!params.isWantDepth())
+            return 0;
+        switch (params.getDepthFormat())
+        {
+        case FLOAT_16:
+            return 2;
+        case FLOAT_32:
+            return 4;
+        default:
+            return 0;
+        }
+    }
+
     @Override
-    public void getFrame(MissionInit missionInit, ByteBuffer buffer)
+    public boolean getFrame(MissionInit missionInit, ByteBuffer buffer)
     {
-    	if (!this.videoParams.isWantDepth())
-    	{
-    		getRGBFrame(buffer);	// Just return the simple RGB, 3bpp image.
-    		return;
-    	}
-
-    	// Otherwise, do the work of extracting the depth map:
-        final int width = this.videoParams.getWidth();
-        final int height = this.videoParams.getHeight();
-
-        GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, Minecraft.getMinecraft().getFramebuffer().framebufferObject);
-        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.fbo.framebufferObject );
-        GL30.glBlitFramebuffer(
-                0, 0,
-                Minecraft.getMinecraft().getFramebuffer().framebufferWidth,
-                Minecraft.getMinecraft().getFramebuffer().framebufferHeight,
-                0, 0, width, height,
-                GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT, GL11.GL_NEAREST );
-
-        this.fbo.bindFramebuffer(true);
-        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
-        glReadPixels(0, 0, width, height, GL_DEPTH_COMPONENT, GL_FLOAT, this.depthBuffer);
+        final int width = this.outputWidth;
+        final int height = this.outputHeight;
+        final boolean wantDepth = this.videoParams.isWantDepth();
+        final Framebuffer source = Minecraft.getMinecraft().getFramebuffer();
+
+        if (!wantDepth && !this.luminance && this.videoParams.getCrop() == null)
+        {
+            // Render the Minecraft frame into our own FBO, at the desired size:
+            this.fbo.bindFramebuffer(true);
+            source.framebufferRenderExt(width, height, true);
+        }
+        else
+        {
+            // Work out which part of the Minecraft frame we want, in its own pixels. (GL counts rows up from the bottom.)
+            int x0 = 0, y0 = 0, x1 = this.videoParams.getWidth(), y1 = this.videoParams.getHeight();
+            VideoProducer.Crop crop = this.videoParams.getCrop();
+            if (crop != null)
+            {
+                x0 = crop.getX();
+                x1 = x0 + crop.getWidth();
+                y1 = this.videoParams.getHeight() - crop.getY();
+                y0 = y1 - crop.getHeight();
+            }
+            x0 = x0 * source.framebufferWidth / this.videoParams.getWidth();
+            x1 = x1 * source.framebufferWidth / this.videoParams.getWidth();
+            y0 = y0 * source.framebufferHeight / this.videoParams.getHeight();
+            y1 = y1 * source.framebufferHeight / this.videoParams.getHeight();
+
+            if (wantDepth || !this.luminance)
+            {
+                // Blit across, cropping and shrinking as we go - we need the depth buffer, which framebufferRenderExt won't give us.
+                // (The luminance shader writes the colour itself.)
+                GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, source.framebufferObject);
+                GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.fbo.framebufferObject );
+                GL30.glBlitFramebuffer(
+                        x0, y0, x1, y1,
+                        0, 0, width, height,
+                        (this.luminance ? 0 : GL11.GL_COLOR_BUFFER_BIT) | (wantDepth ? GL11.GL_DEPTH_BUFFER_BIT : 0), GL11.GL_NEAREST );
+            }
+            this.fbo.bindFramebuffer(true);
+            if (this.luminance)
+                renderLuminance(source, x0, y0, x1, y1);
+        }
+
+        // Cropped and downsampled rows needn't be a multiple of four bytes long:
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        boolean gotFrame = true;
+        if (this.usePBOs)
+        {
+            gotFrame = readFrameAsync(buffer, width, height, wantDepth);
+        }
+        else
+        {
+            // Now read the pixels out from that:
+            // glReadPixels appears to be faster than doing:
+            //  GlStateManager.bindTexture(this.fbo.framebufferTexture);
+            //  GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, format, GL_UNSIGNED_BYTE, buffer);
+            glReadPixels(0, 0, width, height, this.colourFormat, GL_UNSIGNED_BYTE, buffer);
+            if (this.depthPlaneBytes != 0)
+            {
+                // Straight into the buffer, after the colour:
+                prepareDepthPlane(width, height);
+                ByteBuffer plane = buffer.duplicate();
+                plane.position(this.colourBytes);
+                glReadPixels(0, 0, width, height, getDepthPlaneFormat(), getDepthPlaneType(), plane);
+            }
+            else if (wantDepth)
+            {
+                glReadPixels(0, 0, width, height, GL_DEPTH_COMPONENT, GL_FLOAT, this.depthBuffer);
+            }
+        }
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 4);
+        GL11.glPixelStorei(GL11.GL_PACK_SWAP_BYTES, GL11.GL_FALSE);
         this.fbo.unbindFramebuffer();
 
-        // Now convert the depth buffer into values from 0-255 and copy it over the alpha channel.
+        if (!gotFrame)
+            return false;
+
+        if (this.depthPlaneBytes == 0 && wantDepth)
+        {
+            writeDepthChannel(this.depthBuffer, buffer, width * height, getOutputChannels(this.videoParams));
+            // Reset depth buffer ready for next read:
+            this.depthBuffer.clear();
+        }
+        return true;
+    }
+
+    /** Draw the given part of the Minecraft frame into the currently bound framebuffer, converted to luminance.*/
+    private void renderLuminance(Framebuffer source, int x0, int y0, int x1, int y1)
+    {
+        float u0 = (float)x0 / source.framebufferTextureWidth;
+        float u1 = (float)x1 / source.framebufferTextureWidth;
+        float v0 = (float)y0 / source.framebufferTextureHeight;
+        float v1 = (float)y1 / source.framebufferTextureHeight;
+
+        source.bindFramebufferTexture();
+        drawQuad(this.luminanceProgram, u0, v0, u1, v1);
+        source.unbindFramebufferTexture();
+    }
+
+    /** Get the depth plane ready to be read from the currently bound framebuffer.<br>
+     * For linear depth, this copies our depth buffer into a texture and draws it through the linearising shader
+     * into a float texture, leaving that bound instead.
+     */
+    private void prepareDepthPlane(int width, int height)
+    {
+        // The plane is always sent little-endian, whatever the machine:
+        GL11.glPixelStorei(GL11.GL_PACK_SWAP_BYTES, (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN) ? GL11.GL_TRUE : GL11.GL_FALSE);
+        if (!this.linearDepth)
+            return;
+
+        GlStateManager.bindTexture(this.depthTexture);
+        GL11.glCopyTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, 0, 0, width, height);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, this.linearDepthFBO);
+        // Match the projection EntityRenderer used for this frame:
+        float far = Minecraft.getMinecraft().gameSettings.renderDistanceChunks * 16 * FAR_PLANE_SCALE;
+        GL20.glUseProgram(this.linearDepthProgram);
+        GL20.glUniform1f(GL20.glGetUniformLocation(this.linearDepthProgram, "near"), NEAR_PLANE);
+        GL20.glUniform1f(GL20.glGetUniformLocation(this.linearDepthProgram, "far"), far);
+        drawQuad(this.linearDepthProgram, 0, 0, 1, 1);
+        GlStateManager.bindTexture(0);
+    }
+
+    private int getDepthPlaneFormat()
+    {
+        return this.linearDepth ? GL11.GL_RED : GL_DEPTH_COMPONENT;
+    }
+
+    private int getDepthPlaneType()
+    {
+        return (this.depthPlaneBytes == 2) ? GL30.GL_HALF_FLOAT : GL_FLOAT;
+    }
+
+    /** Draw a quad over the whole of the currently bound framebuffer through the given shader program, which reads texture unit 0.*/
+    private static void drawQuad(int program, float u0, float v0, float u1, float v1)
+    {
+        // Leave any depth we've blitted across alone:
+        GlStateManager.disableDepth();
+        GlStateManager.depthMask(false);
+        GlStateManager.disableBlend();
+        GlStateManager.disableAlpha();
+        GlStateManager.enableTexture2D();
+        GL20.glUseProgram(program);
+        GL11.glBegin(GL11.GL_QUADS);
+        GL11.glTexCoord2f(u0, v0);
+        GL11.glVertex2f(-1, -1);
+        GL11.glTexCoord2f(u1, v0);
+        GL11.glVertex2f(1, -1);
+        GL11.glTexCoord2f(u1, v1);
+        GL11.glVertex2f(1, 1);
+        GL11.glTexCoord2f(u0, v1);
+        GL11.glVertex2f(-1, 1);
+        GL11.glEnd();
+        GL20.glUseProgram(0);
+        GlStateManager.depthMask(true);
+    }
+
+    /** Kick off an asynchronous read of the currently bound framebuffer into the next PBO in the ring,
+     * and copy out the oldest completed frame.<br>
+     * Until the ring has filled we have nothing older to return, so we wait on the PBO we've just filled instead.
+     * @param buffer the buffer to copy the (colour) frame into - will be rewound ready for sending.
+     * Raw depth for the same frame goes into depthBuffer, unless it was copied straight into the buffer as a plane.
+     * @return false if a PBO couldn't be mapped - the buffer would hold stale data from an earlier frame, so mustn't be sent.
+     */
+    private boolean readFrameAsync(ByteBuffer buffer, int width, int height, boolean wantDepth)
+    {
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.colourPBOs[this.pboIndex]);
+        glReadPixels(0, 0, width, height, this.colourFormat, GL_UNSIGNED_BYTE, 0L);
+        if (this.depthPlaneBytes != 0)
+        {
+            prepareDepthPlane(width, height);
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.depthPBOs[this.pboIndex]);
+            glReadPixels(0, 0, width, height, getDepthPlaneFormat(), getDepthPlaneType(), 0L);
+        }
+        else if (wantDepth)
+        {
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.depthPBOs[this.pboIndex]);
+            glReadPixels(0, 0, width, height, GL_DEPTH_COMPONENT, GL_FLOAT, 0L);
+        }
+
+        this.framesRead++;
+        int readIndex = (this.framesRead >= PBO_RING_SIZE) ? (this.pboIndex + 1) % PBO_RING_SIZE : this.pboIndex;
+        this.pboIndex = (this.pboIndex + 1) % PBO_RING_SIZE;
+
+        // Copy the colour data out:
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.colourPBOs[readIndex]);
+        ByteBuffer colour = GL15.glMapBuffer(GL21.GL_PIXEL_PACK_BUFFER, GL15.GL_READ_ONLY, this.colourBytes, this.mappedColour[readIndex]);
+        boolean mappedAll = colour != null;
+        if (colour != null)
+        {
+            this.mappedColour[readIndex] = colour;
+            colour.clear();
+            buffer.put(colour);
+            buffer.rewind();    // Not flip() - with luminance and depth, the frame is bigger than the colour data.
+            GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+        }
+
+        if (wantDepth && mappedAll)
+        {
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.depthPBOs[readIndex]);
+            ByteBuffer mapped = GL15.glMapBuffer(GL21.GL_PIXEL_PACK_BUFFER, GL15.GL_READ_ONLY, getDepthPBOSize(), this.mappedDepth[readIndex]);
+            if (mapped != null)
+            {
+                this.mappedDepth[readIndex] = mapped;
+                mapped.clear();
+                if (this.depthPlaneBytes != 0)
+                {
+                    // Already in the form we send - just copy it in after the colour:
+                    ByteBuffer plane = buffer.duplicate();
+                    plane.position(this.colourBytes);
+                    plane.put(mapped);
+                }
+                else
+                {
+                    this.depthBuffer.put(mapped.order(ByteOrder.nativeOrder()).asFloatBuffer());
+                    this.depthBuffer.flip();
+                }
+                GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+            }
+            else
+            {
+                mappedAll = false;
+            }
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0); // Don't leave the PBO bound - Minecraft's own reads (screenshots etc) would go into it.
+        return mappedAll;
+    }
+
+    /** Convert the depth buffer into values from 0-255 and copy it over the last channel of each pixel.
+     * @param depth the raw depth values, one float per pixel.
+     * @param buffer the RGBD (or LD) frame.
+     * @param numPixels width * height
+     * @param channels bytes per pixel in the frame.
+     */
+    private void writeDepthChannel(FloatBuffer depth, ByteBuffer buffer, int numPixels, int channels)
+    {
         // We either use the min and max values supplied in order to scale it, or we scale it according
         // to the dynamic content:
         float minval, maxval;
@@ -93,9 +418,9 @@ public class VideoProducerImplementation extends HandlerBase implements IVideoPr
         {
         	minval = 1;
         	maxval = 0;
-	        for (int i = 0; i < width * height; i++)
+	        for (int i = 0; i < numPixels; i++)
 	        {
-	        	float f = this.depthBuffer.get(i);
+	        	float f = depth.get(i);
 	        	if (f < minval)
 	        		minval = f;
 	        	if (f > maxval)
@@ -118,16 +443,14 @@ public class VideoProducerImplementation extends HandlerBase implements IVideoPr
         if (range < 0.000001)
         	range = 0.000001f;	// To avoid divide by zero errors in cases where there is no depth variance
         float scale = 255 / range;
-        for (int i = 0; i < width * height; i++)
+        for (int i = 0; i < numPixels; i++)
         {
-        	float f = this.depthBuffer.get(i);
+        	float f = depth.get(i);
         	f = (f < minval ? minval : (f > maxval ? maxval : f));
         	f -= minval;
         	f *= scale;
-        	buffer.put(i*4 + 3, (byte)f);
+        	buffer.put(i*channels + channels - 1, (byte)f);
         }
-        // Reset depth buffer ready for next read:
-        this.depthBuffer.clear();
     }
 
 	@Override
@@ -144,41 +467,173 @@ public class VideoProducerImplementation extends HandlerBase implements IVideoPr
 	
     public int getRequiredBufferSize()
     {
-    	return this.videoParams.getWidth() * this.videoParams.getHeight() * (this.videoParams.isWantDepth() ? 4 : 3);
+    	return getOutputWidth(this.videoParams) * getOutputHeight(this.videoParams) * (getOutputChannels(this.videoParams) + getDepthPlaneBytes(this.videoParams));
     }
 
-	private void getRGBFrame(ByteBuffer buffer)
-	{
-		final int format = GL_RGB;
-        final int width = this.videoParams.getWidth();
-        final int height = this.videoParams.getHeight();
-
-        // Render the Minecraft frame into our own FBO, at the desired size:
-        this.fbo.bindFramebuffer(true);
-		Minecraft.getMinecraft().getFramebuffer().framebufferRenderExt(width, height, true);
-		// Now read the pixels out from that:
-		// glReadPixels appears to be faster than doing:
-			// 	GlStateManager.bindTexture(this.fbo.framebufferTexture);
-        	//	GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, format, GL_UNSIGNED_BYTE, buffer);
-
-        glReadPixels(0, 0, width, height, format, GL_UNSIGNED_BYTE, buffer);
-        this.fbo.unbindFramebuffer();
-	}
-
 	@Override
 	public void prepare(MissionInit missionInit)
 	{
-        this.fbo = new Framebuffer(this.videoParams.getWidth(), this.videoParams.getHeight(), true);
+        this.outputWidth = getOutputWidth(this.videoParams);
+        this.outputHeight = getOutputHeight(this.videoParams);
+        this.luminance = this.videoParams.getFormat() == VideoFormat.LUMINANCE;
+        this.depthPlaneBytes = getDepthPlaneBytes(this.videoParams);
+        this.linearDepth = this.depthPlaneBytes != 0 && this.videoParams.isLinearDepth();
+        // Scaled depth gets written over the last channel, so read back one more than we need for the colour -
+        // the alpha channel for RGB, or the green channel for luminance (which the shader fills with a copy of the red):
+        boolean scaledDepth = this.videoParams.isWantDepth() && this.depthPlaneBytes == 0;
+        if (this.luminance)
+            this.colourFormat = scaledDepth ? GL30.GL_RG : GL11.GL_RED;
+        else
+            this.colourFormat = scaledDepth ? GL_RGBA : GL_RGB;
+        this.colourBytes = this.outputWidth * this.outputHeight * getOutputChannels(this.videoParams);
+        if (this.luminance)
+            this.luminanceProgram = createProgram(LUMINANCE_FRAGMENT_SHADER, "frame");
+        // The world is rendered at Width x Height - our FBO only needs to hold what we send:
+        this.fbo = new Framebuffer(this.outputWidth, this.outputHeight, true);
+        if (this.linearDepth)
+            createLinearDepthTargets();
         // Create a buffer for retrieving the depth map, if requested:
-        if (this.videoParams.isWantDepth())
-        	this.depthBuffer = BufferUtils.createFloatBuffer(this.videoParams.getWidth() * this.videoParams.getHeight());
+        if (scaledDepth)
+        	this.depthBuffer = BufferUtils.createFloatBuffer(this.outputWidth * this.outputHeight);
+        // Create the PBO ring for asynchronous readback, if the driver supports it:
+        // (But not if the frames are paced - we'd be sending the frame from the previous tick we sent, rather than this one.
+        // Likewise with frame headers, which describe the frame that has just been rendered, and with lockstep stepping,
+        // where a frame is only read at the end of each step - so the ring would hand the agent the frame from the step before.)
+        ModSettings modsettings = missionInit.getMission().getModSettings();
+        this.usePBOs = false;
+        if (!GLContext.getCapabilities().OpenGL21)
+            System.out.println("Pixel buffer objects not supported - video frames will be read back synchronously.");
+        else if (this.videoParams.getFrameSkip() != 0 || this.videoParams.getTargetFps() != 0)
+            System.out.println("Video frames are paced - they will be read back synchronously, so that each is from the tick it is sent for.");
+        else if (this.videoParams.isWantFrameHeader())
+            System.out.println("Video frames have headers - they will be read back synchronously, so that each header matches its frame.");
+        else if (modsettings != null && modsettings.getLockstepTicks() != null)
+            System.out.println("Lockstep stepping - video frames will be read back synchronously, so that each is from the step it is sent for.");
+        else
+            this.usePBOs = true;
+        if (this.usePBOs)
+            createPBOs();
         // Set the requested camera position
         Minecraft.getMinecraft().gameSettings.thirdPersonView = this.videoParams.getViewpoint();
 	}
 
+	/** Build a shader program that draws a quad through the given fragment shader, which reads the named sampler from texture unit 0.*/
+	private static int createProgram(String fragmentSource, String sampler)
+	{
+	    int vertexShader = compileShader(GL20.GL_VERTEX_SHADER, QUAD_VERTEX_SHADER);
+	    int fragmentShader = compileShader(GL20.GL_FRAGMENT_SHADER, fragmentSource);
+	    int program = GL20.glCreateProgram();
+	    GL20.glAttachShader(program, vertexShader);
+	    GL20.glAttachShader(program, fragmentShader);
+	    GL20.glLinkProgram(program);
+	    // The program holds on to the shaders for as long as it needs them:
+	    GL20.glDeleteShader(vertexShader);
+	    GL20.glDeleteShader(fragmentShader);
+	    if (GL20.glGetProgrami(program, GL20.GL_LINK_STATUS) == GL11.GL_FALSE)
+	        System.out.println("Failed to link video shader: " + GL20.glGetProgramInfoLog(program, 1024));
+	    GL20.glUseProgram(program);
+	    GL20.glUniform1i(GL20.glGetUniformLocation(program, sampler), 0);
+	    GL20.glUseProgram(0);
+	    return program;
+	}
+
+	private static int compileShader(int type, String source)
+	{
+	    int shader = GL20.glCreateShader(type);
+	    GL20.glShaderSource(shader, source);
+	    GL20.glCompileShader(shader);
+	    if (GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE)
+	        System.out.println("Failed to compile video shader: " + GL20.glGetShaderInfoLog(shader, 1024));
+	    return shader;
+	}
+
+	/** Create the textures and framebuffer that the linearising shader reads from and draws into.*/
+	private void createLinearDepthTargets()
+	{
+	    this.linearDepthProgram = createProgram(LINEAR_DEPTH_FRAGMENT_SHADER, "depth");
+
+	    this.depthTexture = GL11.glGenTextures();
+	    GlStateManager.bindTexture(this.depthTexture);
+	    GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+	    GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+	    GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL14.GL_DEPTH_COMPONENT24, this.outputWidth, this.outputHeight, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (FloatBuffer)null);
+
+	    this.linearDepthTexture = GL11.glGenTextures();
+	    GlStateManager.bindTexture(this.linearDepthTexture);
+	    GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+	    GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+	    GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL30.GL_R32F, this.outputWidth, this.outputHeight, 0, GL11.GL_RED, GL_FLOAT, (FloatBuffer)null);
+	    GlStateManager.bindTexture(0);
+
+	    this.linearDepthFBO = GL30.glGenFramebuffers();
+	    GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, this.linearDepthFBO);
+	    GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL11.GL_TEXTURE_2D, this.linearDepthTexture, 0);
+	    if (GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER) != GL30.GL_FRAMEBUFFER_COMPLETE)
+	        System.out.println("Linear depth framebuffer is incomplete - depth will not be sent correctly.");
+	    GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+	}
+
+	/** Bytes in each depth PBO - either the plane as we send it, or the raw floats we scale down ourselves.*/
+	private int getDepthPBOSize()
+	{
+	    return this.outputWidth * this.outputHeight * ((this.depthPlaneBytes != 0) ? this.depthPlaneBytes : 4);
+	}
+
+	private void createPBOs()
+	{
+	    this.colourPBOs = new int[PBO_RING_SIZE];
+	    this.depthPBOs = new int[PBO_RING_SIZE];
+	    this.mappedColour = new ByteBuffer[PBO_RING_SIZE];
+	    this.mappedDepth = new ByteBuffer[PBO_RING_SIZE];
+	    for (int i = 0; i < PBO_RING_SIZE; i++)
+	    {
+	        this.colourPBOs[i] = GL15.glGenBuffers();
+	        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.colourPBOs[i]);
+	        GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, this.colourBytes, GL15.GL_STREAM_READ);
+	        if (this.videoParams.isWantDepth())
+	        {
+	            this.depthPBOs[i] = GL15.glGenBuffers();
+	            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.depthPBOs[i]);
+	            GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, getDepthPBOSize(), GL15.GL_STREAM_READ);
+	        }
+	    }
+	    GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+	    this.pboIndex = 0;
+	    this.framesRead = 0;
+	}
+
 	@Override
 	public void cleanup()
 	{
 		this.fbo.deleteFramebuffer();	// Must do this or we leak resources.
+		if (this.luminanceProgram != 0)
+		{
+		    GL20.glDeleteProgram(this.luminanceProgram);
+		    this.luminanceProgram = 0;
+		}
+		if (this.linearDepthProgram != 0)
+		{
+		    GL20.glDeleteProgram(this.linearDepthProgram);
+		    GL30.glDeleteFramebuffers(this.linearDepthFBO);
+		    GL11.glDeleteTextures(this.linearDepthTexture);
+		    GL11.glDeleteTextures(this.depthTexture);
+		    this.linearDepthProgram = 0;
+		    this.linearDepthFBO = 0;
+		    this.linearDepthTexture = 0;
+		    this.depthTexture = 0;
+		}
+		if (this.usePBOs)
+		{
+		    for (int i = 0; i < PBO_RING_SIZE; i++)
+		    {
+		        GL15.glDeleteBuffers(this.colourPBOs[i]);
+		        if (this.depthPBOs[i] != 0)
+		            GL15.glDeleteBuffers(this.depthPBOs[i]);
+		    }
+		    this.colourPBOs = null;
+		    this.depthPBOs = null;
+		    this.mappedColour = null;
+		    this.mappedDepth = null;
+		}
 	}
 }
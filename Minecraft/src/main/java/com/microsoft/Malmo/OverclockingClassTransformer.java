@@ -27,6 +27,10 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -140,6 +144,13 @@ public class OverclockingClassTransformer implements IClassTransformer
         // into this:
         //          TimeHelper.updateDisplay();
         // TimeHelper's method then decides whether or not to pass the call on to Minecraft.updateDisplay().
+        //
+        // We also wrap the world rendering in runGameLoop:
+        //          this.entityRenderer.updateCameraAndRender(this.timer.renderPartialTicks);
+        // like this:
+        //          if (TimeHelper.shouldRenderWorld())
+        //              this.entityRenderer.updateCameraAndRender(this.timer.renderPartialTicks);
+        // so that we don't pay for rendering frames that nobody will see.
         
         final String methodName = isObfuscated ? "as" : "runGameLoop";
         final String methodDescriptor = "()V"; // No params, returns void.
@@ -151,12 +162,36 @@ public class OverclockingClassTransformer implements IClassTransformer
             if (method.name.equals(methodName) && method.desc.equals(methodDescriptor))
             {
                 System.out.println("MALMO: Found Minecraft.runGameLoop() method, attempting to transform it");
+                boolean inRenderTick = false;
                 for (AbstractInsnNode instruction : method.instructions.toArray())
                 {
                     if (instruction.getOpcode() == Opcodes.INVOKEVIRTUAL)
                     {
                         MethodInsnNode visitMethodNode = (MethodInsnNode)instruction;
-                        if (visitMethodNode.name.equals(isObfuscated ? "h" : "updateDisplay"))
+                        // The world rendering is the only call taking just a float between FML's render tick events - whose names aren't obfuscated:
+                        if (visitMethodNode.owner.equals("net/minecraftforge/fml/common/FMLCommonHandler"))
+                        {
+                            if (visitMethodNode.name.equals("onRenderTickStart"))
+                                inRenderTick = true;
+                            else if (visitMethodNode.name.equals("onRenderTickEnd"))
+                                inRenderTick = false;
+                        }
+                        else if (inRenderTick && visitMethodNode.desc.equals("(F)V"))
+                        {
+                            LabelNode render = new LabelNode();
+                            LabelNode done = new LabelNode();
+                            InsnList test = new InsnList();
+                            test.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "com/microsoft/Malmo/Utils/TimeHelper", "shouldRenderWorld", "()Z", false));
+                            test.add(new JumpInsnNode(Opcodes.IFNE, render));
+                            test.add(new InsnNode(Opcodes.POP2));   // Discard the EntityRenderer and the partial ticks.
+                            test.add(new JumpInsnNode(Opcodes.GOTO, done));
+                            test.add(render);
+                            method.instructions.insertBefore(visitMethodNode, test);
+                            method.instructions.insert(visitMethodNode, done);
+                            inRenderTick = false;
+                            System.out.println("MALMO: Hooked into call to EntityRenderer.updateCameraAndRender()");
+                        }
+                        else if (visitMethodNode.name.equals(isObfuscated ? "h" : "updateDisplay"))
                         {
                             visitMethodNode.owner = "com/microsoft/Malmo/Utils/TimeHelper";
                             if (isObfuscated)
@@ -64,6 +64,7 @@ import com.microsoft.Malmo.Schemas.ModSettings;
 import com.microsoft.Malmo.Schemas.PosAndDirection;
 import com.microsoft.Malmo.Schemas.ServerInitialConditions;
 import com.microsoft.Malmo.Schemas.ServerSection;
+import com.microsoft.Malmo.Utils.LockstepTimer;
 import com.microsoft.Malmo.Utils.MinecraftTypeHelper;
 import com.microsoft.Malmo.Utils.SchemaHelper;
 import com.microsoft.Malmo.Utils.ScreenHelper;
@@ -174,8 +175,15 @@ public class ServerStateMachine extends StateMachine
     @SubscribeEvent
     public void onServerTick(TickEvent.ServerTickEvent ev)
     {
+        // With lockstep stepping, the server mustn't get ahead of the client:
+        if (ev.phase == Phase.START)
+            LockstepTimer.onServerTickStart();
+
         // Use the server tick to ensure we regularly update our state (from the server thread)
         updateState();
+
+        if (ev.phase == Phase.END)
+            LockstepTimer.onServerTickEnd();
     }
 
     /** Create the episode object for the requested state.
@@ -820,6 +828,8 @@ public class ServerStateMachine extends StateMachine
         boolean missionHasEnded = false;
         long tickCount = 0;
         long secondStartTimeMs = 0;
+        boolean lockstep = false;
+        static final long LOCKSTEP_TICK_LENGTH_MS = 1;  // Don't wait between ticks - LockstepTimer holds each one back until the client allows it.
 
         protected RunningEpisode(ServerStateMachine machine)
         {
@@ -882,8 +892,12 @@ public class ServerStateMachine extends StateMachine
                 }
             }
             ModSettings modsettings = currentMissionInit().getMission().getModSettings();
-            if (modsettings != null && modsettings.getMsPerTick() != null)
+            if (modsettings != null && modsettings.getMsPerTick() != null && modsettings.getLockstepTicks() == null)
                 TimeHelper.serverTickLength = (long)(modsettings.getMsPerTick());
+            // With lockstep stepping (which, like the client, we only do for a single agent on an integrated server), the client
+            // decides when we tick - see LockstepTimer. Once it has taken over, we mustn't hold back by the clock as well:
+            this.lockstep = modsettings != null && modsettings.getLockstepTicks() != null
+                    && currentMissionInit().getMission().getAgentSection().size() == 1 && !MinecraftServer.getServer().isDedicatedServer();
                 
             if (getHandlers().quitProducer != null)
                 getHandlers().quitProducer.prepare(currentMissionInit());
@@ -901,6 +915,10 @@ public class ServerStateMachine extends StateMachine
             if (!ServerStateMachine.this.checkWatchList())
                 onError(null);  // We've lost a connection - abort the mission.
             
+            // Only drop the tick length while the client is actually holding us back - before it takes over, or if it gives up, we run by the clock:
+            if (ev.phase == Phase.START && this.lockstep)
+                TimeHelper.serverTickLength = LockstepTimer.isServerLocked() ? LOCKSTEP_TICK_LENGTH_MS : 50;
+
             if (ev.phase == Phase.START)
             {
                 // Measure our performance - especially useful if we've been overclocked.
@@ -911,7 +929,7 @@ public class ServerStateMachine extends StateMachine
                 if (timeNow - this.secondStartTimeMs > 1000)
                 {
                     long targetTicks = 1000 / TimeHelper.serverTickLength;
-                    if (this.tickCount < targetTicks)
+                    if (this.tickCount < targetTicks && !LockstepTimer.isServerLocked())
                         System.out.println("Warning: managed " + this.tickCount + "/" + targetTicks + " ticks this second.");
                     this.secondStartTimeMs = timeNow;
                     this.tickCount = 0;
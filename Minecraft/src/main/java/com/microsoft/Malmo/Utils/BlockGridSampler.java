@@ -0,0 +1,141 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.minecraft.block.Block;
+import net.minecraft.util.BlockPos;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+/**
+ * Reads the block types in a cuboid of the world straight from the chunk storage, a chunk section at a time,
+ * rather than looking up each block through the world.<br>
+ * The cuboid is held as block ids, in order along the x, then z, then y axes; the buffer is reused from one sample to the next.<br>
+ * Call this on the Server side only - the sampler is not thread-safe, though the block name table is.
+ */
+public class BlockGridSampler
+{
+    /** Number of possible block ids - the block state ids in the chunk storage are the block id shifted left by four bits.*/
+    public static final int MAX_BLOCK_IDS = 4096;
+
+    /** A block, and the name we send for it.*/
+    private static class BlockName
+    {
+        final Block block;
+        final String name;
+
+        BlockName(Block block, String name)
+        {
+            this.block = block;
+            this.name = name;
+        }
+    }
+
+    // Shared by every thread that samples. The block is kept with its name, in case the ids are remapped when another world is loaded:
+    private static final AtomicReferenceArray<BlockName> blockNames = new AtomicReferenceArray<BlockName>(MAX_BLOCK_IDS);
+
+    private char[] blocks = new char[0];
+    private int xOrigin;
+    private int yOrigin;
+    private int zOrigin;
+    private int xSize;
+    private int ySize;
+    private int zSize;
+
+    /**
+     * Read the blocks of a cuboid, given relative to a position.
+     * @param world the world to read.
+     * @param pos the position that the cuboid is relative to - eg the player's feet.
+     * @param dims the inclusive range to read around pos.
+     */
+    public void sample(World world, BlockPos pos, JSONWorldDataHelper.ImmediateEnvironmentDimensions dims)
+    {
+        this.xOrigin = pos.getX() + dims.xMin;
+        this.yOrigin = pos.getY() + dims.yMin;
+        this.zOrigin = pos.getZ() + dims.zMin;
+        this.xSize = dims.xMax - dims.xMin + 1;
+        this.ySize = dims.yMax - dims.yMin + 1;
+        this.zSize = dims.zMax - dims.zMin + 1;
+        int volume = this.xSize * this.ySize * this.zSize;
+        if (this.blocks.length < volume)
+            this.blocks = new char[volume];
+
+        int xEnd = this.xOrigin + this.xSize;
+        int zEnd = this.zOrigin + this.zSize;
+        for (int xChunk = this.xOrigin >> 4; xChunk <= (xEnd - 1) >> 4; xChunk++)
+        {
+            for (int zChunk = this.zOrigin >> 4; zChunk <= (zEnd - 1) >> 4; zChunk++)
+            {
+                // The part of the cuboid that falls in this chunk:
+                int x0 = Math.max(this.xOrigin, xChunk << 4);
+                int x1 = Math.min(xEnd, (xChunk + 1) << 4);
+                int z0 = Math.max(this.zOrigin, zChunk << 4);
+                int z1 = Math.min(zEnd, (zChunk + 1) << 4);
+                ExtendedBlockStorage[] sections = world.getChunkFromChunkCoords(xChunk, zChunk).getBlockStorageArray();
+                for (int y = this.yOrigin; y < this.yOrigin + this.ySize; y++)
+                {
+                    ExtendedBlockStorage section = (y >= 0 && (y >> 4) < sections.length) ? sections[y >> 4] : null;
+                    char[] data = (section != null) ? section.getData() : null;
+                    for (int z = z0; z < z1; z++)
+                    {
+                        int index = ((y - this.yOrigin) * this.zSize + (z - this.zOrigin)) * this.xSize + (x0 - this.xOrigin);
+                        if (data == null)
+                        {
+                            // Outside the world, or an empty section - all air.
+                            for (int x = x0; x < x1; x++)
+                                this.blocks[index++] = 0;
+                            continue;
+                        }
+                        int offset = (y & 15) << 8 | (z & 15) << 4;
+                        for (int x = x0; x < x1; x++)
+                            this.blocks[index++] = (char)(data[offset | (x & 15)] >> 4);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the id of the block at this position, relative to the position given to sample(), which must lie within the sampled cuboid.*/
+    public int getBlockId(BlockPos pos, int x, int y, int z)
+    {
+        return this.blocks[((pos.getY() + y - this.yOrigin) * this.zSize + (pos.getZ() + z - this.zOrigin)) * this.xSize + (pos.getX() + x - this.xOrigin)];
+    }
+
+    /** Returns the block type name used in the observations for this block id, eg "stone", or "" if there is no name.*/
+    public static String getBlockName(int blockId)
+    {
+        Block block = Block.getBlockById(blockId);
+        BlockName entry = blockNames.get(blockId);
+        if (entry == null || entry.block != block)
+        {
+            // Two threads may both work the name out, but they'll arrive at the same answer:
+            String name = "";
+            Object blockName = Block.blockRegistry.getNameForObject(block);
+            if (blockName instanceof ResourceLocation)
+                name = ((ResourceLocation)blockName).getResourcePath();
+            entry = new BlockName(block, name);
+            blockNames.set(blockId, entry);
+        }
+        return entry.name;
+    }
+}
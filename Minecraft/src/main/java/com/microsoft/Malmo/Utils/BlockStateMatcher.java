@@ -0,0 +1,119 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+
+package com.microsoft.Malmo.Utils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.properties.IProperty;
+import net.minecraft.block.state.IBlockState;
+
+import com.microsoft.Malmo.Schemas.BlockSpec;
+import com.microsoft.Malmo.Schemas.BlockType;
+import com.microsoft.Malmo.Schemas.BlockVariant;
+import com.microsoft.Malmo.Schemas.Colour;
+
+/**
+ * A BlockSpec compiled into the set of block states that it matches, so that testing a block is a single lookup.<br>
+ * Minecraft holds one IBlockState object for each combination of a block's properties, so the set is keyed on identity.<br>
+ * A block matches if its unlocalised name matches one of the spec's types - so eg "water" also matches flowing water - and,
+ * if it has a colour or an enum variant property, if that is one of the spec's colours or variants (where the spec gives any).
+ */
+public class BlockStateMatcher
+{
+    private final Set<IBlockState> states = Collections.newSetFromMap(new IdentityHashMap<IBlockState, Boolean>());
+
+    public BlockStateMatcher(BlockSpec spec)
+    {
+        Set<String> names = new HashSet<String>();
+        for (BlockType bt : spec.getType())
+        {
+            Block b = Block.getBlockFromName(bt.value());
+            if (b != null)
+                names.add(b.getUnlocalizedName().toLowerCase());
+        }
+
+        for (Object obj : Block.blockRegistry)
+        {
+            Block block = (Block)obj;
+            if (!names.contains(block.getUnlocalizedName().toLowerCase()))
+                continue;
+            for (Object state : block.getBlockState().getValidStates())
+            {
+                IBlockState bs = (IBlockState)state;
+                if (matchesColour(spec.getColour(), bs) && matchesVariant(spec.getVariant(), bs))
+                    this.states.add(bs);
+            }
+        }
+    }
+
+    /** True if the block state is one of those specified.*/
+    public boolean matches(IBlockState bs)
+    {
+        return this.states.contains(bs);
+    }
+
+    private static boolean matchesColour(List<Colour> colours, IBlockState bs)
+    {
+        if (colours == null || colours.isEmpty())
+            return true;    // If nothing to match against, we pass.
+        for (IProperty prop : (java.util.Set<IProperty>)bs.getProperties().keySet())
+        {
+            if (prop.getName().equals("color") && prop.getValueClass() == net.minecraft.item.EnumDyeColor.class)
+            {
+                net.minecraft.item.EnumDyeColor current = (net.minecraft.item.EnumDyeColor)bs.getValue(prop);
+                for (Colour col : colours)
+                {
+                    if (current.getName().equalsIgnoreCase(col.value()))
+                        return true;
+                }
+                return false;
+            }
+        }
+        return true;    // The block has no colour, so the colour can't rule it out.
+    }
+
+    private static boolean matchesVariant(List<BlockVariant> variants, IBlockState bs)
+    {
+        if (variants == null || variants.isEmpty())
+            return true;    // If nothing to match against, we pass.
+        for (IProperty prop : (java.util.Set<IProperty>)bs.getProperties().keySet())
+        {
+            if (prop.getName().equals("variant") && prop.getValueClass().isEnum())
+            {
+                Object current = bs.getValue(prop);
+                if (current == null)
+                    continue;
+                for (BlockVariant var : variants)
+                {
+                    if (var.value().equalsIgnoreCase(current.toString()))
+                        return true;
+                }
+                return false;
+            }
+        }
+        return true;    // Likewise for blocks with no variant.
+    }
+}
@@ -0,0 +1,228 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Utils;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A Writer that encodes straight into a reusable direct ByteBuffer, as UTF-8.<br>
+ * Wrap it in a Gson JsonWriter to build a message without creating a String or a byte[] for it,
+ * then send the buffer with TCPSocketHelper.SocketChannelHelper or SharedMemoryRing.<br>
+ * Binary values can be mixed in with the put methods, which write them little-endian.<br>
+ * The buffer grows as needed, and is kept from one message to the next. Not thread-safe.
+ */
+public class ByteBufferWriter extends Writer
+{
+    private ByteBuffer buffer;
+
+    /**
+     * @param initialCapacity the size of the buffer to start with, in bytes.
+     */
+    public ByteBufferWriter(int initialCapacity)
+    {
+        this.buffer = ByteBuffer.allocateDirect(Math.max(16, initialCapacity)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Forget the current message, ready to write the next one.*/
+    public void reset()
+    {
+        this.buffer.clear();
+    }
+
+    /** The number of bytes written since the last reset.*/
+    public int length()
+    {
+        return this.buffer.position();
+    }
+
+    /** Returns a view of the message written so far, positioned ready for sending.<br>
+     * Only valid until the next write or reset.
+     */
+    public ByteBuffer getMessage()
+    {
+        ByteBuffer message = this.buffer.duplicate();
+        message.flip();
+        return message;
+    }
+
+    /** Add the members of a JSON object to the JSON object that has just been written, without parsing either of them.<br>
+     * Nothing is done about names that appear in both - see ObservationFromServer.removeDuplicateMembers.
+     * @param jsonObject an encoded JSON object - eg as returned from the server by an ObservationFromServer.
+     */
+    public void appendMembers(String jsonObject)
+    {
+        int end = this.buffer.position() - 1;
+        if (jsonObject.length() <= 2 || end < 1 || this.buffer.get(end) != '}')
+            return;     // Nothing to add, or nothing to add it to.
+        boolean empty = (this.buffer.get(end - 1) == '{');
+        this.buffer.position(end);  // Drop the closing brace.
+        if (!empty)
+            write(',');
+        write(jsonObject, 1, jsonObject.length() - 2);
+        write('}');
+    }
+
+    public void putByte(int value)
+    {
+        ensureSpace(1);
+        this.buffer.put((byte)value);
+    }
+
+    public void putInt(int value)
+    {
+        ensureSpace(4);
+        this.buffer.putInt(value);
+    }
+
+    /** Overwrite an int that has already been written - eg a count that wasn't known at the time.
+     * @param offset where the int was written, as returned by length() just before writing it.
+     */
+    public void putInt(int offset, int value)
+    {
+        this.buffer.putInt(offset, value);
+    }
+
+    public void putLong(long value)
+    {
+        ensureSpace(8);
+        this.buffer.putLong(value);
+    }
+
+    public void putFloat(float value)
+    {
+        ensureSpace(4);
+        this.buffer.putFloat(value);
+    }
+
+    public void putDouble(double value)
+    {
+        ensureSpace(8);
+        this.buffer.putDouble(value);
+    }
+
+    /** Write a string as its length in bytes (as an int) followed by its UTF-8 encoding.*/
+    public void putString(String value)
+    {
+        int offset = length();
+        putInt(0);
+        write(value, 0, value.length());
+        putInt(offset, length() - offset - 4);
+    }
+
+    @Override
+    public void write(int c)
+    {
+        ensureSpace(3);
+        putChar((char)c, (char)0);
+    }
+
+    @Override
+    public void write(String str, int off, int len)
+    {
+        ensureSpace(len * 3);
+        for (int i = off; i < off + len; i++)
+        {
+            char c = str.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < off + len)
+                i += putChar(c, str.charAt(i + 1));
+            else
+                putChar(c, (char)0);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len)
+    {
+        ensureSpace(len * 3);
+        for (int i = off; i < off + len; i++)
+        {
+            char c = cbuf[i];
+            if (Character.isHighSurrogate(c) && i + 1 < off + len)
+                i += putChar(c, cbuf[i + 1]);
+            else
+                putChar(c, (char)0);
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    /** Encode a character as UTF-8.
+     * @param c the character.
+     * @param next the character after it - only used if c is the first half of a surrogate pair.
+     * @return 1 if next was used as well, 0 otherwise.
+     */
+    private int putChar(char c, char next)
+    {
+        ByteBuffer b = this.buffer;
+        if (c < 0x80)
+        {
+            b.put((byte)c);
+        }
+        else if (c < 0x800)
+        {
+            b.put((byte)(0xC0 | (c >> 6)));
+            b.put((byte)(0x80 | (c & 0x3F)));
+        }
+        else if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next))
+        {
+            int cp = Character.toCodePoint(c, next);
+            b.put((byte)(0xF0 | (cp >> 18)));
+            b.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+            b.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+            b.put((byte)(0x80 | (cp & 0x3F)));
+            return 1;
+        }
+        else if (Character.isSurrogate(c))
+        {
+            b.put((byte)'?');   // Unpaired - as String.getBytes() would do.
+        }
+        else
+        {
+            b.put((byte)(0xE0 | (c >> 12)));
+            b.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+            b.put((byte)(0x80 | (c & 0x3F)));
+        }
+        return 0;
+    }
+
+    /** Make sure there's room for this many more bytes - growing the buffer if not.*/
+    private void ensureSpace(int bytes)
+    {
+        if (this.buffer.remaining() >= bytes)
+            return;
+        int capacity = this.buffer.capacity();
+        while (capacity - this.buffer.position() < bytes)
+            capacity *= 2;
+        ByteBuffer bigger = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.flip();
+        bigger.put(this.buffer);
+        this.buffer = bigger;
+    }
+}
@@ -0,0 +1,502 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+
+package com.microsoft.Malmo.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockDoor;
+import net.minecraft.block.BlockLadder;
+import net.minecraft.block.material.Material;
+import net.minecraft.util.BlockPos;
+import net.minecraft.world.World;
+
+import com.microsoft.Malmo.Schemas.DistanceToGoalField;
+import com.microsoft.Malmo.Schemas.DistanceToGoalHandlers;
+import com.microsoft.Malmo.Schemas.ObservationFromDistanceToGoal;
+import com.microsoft.Malmo.Schemas.RewardForDistanceToGoal;
+
+/**
+ * The distance to a goal from each cell of a grid over the world, worked out once so that looking up the player's distance is cheap.<br>
+ * Cells are held in order along the x, then z, then y axes, as in the DistanceToGoalField schema type. A grid one cell high applies at any height.
+ */
+public class DistanceField
+{
+    public static final int UNREACHABLE = -1;
+    /** How far the player can drop onto a lower block without it counting as a fall.*/
+    private static final int MAX_DROP = 3;
+
+    private final int xOrigin;
+    private final int yOrigin;
+    private final int zOrigin;
+    private final int xSize;
+    private final int ySize;
+    private final int zSize;
+    private final int scale;
+    private final int[] distances;
+
+    /** Create a field with every cell unreachable.*/
+    public DistanceField(int xOrigin, int yOrigin, int zOrigin, int xSize, int ySize, int zSize, int scale)
+    {
+        this.xOrigin = xOrigin;
+        this.yOrigin = yOrigin;
+        this.zOrigin = zOrigin;
+        this.xSize = xSize;
+        this.ySize = ySize;
+        this.zSize = zSize;
+        this.scale = Math.max(1, scale);
+        this.distances = new int[xSize * ySize * zSize];
+        Arrays.fill(this.distances, UNREACHABLE);
+    }
+
+    /** Create a field from its schema form, as passed to the distance-to-goal handlers.
+     * Any cells missing from a damaged field are left unreachable.
+     */
+    public DistanceField(DistanceToGoalField params)
+    {
+        this(params.getXOrigin(), params.getYOrigin(), params.getZOrigin(), params.getXSize(), params.getYSize(), params.getZSize(), params.getScale());
+        decode(params.getValue(), this.distances);
+    }
+
+    /** Get the field in its schema form, for adding to the distance-to-goal handlers.<br>
+     * The grid is cropped to the cells the goal can be reached from, and the distances are compressed - see the DistanceToGoalField schema type.
+     */
+    public DistanceToGoalField getAsSchema()
+    {
+        DistanceField cropped = crop();
+        DistanceToGoalField field = new DistanceToGoalField();
+        field.setXOrigin(cropped.xOrigin);
+        field.setYOrigin(cropped.yOrigin);
+        field.setZOrigin(cropped.zOrigin);
+        field.setXSize(cropped.xSize);
+        field.setYSize(cropped.ySize);
+        field.setZSize(cropped.zSize);
+        field.setScale(cropped.scale);
+        field.setValue(encode(cropped.distances));
+        return field;
+    }
+
+    /** Returns the smallest field that holds all the reachable cells of this one - which may be this one.*/
+    private DistanceField crop()
+    {
+        int x0 = this.xSize, y0 = this.ySize, z0 = this.zSize, x1 = -1, y1 = -1, z1 = -1;
+        int i = 0;
+        for (int y = 0; y < this.ySize; y++)
+        {
+            for (int z = 0; z < this.zSize; z++)
+            {
+                for (int x = 0; x < this.xSize; x++, i++)
+                {
+                    if (this.distances[i] == UNREACHABLE)
+                        continue;
+                    x0 = Math.min(x0, x); x1 = Math.max(x1, x);
+                    y0 = Math.min(y0, y); y1 = Math.max(y1, y);
+                    z0 = Math.min(z0, z); z1 = Math.max(z1, z);
+                }
+            }
+        }
+        if (x1 < 0)
+            return new DistanceField(this.xOrigin, this.yOrigin, this.zOrigin, 1, 1, 1, this.scale);   // Nowhere to reach the goal from.
+        // A field one cell high means something different - it applies at any height - so keep at least two layers of a taller one:
+        if (this.ySize > 1 && y0 == y1)
+        {
+            if (y1 + 1 < this.ySize)
+                y1++;
+            else
+                y0--;
+        }
+        if (x0 == 0 && y0 == 0 && z0 == 0 && x1 == this.xSize - 1 && y1 == this.ySize - 1 && z1 == this.zSize - 1)
+            return this;
+
+        DistanceField cropped = new DistanceField(this.xOrigin + x0 * this.scale, this.yOrigin + y0 * this.scale, this.zOrigin + z0 * this.scale,
+                x1 - x0 + 1, y1 - y0 + 1, z1 - z0 + 1, this.scale);
+        for (int y = y0; y <= y1; y++)
+            for (int z = z0; z <= z1; z++)
+                System.arraycopy(this.distances, x0 + z * this.xSize + y * this.xSize * this.zSize,
+                        cropped.distances, (z - z0) * cropped.xSize + (y - y0) * cropped.xSize * cropped.zSize, cropped.xSize);
+        return cropped;
+    }
+
+    /** Compress the distances - neighbouring cells mostly differ by -1, 0 or 1, so the differences pack down very small.*/
+    private static byte[] encode(int[] distances)
+    {
+        byte[] varints = new byte[distances.length * 5];
+        int length = 0;
+        int previous = 0;
+        for (int d : distances)
+        {
+            int diff = d - previous;
+            int zigzag = (diff << 1) ^ (diff >> 31);
+            while ((zigzag & ~0x7F) != 0)
+            {
+                varints[length++] = (byte)((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            varints[length++] = (byte)zigzag;
+            previous = d;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(varints, 0, length);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        while (!deflater.finished())
+            out.write(chunk, 0, deflater.deflate(chunk));
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Undo encode(), filling in as many of the distances as there is data for.*/
+    private static void decode(byte[] data, int[] distances)
+    {
+        if (data == null)
+            return;
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        byte[] chunk = new byte[4096];
+        int cell = 0;
+        int previous = 0;
+        int zigzag = 0;
+        int shift = 0;
+        try
+        {
+            while (cell < distances.length && !inflater.finished())
+            {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;  // Truncated.
+                for (int i = 0; i < n && cell < distances.length; i++)
+                {
+                    zigzag |= (chunk[i] & 0x7F) << shift;
+                    shift += 7;
+                    if ((chunk[i] & 0x80) != 0)
+                        continue;
+                    previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                    distances[cell++] = previous;
+                    zigzag = 0;
+                    shift = 0;
+                }
+            }
+        }
+        catch (DataFormatException e)
+        {
+            System.out.println("Distance-to-goal field is corrupt: " + e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Create the agent handlers that a decorator's AddDistanceToGoal element asks for.
+     * @param params the decorator's AddDistanceToGoal element.
+     * @return the handlers, ready to add to each agent's AgentHandlers.
+     */
+    public List<Object> createHandlers(DistanceToGoalHandlers params)
+    {
+        List<Object> handlers = new ArrayList<Object>();
+        DistanceToGoalField schemaField = getAsSchema();
+        if (params.isObserve())
+        {
+            ObservationFromDistanceToGoal observation = new ObservationFromDistanceToGoal();
+            observation.setField(schemaField);
+            handlers.add(observation);
+        }
+        if (params.getRewardPerBlock() != null)
+        {
+            RewardForDistanceToGoal reward = new RewardForDistanceToGoal();
+            if (!params.isObserve())
+                reward.setField(schemaField);   // Otherwise it uses the observation's, rather than sending the field twice.
+            reward.setRewardPerBlock(params.getRewardPerBlock());
+            reward.setDimension(params.getRewardDimension());
+            handlers.add(reward);
+        }
+        return handlers;
+    }
+
+    /** Set the distance of a cell, given in cell coordinates.*/
+    public void setDistance(int x, int y, int z, int distance)
+    {
+        this.distances[x + z * this.xSize + y * this.xSize * this.zSize] = distance;
+    }
+
+    /**
+     * Look up the distance from a position in the world - eg the player's.<br>
+     * In a grid more than one cell high, the cells just above and below are tried too, in case the player is on a half-block or mid-jump.
+     * @return the distance to the goal, in blocks, or UNREACHABLE if the position is off the grid or the goal can't be reached from it.
+     */
+    public int getDistance(double x, double y, double z)
+    {
+        int cx = (int)Math.floor((x - this.xOrigin) / this.scale);
+        int cz = (int)Math.floor((z - this.zOrigin) / this.scale);
+        if (cx < 0 || cx >= this.xSize || cz < 0 || cz >= this.zSize)
+            return UNREACHABLE;
+        if (this.ySize == 1)
+            return this.distances[cx + cz * this.xSize];
+
+        int cy = (int)Math.floor((y - this.yOrigin) / this.scale);
+        int d = getCell(cx, cy, cz);
+        if (d == UNREACHABLE)
+            d = getCell(cx, cy + 1, cz);
+        if (d == UNREACHABLE)
+            d = getCell(cx, cy - 1, cz);
+        return d;
+    }
+
+    private int getCell(int x, int y, int z)
+    {
+        if (y < 0 || y >= this.ySize)
+            return UNREACHABLE;
+        return this.distances[x + z * this.xSize + y * this.xSize * this.zSize];
+    }
+
+    /**
+     * Work out how far each position that the player can stand in is from a goal block, by a breadth-first search over the blocks of the world.<br>
+     * The player can walk to a neighbouring position, step up one block, drop up to three, jump a one-block gap and climb ladders.
+     * Doors count as open, and liquids are never walked through.<br>
+     * Call this on the Server side, once the blocks are in place.
+     * @param world the world.
+     * @param min the lowest corner of the region to cover.
+     * @param max the highest corner of the region to cover.
+     * @param goal the goal block - any position within a block of it counts as having reached it.
+     * @return the distances, in blocks walked, with one cell per block.
+     */
+    public static DistanceField fromWalkableBlocks(World world, BlockPos min, BlockPos max, BlockPos goal)
+    {
+        DistanceField field = new DistanceField(min.getX(), min.getY(), min.getZ(), max.getX() - min.getX() + 1, max.getY() - min.getY() + 1, max.getZ() - min.getZ() + 1, 1);
+        WalkableGrid grid = new WalkableGrid(world, field);
+
+        // Find the reverse of every move, so that we can search outwards from the goal.
+        // First count the moves into each cell, then list them, grouped by the cell they go to:
+        int cells = field.distances.length;
+        int[] moves = new int[8];
+        int[] costs = new int[8];
+        int[] edgeStart = new int[cells + 1];
+        for (int cell = 0; cell < cells; cell++)
+        {
+            int n = grid.standable[cell] ? grid.findMoves(cell, moves, costs) : 0;
+            for (int i = 0; i < n; i++)
+                edgeStart[moves[i] + 1]++;
+        }
+        for (int cell = 0; cell < cells; cell++)
+            edgeStart[cell + 1] += edgeStart[cell];
+
+        int[] edgeFrom = new int[edgeStart[cells]];
+        int[] edgeCost = new int[edgeStart[cells]];
+        int[] fill = Arrays.copyOf(edgeStart, cells);
+        for (int cell = 0; cell < cells; cell++)
+        {
+            int n = grid.standable[cell] ? grid.findMoves(cell, moves, costs) : 0;
+            for (int i = 0; i < n; i++)
+            {
+                edgeFrom[fill[moves[i]]] = cell;
+                edgeCost[fill[moves[i]]++] = costs[i];
+            }
+        }
+
+        search(field, grid, goal, edgeStart, edgeFrom, edgeCost);
+        return field;
+    }
+
+    /** Search outwards from the goal along the reversed moves. Moves cost one or two blocks, so we keep a queue for each distance.*/
+    private static void search(DistanceField field, WalkableGrid grid, BlockPos goal, int[] edgeStart, int[] edgeFrom, int[] edgeCost)
+    {
+        int[][] queues = new int[3][16];
+        int[] queueLengths = new int[3];
+        for (int dx = -1; dx <= 1; dx++)
+        {
+            for (int dy = -1; dy <= 1; dy++)
+            {
+                for (int dz = -1; dz <= 1; dz++)
+                {
+                    int cell = grid.indexOf(goal.getX() + dx, goal.getY() + dy, goal.getZ() + dz);
+                    if (cell >= 0 && grid.standable[cell] && field.distances[cell] == UNREACHABLE)
+                    {
+                        field.distances[cell] = 0;
+                        queues[0] = push(queues[0], queueLengths[0]++, cell);
+                    }
+                }
+            }
+        }
+
+        for (int distance = 0; queueLengths[0] + queueLengths[1] + queueLengths[2] > 0; distance++)
+        {
+            int q = distance % 3;
+            for (int i = 0; i < queueLengths[q]; i++)
+            {
+                int cell = queues[q][i];
+                if (field.distances[cell] != distance)
+                    continue;   // Already reached by a shorter route.
+                for (int e = edgeStart[cell]; e < edgeStart[cell + 1]; e++)
+                {
+                    int from = edgeFrom[e];
+                    int d = distance + edgeCost[e];
+                    if (field.distances[from] == UNREACHABLE || field.distances[from] > d)
+                    {
+                        field.distances[from] = d;
+                        int target = d % 3;
+                        queues[target] = push(queues[target], queueLengths[target]++, from);
+                    }
+                }
+            }
+            queueLengths[q] = 0;
+        }
+    }
+
+    private static int[] push(int[] queue, int index, int value)
+    {
+        if (index == queue.length)
+            queue = Arrays.copyOf(queue, queue.length * 2);
+        queue[index] = value;
+        return queue;
+    }
+
+    /** Which blocks of the region can be passed through, and which can be stood in.*/
+    private static class WalkableGrid
+    {
+        final DistanceField field;
+        final boolean[] passable;
+        final boolean[] ladder;
+        final boolean[] standable;
+
+        WalkableGrid(World world, DistanceField field)
+        {
+            this.field = field;
+            int cells = field.distances.length;
+            this.passable = new boolean[cells];
+            this.ladder = new boolean[cells];
+            this.standable = new boolean[cells];
+            boolean[] solid = new boolean[cells];
+            for (int y = 0; y < field.ySize; y++)
+            {
+                for (int z = 0; z < field.zSize; z++)
+                {
+                    for (int x = 0; x < field.xSize; x++)
+                    {
+                        int cell = x + z * field.xSize + y * field.xSize * field.zSize;
+                        Block block = world.getBlockState(new BlockPos(field.xOrigin + x, field.yOrigin + y, field.zOrigin + z)).getBlock();
+                        Material material = block.getMaterial();
+                        solid[cell] = material.blocksMovement() && !(block instanceof BlockDoor);
+                        this.passable[cell] = !solid[cell] && !material.isLiquid();
+                        this.ladder[cell] = block instanceof BlockLadder;
+                    }
+                }
+            }
+            // The player can stand where their feet and head are clear, and there's something solid underfoot - or they are on a ladder:
+            for (int cell = 0; cell < cells; cell++)
+            {
+                int below = cell - field.xSize * field.zSize;
+                int above = cell + field.xSize * field.zSize;
+                boolean headClear = above >= cells || this.passable[above];
+                this.standable[cell] = this.passable[cell] && headClear && (this.ladder[cell] || (below >= 0 && solid[below]));
+            }
+        }
+
+        /** The cell holding a block of the world, or -1 if it is outside the region.*/
+        int indexOf(int x, int y, int z)
+        {
+            return indexOfCell(x - this.field.xOrigin, y - this.field.yOrigin, z - this.field.zOrigin);
+        }
+
+        private boolean isPassable(int x, int y, int z)
+        {
+            int cell = indexOfCell(x, y, z);
+            return cell < 0 || this.passable[cell];  // Outside the region counts as open.
+        }
+
+        private boolean isStandable(int x, int y, int z)
+        {
+            int cell = indexOfCell(x, y, z);
+            return cell >= 0 && this.standable[cell];
+        }
+
+        private int indexOfCell(int x, int y, int z)
+        {
+            if (x < 0 || x >= this.field.xSize || y < 0 || y >= this.field.ySize || z < 0 || z >= this.field.zSize)
+                return -1;
+            return x + z * this.field.xSize + y * this.field.xSize * this.field.zSize;
+        }
+
+        /** Find the positions the player can move to from a standable cell, and what each move costs in blocks.
+         * @return the number of moves found.
+         */
+        int findMoves(int cell, int[] moves, int[] costs)
+        {
+            int layer = this.field.xSize * this.field.zSize;
+            int x = cell % this.field.xSize;
+            int z = (cell % layer) / this.field.xSize;
+            int y = cell / layer;
+            int n = 0;
+            int[][] directions = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+            for (int[] d : directions)
+            {
+                int nx = x + d[0];
+                int nz = z + d[1];
+                if (isStandable(nx, y, nz))
+                {
+                    n = addMove(moves, costs, n, indexOfCell(nx, y, nz), 1);
+                }
+                else if (isStandable(nx, y + 1, nz) && isPassable(x, y + 2, z))
+                {
+                    n = addMove(moves, costs, n, indexOfCell(nx, y + 1, nz), 1);   // Step up.
+                }
+                else if (isPassable(nx, y, nz) && isPassable(nx, y + 1, nz))
+                {
+                    // Nothing to stand on - drop down, if it isn't too far:
+                    int landing = -1;
+                    for (int ny = y - 1; ny >= y - MAX_DROP && isPassable(nx, ny, nz); ny--)
+                    {
+                        if (isStandable(nx, ny, nz))
+                        {
+                            landing = indexOfCell(nx, ny, nz);
+                            break;
+                        }
+                    }
+                    if (landing >= 0)
+                        n = addMove(moves, costs, n, landing, 1);
+                    else if (isStandable(nx + d[0], y, nz + d[1]) && isPassable(x, y + 2, z) && isPassable(nx, y + 2, nz))
+                        n = addMove(moves, costs, n, indexOfCell(nx + d[0], y, nz + d[1]), 2);  // Jump the gap.
+                }
+            }
+            // Climb up or down a ladder:
+            if (this.ladder[cell] && isStandable(x, y + 1, z))
+                n = addMove(moves, costs, n, indexOfCell(x, y + 1, z), 1);
+            if (isStandable(x, y - 1, z) && this.ladder[indexOfCell(x, y - 1, z)])
+                n = addMove(moves, costs, n, indexOfCell(x, y - 1, z), 1);
+            return n;
+        }
+
+        private static int addMove(int[] moves, int[] costs, int n, int cell, int cost)
+        {
+            moves[n] = cell;
+            costs[n] = cost;
+            return n + 1;
+        }
+    }
+}
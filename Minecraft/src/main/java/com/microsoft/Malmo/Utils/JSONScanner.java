@@ -0,0 +1,219 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Utils;
+
+import java.util.List;
+
+/** Finds the top-level members of a JSON object, or the entries of a JSON array, in JSON text - without parsing the values.<br>
+ * Used wherever observations are spliced together or compared as text, so that they all agree on where a member begins and ends:
+ * a member runs from the opening quote of its name to the end of its value, and a value never includes the whitespace around it.
+ * (malmo::DeltaObservationDecoder in the AgentHost follows the same rules.)
+ */
+public class JSONScanner
+{
+    /** Where the parts of a member are, as indexes into the JSON text - see findMembers().*/
+    public static final int NAME_START = 0;    // The name's opening quote.
+    public static final int NAME_END = 1;      // Just after the name's closing quote.
+    public static final int VALUE_START = 2;
+    public static final int VALUE_END = 3;     // Just after the value - which is also the end of the member.
+
+    /** Find the members of a JSON object.
+     * @param json the JSON text.
+     * @param names if not null, receives the name of each member, unescaped.
+     * @param spans receives the parts of each member - an array indexed by NAME_START, NAME_END, VALUE_START and VALUE_END.
+     * @return false if the text isn't a well-formed object.
+     */
+    public static boolean findMembers(String json, List<String> names, List<int[]> spans)
+    {
+        int len = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i >= len || json.charAt(i) != '{')
+            return false;
+        i = skipWhitespace(json, i + 1);
+        if (i < len && json.charAt(i) == '}')
+            return true;
+        while (i < len)
+        {
+            if (json.charAt(i) != '"')
+                return false;
+            int nameStart = i;
+            int nameEnd = skipString(json, i);
+            if (nameEnd < 0)
+                return false;
+            i = skipWhitespace(json, nameEnd);
+            if (i >= len || json.charAt(i) != ':')
+                return false;
+            int valueStart = skipWhitespace(json, i + 1);
+            int valueEnd = skipValue(json, valueStart);
+            if (valueEnd < 0)
+                return false;
+            if (names != null)
+                names.add(unescape(json, nameStart + 1, nameEnd - 1));
+            spans.add(new int[] { nameStart, nameEnd, valueStart, valueEnd });
+            i = skipWhitespace(json, valueEnd);
+            if (i >= len)
+                return false;
+            char c = json.charAt(i);
+            if (c == '}')
+                return true;
+            if (c != ',')
+                return false;
+            i = skipWhitespace(json, i + 1);
+        }
+        return false;
+    }
+
+    /** Find the entries of a JSON array.
+     * @param json the JSON text.
+     * @param spans receives the start of each entry, and the index just after it.
+     * @return false if the text isn't a well-formed array.
+     */
+    public static boolean findEntries(String json, List<int[]> spans)
+    {
+        int len = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i >= len || json.charAt(i) != '[')
+            return false;
+        i = skipWhitespace(json, i + 1);
+        if (i < len && json.charAt(i) == ']')
+            return true;
+        while (i < len)
+        {
+            int end = skipValue(json, i);
+            if (end < 0)
+                return false;
+            spans.add(new int[] { i, end });
+            i = skipWhitespace(json, end);
+            if (i >= len)
+                return false;
+            char c = json.charAt(i);
+            if (c == ']')
+                return true;
+            if (c != ',')
+                return false;
+            i = skipWhitespace(json, i + 1);
+        }
+        return false;
+    }
+
+    /** @return the index of the first character at or after i that isn't whitespace.*/
+    public static int skipWhitespace(String json, int i)
+    {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i)))
+            i++;
+        return i;
+    }
+
+    /** @return the index just after the string that starts at i, or -1 if it isn't terminated.*/
+    public static int skipString(String json, int i)
+    {
+        for (i++; i < json.length(); i++)
+        {
+            char c = json.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '"')
+                return i + 1;
+        }
+        return -1;
+    }
+
+    /** @return the index just after the value that starts at i, or -1 if there is no value there, or it isn't terminated.*/
+    public static int skipValue(String json, int i)
+    {
+        int len = json.length();
+        if (i >= len)
+            return -1;
+        char c = json.charAt(i);
+        if (c == '"')
+            return skipString(json, i);
+        if (c == '{' || c == '[')
+        {
+            int depth = 0;
+            while (i < len)
+            {
+                c = json.charAt(i);
+                if (c == '"')
+                {
+                    i = skipString(json, i);
+                    if (i < 0)
+                        return -1;
+                    continue;
+                }
+                if (c == '{' || c == '[')
+                    depth++;
+                else if ((c == '}' || c == ']') && --depth == 0)
+                    return i + 1;
+                i++;
+            }
+            return -1;
+        }
+        // A number or a literal - it runs up to whatever follows it:
+        int start = i;
+        while (i < len)
+        {
+            c = json.charAt(i);
+            if (c == ',' || c == ':' || c == '}' || c == ']' || c == '{' || c == '[' || c == '"' || Character.isWhitespace(c))
+                break;
+            i++;
+        }
+        return (i > start) ? i : -1;
+    }
+
+    /** Decode the escapes in a JSON string - Gson escapes characters such as '<' and '=' in names as well as values.
+     * @param json the JSON text.
+     * @param start the index just after the string's opening quote.
+     * @param end the index of the string's closing quote.
+     */
+    public static String unescape(String json, int start, int end)
+    {
+        int escape = json.indexOf('\\', start);
+        if (escape < 0 || escape >= end)
+            return json.substring(start, end);
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++)
+        {
+            char c = json.charAt(i);
+            if (c != '\\' || i + 1 >= end)
+            {
+                sb.append(c);
+                continue;
+            }
+            c = json.charAt(++i);
+            switch (c)
+            {
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+                if (i + 4 < end)
+                {
+                    sb.append((char)Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                break;
+            default: sb.append(c); break;   // \" \\ and \/
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -19,14 +19,17 @@
 
 package com.microsoft.Malmo.Utils;
 
-import net.minecraft.block.Block;
-import net.minecraft.block.state.IBlockState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.stats.StatBase;
 import net.minecraft.stats.StatFileWriter;
 import net.minecraft.stats.StatList;
 import net.minecraft.util.BlockPos;
-import net.minecraft.util.ResourceLocation;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -41,6 +44,8 @@ import com.google.gson.JsonPrimitive;
  */
 public class JSONWorldDataHelper
 {
+    private static BlockGridSampler playerSampler = new BlockGridSampler();  // for the grids built straight from the player
+
     /**
      * Simple class to hold the dimensions of the environment around the player
      * that we want to return in the World Data.<br>
@@ -89,6 +94,62 @@ public class JSONWorldDataHelper
             this.zMin = -zMargin; this.zMax = zMargin;
         }
     };
+
+    /**
+     * Maps block type names to small integers, for the "palette" grid encoding.<br>
+     * Indices are handed out in the order the block types are first seen, and never change, so the agent
+     * only needs the most recent copy of the palette to decode any grid built with it.
+     */
+    static public class GridPalette {
+        /** Send the palette at least this often, in case the agent missed the observation it was last sent with.*/
+        public static final int RESEND_INTERVAL = 20;
+
+        private Map<String, Integer> indices = new HashMap<String, Integer>();
+        private List<String> names = new ArrayList<String>();
+        private boolean grown = false;
+        private int observationsSinceSent = RESEND_INTERVAL;
+        private int[] blockIndices = null;  // palette index by block id, or -1 if not looked up yet
+
+        /** Returns the index for this block type name, adding it to the palette if it is new.*/
+        public int indexOf(String name) {
+            Integer index = this.indices.get(name);
+            if (index == null) {
+                index = this.names.size();
+                this.indices.put(name, index);
+                this.names.add(name);
+                this.grown = true;
+            }
+            return index;
+        }
+
+        /** Returns the index for this block id, adding its name to the palette if it is new.*/
+        public int indexOfBlock(int blockId) {
+            if (this.blockIndices == null) {
+                this.blockIndices = new int[BlockGridSampler.MAX_BLOCK_IDS];
+                Arrays.fill(this.blockIndices, -1);
+            }
+            int index = this.blockIndices[blockId];
+            if (index < 0) {
+                index = indexOf(BlockGridSampler.getBlockName(blockId));
+                this.blockIndices[blockId] = index;
+            }
+            return index;
+        }
+
+        /** Returns the palette as a JSON array if it needs to be sent with this observation, or null if not.*/
+        JsonArray takeUpdate() {
+            if (!this.grown && this.observationsSinceSent < RESEND_INTERVAL) {
+                this.observationsSinceSent++;
+                return null;
+            }
+            JsonArray arr = new JsonArray();
+            for (String name : this.names)
+                arr.add(new JsonPrimitive(name));
+            this.grown = false;
+            this.observationsSinceSent = 1;
+            return arr;
+        }
+    }
     
     /** Builds the basic achievement world data to be used as observation signals by the listener.
      * @param json a JSON object into which the achievement stats will be added.
@@ -151,27 +212,65 @@ public class JSONWorldDataHelper
         if (player == null || json == null)
             return;
 
+        playerSampler.sample(player.worldObj, player.getPosition(), environmentDimensions);
+        buildGridData(json, environmentDimensions, playerSampler, player.getPosition(), jsonName);
+    }
+
+    /**
+     * As above, but each cell holds an index into the palette rather than the block type name.<br>
+     * Whenever the palette needs sending, it is added as an array called jsonName + "_palette".
+     * @param palette the palette to use - keep the same one for the whole mission.
+     */
+    public static void buildGridData(JsonObject json, ImmediateEnvironmentDimensions environmentDimensions, EntityPlayerMP player, String jsonName, GridPalette palette)
+    {
+        if (player == null || json == null)
+            return;
+
+        playerSampler.sample(player.worldObj, player.getPosition(), environmentDimensions);
+        buildGridData(json, environmentDimensions, playerSampler, player.getPosition(), jsonName, palette);
+    }
+
+    /**
+     * Build the grid signal from blocks that have already been sampled - eg one sample covering several grids.
+     * @param sampler holds the blocks; the grid must lie within the cuboid it sampled.
+     * @param pos the position the sampler's cuboid was given relative to.
+     */
+    public static void buildGridData(JsonObject json, ImmediateEnvironmentDimensions environmentDimensions, BlockGridSampler sampler, BlockPos pos, String jsonName)
+    {
         JsonArray arr = new JsonArray();
-        BlockPos pos = player.getPosition();
         for (int y = environmentDimensions.yMin; y <= environmentDimensions.yMax; y++)
         {
             for (int z = environmentDimensions.zMin; z <= environmentDimensions.zMax; z++)
             {
                 for (int x = environmentDimensions.xMin; x <= environmentDimensions.xMax; x++)
                 {
-                    BlockPos p = pos.add(x, y, z);
-                    String name = "";
-                    IBlockState state = player.worldObj.getBlockState(p);
-                    Object blockName = Block.blockRegistry.getNameForObject(state.getBlock());
-                    if (blockName instanceof ResourceLocation)
-                    {
-                        name = ((ResourceLocation)blockName).getResourcePath();
-                    }
-                    JsonElement element = new JsonPrimitive(name);
+                    JsonElement element = new JsonPrimitive(BlockGridSampler.getBlockName(sampler.getBlockId(pos, x, y, z)));
                     arr.add(element);
                 }
             }
         }
         json.add(jsonName, arr);
     }
+
+    /**
+     * As above, but using the palette encoding.
+     */
+    public static void buildGridData(JsonObject json, ImmediateEnvironmentDimensions environmentDimensions, BlockGridSampler sampler, BlockPos pos, String jsonName, GridPalette palette)
+    {
+        JsonArray arr = new JsonArray();
+        for (int y = environmentDimensions.yMin; y <= environmentDimensions.yMax; y++)
+        {
+            for (int z = environmentDimensions.zMin; z <= environmentDimensions.zMax; z++)
+            {
+                for (int x = environmentDimensions.xMin; x <= environmentDimensions.xMax; x++)
+                {
+                    arr.add(new JsonPrimitive(palette.indexOfBlock(sampler.getBlockId(pos, x, y, z))));
+                }
+            }
+        }
+        json.add(jsonName, arr);
+        JsonArray update = palette.takeUpdate();
+        if (update != null)
+            json.add(jsonName + "_palette", update);
+    }
 }
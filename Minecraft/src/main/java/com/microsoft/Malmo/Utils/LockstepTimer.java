@@ -0,0 +1,255 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Timer;
+
+/** Replaces Minecraft's timer for missions which use lockstep stepping (see ModSettings/LockstepTicks).<br>
+ * Rather than ticking by the clock, the client ticks only when its StepRequester asks it to - once per time round the game loop -
+ * and the integrated server is held back so that it runs each tick just after the client, and never gets ahead.
+ * So the world doesn't move at all while the agent is thinking, and moves as fast as the machine allows when it isn't.<br>
+ * A step isn't over until the server has caught up with its last tick, and the StepRequester has finished with it.<br>
+ * Only works when the server is running in this client - ie for single-agent missions.
+ */
+public class LockstepTimer extends Timer
+{
+    /** Decides when the world should move on.*/
+    public interface StepRequester
+    {
+        /** Called on the client thread, between ticks, whenever the last step has finished.
+         * @return the number of ticks to advance the world by, or 0 to leave it where it is for now.
+         */
+        int getTicksRequested();
+
+        /** Called on the client thread once the client and the server have both run the last tick of a step - and again each time
+         * round the game loop, until it returns true. The next step isn't asked for until then.
+         * @return true once the step is over - eg once the agent has been sent its observations of it.
+         */
+        boolean finishStep();
+    }
+
+    private static final long SERVER_WAIT_MS = 100;
+    private static final long CLIENT_TIMEOUT_MS = 10000;   // If the client stops going round its game loop for this long, let the server go.
+    private static final Object serverLock = new Object();
+    private static boolean serverLocked = false;
+    private static int serverTicksAllowed = 0;
+    private static boolean serverTickAllowed = false;  // Whether the tick the server is running now was one the client allowed.
+    private static long lastClientUpdateMs = 0;
+    private static List<Runnable> serverTasks = new ArrayList<Runnable>();   // For the server to run while it's held between ticks.
+
+    private final StepRequester requester;
+    private int ticksLeftInStep = 0;
+    private boolean clientTickRun = false;      // The client ran a tick last time round, which the server hasn't been allowed to follow yet.
+    private boolean firstTickOfStep = false;
+    private boolean stepEnded = false;          // The last tick of a step has been run, but the requester hasn't finished with it yet.
+
+    public LockstepTimer(StepRequester requester)
+    {
+        super(20);
+        this.requester = requester;
+    }
+
+    /** Called by Minecraft once each time round the game loop, to decide how many ticks to run.*/
+    @Override
+    public void updateTimer()
+    {
+        this.elapsedTicks = 0;
+        this.elapsedPartialTicks = 0;
+        this.renderPartialTicks = 1;    // Render the world as it is at the end of the last tick, rather than part way to it.
+        this.firstTickOfStep = false;
+
+        // Let the server follow the client's last tick, and don't start another until it has:
+        synchronized (serverLock)
+        {
+            lastClientUpdateMs = System.currentTimeMillis();
+            if (this.clientTickRun)
+            {
+                this.clientTickRun = false;
+                serverTicksAllowed++;
+                serverLock.notifyAll();
+            }
+            if (serverLocked && serverTicksAllowed > 0)
+            {
+                try
+                {
+                    serverLock.wait(SERVER_WAIT_MS);
+                }
+                catch (InterruptedException e)
+                {
+                }
+                if (serverLocked && serverTicksAllowed > 0)
+                    return;     // Try again next time round.
+            }
+        }
+
+        if (this.stepEnded)
+        {
+            // The server has caught up with the last tick of the step - but the step isn't over until the requester says so:
+            if (!this.requester.finishStep())
+            {
+                idle();
+                return;
+            }
+            this.stepEnded = false;
+        }
+
+        if (this.ticksLeftInStep == 0)
+        {
+            this.ticksLeftInStep = Math.max(0, this.requester.getTicksRequested());
+            if (this.ticksLeftInStep == 0)
+            {
+                idle();
+                return;
+            }
+            this.firstTickOfStep = true;
+        }
+        this.ticksLeftInStep--;
+        this.stepEnded = (this.ticksLeftInStep == 0);
+        this.elapsedTicks = 1;
+        this.clientTickRun = true;
+    }
+
+    /** Nothing to do - don't spin the game loop any faster than we need to while we wait.*/
+    private static void idle()
+    {
+        try
+        {
+            Thread.sleep(1);
+        }
+        catch (InterruptedException e)
+        {
+        }
+    }
+
+    /** Is the client tick that is running now the first of a step? If so, this is the time to act on the agent's commands.*/
+    public boolean isFirstTickOfStep()
+    {
+        return this.firstTickOfStep;
+    }
+
+    /** Hold the server back, so that it only ticks when a LockstepTimer allows it to - or let it run freely again.*/
+    public static void lockServer(boolean locked)
+    {
+        synchronized (serverLock)
+        {
+            serverLocked = locked;
+            serverTicksAllowed = 0;
+            lastClientUpdateMs = System.currentTimeMillis();
+            serverLock.notifyAll();
+        }
+    }
+
+    public static boolean isServerLocked()
+    {
+        synchronized (serverLock)
+        {
+            return serverLocked;
+        }
+    }
+
+    /** Run a task on the server thread while the server is held between ticks - eg to answer a request for observations of the tick
+     * that has just finished, which the server's own task queue wouldn't get round to until the next tick had been allowed to start.
+     * @return false if the server isn't being held back, in which case the task has not been taken.
+     */
+    public static boolean runOnHeldServer(Runnable task)
+    {
+        synchronized (serverLock)
+        {
+            if (!serverLocked)
+                return false;
+            serverTasks.add(task);
+            serverLock.notifyAll();
+            return true;
+        }
+    }
+
+    /** Called on the server thread at the start of each server tick - waits until the client has run the same tick,
+     * running any tasks given to runOnHeldServer() in the meantime.<br>
+     * Gives up waiting if the server is shutting down, or if the client stops going round its game loop.
+     */
+    public static void onServerTickStart()
+    {
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        while (true)
+        {
+            synchronized (serverLock)
+            {
+                tasks.addAll(serverTasks);
+                serverTasks.clear();
+                if (tasks.isEmpty())
+                {
+                    if (!serverLocked || serverTicksAllowed > 0)
+                        break;
+                    MinecraftServer server = MinecraftServer.getServer();
+                    if (server == null || !server.isServerRunning())
+                        break;
+                    if (System.currentTimeMillis() - lastClientUpdateMs > CLIENT_TIMEOUT_MS)
+                    {
+                        System.out.println("The client has stopped stepping the world - no longer holding the server back.");
+                        serverLocked = false;
+                        break;
+                    }
+                    try
+                    {
+                        serverLock.wait(SERVER_WAIT_MS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        break;
+                    }
+                }
+            }
+            for (Runnable task : tasks)
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (Exception e)
+                {
+                    System.out.println("Failed to run a task while holding the server: " + e);
+                }
+            }
+            tasks.clear();
+        }
+        synchronized (serverLock)
+        {
+            serverTickAllowed = serverLocked && serverTicksAllowed > 0;
+        }
+    }
+
+    /** Called on the server thread at the end of each server tick - lets the client know it can run the next one.*/
+    public static void onServerTickEnd()
+    {
+        synchronized (serverLock)
+        {
+            if (serverTickAllowed && serverTicksAllowed > 0)
+            {
+                serverTicksAllowed--;
+                serverLock.notifyAll();
+            }
+            serverTickAllowed = false;
+        }
+    }
+}
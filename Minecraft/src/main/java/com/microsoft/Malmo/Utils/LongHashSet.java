@@ -0,0 +1,115 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+
+package com.microsoft.Malmo.Utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs, held in an open-addressed table rather than as boxed values in a HashSet.<br>
+ * Used for sets of positions - see BlockPos.toLong(). Adding and testing stay constant time however many positions are stored. Not thread-safe.
+ */
+public class LongHashSet
+{
+    private static final long EMPTY = 0;
+
+    private long[] table = new long[64];
+    private boolean hasEmptyValue = false;  // The value we use to mark empty slots is held separately.
+    private int size = 0;
+
+    /**
+     * @param value the value to add.
+     * @return true if the value was added, false if it was already in the set.
+     */
+    public boolean add(long value)
+    {
+        if (value == EMPTY)
+        {
+            if (this.hasEmptyValue)
+                return false;
+            this.hasEmptyValue = true;
+            this.size++;
+            return true;
+        }
+        int slot = find(this.table, value);
+        if (this.table[slot] == value)
+            return false;
+        this.table[slot] = value;
+        this.size++;
+        // Keep the table at most half full, so that the probe sequences stay short:
+        if (this.size * 2 > this.table.length)
+            grow();
+        return true;
+    }
+
+    public boolean contains(long value)
+    {
+        if (value == EMPTY)
+            return this.hasEmptyValue;
+        return this.table[find(this.table, value)] == value;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.table, EMPTY);
+        this.hasEmptyValue = false;
+        this.size = 0;
+    }
+
+    /** Returns the slot holding the value, or the empty slot where it would go.*/
+    private static int find(long[] table, long value)
+    {
+        int mask = table.length - 1;
+        int slot = hash(value) & mask;
+        while (table[slot] != EMPTY && table[slot] != value)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private static int hash(long value)
+    {
+        // Mix the bits (MurmurHash3's finaliser), since neighbouring positions differ mostly in the low bits of each coordinate:
+        long h = value;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int)(h ^ (h >>> 33));
+    }
+
+    private void grow()
+    {
+        long[] old = this.table;
+        this.table = new long[old.length * 2];
+        for (long value : old)
+        {
+            if (value != EMPTY)
+                this.table[find(this.table, value)] = value;
+        }
+    }
+}
@@ -20,9 +20,11 @@
 package com.microsoft.Malmo.Utils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import net.minecraft.client.entity.EntityPlayerSP;
+import net.minecraft.entity.Entity;
 import net.minecraft.util.BlockPos;
 
 import com.microsoft.Malmo.Schemas.Pos;
@@ -38,20 +40,55 @@ public class PositionHelper
 	 */
 	public static float calcDistanceFromPlayerToPosition(EntityPlayerSP player, Pos targetPos)
 	{
-	    double x = player.posX - targetPos.getX().doubleValue();
-	    double y = player.posY - targetPos.getY().doubleValue();
-	    double z = player.posZ - targetPos.getZ().doubleValue();
+	    return calcDistanceFromPlayerToPosition(player, targetPos.getX().doubleValue(), targetPos.getY().doubleValue(), targetPos.getZ().doubleValue());
+	}
+
+	/** As above, for a target position that has already been converted to doubles.*/
+	public static float calcDistanceFromPlayerToPosition(EntityPlayerSP player, double targetX, double targetY, double targetZ)
+	{
+	    double x = player.posX - targetX;
+	    double y = player.posY - targetY;
+	    double z = player.posZ - targetZ;
 	    return (float)Math.sqrt(x*x + y*y + z*z);
 	}
 
+	/** The last set of touching blocks we worked out - several handlers ask for them each tick.*/
+	private static class TouchingBlocks
+	{
+		Entity player = null;
+		int tick = 0;
+		BlockPos min = null;
+		BlockPos max = null;
+		List<BlockPos> blocks = Collections.emptyList();
+	}
+
+	// One per thread, so that the client and the integrated server don't share (or fight over) each other's results:
+	private static final ThreadLocal<TouchingBlocks> touching = new ThreadLocal<TouchingBlocks>() {
+		@Override
+		protected TouchingBlocks initialValue()
+		{
+			return new TouchingBlocks();
+		}
+	};
+
+	/** Find the blocks that the player's bounding box is touching.<br>
+	 * The result is shared between the callers in a tick, so must not be modified.
+	 * @param player the player
+	 * @return the positions of the touching blocks, or an empty list if they aren't all loaded
+	 */
 	public static List<BlockPos> getTouchingBlocks(EntityPlayerSP player)
 	{
 		// Determine which blocks we are touching.
 		// This code is adapted from Entity, where it is used to fire the Block.onEntityCollidedWithBlock methods.
 		BlockPos blockposmin = new BlockPos(player.getEntityBoundingBox().minX - 0.001D, player.getEntityBoundingBox().minY - 0.001D, player.getEntityBoundingBox().minZ - 0.001D);
 	    BlockPos blockposmax = new BlockPos(player.getEntityBoundingBox().maxX + 0.001D, player.getEntityBoundingBox().maxY + 0.001D, player.getEntityBoundingBox().maxZ + 0.001D);
+	    // The player's own tick count only moves on when the player is updated - unlike the world time, which can stand still
+	    // (eg when stepping in lockstep) while the player moves:
+	    TouchingBlocks cache = touching.get();
+	    if (player == cache.player && player.ticksExisted == cache.tick && blockposmin.equals(cache.min) && blockposmax.equals(cache.max))
+	        return cache.blocks;
+
 	    List<BlockPos> blocks = new ArrayList<BlockPos>();
-	    
 	    if (player.worldObj.isAreaLoaded(blockposmin, blockposmax))
 	    {
 	        for (int i = blockposmin.getX(); i <= blockposmax.getX(); ++i)
@@ -65,6 +102,11 @@ public class PositionHelper
 	            }
 	        }
 	    }
-	    return blocks;
+	    cache.player = player;
+	    cache.tick = player.ticksExisted;
+	    cache.min = blockposmin;
+	    cache.max = blockposmax;
+	    cache.blocks = Collections.unmodifiableList(blocks);
+	    return cache.blocks;
 	}
 }
@@ -0,0 +1,203 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+
+package com.microsoft.Malmo.Utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A uniform grid over a set of points, each with a tolerance, for finding the points that a position is within tolerance of
+ * without testing every point.<br>
+ * Each point is entered in every cell that its tolerance reaches, so a query only needs to look in the cell containing the position.
+ * Points with a tolerance that covers too many cells are kept to one side and tested on every query.<br>
+ * Build it up once - eg when the mission handler parses its parameters - then query it each tick. Not thread-safe.
+ */
+public class PositionIndex
+{
+    /** Points whose tolerance spans more cells than this are tested on every query instead.*/
+    private static final int MAX_CELLS_PER_POINT = 512;
+    /** Allowance for rounding when deciding which cells a point's tolerance reaches.*/
+    private static final double CELL_MARGIN = 0.001;
+
+    private static class Cell
+    {
+        int[] points = new int[4];
+        int count = 0;
+
+        void add(int point)
+        {
+            if (this.count == this.points.length)
+                this.points = Arrays.copyOf(this.points, this.count * 2);
+            this.points[this.count++] = point;
+        }
+    }
+
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private double[] zs = new double[16];
+    private float[] tolerances = new float[16];
+    private boolean[] removed = new boolean[16];
+    private int size = 0;
+
+    private boolean built = false;
+    private double cellSize = 1;
+    private HashMap<Long, Cell> cells = new HashMap<Long, Cell>();
+    private Cell widePoints = new Cell();
+    private int[] results = new int[16];
+    private int resultCount = 0;
+
+    /**
+     * Add a point to the index.
+     * @return the index of the point - they are numbered from zero in the order they were added.
+     */
+    public int add(double x, double y, double z, float tolerance)
+    {
+        if (this.size == this.xs.length)
+        {
+            int capacity = this.size * 2;
+            this.xs = Arrays.copyOf(this.xs, capacity);
+            this.ys = Arrays.copyOf(this.ys, capacity);
+            this.zs = Arrays.copyOf(this.zs, capacity);
+            this.tolerances = Arrays.copyOf(this.tolerances, capacity);
+            this.removed = Arrays.copyOf(this.removed, capacity);
+        }
+        this.xs[this.size] = x;
+        this.ys[this.size] = y;
+        this.zs[this.size] = z;
+        this.tolerances[this.size] = tolerance;
+        this.built = false;
+        return this.size++;
+    }
+
+    /** Stop returning this point from queries - eg because it was a one-shot reward that has fired.*/
+    public void remove(int point)
+    {
+        this.removed[point] = true;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Find the points that the position is within tolerance of - ie whose distance from it, as a float, is no more than their tolerance.<br>
+     * Read the results with getResult().
+     * @return the number of points found.
+     */
+    public int findWithin(double x, double y, double z)
+    {
+        if (!this.built)
+            build();
+
+        this.resultCount = 0;
+        Cell cell = this.cells.get(cellKey(cellOf(x), cellOf(y), cellOf(z)));
+        if (cell != null)
+            test(cell, x, y, z);
+        test(this.widePoints, x, y, z);
+        // Keep to the order the points were added in, as if we had tested them all in turn:
+        if (cell != null && this.widePoints.count != 0)
+            Arrays.sort(this.results, 0, this.resultCount);
+        return this.resultCount;
+    }
+
+    /** @return the index of the i'th point found by the last call to findWithin. The points are in the order they were added.*/
+    public int getResult(int i)
+    {
+        return this.results[i];
+    }
+
+    private void test(Cell cell, double x, double y, double z)
+    {
+        for (int i = 0; i < cell.count; i++)
+        {
+            int point = cell.points[i];
+            if (this.removed[point])
+                continue;
+            double dx = x - this.xs[point];
+            double dy = y - this.ys[point];
+            double dz = z - this.zs[point];
+            if ((float)Math.sqrt(dx * dx + dy * dy + dz * dz) <= this.tolerances[point])
+            {
+                if (this.resultCount == this.results.length)
+                    this.results = Arrays.copyOf(this.results, this.resultCount * 2);
+                this.results[this.resultCount++] = point;
+            }
+        }
+    }
+
+    private void build()
+    {
+        // Size the cells to suit a typical point - the median tolerance reaches across about one cell:
+        if (this.size > 0)
+        {
+            float[] sorted = Arrays.copyOf(this.tolerances, this.size);
+            Arrays.sort(sorted);
+            this.cellSize = Math.min(64.0, Math.max(1.0, 2.0 * sorted[this.size / 2]));
+        }
+
+        this.cells.clear();
+        this.widePoints = new Cell();
+        for (int point = 0; point < this.size; point++)
+        {
+            double reach = this.tolerances[point] + CELL_MARGIN;
+            if (reach < 0)
+                continue;   // A negative tolerance can never be met.
+            long x0 = cellOf(this.xs[point] - reach), x1 = cellOf(this.xs[point] + reach);
+            long y0 = cellOf(this.ys[point] - reach), y1 = cellOf(this.ys[point] + reach);
+            long z0 = cellOf(this.zs[point] - reach), z1 = cellOf(this.zs[point] + reach);
+            if ((double)(x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1) > MAX_CELLS_PER_POINT)
+            {
+                this.widePoints.add(point);
+                continue;
+            }
+            for (long cx = x0; cx <= x1; cx++)
+            {
+                for (long cy = y0; cy <= y1; cy++)
+                {
+                    for (long cz = z0; cz <= z1; cz++)
+                    {
+                        Long key = cellKey(cx, cy, cz);
+                        Cell cell = this.cells.get(key);
+                        if (cell == null)
+                        {
+                            cell = new Cell();
+                            this.cells.put(key, cell);
+                        }
+                        cell.add(point);
+                    }
+                }
+            }
+        }
+        this.built = true;
+    }
+
+    private long cellOf(double coord)
+    {
+        return (long)Math.floor(coord / this.cellSize);
+    }
+
+    private static long cellKey(long x, long y, long z)
+    {
+        // 21 bits per axis. Far enough apart, cells share a key - which only means testing a few more points:
+        return ((x & 0x1FFFFF) << 42) | ((y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+}
@@ -52,6 +52,15 @@ import com.microsoft.Malmo.MalmoMod;
 public class SchemaHelper
 {
     private static HashMap<String, JAXBContext> jaxbContentCache = new HashMap<String, JAXBContext>();
+    // Marshallers aren't thread-safe, so each thread keeps its own:
+    private static ThreadLocal<HashMap<String, Marshaller>> marshallerCache = new ThreadLocal<HashMap<String, Marshaller>>()
+    {
+        @Override
+        protected HashMap<String, Marshaller> initialValue()
+        {
+            return new HashMap<String, Marshaller>();
+        }
+    };
 
     /** Serialise the object to an XML string
      * @param obj the object to be serialised
@@ -75,10 +84,21 @@ public class SchemaHelper
         return jaxbContext;
     }
 
+    static private Marshaller getMarshaller(Class<?> objclass) throws JAXBException
+    {
+        HashMap<String, Marshaller> marshallers = marshallerCache.get();
+        Marshaller m = marshallers.get(objclass.getName());
+        if (m == null)
+        {
+            m = getJAXBContext(objclass).createMarshaller();
+            marshallers.put(objclass.getName(), m);
+        }
+        return m;
+    }
+
     static public String serialiseObject(Object obj, Class<?> objclass) throws JAXBException
     {
-        JAXBContext jaxbContext = getJAXBContext(objclass);
-        Marshaller m = jaxbContext.createMarshaller();
+        Marshaller m = getMarshaller(objclass);
         StringWriter w = new StringWriter();
         m.marshal(obj, w);
         String xmlString = w.toString();
@@ -200,6 +200,8 @@ public class ScreenHelper
     public void onRenderTick(TickEvent.RenderTickEvent ev)
     {
     	purgeExpiredFragments(null);
+    	if (TimeHelper.headless)
+    		return;	// Nobody to read it - and we mustn't draw over the agent's frames.
     	if (Minecraft.getMinecraft().currentScreen != null && !(Minecraft.getMinecraft().currentScreen instanceof GuiMainMenu))
     		return;
     	
@@ -0,0 +1,226 @@
+// --------------------------------------------------------------------------------------------------
+//  Copyright (c) 2016 Microsoft Corporation
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+//  associated documentation files (the "Software"), to deal in the Software without restriction,
+//  including without limitation the rights to use, copy, modify, merge, publish, distribute,
+//  sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all copies or
+//  substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+//  NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+//  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+//  DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// --------------------------------------------------------------------------------------------------
+
+package com.microsoft.Malmo.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/** Single-producer, single-consumer ring buffer in a memory-mapped file, used instead of a TCP socket when the agent
+ * is on the same machine as us.<br>
+ * The agent creates the file (see ClientAgentConnection.AgentSharedMemoryPath) and reads from it; we only write.
+ * The layout, in native byte order, is:
+ * <ul>
+ * <li>0: int magic, int version, long capacity (bytes in the data area, a multiple of 8)</li>
+ * <li>64: long write sequence - total bytes ever written; only we change this</li>
+ * <li>128: long read sequence - total bytes ever consumed; only the agent changes this</li>
+ * <li>192: the data area</li>
+ * </ul>
+ * Each message is an int length followed by the payload, padded to a multiple of 8 bytes. A message never wraps
+ * round the end of the data area - if it won't fit, a WRAP_MARKER length is written and the message starts again at
+ * the beginning. If the agent hasn't made room for a message within SEND_WAIT_MS, the message is not sent. That only means
+ * the agent is behind - unlike a failed socket write, it doesn't mean the agent has gone, so callers shouldn't treat it as a failure.
+ */
+public class SharedMemoryRing
+{
+    public static final int MAGIC = 0x4D4C4D52;    // "MLMR"
+    public static final int VERSION = 1;
+    public static final int WRAP_MARKER = -1;
+    public static final long SEND_WAIT_MS = 100;   // How long to wait for the agent to make room for a message.
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int WRITE_SEQ_OFFSET = 64;
+    private static final int READ_SEQ_OFFSET = 128;
+    private static final int DATA_OFFSET = 192;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private long writeSeq;
+    // Only here for the ordering guarantees that come with writing and reading a volatile field - see memoryFence():
+    private volatile long fence;
+    private long fenceCount;
+
+    private SharedMemoryRing(File file, RandomAccessFile raf, MappedByteBuffer buffer, long capacity)
+    {
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.writeSeq = buffer.getLong(WRITE_SEQ_OFFSET);
+    }
+
+    /** Open a ring buffer created by the agent.
+     * @param file the file the agent created.
+     * @return the ring, or null if the file doesn't exist or isn't a ring buffer - eg because the agent is on another machine.
+     */
+    public static SharedMemoryRing open(File file)
+    {
+        if (!file.isFile())
+            return null;
+        RandomAccessFile raf = null;
+        try
+        {
+            raf = new RandomAccessFile(file, "rw");
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            buffer.order(ByteOrder.nativeOrder());
+            long capacity = (raf.length() >= DATA_OFFSET) ? buffer.getLong(CAPACITY_OFFSET) : 0;
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || capacity <= 0 || capacity % 8 != 0 || DATA_OFFSET + capacity > raf.length())
+            {
+                System.out.println("WARNING: " + file + " is not a Malmo shared memory ring - ignoring.");
+                raf.close();
+                return null;
+            }
+            return new SharedMemoryRing(file, raf, buffer, capacity);
+        }
+        catch (IOException e)
+        {
+            System.out.println("WARNING: Failed to map " + file + ": " + e);
+            if (raf != null)
+            {
+                try
+                {
+                    raf.close();
+                }
+                catch (IOException e1)
+                {
+                }
+            }
+            return null;
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            this.raf.close();
+        }
+        catch (IOException e)
+        {
+            System.out.println("WARNING: error closing " + this.file + ": " + e);
+        }
+    }
+
+    /** Send a string to the agent, as UTF-8.
+     * @param message the string to send.
+     * @return true if the message was written; false if the agent didn't make room for it in time.
+     */
+    public boolean sendString(String message)
+    {
+        byte[] bytes = message.getBytes(UTF8);
+        return sendBytes(ByteBuffer.wrap(bytes), bytes.length);
+    }
+
+    /** Send bytes to the agent.
+     * @param payload the bytes to send, from the current position. The position is left unchanged.
+     * @param length the number of bytes to send.
+     * @return true if the message was written; false if the agent didn't make room for it in time.
+     */
+    public boolean sendBytes(ByteBuffer payload, int length)
+    {
+        return sendBytes(null, payload, length);
+    }
+
+    /** Send bytes to the agent, with some other bytes in front of them, as a single message.
+     * @param prefix the bytes to send first, from the current position, or null. The position is left unchanged.
+     * @param payload the rest of the bytes to send, from the current position. The position is left unchanged.
+     * @param length the number of bytes to send from the payload.
+     * @return true if the message was written; false if the agent didn't make room for it in time.
+     */
+    public boolean sendBytes(ByteBuffer prefix, ByteBuffer payload, int length)
+    {
+        int prefixLength = (prefix != null) ? prefix.remaining() : 0;
+        long recordSize = (4 + prefixLength + length + 7) & ~7L;
+        if (recordSize > this.capacity)
+            return false;
+        long offset = this.writeSeq % this.capacity;
+        long skip = (offset + recordSize > this.capacity) ? this.capacity - offset : 0;
+
+        if (!waitForReader(this.writeSeq + skip + recordSize - this.capacity))
+            return false;   // The agent hasn't caught up.
+        // Make sure we don't start overwriting the space the agent has freed before we've seen that it's free:
+        memoryFence();
+
+        if (skip != 0)
+        {
+            this.buffer.putInt(DATA_OFFSET + (int)offset, WRAP_MARKER);
+            offset = 0;
+        }
+        int pos = DATA_OFFSET + (int)offset;
+        this.buffer.putInt(pos, prefixLength + length);
+        ByteBuffer dst = this.buffer.duplicate();
+        dst.position(pos + 4);
+        if (prefix != null)
+            dst.put(prefix.duplicate());
+        ByteBuffer src = payload.duplicate();
+        src.limit(src.position() + length);
+        dst.put(src);
+
+        // Make sure the agent can't see the new sequence number before it can see the message:
+        memoryFence();
+        this.writeSeq += skip + recordSize;
+        this.buffer.putLong(WRITE_SEQ_OFFSET, this.writeSeq);
+        return true;
+    }
+
+    /** Wait, for up to SEND_WAIT_MS, for the agent to have read up to a point - much as a blocking socket write would wait for room.
+     * @param readSeq the read sequence needed.
+     * @return true once the agent has got there; false if it hasn't in time.
+     */
+    private boolean waitForReader(long readSeq)
+    {
+        long deadline = 0;
+        while (this.buffer.getLong(READ_SEQ_OFFSET) < readSeq)
+        {
+            long now = System.currentTimeMillis();
+            if (deadline == 0)
+                deadline = now + SEND_WAIT_MS;
+            else if (now >= deadline)
+                return false;
+            try
+            {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException e)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Stop the JIT or the processor moving any memory access across this point.<br>
+     * Nothing ahead of a volatile write can be moved after it, and nothing after a volatile read can be moved ahead of it -
+     * so a write followed by a read of the same volatile field acts as a full fence.
+     */
+    private void memoryFence()
+    {
+        this.fence = this.fenceCount;
+        this.fenceCount = this.fence + 1;
+    }
+}
@@ -19,17 +19,24 @@
 
 package com.microsoft.Malmo.Utils;
 
-import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /** Class which polls for TCP commands in the background, and makes them available via a thread-safe queue.<br>
- * Used for receiving control commands from the Malmo code.
+ * Used for receiving control commands from the Malmo code.<br>
+ * A single thread serves every connection through a Selector, splitting the bytes it reads into newline-terminated commands.
+ * The commands are handed to the consuming thread through a lock-free queue, so neither side ever waits for the other.
  */
 public class TCPInputPoller extends Thread
 {
@@ -44,14 +51,21 @@ public class TCPInputPoller extends Thread
         }
     }
 
-    private boolean keepRunning = true;
-    private ArrayList<CommandAndIPAddress> commandQueue;
+    private static final int MAX_STR_LEN = 10000000;
+    private static final int MAX_PENDING_REPLY_LEN = 10000000;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private volatile boolean keepRunning = true;
+    private ConcurrentLinkedQueue<CommandAndIPAddress> commandQueue = new ConcurrentLinkedQueue<CommandAndIPAddress>();
     private int requestedPortNumber;	// Can be 0, meaning allocate one dynamically.
     private int portRangeMin = -1;
     private int portRangeMax = -1;
     private boolean choosePortRandomly = false;
-    private ServerSocket serverSocket;
-    private boolean failedToCreate = false;
+    private volatile ServerSocketChannel serverChannel;
+    private volatile Selector selector;
+    private volatile boolean failedToCreate = false;
+    // Only touched by the polling thread - shared by all the connections, since they are read one at a time:
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
 
     /**
      * Manually add a command to the command queue.<br>
@@ -60,10 +74,7 @@ public class TCPInputPoller extends Thread
      */
     public void addCommand(String s)
     {
-        synchronized(this)
-        {
-            this.commandQueue.add(new CommandAndIPAddress(s, ""));
-        }
+        this.commandQueue.add(new CommandAndIPAddress(s, ""));
     }
 
     /** Create a new TCPInputPoller to sit and await messages on the specified port.
@@ -72,7 +83,6 @@ public class TCPInputPoller extends Thread
     public TCPInputPoller(int port)
     {
         this.requestedPortNumber = port;
-        this.commandQueue = new ArrayList<CommandAndIPAddress>();
     }
 
     /** Create a new TCPInputPoller to sit and await messages on a port which is dynamically allocated from a range.
@@ -86,7 +96,6 @@ public class TCPInputPoller extends Thread
         this.portRangeMax = portmax;
         this.portRangeMin = portmin;
         this.choosePortRandomly = choosePortRandomly;
-        this.commandQueue = new ArrayList<CommandAndIPAddress>();
     }
 
     /** Create a new TCPInputPoller to sit and await messages on the port which is either specified, or chosen from the range.
@@ -99,7 +108,6 @@ public class TCPInputPoller extends Thread
         this.requestedPortNumber = requestedPort;
         this.portRangeMax = Math.max(portmin,  portmax);
         this.portRangeMin = Math.min(portmin,  portmax);
-        this.commandQueue = new ArrayList<CommandAndIPAddress>();
     }
 
     /** Pop the oldest command from our list and return it.
@@ -107,26 +115,18 @@ public class TCPInputPoller extends Thread
      */
     public String getCommand()
     {
-        String command = "";
-        synchronized(this)
-        {
-            if (commandQueue.size() > 0)
-            {
-                command = commandQueue.remove(0).command;
-            }
-        }
-        return command;
+        CommandAndIPAddress command = this.commandQueue.poll();
+        return (command != null) ? command.command : "";
     }
 
     /** Remove all commands from the queue.
      */
     public void clearCommands()
     {
-        synchronized(this)
-        {
-            System.out.println("JETTISONING " + commandQueue.size() + " COMMANDS");
-            commandQueue.clear();
-        }
+        int count = 0;
+        while (this.commandQueue.poll() != null)
+            count++;
+        System.out.println("JETTISONING " + count + " COMMANDS");
     }
 
     /** Pop the oldest command from our list and return it.
@@ -134,35 +134,41 @@ public class TCPInputPoller extends Thread
      */
     public CommandAndIPAddress getCommandAndIPAddress()
     {
-        CommandAndIPAddress command = null;
-        synchronized(this)
-        {
-            if (commandQueue.size() > 0)
-            {
-                command = commandQueue.remove(0);
-            }
-        }
-        return command;
+        return this.commandQueue.poll();
     }
 
-    /** Immediately stop waiting for messages, and close the SocketServer.
+    /** Immediately stop waiting for messages, and close the server socket.
      */
     public void stopServer()
     {
         keepRunning = false;
-        // Thread will be blocked waiting for input - unblock it by closing the socket underneath it:
-        if (this.serverSocket != null)
+        if (this.serverChannel != null)
         {
             try
             {
-                this.serverSocket.close();
+                this.serverChannel.close();
             }
             catch (IOException e)
             {
-                // TODO Auto-generated catch block
                 e.printStackTrace();
             }
-            this.serverSocket = null;
+            this.serverChannel = null;
+        }
+        Selector sel = this.selector;
+        if (sel != null)
+            sel.wakeup();
+        // The port isn't released until the selector lets go of the channel, so give the polling thread a moment to finish -
+        // the caller may well be about to listen on the same port again:
+        if (Thread.currentThread() != this && isAlive())
+        {
+            try
+            {
+                join(1000);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -172,69 +178,221 @@ public class TCPInputPoller extends Thread
      */
     public void run()
     {
-        this.serverSocket = null;
+        ServerSocketChannel server = null;
         try
         {
+            this.selector = Selector.open();
             // If requrestedPortNumber is 0 and we have a range of ports specified, then attempt to allocate a port dynamically from that range.
             if (this.requestedPortNumber == 0 && this.portRangeMax != -1 && this.portRangeMin != -1)
-                this.serverSocket = TCPSocketHelper.getSocketInRange(this.portRangeMin, this.portRangeMax, this.choosePortRandomly);
+                server = TCPSocketHelper.getServerSocketChannelInRange(this.portRangeMin, this.portRangeMax, this.choosePortRandomly);
             else	// Attempt to use the requested port - if it's 0, the system will allocate one dynamically.
-                this.serverSocket = new ServerSocket(this.requestedPortNumber);	// Use the specified port number
+                server = TCPSocketHelper.openServerSocketChannel(this.requestedPortNumber);	// Use the specified port number
+            server.configureBlocking(false);
+            server.register(this.selector, SelectionKey.OP_ACCEPT);
         }
         catch (Exception e)
         {
             System.out.println("Failed to create socket server on port " + requestedPortNumber);
+            closeQuietly(server);
+            closeSelector();
             this.failedToCreate = true;
             return;
         }
 
-        System.out.println("Listening for messages on port " + this.serverSocket.getLocalPort());
+        this.serverChannel = server;
+        System.out.println("Listening for messages on port " + server.socket().getLocalPort());
 
         while (keepRunning)
         {
-            Socket socket = null;
             try
             {
-                socket = this.serverSocket.accept();
-            }
-            catch (SocketException e)
-            {
-                System.out.println("No socket found - ServerSocket was probably closed under our feet - normal for stopping polling.");
+                this.selector.select();
             }
             catch (IOException e)
             {
-                System.out.println("Failed to accept socket request.");
+                System.out.println("Failed to wait for socket activity: " + e);
+                break;
             }
 
-            if (socket != null)
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext())
             {
-                Runnable connectionHandler = new TCPConnectionHandler(socket, this);
-                new Thread(connectionHandler).start();
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid())
+                    continue;
+                if (key.isAcceptable())
+                    accept((ServerSocketChannel)key.channel());
+                else
+                {
+                    if (key.isWritable())
+                        write(key);
+                    if (key.isValid() && key.isReadable())
+                        read(key);
+                }
             }
         }
 
-        if (this.serverSocket != null)
+        closeQuietly(server);
+        this.serverChannel = null;
+        closeSelector();
+    }
+
+    private void accept(ServerSocketChannel server)
+    {
+        try
         {
-            try
+            SocketChannel channel = server.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel));
+        }
+        catch (ClosedChannelException e)
+        {
+            System.out.println("No socket found - ServerSocket was probably closed under our feet - normal for stopping polling.");
+        }
+        catch (IOException e)
+        {
+            System.out.println("Failed to accept socket request.");
+        }
+    }
+
+    private void read(SelectionKey key)
+    {
+        Connection connection = (Connection)key.attachment();
+        try
+        {
+            int bytesRead;
+            while ((bytesRead = connection.channel.read(this.readBuffer)) > 0)
             {
-                this.serverSocket.close();
+                // Split what we've read into commands:
+                byte[] bytes = this.readBuffer.array();
+                int start = 0;
+                for (int i = 0; i < bytesRead; i++)
+                {
+                    if (bytes[i] == '\n')
+                    {
+                        connection.append(bytes, start, i - start);
+                        commandReceived(connection.takeLine(), connection.ipAddress, connection.replies);
+                        start = i + 1;
+                    }
+                }
+                connection.append(bytes, start, bytesRead - start);
+                this.readBuffer.clear();
+                if (connection.length >= MAX_STR_LEN)
+                {
+                    onError("MALMOERROR Input too long", connection.replies);
+                    connection.flushReplies();
+                    bytesRead = -1;     // Discard anything else we receive.
+                    break;
+                }
             }
-            catch (IOException e)
+            if (bytesRead == -1)
             {
+                // Nothing more to read - but let any replies still queued for this connection go out first.
+                connection.closing = true;
+                connection.length = 0;
             }
+            updateInterest(key, connection);
+        }
+        catch (IOException e)
+        {
+            System.out.println("~~~~~~~~ Socket stream error: " + e);
+            close(key);
+        }
+        finally
+        {
+            this.readBuffer.clear();
+        }
+    }
+
+    private void write(SelectionKey key)
+    {
+        Connection connection = (Connection)key.attachment();
+        try
+        {
+            connection.output.flush();
+            updateInterest(key, connection);
         }
+        catch (IOException e)
+        {
+            System.out.println("~~~~~~~~ Socket stream error: " + e);
+            close(key);
+        }
+    }
+
+    /** Only ask to hear about the connection being writable while it has replies waiting to go out - and close it once there's
+     * nothing left to do with it.<br>
+     * A client which stops reading its replies only holds up itself; if its backlog grows too large, we give up on it.
+     */
+    private void updateInterest(SelectionKey key, Connection connection)
+    {
+        if (!key.isValid())
+            return;
+        int pending = connection.output.pending();
+        if (pending > MAX_PENDING_REPLY_LEN)
+        {
+            System.out.println("Client at " + connection.ipAddress + " isn't reading its replies - dropping connection.");
+            close(key);
+        }
+        else if (pending == 0 && connection.closing)
+            close(key);
+        else
+            key.interestOps((connection.closing ? 0 : SelectionKey.OP_READ) | (pending > 0 ? SelectionKey.OP_WRITE : 0));
+    }
+
+    private void close(SelectionKey key)
+    {
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    private static void closeQuietly(java.nio.channels.Channel channel)
+    {
+        if (channel == null)
+            return;
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+    private void closeSelector()
+    {
+        Selector sel = this.selector;
+        if (sel == null)
+            return;
+        for (SelectionKey key : sel.keys())
+            closeQuietly(key.channel());
+        try
+        {
+            sel.close();
+        }
+        catch (IOException e)
+        {
+        }
+        this.selector = null;
     }
 
     protected void commandReceived(String command, String ipOriginator, DataOutputStream dos)
     {
-        synchronized(this)
+        // Only ever called from the polling thread, so the hooks see one command at a time.
+        if (onCommand(command, ipOriginator, dos))
+        {
+            // Add this command to our list - the calling thread will
+            // retrieve it via getCommand().
+            this.commandQueue.add(new CommandAndIPAddress(command, ipOriginator));
+        }
+        try
+        {
+            dos.flush();
+        }
+        catch (IOException e)
         {
-            if (onCommand(command, ipOriginator, dos))
-            {
-                // Add this command to our list - the calling thread will
-                // retrieve it via getCommand().
-                commandQueue.add(new CommandAndIPAddress(command, ipOriginator));
-            }
         }
     }
 
@@ -263,9 +421,10 @@ public class TCPInputPoller extends Thread
      */
     public int getPort()
     {
-        if (this.serverSocket == null)
+        ServerSocketChannel server = this.serverChannel;
+        if (server == null)
             return -1;
-        return this.serverSocket.getLocalPort();	// Will return -1 if not bound.
+        return server.socket().getLocalPort();	// Will return -1 if not bound.
     }
 
     /** Get the port number which is actually being used by the SocketServer<br>
@@ -294,52 +453,111 @@ public class TCPInputPoller extends Thread
         return getPort();
     }
 
-    /** Class which handles the socket connection, getting messages from it and forwarding them on to the TCPInputPoller.
+    /** The state of one connection - the command read so far, and a stream for replying.
      */
-    public class TCPConnectionHandler extends Thread
+    private static class Connection
     {
-        private Socket socket;
-        TCPInputPoller poller;
+        final SocketChannel channel;
+        final String ipAddress;
+        final ChannelOutputStream output;
+        final DataOutputStream replies;
+        byte[] line = new byte[256];
+        int length = 0;
+        boolean closing = false;
 
-        public TCPConnectionHandler(Socket socket, TCPInputPoller poller)
+        Connection(SocketChannel channel)
         {
-            this.socket = socket;
-            this.poller = poller;
+            this.channel = channel;
+            this.ipAddress = channel.socket().getInetAddress().getHostAddress();
+            this.output = new ChannelOutputStream(channel);
+            this.replies = new DataOutputStream(this.output);
         }
 
-        public void run()
+        void append(byte[] bytes, int offset, int count)
+        {
+            if (this.length + count > this.line.length)
+                this.line = Arrays.copyOf(this.line, Math.max(this.line.length * 2, this.length + count));
+            System.arraycopy(bytes, offset, this.line, this.length, count);
+            this.length += count;
+        }
+
+        String takeLine()
+        {
+            String command = new String(this.line, 0, this.length, UTF8);
+            this.length = 0;
+            if (this.line.length > 64 * 1024)
+                this.line = new byte[256];  // Don't hang on to the space for a huge MissionInit.
+            return command;
+        }
+
+        void flushReplies()
         {
-            final int MAX_STR_LEN = 10000000;
             try
             {
-                BufferedReader br = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
-                StringBuffer sb = new StringBuffer();
-                int intC;
-                while ((intC = br.read()) != -1)
-                {
-                    char c = (char) intC;
-                    if (c == '\n')
-                    {
-                        String command = sb.toString();
-                        String ipOriginator = this.socket.getInetAddress().getHostAddress();
-                        DataOutputStream dos = new DataOutputStream(this.socket.getOutputStream());
-                        poller.commandReceived(command, ipOriginator, dos);
-                        sb.setLength(0);
-                    }
-                    else 
-                    {
-                        sb.append(c);
-                    }
-                    if (sb.length() >= MAX_STR_LEN) {
-                        DataOutputStream dos = new DataOutputStream(this.socket.getOutputStream());
-                        poller.onError("MALMOERROR Input too long", dos);
-                        break; // discard anything else we received
-                    }
-                }
+                this.replies.flush();
             }
             catch (IOException e)
             {
-                System.out.println("~~~~~~~~ Socket stream error: " + e);
+            }
+        }
+    }
+
+    /** An OutputStream that collects the reply, then writes as much of it as the (non-blocking) channel will take when flushed.<br>
+     * Anything the channel won't take yet is kept until the selector says the channel is writable again.
+     */
+    private static class ChannelOutputStream extends OutputStream
+    {
+        private final SocketChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        ChannelOutputStream(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b)
+        {
+            ensureSpace(1);
+            this.buffer.put((byte)b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            ensureSpace(len);
+            this.buffer.put(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            this.buffer.flip();
+            try
+            {
+                while (this.buffer.hasRemaining() && this.channel.write(this.buffer) > 0)
+                    ;
+            }
+            finally
+            {
+                this.buffer.compact();
+            }
+        }
+
+        /** @return the number of bytes written to the stream but not yet sent.*/
+        int pending()
+        {
+            return this.buffer.position();
+        }
+
+        private void ensureSpace(int count)
+        {
+            if (this.buffer.remaining() < count)
+            {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + count));
+                this.buffer.flip();
+                bigger.put(this.buffer);
+                this.buffer = bigger;
             }
         }
     }
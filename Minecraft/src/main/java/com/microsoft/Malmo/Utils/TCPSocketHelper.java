@@ -22,10 +22,10 @@ package com.microsoft.Malmo.Utils;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -165,14 +165,13 @@ public class TCPSocketHelper
      * @param minPort minimum (inclusive) value for port.
      * @param maxPort max (inclusive) possible port value.
      * @param random true to allocate based on a random sample; false to allocate sequentially, starting from minPort.
-     * @return a ServerSocket.
+     * @return a ServerSocketChannel, bound to the port, or null if no port in the range was free.
      */
-    public static ServerSocket getSocketInRange(int minPort, int maxPort, boolean random)
+    public static ServerSocketChannel getServerSocketChannelInRange(int minPort, int maxPort, boolean random)
     {
-    	ServerSocket s = null;
     	int port = minPort - 1;
     	Random r = new Random(System.currentTimeMillis());
-    	while (s == null && port <= maxPort)
+    	while (port <= maxPort)
     	{
     		if (random)
     			port = minPort + r.nextInt(maxPort - minPort);
@@ -180,8 +179,7 @@ public class TCPSocketHelper
     			port++;
     		try
     		{
-    			s = new ServerSocket(port);
-    			return s;      // Created okay, so this port is available.
+    			return openServerSocketChannel(port);      // Created okay, so this port is available.
     		}
     		catch (IOException e)
     		{
@@ -190,12 +188,37 @@ public class TCPSocketHelper
     	}
     	return null;   // No port found in the allowed range.
     }
+
+    /** Open a ServerSocketChannel on a specific port.
+     * @param port the port to listen on - 0 to have one allocated by the system.
+     * @return a ServerSocketChannel, bound to the port.
+     * @throws IOException if the port couldn't be bound.
+     */
+    public static ServerSocketChannel openServerSocketChannel(int port) throws IOException
+    {
+    	ServerSocketChannel channel = ServerSocketChannel.open();
+    	try
+    	{
+    		channel.socket().bind(new InetSocketAddress(port));
+    	}
+    	catch (IOException e)
+    	{
+    		channel.close();
+    		throw e;
+    	}
+    	return channel;
+    }
     
     public static class SocketChannelHelper
     {
     	SocketChannel channel;
     	String address;
     	int port;
+    	// Reused for every message, rather than allocating a header per send:
+    	private final ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+    	private final ByteBuffer[] withPrefix = new ByteBuffer[3];
+    	private final ByteBuffer[] withoutPrefix = new ByteBuffer[2];
+    	private ByteBuffer probe = null;
 
     	public SocketChannelHelper(String address, int port)
     	{
@@ -227,20 +250,71 @@ public class TCPSocketHelper
     		}
     	}
     	
+        /** Find out, without waiting, whether the other end has closed the connection - eg because the agent has gone away.<br>
+         * Nothing is ever sent to us on this connection, so anything that has arrived is thrown away.
+         * @return true if the connection is known to be closed - false if it's still open, or was never made.
+         */
+        public boolean isPeerClosed()
+        {
+            if (this.channel == null)
+                return false;
+            if (!this.channel.isOpen())
+                return true;
+            if (this.probe == null)
+                this.probe = ByteBuffer.allocate(256);
+            try
+            {
+                this.channel.configureBlocking(false);
+                try
+                {
+                    int bytesRead;
+                    do
+                    {
+                        this.probe.clear();
+                        bytesRead = this.channel.read(this.probe);
+                    } while (bytesRead > 0);
+                    return bytesRead < 0;
+                }
+                finally
+                {
+                    this.channel.configureBlocking(true);
+                }
+            }
+            catch (IOException e)
+            {
+                return true;
+            }
+        }
+
 	    /** Send byte buffer over TCP, including a length header.
 	     * @param buffer the bytes to send
 	     * @return true if the message was sent successfully
 	     */
         public boolean sendTCPBytes(ByteBuffer buffer, int length)
+        {
+            return sendTCPBytes(null, buffer, length);
+        }
+
+        /** Send a byte buffer over TCP, with some other bytes in front of it, as a single message including a length header.
+         * @param prefix the bytes to send first, or null
+         * @param buffer the rest of the bytes to send
+         * @param length the number of bytes in buffer
+         * @return true if the message was sent successfully
+         */
+        public boolean sendTCPBytes(ByteBuffer prefix, ByteBuffer buffer, int length)
         {
             boolean success = false;
             try
             {
-                ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(length);
-                header.flip();
-                ByteBuffer[] buffers = new ByteBuffer[2];
-                buffers[0] = header;
-                buffers[1] = buffer;
+                int prefixLength = (prefix != null) ? prefix.remaining() : 0;
+                this.header.clear();
+                this.header.putInt(prefixLength + length);
+                this.header.flip();
+                ByteBuffer[] buffers = (prefix != null) ? this.withPrefix : this.withoutPrefix;
+                buffers[0] = this.header;
+                buffers[buffers.length - 1] = buffer;
+                if (prefix != null)
+                    buffers[1] = prefix;
                 if (logging)
                 {
                     long t1 = System.nanoTime();
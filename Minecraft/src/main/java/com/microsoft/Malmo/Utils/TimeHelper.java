@@ -21,6 +21,8 @@ package com.microsoft.Malmo.Utils;
 
 import java.lang.reflect.Field;
 
+import org.lwjgl.opengl.Display;
+
 import net.minecraft.client.Minecraft;
 import net.minecraft.launchwrapper.Launch;
 import net.minecraft.util.Timer;
@@ -38,7 +40,18 @@ public class TimeHelper
     public final static float MillisecondsPerSecond = 1000.0f;
     public static long serverTickLength = 50;
     public static long displayGranularityMs = 0;  // How quickly we allow the Minecraft window to update.
+    public static boolean headless = false;  // If true, the Minecraft window is never updated - we only render offscreen.
     private static long lastUpdateTimeMs;
+    private static FrameRequester frameRequester = null;
+    private static boolean worldRenderSkipped = false;
+
+    /** Anything which needs the world rendered, other than the Minecraft window itself.
+     */
+    public interface FrameRequester
+    {
+        /** @return true if the world should be rendered this time round the game loop. */
+        boolean isFrameWanted();
+    }
 
     /** Very simple stopwatch-style timer class; times in WorldTicks.
      */
@@ -82,6 +95,12 @@ public class TimeHelper
     }
     
     static public boolean setMinecraftClientClockSpeed(float ticksPerSecond)
+    {
+        return setMinecraftClientTimer(new Timer(ticksPerSecond));
+    }
+
+    /** Replace the timer that decides when the Minecraft client ticks - eg with a LockstepTimer.*/
+    static public boolean setMinecraftClientTimer(Timer newTimer)
     {
         boolean devEnv = (Boolean) Launch.blackboard.get("fml.deobfuscatedEnvironment");
         // We need to know, because the member name will either be obfuscated or not.
@@ -92,7 +111,7 @@ public class TimeHelper
         {
             timer = Minecraft.class.getDeclaredField(timerMemberName);
             timer.setAccessible(true);
-            timer.set(Minecraft.getMinecraft(), new Timer(ticksPerSecond));
+            timer.set(Minecraft.getMinecraft(), newTimer);
             return true;
         }
         catch (SecurityException e)
@@ -116,11 +135,47 @@ public class TimeHelper
     
     static public void updateDisplay()
     {
+        if (headless)
+        {
+            // No swap or resize check - but keep draining the window's event queue, so that the window system doesn't think we've hung.
+            Display.processMessages();
+            return;
+        }
+        if (worldRenderSkipped)
+        {
+            // Nothing new to show - and the back buffer may not hold a complete frame.
+            worldRenderSkipped = false;
+            return;
+        }
         long timeNow = System.currentTimeMillis();
-        if (timeNow - lastUpdateTimeMs > displayGranularityMs)
+        if (isDisplayUpdateDue(timeNow))
         {
             Minecraft.getMinecraft().updateDisplay();
             lastUpdateTimeMs = timeNow;
         }
     }
+
+    /** Set the object which decides whether the world needs rendering during a mission, or null to always render it.
+     */
+    static public void setFrameRequester(FrameRequester requester)
+    {
+        frameRequester = requester;
+        worldRenderSkipped = false;
+    }
+
+    /** Called from Minecraft.runGameLoop (see OverclockingClassTransformer) to decide whether to render the world this time round.<br>
+     * The world is rendered if the window is about to be updated, or if the frame requester wants a frame - so if nothing is going to
+     * see the result, we save the cost of rendering it.
+     */
+    static public boolean shouldRenderWorld()
+    {
+        boolean render = frameRequester == null || frameRequester.isFrameWanted() || (!headless && isDisplayUpdateDue(System.currentTimeMillis()));
+        worldRenderSkipped = !render;
+        return render;
+    }
+
+    static private boolean isDisplayUpdateDue(long timeNow)
+    {
+        return timeNow - lastUpdateTimeMs > displayGranularityMs;
+    }
 }